@@ -1,5 +1,6 @@
 package dev.artingl.Engine;
 
+import dev.artingl.Engine.debug.LogLevel;
 import dev.artingl.Engine.debug.Logger;
 import dev.artingl.Engine.input.Input;
 import dev.artingl.Engine.misc.Color;
@@ -20,8 +21,12 @@ import static org.lwjgl.system.MemoryStack.stackPush;
 
 public class Display {
 
+    // System property which selects the headless backend ("egl" or "osmesa")
+    public static final String HEADLESS_PROPERTY = "engine.headless";
+
     private final Logger logger;
     private final Input input;
+    private final Backend backend;
 
     private long windowId;
 
@@ -53,6 +58,18 @@ public class Display {
         this.title = title;
         this.width = width;
         this.height = height;
+        this.backend = Backend.fromProperty(System.getProperty(HEADLESS_PROPERTY));
+    }
+
+    /**
+     * Set GLFW init hints required by the display backend, must be called before glfwInit()
+     */
+    public void prepare() {
+        if (this.isHeadless()) {
+            // The null platform has no windows and no input, the context is created through EGL or OSMesa
+            glfwInitHint(GLFW_PLATFORM, GLFW_PLATFORM_NULL);
+            this.logger.log(LogLevel.INFO, "Using headless display backend: %s", this.backend);
+        }
     }
 
     /**
@@ -70,10 +87,21 @@ public class Display {
         // TODO: apple only??
 //        glfwWindowHint(GLFW_OPENGL_FORWARD_COMPAT, GL_TRUE);
 
+        if (this.isHeadless()) {
+            glfwWindowHint(GLFW_VISIBLE, GLFW_FALSE);
+            glfwWindowHint(GLFW_CONTEXT_CREATION_API, this.backend == Backend.OSMESA ? GLFW_OSMESA_CONTEXT_API : GLFW_EGL_CONTEXT_API);
+        }
+
         this.windowId = glfwCreateWindow(width, height, title, 0, 0);
         if (this.windowId == 0)
             throw new IllegalStateException("Unable to create window");
 
+        if (this.isHeadless()) {
+            // There is nothing to show and no input, everything is rendered into the framebuffers
+            glfwMakeContextCurrent(windowId);
+            return;
+        }
+
         // Setup all necessary callbacks for the window
         this.setupCallbacks();
 
@@ -153,7 +181,8 @@ public class Display {
 
     public void setVsync(boolean state) {
         this.isVsyncEnabled = state;
-        glfwSwapInterval(state ? 1 : 0);
+        if (!this.isHeadless())
+            glfwSwapInterval(state ? 1 : 0);
     }
 
     public boolean isVsyncEnabled() {
@@ -207,6 +236,13 @@ public class Display {
 
     public void frame() {
         long start = System.nanoTime();
+        if (this.isHeadless()) {
+            // Nothing to present, but wait for the GPU so the frame time includes its work
+            glFinish();
+            Engine.getInstance().getProfiler().addGpuTime((System.nanoTime() - start) / 1000000f);
+            return;
+        }
+
         glfwSwapBuffers(windowId);
         glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
         Engine.getInstance().getProfiler().addGpuTime((System.nanoTime() - start) / 1000000f);
@@ -220,6 +256,8 @@ public class Display {
     }
 
     public void setFullscreen(boolean state) {
+        if (this.isHeadless())
+            return;
         this.isFullscreenEnabled = state;
 
         if (state) {
@@ -263,6 +301,24 @@ public class Display {
         glClearColor(color.red() / 255.0f, color.green() / 255.0f, color.blue() / 255.0f, color.alpha() / 255.0f);
     }
 
+    /**
+     * Set mouse position, used instead of the cursor callback when there is no window
+     */
+    public void setMousePosition(float x, float y) {
+        this.mousePosition = new Vector2f(x, y);
+    }
+
+    /**
+     * Tells if the display has no window and renders offscreen
+     */
+    public boolean isHeadless() {
+        return this.backend != Backend.WINDOW;
+    }
+
+    public Backend getBackend() {
+        return backend;
+    }
+
     public float getAspectRatio() {
         return (float)width / (float)height;
     }
@@ -295,4 +351,19 @@ public class Display {
 
         return false;
     }
+
+    public enum Backend {
+        WINDOW, EGL, OSMESA;
+
+        /**
+         * Get backend by the value of {@link #HEADLESS_PROPERTY}
+         */
+        public static Backend fromProperty(String value) {
+            if (value == null || value.isEmpty() || value.equalsIgnoreCase("false"))
+                return WINDOW;
+            if (value.equalsIgnoreCase("osmesa"))
+                return OSMESA;
+            return EGL;
+        }
+    }
 }
@@ -7,7 +7,9 @@ import dev.artingl.Engine.debug.Profiler;
 import dev.artingl.Engine.input.Input;
 import dev.artingl.Engine.input.InputKeys;
 import dev.artingl.Engine.input.InputListener;
+import dev.artingl.Engine.input.ScriptedInput;
 import dev.artingl.Engine.misc.Utils;
+import dev.artingl.Engine.renderer.GLState;
 import dev.artingl.Engine.renderer.Renderer;
 import dev.artingl.Engine.resources.Options;
 import dev.artingl.Engine.resources.ResourceManager;
@@ -41,6 +43,9 @@ import static org.lwjgl.opengl.GL43C.*;
 
 public class Engine implements TickListener, InputListener {
 
+    // System property with amount of frames to render before exiting, 0 runs until the window is closed
+    public static final String FRAMES_PROPERTY = "engine.frames";
+
     private static Engine instance;
 
     public static Engine getInstance() {
@@ -64,6 +69,9 @@ public class Engine implements TickListener, InputListener {
     private final List<String> namespaces;
     private final List<URI> libsFolders;
     private final List<Runnable> glContext;
+    private final long framesLimit;
+    private ScriptedInput scriptedInput;
+    private long frameIndex;
 
     private boolean reload;
 
@@ -87,6 +95,7 @@ public class Engine implements TickListener, InputListener {
         this.engineEvents = new ConcurrentLinkedDeque<>();
         this.libsFolders = new ArrayList<>();
         this.glContext = new ArrayList<>();
+        this.framesLimit = Long.getLong(FRAMES_PROPERTY, 0);
 
         this.addLibsFolder(new File("./natives"));
     }
@@ -149,6 +158,13 @@ public class Engine implements TickListener, InputListener {
         return renderer;
     }
 
+    /**
+     * Get number of the current frame, it grows by one with each frame
+     * */
+    public long getFrameIndex() {
+        return frameIndex;
+    }
+
     /**
      * Register namespace to be used in resources
      *
@@ -212,6 +228,7 @@ public class Engine implements TickListener, InputListener {
         GLFWErrorCallback.createPrint(this.logger.getErrStream()).set();
 
         // Initialize GLFW
+        this.display.prepare();
         if (!glfwInit())
             throw new IllegalStateException("Unable to initialize GLFW");
 
@@ -242,28 +259,43 @@ public class Engine implements TickListener, InputListener {
         this.input.subscribe(this);
 
         this.input.init();
+        if (this.display.isHeadless()) {
+            // There are no input callbacks without a window, so the input may come from a script
+            String script = System.getProperty(ScriptedInput.SCRIPT_PROPERTY);
+            if (script != null) {
+                this.scriptedInput = new ScriptedInput(this.input, this.display);
+                this.scriptedInput.load(Paths.get(script));
+                this.logger.log(LogLevel.INFO, "Loaded input script %s", script);
+            }
+        }
+        if (this.display.isHeadless() || this.framesLimit > 0)
+            this.profiler.enableStatistics();
         this.resourceManager.init();
         this.soundsManager.init();
         this.debugger.init();
 
         // Setup OpenGL
-        glEnable(GL_TEXTURE_2D);
-        glEnable(GL_LINE_SMOOTH);
-        glEnable(GL_BLEND);
-        glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+        GLState state = this.renderer.getState();
+        state.setEnabled(GL_TEXTURE_2D, true);
+        state.setEnabled(GL_LINE_SMOOTH, true);
+        state.setEnabled(GL_BLEND, true);
+        state.blendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
         glHint(GL_LINE_SMOOTH_HINT, GL_NICEST);
         glClearDepth(1.0D);
-        glEnable(GL_DEPTH_TEST);
-        glDepthFunc(GL_LEQUAL);
+        state.setEnabled(GL_DEPTH_TEST, true);
+        state.depthFunc(GL_LEQUAL);
 
-//        glEnable(GL_CULL_FACE);
-//        glCullFace(GL_BACK);
+//        state.setEnabled(GL_CULL_FACE, true);
+//        state.cullFace(GL_BACK);
         glFrontFace(GL_CW);
 
         this.timer.enterLoop();
     }
 
     public void terminate() {
+        if (this.profiler.getStatistics() != null)
+            this.profiler.getStatistics().report(this.logger);
+
         this.sceneManager.cleanup();
         this.debugger.cleanup();
         this.engineEvents.clear();
@@ -286,6 +318,8 @@ public class Engine implements TickListener, InputListener {
     }
 
     public boolean isAlive() {
+        if (this.framesLimit > 0 && this.frameIndex >= this.framesLimit)
+            return false;
         return display.isAlive();
     }
 
@@ -309,6 +343,9 @@ public class Engine implements TickListener, InputListener {
         }
 
         this.display.poll();
+        if (this.scriptedInput != null)
+            this.scriptedInput.frame(this.frameIndex);
+        this.frameIndex++;
         this.profiler.frame();
         this.display.frame();
         this.renderer.frame();
@@ -2,6 +2,7 @@ package dev.artingl.Engine.debug;
 
 import dev.artingl.Engine.renderer.Quality;
 import dev.artingl.Engine.renderer.visual.postprocessing.PostprocessEffect;
+import dev.artingl.Engine.renderer.visual.postprocessing.RenderScale;
 import dev.artingl.Engine.world.scene.SceneManager;
 import dev.artingl.Engine.world.scene.components.annotations.ComponentFinalField;
 import dev.artingl.Engine.world.scene.components.annotations.ComponentIgnoreField;
@@ -127,8 +128,13 @@ public class Debugger {
             ImGui.text("GPU time: " + profiler.getGpuTime());
             ImGui.text("Frame time: " + profiler.getFrameTime());
             ImGui.text("Framebuffer binds: " + profiler.getCounter(Profiler.Task.FRAMEBUFFER_BINDS));
+            ImGui.text("Postprocess passes: " + renderer.getPostprocessing().getGraph().getExecutedPasses() + " (culled " + renderer.getPostprocessing().getGraph().getCulledPasses() + ", targets " + renderer.getPostprocessing().getTargetPool().getTargets() + ")");
+            ImGui.text("Shadow cascades: " + renderer.getShadows().getActiveCascades() + " (static updates " + renderer.getShadows().getStaticUpdates() + ")");
+            ImGui.text("Culling: " + profiler.getCounter(Profiler.Task.NODES_VISIBLE) + " visible, " + profiler.getCounter(Profiler.Task.NODES_CULLED) + " culled, " + profiler.getCounter(Profiler.Task.NODES_OCCLUDED) + " occluded (" + profiler.getCounter(Profiler.Task.CULL_TESTS) + " tests)");
+            ImGui.text("Instances: " + profiler.getCounter(Profiler.Task.INSTANCES_DRAWN) + " drawn, " + profiler.getCounter(Profiler.Task.INSTANCES_CULLED) + " culled");
             ImGui.text("Draw calls: " + profiler.getCounter(Profiler.Task.DRAW_CALLS));
             ImGui.text("Vertices drawn: " + profiler.getCounter(Profiler.Task.VERTICES_DRAWN));
+            ImGui.text("State changes: " + profiler.getCounter(Profiler.Task.STATE_CHANGES) + " (skipped " + profiler.getCounter(Profiler.Task.STATE_CHANGES_SKIPPED) + ")");
             ImGui.text("System: " + System.getProperty("os.name") + "/" + System.getProperty("os.arch"));
             ImGui.separator();
 
@@ -138,12 +144,17 @@ public class Debugger {
 
             ImGui.text("Width: " + display.getWidth());
             ImGui.text("Height: " + display.getHeight());
+            ImGui.text(String.format("Resolution scale: %.2f (%dx%d)", renderer.getDynamicResolution().getScale(),
+                    renderer.getMainFramebuffer().getWidth(), renderer.getMainFramebuffer().getHeight()));
             ImGui.text("GPU: " + engine.getGraphicsInfo());
 
             float[] rd = new float[]{engine.getOptions().getFloat(Options.Values.RENDER_DISTANCE)};
             Quality quality = (Quality) drawEnum((Quality) engine.getOptions().get(Options.Values.QUALITY_SETTING));
             ImGui.sliderFloat("Render Distance", rd, 0.1f, 1f);
             engine.getOptions().set(Options.Values.RENDER_DISTANCE, rd[0]);
+            float[] ps = new float[]{engine.getOptions().getFloat(Options.Values.POSTPROCESS_SCALE)};
+            ImGui.sliderFloat("Effects Scale", ps, 0.25f, 1f);
+            engine.getOptions().set(Options.Values.POSTPROCESS_SCALE, ps[0]);
             if (quality.equals(Quality.POTATO))
                 engine.getOptions().set(Options.Values.RENDER_DISTANCE, 0.1f);
             engine.getOptions().set(Options.Values.QUALITY_SETTING, quality);
@@ -159,6 +170,11 @@ public class Debugger {
             if (ImGui.checkbox("wireframe", renderer.isWireframeEnabled())) {
                 renderer.setWireframe(!renderer.isWireframeEnabled());
             }
+
+            boolean dynamicResolution = engine.getOptions().getBoolean(Options.Values.DYNAMIC_RESOLUTION);
+            if (ImGui.checkbox("dynamic resolution", dynamicResolution)) {
+                engine.getOptions().set(Options.Values.DYNAMIC_RESOLUTION, !dynamicResolution);
+            }
         }
         ImGui.end();
 
@@ -262,6 +278,7 @@ public class Debugger {
             Boolean isEnabled = (Boolean)drawElement(true, "Is Enabled", effect.isEnabled());
             if (isEnabled != null)
                 effect.setEnabled(isEnabled);
+            effect.setRenderScale((RenderScale) drawEnum(effect.getRenderScale()));
 
             for (Map.Entry<String, Object> property: effect.getProperties()) {
                 Object value = drawAsType(property.getValue().getClass(), Utils.prettify(property.getKey()), property.getValue(), true);
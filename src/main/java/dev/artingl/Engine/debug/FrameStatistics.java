@@ -0,0 +1,79 @@
+package dev.artingl.Engine.debug;
+
+import dev.artingl.Engine.Engine;
+
+import java.util.Arrays;
+
+/**
+ * Collects time and counters of every frame, so a run can be summarized when it is over
+ * */
+public class FrameStatistics {
+
+    private float[] frameTimes;
+    private int frames;
+    private long drawCalls;
+    private long verticesDrawn;
+    private long stateChanges;
+    private long stateChangesSkipped;
+    private double resolutionScale;
+    private float minResolutionScale = 1;
+
+    public FrameStatistics() {
+        this.frameTimes = new float[1024];
+        this.frames = 0;
+    }
+
+    /**
+     * Record the frame
+     *
+     * @param frameTime Time of the frame in milliseconds
+     * @param profiler  Profiler with the counters of the frame
+     * */
+    public void record(float frameTime, Profiler profiler) {
+        if (this.frames == this.frameTimes.length)
+            this.frameTimes = Arrays.copyOf(this.frameTimes, this.frames * 2);
+
+        this.frameTimes[this.frames++] = frameTime;
+        this.drawCalls += profiler.getCounter(Profiler.Task.DRAW_CALLS);
+        this.verticesDrawn += profiler.getCounter(Profiler.Task.VERTICES_DRAWN);
+        this.stateChanges += profiler.getCounter(Profiler.Task.STATE_CHANGES);
+        this.stateChangesSkipped += profiler.getCounter(Profiler.Task.STATE_CHANGES_SKIPPED);
+
+        float scale = Engine.getInstance().getRenderer().getDynamicResolution().getScale();
+        this.resolutionScale += scale;
+        this.minResolutionScale = Math.min(this.minResolutionScale, scale);
+    }
+
+    public int getFrames() {
+        return frames;
+    }
+
+    /**
+     * Log summary of all recorded frames
+     * */
+    public void report(Logger logger) {
+        if (this.frames == 0) {
+            logger.log(LogLevel.WARNING, "No frames were recorded");
+            return;
+        }
+
+        float[] sorted = Arrays.copyOf(this.frameTimes, this.frames);
+        Arrays.sort(sorted);
+        double total = 0;
+        for (float time : sorted)
+            total += time;
+        double average = total / this.frames;
+
+        logger.log(LogLevel.INFO, "Frame statistics: frames=%d, total=%.1f ms, fps=%.1f", this.frames, total, 1000 / average);
+        logger.log(LogLevel.INFO, "Frame time: avg=%.3f ms, min=%.3f ms, p50=%.3f ms, p95=%.3f ms, p99=%.3f ms, max=%.3f ms",
+                average, sorted[0], percentile(sorted, 0.5f), percentile(sorted, 0.95f), percentile(sorted, 0.99f), sorted[this.frames - 1]);
+        logger.log(LogLevel.INFO, "Per frame: draw calls=%.1f, vertices=%.1f, state changes=%.1f, skipped state changes=%.1f",
+                (double) this.drawCalls / this.frames, (double) this.verticesDrawn / this.frames,
+                (double) this.stateChanges / this.frames, (double) this.stateChangesSkipped / this.frames);
+        logger.log(LogLevel.INFO, "Resolution scale: avg=%.2f, min=%.2f", this.resolutionScale / this.frames, this.minResolutionScale);
+    }
+
+    private static float percentile(float[] sorted, float p) {
+        return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))];
+    }
+}
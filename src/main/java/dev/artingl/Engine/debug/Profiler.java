@@ -5,7 +5,12 @@ import java.util.concurrent.ConcurrentHashMap;
 
 public class Profiler {
 
+    // Amount of frames over which the average frame time is calculated
+    public static final int FRAME_WINDOW = 30;
+
     private final Map<Task, Integer> counter;
+    private final float[] frameWindow;
+    private int frameWindowSize, frameWindowIndex;
     private long lastTime;
     private long newTime;
 
@@ -15,13 +20,22 @@ public class Profiler {
     private float gpuTime = 0;
     private int gpuTimeDiv = 0;
     private long timeSinceUpdate = 0;
-
+    private FrameStatistics statistics;
 
     public Profiler() {
         this.counter = new ConcurrentHashMap<>();
+        this.frameWindow = new float[FRAME_WINDOW];
         this.counter.put(Task.DRAW_CALLS, 0);
         this.counter.put(Task.VERTICES_DRAWN, 0);
         this.counter.put(Task.FRAMEBUFFER_BINDS, 0);
+        this.counter.put(Task.STATE_CHANGES, 0);
+        this.counter.put(Task.STATE_CHANGES_SKIPPED, 0);
+        this.counter.put(Task.CULL_TESTS, 0);
+        this.counter.put(Task.NODES_VISIBLE, 0);
+        this.counter.put(Task.NODES_CULLED, 0);
+        this.counter.put(Task.NODES_OCCLUDED, 0);
+        this.counter.put(Task.INSTANCES_DRAWN, 0);
+        this.counter.put(Task.INSTANCES_CULLED, 0);
     }
 
     /**
@@ -32,6 +46,17 @@ public class Profiler {
         lastTime = newTime;
         newTime = System.nanoTime();
 
+        if (lastTime != 0) {
+            float time = (newTime - lastTime) / 1000000f;
+            frameWindow[frameWindowIndex] = time;
+            frameWindowIndex = (frameWindowIndex + 1) % FRAME_WINDOW;
+            frameWindowSize = Math.min(frameWindowSize + 1, FRAME_WINDOW);
+
+            // Record the frame which has just ended before its counters are reset
+            if (statistics != null)
+                statistics.record(time, this);
+        }
+
         counter.replaceAll((t, v) -> 0);
 
         if (fps == -1 || timeSinceUpdate + 50 < System.currentTimeMillis()) {
@@ -53,6 +78,19 @@ public class Profiler {
         return this.frameTime;
     }
 
+    /**
+     * Get average time of the last {@link #FRAME_WINDOW} frames in milliseconds, or -1 if no frames were made yet
+     * */
+    public float getAverageFrameTime() {
+        if (frameWindowSize == 0)
+            return -1;
+
+        float total = 0;
+        for (int i = 0; i < frameWindowSize; i++)
+            total += frameWindow[i];
+        return total / frameWindowSize;
+    }
+
     public float getGpuTime() {
         return calculatedGpuTime;
     }
@@ -67,13 +105,13 @@ public class Profiler {
     }
 
     /**
-     * Add value to the task counter
+     * Add value to the task counter, can be called from any thread
      *
      * @param task Target task
      * @param value Value to be added
      * */
     public void addCounter(Task task, int value) {
-        this.counter.put(task, this.counter.get(task) + value);
+        this.counter.merge(task, value, Integer::sum);
     }
 
     /**
@@ -85,6 +123,19 @@ public class Profiler {
         return this.counter.get(task);
     }
 
+    /**
+     * Start recording statistics of every frame
+     * */
+    public FrameStatistics enableStatistics() {
+        if (this.statistics == null)
+            this.statistics = new FrameStatistics();
+        return this.statistics;
+    }
+
+    public FrameStatistics getStatistics() {
+        return statistics;
+    }
+
     public void addGpuTime(float value) {
         this.gpuTime += value;
     }
@@ -92,6 +143,9 @@ public class Profiler {
     public enum Task {
         DRAW_CALLS,
         VERTICES_DRAWN, FRAMEBUFFER_BINDS,
+        STATE_CHANGES, STATE_CHANGES_SKIPPED,
+        CULL_TESTS, NODES_VISIBLE, NODES_CULLED, NODES_OCCLUDED,
+        INSTANCES_DRAWN, INSTANCES_CULLED,
 
     }
 }
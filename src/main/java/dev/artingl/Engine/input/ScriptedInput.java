@@ -0,0 +1,128 @@
+package dev.artingl.Engine.input;
+
+import dev.artingl.Engine.Display;
+import dev.artingl.Engine.EngineException;
+import org.lwjgl.glfw.GLFW;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Feeds input events from a script instead of the window callbacks, used when the display is headless.
+ * Each line of the script is an event which is applied at the beginning of the given frame:
+ * <pre>
+ * # frame  event  arguments
+ * 0        key    W press
+ * 120      key    W release
+ * 10       mouse  LEFT press
+ * 10       move   700 450
+ * 10       wheel  0 1
+ * </pre>
+ * Keys and mouse buttons are either names without the GLFW_KEY_/GLFW_MOUSE_BUTTON_ prefix or GLFW codes,
+ * actions are press, release or repeat.
+ */
+public class ScriptedInput {
+
+    // System property with path to the script
+    public static final String SCRIPT_PROPERTY = "engine.input";
+
+    private final Input input;
+    private final Display display;
+    private final List<Event> events;
+    private int cursor;
+
+    public ScriptedInput(Input input, Display display) {
+        this.input = input;
+        this.display = display;
+        this.events = new ArrayList<>();
+        this.cursor = 0;
+    }
+
+    /**
+     * Load events from the script file
+     *
+     * @param path Path to the script
+     */
+    public void load(Path path) throws IOException {
+        List<String> lines = Files.readAllLines(path);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).strip();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+
+            String[] args = line.split("\\s+");
+            try {
+                this.events.add(parse(args));
+            } catch (RuntimeException e) {
+                throw new EngineException("Invalid input script line " + (i + 1) + " in " + path + ": " + line);
+            }
+        }
+
+        // Events must go in order of frames, the sort is stable so events of one frame keep their order
+        this.events.sort(Comparator.comparingLong(Event::frame));
+    }
+
+    /**
+     * Apply all events of the frame
+     *
+     * @param frame Index of the frame
+     */
+    public void frame(long frame) {
+        while (this.cursor < this.events.size() && this.events.get(this.cursor).frame <= frame) {
+            Event event = this.events.get(this.cursor++);
+            switch (event.type) {
+                case KEY -> this.input.setKeyboardStateArray(event.a, event.b);
+                case MOUSE -> this.input.setMouseStateArray(event.a, event.b);
+                case MOVE -> this.display.setMousePosition(event.a, event.b);
+                case WHEEL -> this.input.setMouseWheel(event.a, event.b);
+            }
+        }
+    }
+
+    /**
+     * Tells if all events were applied
+     */
+    public boolean isFinished() {
+        return this.cursor >= this.events.size();
+    }
+
+    private static Event parse(String[] args) {
+        long frame = Long.parseLong(args[0]);
+        EventType type = EventType.valueOf(args[1].toUpperCase());
+
+        return switch (type) {
+            case KEY -> new Event(frame, type, code("GLFW_KEY_", args[2]), action(args[3]));
+            case MOUSE -> new Event(frame, type, code("GLFW_MOUSE_BUTTON_", args[2]), action(args[3]));
+            case MOVE, WHEEL -> new Event(frame, type, Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+        };
+    }
+
+    private static int code(String prefix, String value) {
+        try {
+            return GLFW.class.getField(prefix + value.toUpperCase()).getInt(null);
+        } catch (ReflectiveOperationException e) {
+            // Not a name, so it must be the code itself
+            return Integer.parseInt(value);
+        }
+    }
+
+    private static int action(String value) {
+        return switch (value.toLowerCase()) {
+            case "press" -> GLFW.GLFW_PRESS;
+            case "release" -> GLFW.GLFW_RELEASE;
+            case "repeat" -> GLFW.GLFW_REPEAT;
+            default -> throw new IllegalArgumentException("Unknown action " + value);
+        };
+    }
+
+    private record Event(long frame, EventType type, int a, int b) {
+    }
+
+    private enum EventType {
+        KEY, MOUSE, MOVE, WHEEL
+    }
+}
@@ -0,0 +1,149 @@
+package dev.artingl.Engine.misc;
+
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+/**
+ * Axis-aligned bounding box. A new box is empty, and an infinite box contains everything.
+ */
+public class BoundingBox {
+
+    public final Vector3f min, max;
+
+    public BoundingBox() {
+        this.min = new Vector3f();
+        this.max = new Vector3f();
+        this.setEmpty();
+    }
+
+    public BoundingBox(Vector3f min, Vector3f max) {
+        this.min = new Vector3f(min);
+        this.max = new Vector3f(max);
+    }
+
+    public BoundingBox(BoundingBox box) {
+        this(box.min, box.max);
+    }
+
+    public BoundingBox set(BoundingBox box) {
+        this.min.set(box.min);
+        this.max.set(box.max);
+        return this;
+    }
+
+    /**
+     * Make the box contain nothing
+     */
+    public BoundingBox setEmpty() {
+        this.min.set(Float.POSITIVE_INFINITY);
+        this.max.set(Float.NEGATIVE_INFINITY);
+        return this;
+    }
+
+    /**
+     * Make the box contain everything
+     */
+    public BoundingBox setInfinite() {
+        this.min.set(Float.NEGATIVE_INFINITY);
+        this.max.set(Float.POSITIVE_INFINITY);
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return this.min.x > this.max.x || this.min.y > this.max.y || this.min.z > this.max.z;
+    }
+
+    public boolean isInfinite() {
+        return Float.isInfinite(this.min.x) || Float.isInfinite(this.min.y) || Float.isInfinite(this.min.z) ||
+                Float.isInfinite(this.max.x) || Float.isInfinite(this.max.y) || Float.isInfinite(this.max.z);
+    }
+
+    /**
+     * Grow the box so it contains the point
+     */
+    public BoundingBox add(float x, float y, float z) {
+        this.min.set(Math.min(this.min.x, x), Math.min(this.min.y, y), Math.min(this.min.z, z));
+        this.max.set(Math.max(this.max.x, x), Math.max(this.max.y, y), Math.max(this.max.z, z));
+        return this;
+    }
+
+    /**
+     * Grow the box so it contains another box
+     */
+    public BoundingBox add(BoundingBox box) {
+        this.min.min(box.min);
+        this.max.max(box.max);
+        return this;
+    }
+
+    /**
+     * Grow the box so it contains another box transformed by the matrix
+     *
+     * @param box    The box in local space
+     * @param matrix Matrix which transforms the box into the space of this box
+     */
+    public BoundingBox add(BoundingBox box, Matrix4f matrix) {
+        if (box.isEmpty())
+            return this;
+        if (box.isInfinite())
+            return this.setInfinite();
+
+        // Transform the center and project the extents on each axis, which gives the same result as transforming all 8 corners
+        Vector3f center = new Vector3f(box.min).add(box.max).mul(0.5f);
+        Vector3f extent = new Vector3f(box.max).sub(box.min).mul(0.5f);
+        matrix.transformPosition(center);
+
+        float x = Math.abs(matrix.m00()) * extent.x + Math.abs(matrix.m10()) * extent.y + Math.abs(matrix.m20()) * extent.z;
+        float y = Math.abs(matrix.m01()) * extent.x + Math.abs(matrix.m11()) * extent.y + Math.abs(matrix.m21()) * extent.z;
+        float z = Math.abs(matrix.m02()) * extent.x + Math.abs(matrix.m12()) * extent.y + Math.abs(matrix.m22()) * extent.z;
+
+        this.add(center.x - x, center.y - y, center.z - z);
+        return this.add(center.x + x, center.y + y, center.z + z);
+    }
+
+    /**
+     * Grow the box by the margin in every direction
+     */
+    public BoundingBox expand(float margin) {
+        this.min.sub(margin, margin, margin);
+        this.max.add(margin, margin, margin);
+        return this;
+    }
+
+    /**
+     * Tells if the box fully contains another box
+     */
+    public boolean contains(BoundingBox box) {
+        return this.min.x <= box.min.x && this.min.y <= box.min.y && this.min.z <= box.min.z &&
+                this.max.x >= box.max.x && this.max.y >= box.max.y && this.max.z >= box.max.z;
+    }
+
+    /**
+     * Tells if the point is inside the box
+     */
+    public boolean contains(Vector3f point) {
+        return this.min.x <= point.x && this.min.y <= point.y && this.min.z <= point.z &&
+                this.max.x >= point.x && this.max.y >= point.y && this.max.z >= point.z;
+    }
+
+    /**
+     * Get half of the surface area of the box, used to tell how good a bounding volume hierarchy is
+     */
+    public float getArea() {
+        float x = this.max.x - this.min.x, y = this.max.y - this.min.y, z = this.max.z - this.min.z;
+        return x * y + y * z + z * x;
+    }
+
+    /**
+     * Tells if the box is at least partially inside the frustum
+     */
+    public boolean isVisible(FrustumIntersection frustum) {
+        return frustum.testAab(this.min.x, this.min.y, this.min.z, this.max.x, this.max.y, this.max.z);
+    }
+
+    @Override
+    public String toString() {
+        return "BoundingBox(" + this.min + ", " + this.max + ")";
+    }
+}
@@ -0,0 +1,79 @@
+package dev.artingl.Engine.renderer;
+
+import dev.artingl.Engine.Engine;
+import dev.artingl.Engine.debug.Profiler;
+import dev.artingl.Engine.resources.Options;
+
+/**
+ * Changes resolution of the main framebuffer, so the frame time stays close to the target.
+ * The average frame time of the profiler is compared with the target, and the scale goes down
+ * only when frames are slower than the target by more than {@link #HYSTERESIS}, and goes up only when they are faster
+ * by the same amount. After each change the controller waits for a whole window of new frames before deciding again,
+ * so it does not oscillate. The result is upscaled to the display by the post-processing, the UI is not affected.
+ */
+public class DynamicResolution {
+
+    // Relative difference from the target frame time which is tolerated
+    private static final float HYSTERESIS = 0.1f;
+
+    // Scale is changed by multiples of this, so the framebuffer is not reallocated for tiny changes
+    private static final float STEP = 0.05f;
+
+    private float scale;
+    private int cooldown;
+
+    public DynamicResolution() {
+        this.scale = 1.0f;
+        this.cooldown = Profiler.FRAME_WINDOW;
+    }
+
+    /**
+     * Gets called every frame by the renderer, before the main framebuffer is updated
+     */
+    public void frame() {
+        Engine engine = Engine.getInstance();
+        Options options = engine.getOptions();
+        float minScale = options.getFloat(Options.Values.MIN_RESOLUTION_SCALE);
+        float maxScale = options.getFloat(Options.Values.MAX_RESOLUTION_SCALE);
+
+        if (!options.getBoolean(Options.Values.DYNAMIC_RESOLUTION)) {
+            this.scale = maxScale;
+            return;
+        }
+
+        // Wait for frames which were made with the current scale
+        if (this.cooldown > 0) {
+            this.cooldown--;
+            return;
+        }
+
+        float target = options.getFloat(Options.Values.TARGET_FRAME_TIME);
+        float frameTime = engine.getProfiler().getAverageFrameTime();
+        if (frameTime <= 0)
+            return;
+
+        float scale = this.scale;
+        if (frameTime > target * (1 + HYSTERESIS)) {
+            // The cost is proportional to the amount of pixels, so the size goes down by square root of the ratio
+            scale = (float) Math.floor(this.scale * Math.sqrt(target / frameTime) / STEP) * STEP;
+        }
+        else if (frameTime < target * (1 - HYSTERESIS)) {
+            // Go up slower than down, a too low resolution is better than missed frames
+            scale = this.scale + STEP;
+        }
+
+        scale = Math.max(minScale, Math.min(maxScale, scale));
+        if (Math.abs(scale - this.scale) < STEP / 2)
+            return;
+
+        this.scale = scale;
+        this.cooldown = Profiler.FRAME_WINDOW;
+    }
+
+    /**
+     * Get current scale of the main framebuffer resolution relative to the display
+     */
+    public float getScale() {
+        return scale;
+    }
+}
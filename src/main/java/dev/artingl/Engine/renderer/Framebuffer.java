@@ -1,6 +1,5 @@
 package dev.artingl.Engine.renderer;
 
-import dev.artingl.Engine.Display;
 import dev.artingl.Engine.Engine;
 import dev.artingl.Engine.EngineException;
 import dev.artingl.Engine.debug.LogLevel;
@@ -17,13 +16,14 @@ import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.opengl.GL11C.GL_FLOAT;
 import static org.lwjgl.opengl.GL11C.GL_NEAREST;
 import static org.lwjgl.opengl.GL11C.GL_NONE;
+import static org.lwjgl.opengl.GL11C.glDrawBuffer;
+import static org.lwjgl.opengl.GL11C.glReadBuffer;
 import static org.lwjgl.opengl.GL11C.GL_RGBA;
 import static org.lwjgl.opengl.GL11C.GL_TEXTURE_2D;
 import static org.lwjgl.opengl.GL11C.GL_TEXTURE_MAG_FILTER;
 import static org.lwjgl.opengl.GL11C.GL_TEXTURE_MIN_FILTER;
 import static org.lwjgl.opengl.GL11C.GL_TEXTURE_WRAP_S;
 import static org.lwjgl.opengl.GL11C.GL_TEXTURE_WRAP_T;
-import static org.lwjgl.opengl.GL11C.glBindTexture;
 import static org.lwjgl.opengl.GL11C.glGenTextures;
 import static org.lwjgl.opengl.GL11C.glTexImage2D;
 import static org.lwjgl.opengl.GL11C.glTexParameteri;
@@ -31,55 +31,80 @@ import static org.lwjgl.opengl.GL12C.GL_CLAMP_TO_EDGE;
 import static org.lwjgl.opengl.GL14C.GL_DEPTH_COMPONENT24;
 import static org.lwjgl.opengl.GL14C.GL_TEXTURE_COMPARE_MODE;
 import static org.lwjgl.opengl.GL20C.glDrawBuffers;
-import static org.lwjgl.opengl.GL30C.glDeleteTextures;
 import static org.lwjgl.opengl.GL30C.*;
 import static org.lwjgl.opengl.GL32C.glFramebufferTexture;
 
 public class Framebuffer {
 
-    private int depthTexture, frameTexture, fbo, depthBuffer;
+    private final int fixedWidth, fixedHeight, format;
+    private final boolean hasDepth;
+    private int depthTexture, frameTexture, fbo;
     private int currentWidth, currentHeight;
     private long sinceLastResize;
+    private float scale = 1.0f;
 
-    public Framebuffer() {}
+    /**
+     * Framebuffer with the size of the display, HDR color and depth texture
+     * */
+    public Framebuffer() {
+        this(0, 0, GL_RGBA16F, true);
+    }
+
+    /**
+     * @param width    Width of the framebuffer, or 0 to follow the display size
+     * @param height   Height of the framebuffer, or 0 to follow the display size
+     * @param format   Internal format of the color texture, e.g. GL_RGBA16F, or 0 for a depth-only framebuffer
+     * @param hasDepth Should the depth texture be attached
+     * */
+    public Framebuffer(int width, int height, int format, boolean hasDepth) {
+        this.fixedWidth = width;
+        this.fixedHeight = height;
+        this.format = format;
+        this.hasDepth = hasDepth;
+    }
 
     public void init() {
-        Display display = Engine.getInstance().getDisplay();
-        int width = display.getWidth();
-        int height = display.getHeight();
+        int width = this.getTargetWidth();
+        int height = this.getTargetHeight();
 
-        // Initialize framebuffer and depth buffer
+        // Initialize framebuffer and its textures
         this.fbo = glGenFramebuffers();
-        this.frameTexture = glGenTextures();
-        this.depthTexture = glGenTextures();
-        this.depthBuffer = glGenBuffers();
-
-        Engine.getInstance().getLogger().log(LogLevel.INFO, "Creating framebuffer: res=%dx%d, fbo=%d, fbTex=%d, depthTex=%d", width, height, fbo, frameTexture, depthTexture);
-
-        glBindFramebuffer(GL_FRAMEBUFFER, this.fbo);
-        glBindTexture(GL_TEXTURE_2D, this.frameTexture);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP);
-        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA16F, width, height, 0, GL_RGBA, GL_FLOAT, 0);
-
-        glBindTexture(GL_TEXTURE_2D, this.depthTexture);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
-        glTexParameteri (GL_TEXTURE_2D, GL_TEXTURE_COMPARE_MODE, GL_NONE);
-        glTexImage2D(GL_TEXTURE_2D, 0, GL_DEPTH_COMPONENT24, width, height, 0, GL_DEPTH_COMPONENT, GL_UNSIGNED_INT, 0);
-
-        glBindBuffer(GL_RENDERBUFFER, this.depthBuffer);
-        glRenderbufferStorage(GL_RENDERBUFFER, GL_DEPTH_COMPONENT, width, height);
-        glFramebufferRenderbuffer(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_RENDERBUFFER, this.depthBuffer);
+        this.frameTexture = this.format != 0 ? glGenTextures() : 0;
+        this.depthTexture = this.hasDepth ? glGenTextures() : 0;
+
+        Engine.getInstance().getLogger().log(LogLevel.INFO, "Creating framebuffer: res=%dx%d, format=0x%x, fbo=%d, fbTex=%d, depthTex=%d", width, height, format, fbo, frameTexture, depthTexture);
+
+        GLState state = Engine.getInstance().getRenderer().getState();
+        state.bindFramebuffer(this.fbo);
+        if (this.format != 0) {
+            state.bindTexture(this.frameTexture);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP);
+            glTexImage2D(GL_TEXTURE_2D, 0, this.format, width, height, 0, GL_RGBA, GL_FLOAT, 0);
+            glFramebufferTexture(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, this.frameTexture, 0);
+        }
 
-        glFramebufferTexture(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, this.frameTexture, 0);
-        glFramebufferTexture(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, this.depthTexture, 0);
+        if (this.hasDepth) {
+            state.bindTexture(this.depthTexture);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+            glTexParameteri (GL_TEXTURE_2D, GL_TEXTURE_COMPARE_MODE, GL_NONE);
+            glTexImage2D(GL_TEXTURE_2D, 0, GL_DEPTH_COMPONENT24, width, height, 0, GL_DEPTH_COMPONENT, GL_UNSIGNED_INT, 0);
+            glFramebufferTexture(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, this.depthTexture, 0);
+        }
 
-        glDrawBuffers(new int[]{ GL_COLOR_ATTACHMENT0 });
+        if (this.format != 0) {
+            glDrawBuffers(new int[]{ GL_COLOR_ATTACHMENT0 });
+        }
+        else {
+            // Nothing but depth is written, e.g. by shadow maps
+            glDrawBuffer(GL_NONE);
+            glReadBuffer(GL_NONE);
+        }
 
         // Check buffer
         int status;
@@ -94,10 +119,10 @@ public class Framebuffer {
     }
 
     public void cleanup() {
-        glDeleteBuffers(this.depthBuffer);
-        glDeleteTextures(this.frameTexture);
-        glDeleteTextures(this.depthTexture);
-        glDeleteFramebuffers(this.fbo);
+        GLState state = Engine.getInstance().getRenderer().getState();
+        state.deleteTexture(this.frameTexture);
+        state.deleteTexture(this.depthTexture);
+        state.deleteFramebuffer(this.fbo);
     }
 
     public int getBufferId() {
@@ -112,19 +137,62 @@ public class Framebuffer {
         return frameTexture;
     }
 
+    public int getWidth() {
+        return currentWidth;
+    }
+
+    public int getHeight() {
+        return currentHeight;
+    }
+
+    /**
+     * Get internal format of the color texture
+     * */
+    public int getFormat() {
+        return format;
+    }
+
+    public boolean hasDepth() {
+        return hasDepth;
+    }
+
+    /**
+     * Set size of the framebuffer relative to the display, it is resized on the next {@link #updateBuffer()}.
+     * Has no effect on framebuffers of fixed size.
+     * */
+    public void setScale(float scale) {
+        this.scale = scale;
+    }
+
+    public float getScale() {
+        return scale;
+    }
+
+    private int getTargetWidth() {
+        if (this.fixedWidth > 0)
+            return this.fixedWidth;
+        return Math.max(1, Math.round(Engine.getInstance().getDisplay().getWidth() * this.scale));
+    }
+
+    private int getTargetHeight() {
+        if (this.fixedHeight > 0)
+            return this.fixedHeight;
+        return Math.max(1, Math.round(Engine.getInstance().getDisplay().getHeight() * this.scale));
+    }
+
     public boolean updateBuffer() {
-        Display display = Engine.getInstance().getDisplay();
-        int width = display.getWidth();
-        int height = display.getHeight();
+        // Framebuffers of fixed size are never resized
+        if (this.fixedWidth > 0 && this.fixedHeight > 0)
+            return false;
+
+        int width = this.getTargetWidth();
+        int height = this.getTargetHeight();
 
-        // Reinitialize the buffer again if the screen has resized.
+        // Reinitialize the buffer again if the screen has resized or the scale has changed.
         // Also don't do it too often and check if at least 100 ms has passed
         if (this.currentWidth != width || this.currentHeight != height && this.sinceLastResize + 100 < System.currentTimeMillis()) {
             this.cleanup();
             this.init();
-            this.currentWidth = width;
-            this.currentHeight = height;
-            this.sinceLastResize = System.currentTimeMillis();
             return true;
         }
 
@@ -136,7 +204,8 @@ public class Framebuffer {
         renderer.bindFramebuffer(this);
         Vector4f c = color.asVector4f();
         glClearColor(c.x, c.y, c.z, c.w);
-        glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+        int mask = (this.format != 0 ? GL_COLOR_BUFFER_BIT : 0) | (this.hasDepth ? GL_DEPTH_BUFFER_BIT : 0);
+        glClear(mask);
         renderer.bindFramebuffer(currentBuffer);
     }
 }
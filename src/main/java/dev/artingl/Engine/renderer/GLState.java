@@ -0,0 +1,414 @@
+package dev.artingl.Engine.renderer;
+
+import dev.artingl.Engine.Engine;
+import dev.artingl.Engine.debug.Profiler;
+
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL11C.*;
+import static org.lwjgl.opengl.GL13C.GL_MULTISAMPLE;
+import static org.lwjgl.opengl.GL13C.GL_TEXTURE0;
+import static org.lwjgl.opengl.GL13C.glActiveTexture;
+import static org.lwjgl.opengl.GL15C.*;
+import static org.lwjgl.opengl.GL20C.glUseProgram;
+import static org.lwjgl.opengl.GL30C.*;
+import static org.lwjgl.opengl.GL31C.GL_COPY_READ_BUFFER;
+import static org.lwjgl.opengl.GL31C.GL_COPY_WRITE_BUFFER;
+import static org.lwjgl.opengl.GL31C.GL_TEXTURE_BUFFER;
+import static org.lwjgl.opengl.GL31C.GL_UNIFORM_BUFFER;
+
+/**
+ * Shadow copy of the GL state which is changed by the engine.
+ * All state changes go through it, so calls which would not change anything are skipped.
+ * Value of -1 means that the state is unknown and the next change must be sent to GL.
+ * Buffer targets and capabilities are kept in arrays indexed by their slots, the ones without a slot aren't tracked at all.
+ * Amount of sent and skipped changes is counted here and added to {@link Profiler.Task#STATE_CHANGES}
+ * and {@link Profiler.Task#STATE_CHANGES_SKIPPED} once per frame by {@link #publishCounters(Profiler)}.
+ */
+public class GLState {
+
+    // Amount of texture units which bindings are tracked
+    public static final int TEXTURE_UNITS = 16;
+
+    // Amount of buffer targets and capabilities which have a slot, see bufferSlot() and capabilitySlot()
+    private static final int BUFFER_SLOTS = 8;
+    private static final int CAPABILITY_SLOTS = 10;
+
+    private final int[] textures;
+    private final int[] buffers;
+    private final int[] capabilities;
+    private final int[] viewport;
+    private int program;
+    private int activeTextureUnit;
+    private int vertexArray;
+    private int framebuffer;
+    private int polygonMode;
+    private int blendSrc, blendDst;
+    private int depthFunc;
+    private int depthMask;
+    private int cullFace;
+
+    // Changes counted since the last publishCounters() call. The state is used only by the render thread
+    private int changes, skippedChanges;
+
+    public GLState() {
+        this.textures = new int[TEXTURE_UNITS];
+        this.buffers = new int[BUFFER_SLOTS];
+        this.capabilities = new int[CAPABILITY_SLOTS];
+        this.viewport = new int[4];
+        this.invalidate();
+    }
+
+    /**
+     * Forget all tracked state, must be called after something changed the state directly through GL
+     */
+    public void invalidate() {
+        this.invalidateTextures();
+        Arrays.fill(this.buffers, -1);
+        Arrays.fill(this.capabilities, -1);
+        Arrays.fill(this.viewport, -1);
+        this.program = -1;
+        this.vertexArray = -1;
+        this.framebuffer = -1;
+        this.polygonMode = -1;
+        this.blendSrc = -1;
+        this.blendDst = -1;
+        this.depthFunc = -1;
+        this.depthMask = -1;
+        this.cullFace = -1;
+    }
+
+    /**
+     * Forget the texture bindings, must be called after binding textures directly through GL
+     */
+    public void invalidateTextures() {
+        Arrays.fill(this.textures, -1);
+        this.activeTextureUnit = -1;
+    }
+
+    public void useProgram(int program) {
+        if (this.program == program) {
+            this.count(true);
+            return;
+        }
+
+        glUseProgram(program);
+        this.program = program;
+        this.count(false);
+    }
+
+    /**
+     * Bind the 2D texture to the texture unit
+     *
+     * @param unit    Texture unit index
+     * @param texture The texture
+     */
+    public void bindTexture(int unit, int texture) {
+        if (unit < TEXTURE_UNITS && this.textures[unit] == texture) {
+            this.count(true);
+            return;
+        }
+
+        this.activeTexture(unit);
+        glBindTexture(GL_TEXTURE_2D, texture);
+        if (unit < TEXTURE_UNITS)
+            this.textures[unit] = texture;
+        this.count(false);
+    }
+
+    /**
+     * Bind the 2D texture to the active texture unit, so it can be modified
+     */
+    public void bindTexture(int texture) {
+        this.bindTexture(Math.max(this.activeTextureUnit, 0), texture);
+    }
+
+    private void activeTexture(int unit) {
+        if (unit == this.activeTextureUnit)
+            return;
+
+        glActiveTexture(GL_TEXTURE0 + unit);
+        this.activeTextureUnit = unit;
+    }
+
+    /**
+     * Bind the vertex array. The element buffer binding is a part of the vertex array state,
+     * so it becomes unknown after the vertex array is changed.
+     */
+    public void bindVertexArray(int array) {
+        if (this.vertexArray == array) {
+            this.count(true);
+            return;
+        }
+
+        glBindVertexArray(array);
+        this.vertexArray = array;
+        this.buffers[bufferSlot(GL_ELEMENT_ARRAY_BUFFER)] = -1;
+        this.count(false);
+    }
+
+    /**
+     * Bind the buffer to the target
+     *
+     * @param target Buffer target, e.g. GL_ARRAY_BUFFER
+     * @param buffer The buffer
+     */
+    public void bindBuffer(int target, int buffer) {
+        int slot = bufferSlot(target);
+        if (slot != -1 && this.buffers[slot] == buffer) {
+            this.count(true);
+            return;
+        }
+
+        glBindBuffer(target, buffer);
+        if (slot != -1)
+            this.buffers[slot] = buffer;
+        this.count(false);
+    }
+
+    /**
+     * Bind the buffer to the indexed binding point, the generic binding of the target is changed as well
+     */
+    public void bindBufferBase(int target, int index, int buffer) {
+        glBindBufferBase(target, index, buffer);
+        int slot = bufferSlot(target);
+        if (slot != -1)
+            this.buffers[slot] = buffer;
+        this.count(false);
+    }
+
+    public void bindFramebuffer(int framebuffer) {
+        if (this.framebuffer == framebuffer) {
+            this.count(true);
+            return;
+        }
+
+        glBindFramebuffer(GL_FRAMEBUFFER, framebuffer);
+        this.framebuffer = framebuffer;
+        this.count(false);
+        Engine.getInstance().getProfiler().incCounter(Profiler.Task.FRAMEBUFFER_BINDS);
+    }
+
+    public void viewport(int x, int y, int width, int height) {
+        if (this.viewport[0] == x && this.viewport[1] == y && this.viewport[2] == width && this.viewport[3] == height) {
+            this.count(true);
+            return;
+        }
+
+        glViewport(x, y, width, height);
+        this.viewport[0] = x;
+        this.viewport[1] = y;
+        this.viewport[2] = width;
+        this.viewport[3] = height;
+        this.count(false);
+    }
+
+    /**
+     * Set polygon mode for both front and back faces
+     *
+     * @param mode GL_FILL or GL_LINE
+     */
+    public void polygonMode(int mode) {
+        if (this.polygonMode == mode) {
+            this.count(true);
+            return;
+        }
+
+        glPolygonMode(GL_FRONT_AND_BACK, mode);
+        this.polygonMode = mode;
+        this.count(false);
+    }
+
+    /**
+     * Enable or disable the capability, e.g. GL_BLEND or GL_DEPTH_TEST
+     */
+    public void setEnabled(int capability, boolean state) {
+        int slot = capabilitySlot(capability);
+        int value = state ? 1 : 0;
+        if (slot != -1 && this.capabilities[slot] == value) {
+            this.count(true);
+            return;
+        }
+
+        if (state)
+            glEnable(capability);
+        else
+            glDisable(capability);
+        if (slot != -1)
+            this.capabilities[slot] = value;
+        this.count(false);
+    }
+
+    public void blendFunc(int src, int dst) {
+        if (this.blendSrc == src && this.blendDst == dst) {
+            this.count(true);
+            return;
+        }
+
+        glBlendFunc(src, dst);
+        this.blendSrc = src;
+        this.blendDst = dst;
+        this.count(false);
+    }
+
+    public void depthFunc(int func) {
+        if (this.depthFunc == func) {
+            this.count(true);
+            return;
+        }
+
+        glDepthFunc(func);
+        this.depthFunc = func;
+        this.count(false);
+    }
+
+    public void depthMask(boolean flag) {
+        int value = flag ? 1 : 0;
+        if (this.depthMask == value) {
+            this.count(true);
+            return;
+        }
+
+        glDepthMask(flag);
+        this.depthMask = value;
+        this.count(false);
+    }
+
+    public void cullFace(int mode) {
+        if (this.cullFace == mode) {
+            this.count(true);
+            return;
+        }
+
+        glCullFace(mode);
+        this.cullFace = mode;
+        this.count(false);
+    }
+
+    /**
+     * Delete the buffer and forget the bindings of it
+     */
+    public void deleteBuffer(int buffer) {
+        if (buffer <= 0)
+            return;
+
+        glDeleteBuffers(buffer);
+        for (int i = 0; i < BUFFER_SLOTS; i++) {
+            if (this.buffers[i] == buffer)
+                this.buffers[i] = 0;
+        }
+    }
+
+    /**
+     * Delete the vertex array and forget the binding of it
+     */
+    public void deleteVertexArray(int array) {
+        if (array <= 0)
+            return;
+
+        glDeleteVertexArrays(array);
+        if (this.vertexArray == array) {
+            this.vertexArray = 0;
+            this.buffers[bufferSlot(GL_ELEMENT_ARRAY_BUFFER)] = -1;
+        }
+    }
+
+    /**
+     * Delete the texture and forget the bindings of it
+     */
+    public void deleteTexture(int texture) {
+        if (texture <= 0)
+            return;
+
+        glDeleteTextures(texture);
+        for (int i = 0; i < TEXTURE_UNITS; i++) {
+            if (this.textures[i] == texture)
+                this.textures[i] = 0;
+        }
+    }
+
+    /**
+     * Delete the framebuffer and forget the binding of it
+     */
+    public void deleteFramebuffer(int framebuffer) {
+        if (framebuffer <= 0)
+            return;
+
+        glDeleteFramebuffers(framebuffer);
+        if (this.framebuffer == framebuffer)
+            this.framebuffer = 0;
+    }
+
+    /**
+     * Forget the program if it is in use, must be called before the program is deleted
+     */
+    public void forgetProgram(int program) {
+        if (this.program == program)
+            this.program = -1;
+    }
+
+    public int getProgram() {
+        return this.program;
+    }
+
+    public int getVertexArray() {
+        return this.vertexArray;
+    }
+
+    public int getFramebuffer() {
+        return this.framebuffer;
+    }
+
+    /**
+     * Get index of the buffer target in the tracked bindings, or -1 if the target isn't tracked
+     */
+    private static int bufferSlot(int target) {
+        return switch (target) {
+            case GL_ARRAY_BUFFER -> 0;
+            case GL_ELEMENT_ARRAY_BUFFER -> 1;
+            case GL_UNIFORM_BUFFER -> 2;
+            case GL_COPY_READ_BUFFER -> 3;
+            case GL_COPY_WRITE_BUFFER -> 4;
+            case GL_PIXEL_PACK_BUFFER -> 5;
+            case GL_PIXEL_UNPACK_BUFFER -> 6;
+            case GL_TEXTURE_BUFFER -> 7;
+            default -> -1;
+        };
+    }
+
+    /**
+     * Get index of the capability in the tracked states, or -1 if the capability isn't tracked
+     */
+    private static int capabilitySlot(int capability) {
+        return switch (capability) {
+            case GL_BLEND -> 0;
+            case GL_DEPTH_TEST -> 1;
+            case GL_CULL_FACE -> 2;
+            case GL_SCISSOR_TEST -> 3;
+            case GL_STENCIL_TEST -> 4;
+            case GL_POLYGON_OFFSET_FILL -> 5;
+            case GL_LINE_SMOOTH -> 6;
+            case GL_MULTISAMPLE -> 7;
+            case GL_FRAMEBUFFER_SRGB -> 8;
+            case GL_TEXTURE_2D -> 9;
+            default -> -1;
+        };
+    }
+
+    /**
+     * Add the changes counted since the last call to the profiler's counters
+     */
+    public void publishCounters(Profiler profiler) {
+        profiler.addCounter(Profiler.Task.STATE_CHANGES, this.changes);
+        profiler.addCounter(Profiler.Task.STATE_CHANGES_SKIPPED, this.skippedChanges);
+        this.changes = 0;
+        this.skippedChanges = 0;
+    }
+
+    private void count(boolean skipped) {
+        if (skipped)
+            this.skippedChanges++;
+        else
+            this.changes++;
+    }
+}
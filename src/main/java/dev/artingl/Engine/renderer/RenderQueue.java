@@ -0,0 +1,199 @@
+package dev.artingl.Engine.renderer;
+
+import dev.artingl.Engine.renderer.shader.ShaderProgram;
+import dev.artingl.Engine.world.scene.BaseScene;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Queue of draw packets which are sorted before being drawn.
+ * Each packet has a 64-bit key, so sorting the keys groups draws by layer, transparency and state.
+ * Opaque draws are grouped by program, texture and VAO and then go front to back for early depth testing.
+ * Transparent draws go back to front and are grouped by state only when they are at the same depth.
+ * <pre>
+ * opaque:      | layer:2 | 0 | unused:1 | program:12 | texture:12 | vao:12 | depth:24 |
+ * transparent: | layer:2 | 1 | unused:1 | inverted depth:24 | program:12 | texture:12 | vao:12 |
+ * </pre>
+ * Worker threads record their draws into their own {@link CommandList}, which is merged into the queue on the render thread.
+ */
+public class RenderQueue {
+
+    private static final int LAYER_SHIFT = 62;
+    private static final int TRANSPARENT_SHIFT = 61;
+    private static final int DEPTH_BITS = 24;
+    private static final int STATE_BITS = 12;
+    private static final long DEPTH_MASK = (1L << DEPTH_BITS) - 1;
+    private static final long STATE_MASK = (1L << STATE_BITS) - 1;
+
+    private static final Comparator<Packet> ORDER = (a, b) -> Long.compareUnsigned(a.key, b.key);
+
+    private final ThreadLocal<CommandList> recording;
+    private Packet[] packets;
+    private int count;
+    private long generation;
+
+    public RenderQueue() {
+        this.recording = new ThreadLocal<>();
+        this.packets = new Packet[0];
+        this.count = 0;
+    }
+
+    /**
+     * Make a sort key for the draw.
+     *
+     * @param layer       Layer the draw belongs to
+     * @param transparent Is the draw blended with what's behind it
+     * @param program     Shader program used by the draw
+     * @param texture     Main texture used by the draw
+     * @param vao         Vertex array used by the draw
+     * @param depth       Distance from the camera in the range from 0 to 1
+     */
+    public static long makeKey(BaseScene.Layer layer, boolean transparent, ShaderProgram program, int texture, int vao, float depth) {
+        long quantizedDepth = (long) (Math.max(0, Math.min(1, depth)) * DEPTH_MASK);
+        long programId = program == null ? 0 : program.getProgramId() & STATE_MASK;
+        long textureId = texture & STATE_MASK;
+        long vaoId = vao & STATE_MASK;
+        long key = (long) layer.ordinal() << LAYER_SHIFT;
+
+        if (transparent) {
+            key |= 1L << TRANSPARENT_SHIFT;
+            key |= (DEPTH_MASK - quantizedDepth) << (3 * STATE_BITS);
+            key |= programId << (2 * STATE_BITS) | textureId << STATE_BITS | vaoId;
+        }
+        else {
+            key |= programId << (2 * STATE_BITS + DEPTH_BITS) | textureId << (STATE_BITS + DEPTH_BITS) | vaoId << DEPTH_BITS;
+            key |= quantizedDepth;
+        }
+
+        return key;
+    }
+
+    /**
+     * Add a draw to the queue. If the calling thread is recording, the draw goes into its command list instead.
+     *
+     * @param key  Sort key of the draw, see {@link #makeKey}
+     * @param draw Does the actual drawing, called by {@link #execute()}
+     */
+    public void submit(long key, Runnable draw) {
+        CommandList list = this.recording.get();
+        if (list != null) {
+            list.submit(key, draw);
+            return;
+        }
+
+        this.add(key, draw);
+    }
+
+    /**
+     * Make all draws submitted by the calling thread go into the command list until {@link #endRecording()} is called
+     *
+     * @param list Command list of the thread
+     */
+    public void beginRecording(CommandList list) {
+        this.recording.set(list);
+    }
+
+    /**
+     * Stop recording draws of the calling thread
+     */
+    public void endRecording() {
+        this.recording.remove();
+    }
+
+    /**
+     * Move all draws from the command list to the queue. Must be called on the render thread.
+     *
+     * @param list The command list, empty after the call
+     */
+    public void merge(CommandList list) {
+        for (int i = 0; i < list.count; i++) {
+            this.add(list.keys[i], list.draws[i]);
+            list.draws[i] = null;
+        }
+        list.count = 0;
+    }
+
+    private void add(long key, Runnable draw) {
+        if (this.count == this.packets.length) {
+            this.packets = Arrays.copyOf(this.packets, Math.max(64, this.count * 2));
+            for (int i = this.count; i < this.packets.length; i++)
+                this.packets[i] = new Packet();
+        }
+
+        Packet packet = this.packets[this.count++];
+        packet.key = key;
+        packet.draw = draw;
+    }
+
+    /**
+     * Sort all submitted draws, draw them and clear the queue
+     */
+    public void execute() {
+        // The sort is stable, so draws with equal keys keep the order they were submitted in
+        Arrays.sort(this.packets, 0, this.count, ORDER);
+
+        for (int i = 0; i < this.count; i++) {
+            Packet packet = this.packets[i];
+            packet.draw.run();
+            packet.draw = null;
+        }
+
+        this.count = 0;
+        this.generation++;
+    }
+
+    /**
+     * Drop all submitted draws
+     */
+    public void clear() {
+        for (int i = 0; i < this.count; i++)
+            this.packets[i].draw = null;
+        this.count = 0;
+        this.generation++;
+    }
+
+    /**
+     * Get amount of times the queue was executed or cleared.
+     * Batches which gather draws into one packet use it to know that their packet is gone.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Get amount of submitted draws
+     */
+    public int size() {
+        return this.count;
+    }
+
+    private static class Packet {
+        private long key;
+        private Runnable draw;
+    }
+
+    /**
+     * Draws recorded by one thread, see {@link #beginRecording(CommandList)}
+     */
+    public static class CommandList {
+        private long[] keys = new long[0];
+        private Runnable[] draws = new Runnable[0];
+        private int count;
+
+        public void submit(long key, Runnable draw) {
+            if (this.count == this.keys.length) {
+                int capacity = Math.max(64, this.count * 2);
+                this.keys = Arrays.copyOf(this.keys, capacity);
+                this.draws = Arrays.copyOf(this.draws, capacity);
+            }
+
+            this.keys[this.count] = key;
+            this.draws[this.count++] = draw;
+        }
+
+        public int size() {
+            return this.count;
+        }
+    }
+}
@@ -7,24 +7,32 @@ import dev.artingl.Engine.debug.LogLevel;
 import dev.artingl.Engine.debug.Logger;
 import dev.artingl.Engine.debug.Profiler;
 import dev.artingl.Engine.misc.Color;
+import dev.artingl.Engine.renderer.mesh.GpuHeap;
 import dev.artingl.Engine.renderer.mesh.MeshManager;
+import dev.artingl.Engine.renderer.mesh.MultiDrawCommands;
+import dev.artingl.Engine.renderer.occlusion.OcclusionCuller;
 import dev.artingl.Engine.renderer.visual.FontManager;
 import dev.artingl.Engine.renderer.visual.postprocessing.PostprocessManager;
+import dev.artingl.Engine.renderer.shader.ProgramBinaryCache;
+import dev.artingl.Engine.renderer.shader.ShaderCompiler;
 import dev.artingl.Engine.renderer.shader.ShaderProgram;
 import dev.artingl.Engine.renderer.viewport.ViewportManager;
 import dev.artingl.Engine.renderer.visual.shadow.ShadowsManager;
 import dev.artingl.Engine.world.scene.BaseScene;
 import org.jetbrains.annotations.Nullable;
-import org.lwjgl.opengl.GL20C;
 
-import static org.lwjgl.opengl.GL11.glViewport;
 import static org.lwjgl.opengl.GL11C.*;
-import static org.lwjgl.opengl.GL30C.*;
+import static org.lwjgl.opengl.GL14C.glMultiDrawArrays;
 import static org.lwjgl.opengl.GL31C.glDrawArraysInstanced;
 import static org.lwjgl.opengl.GL31C.glDrawElementsInstanced;
+import static org.lwjgl.opengl.GL32C.glDrawElementsBaseVertex;
+import static org.lwjgl.opengl.GL32C.glMultiDrawElementsBaseVertex;
 
 public class Renderer {
 
+    // Amount of bytes of dynamic geometry that can be streamed during one frame
+    public static final int STREAMING_BUFFER_SIZE = 4 * 1024 * 1024;
+
     private final Logger logger;
     private final Engine engine;
 
@@ -33,9 +41,15 @@ public class Renderer {
     private final ShadowsManager shadowsManager;
     private final MeshManager meshManager;
     private final FontManager fontManager;
+    private final StreamingBuffer streamingBuffer;
+    private final GpuHeap gpuHeap;
+    private final RenderQueue renderQueue;
+    private final GLState state;
+    private final ProgramBinaryCache programCache;
+    private final ShaderCompiler shaderCompiler;
+    private final DynamicResolution dynamicResolution;
+    private final OcclusionCuller occlusionCuller;
     private ShaderProgram programInUse;
-    private int vaoInUse;
-    private int eboInUse;
     private Framebuffer currentFramebuffer;
     private boolean isWireframeEnabled;
     private final Framebuffer mainFramebuffer, uiFramebuffer;
@@ -48,6 +62,14 @@ public class Renderer {
         this.postprocessManager = new PostprocessManager(this.logger);
         this.meshManager = new MeshManager(this.logger, this);
         this.fontManager = new FontManager(this.logger, this);
+        this.streamingBuffer = new StreamingBuffer(STREAMING_BUFFER_SIZE);
+        this.gpuHeap = new GpuHeap();
+        this.renderQueue = new RenderQueue();
+        this.state = new GLState();
+        this.programCache = new ProgramBinaryCache();
+        this.shaderCompiler = new ShaderCompiler();
+        this.dynamicResolution = new DynamicResolution();
+        this.occlusionCuller = new OcclusionCuller(this.logger);
         this.isWireframeEnabled = false;
         this.uiFramebuffer = new Framebuffer();
         this.mainFramebuffer = new Framebuffer();
@@ -56,6 +78,9 @@ public class Renderer {
     }
 
     public void create() throws EngineException {
+        this.shaderCompiler.init();
+        this.streamingBuffer.init();
+        this.viewport.init();
         this.fontManager.init();
         this.uiFramebuffer.init();
         this.mainFramebuffer.init();
@@ -71,6 +96,9 @@ public class Renderer {
         this.shadowsManager.cleanup();
         this.postprocessManager.cleanup();
         this.meshManager.cleanup();
+        this.gpuHeap.cleanup();
+        this.streamingBuffer.cleanup();
+        this.viewport.cleanup();
     }
 
     /**
@@ -78,33 +106,44 @@ public class Renderer {
      */
     public void frame() throws EngineException {
         BaseScene scene = engine.getSceneManager().getCurrentScene();
-        if (scene == null || this.mainFramebuffer.updateBuffer() || this.uiFramebuffer.updateBuffer())
+        if (scene == null || this.uiFramebuffer.updateBuffer())
             return;
 
+        // The main framebuffer is resized by the dynamic resolution as well, which must not drop the frame.
+        // Its result is upscaled to the display by the post-processing, the UI is rendered in native resolution.
+        this.dynamicResolution.frame();
+        this.mainFramebuffer.setScale(this.dynamicResolution.getScale());
+        this.mainFramebuffer.updateBuffer();
+
+        // Something else (e.g. the debugger UI) could have changed the state since the last frame
         this.programInUse = null;
         this.currentFramebuffer = null;
-        this.vaoInUse = -1;
-        this.eboInUse = -1;
+        this.state.invalidate();
+        this.renderQueue.clear();
 
+        this.shaderCompiler.frame();
+        this.streamingBuffer.beginFrame();
+        this.meshManager.commitBakes();
         this.fontManager.frame();
 
-        if (isWireframeEnabled)
-            glPolygonMode(GL_FRONT_AND_BACK, GL_LINE);
-        else
-            glPolygonMode(GL_FRONT_AND_BACK, GL_FILL);
+        this.state.polygonMode(isWireframeEnabled ? GL_LINE : GL_FILL);
         this.uiFramebuffer.clear(this, Color.TRANSPARENT);
         this.mainFramebuffer.clear(this, viewport.getBackgroundColor());
         bindFramebuffer(mainFramebuffer);
         scene.prepareFrame(this);
+        this.shadowsManager.render(this);
         bindFramebuffer(mainFramebuffer);
         scene.render(this, BaseScene.Layer.MAIN, scene.getMainCamera());
         this.postprocessManager.render(this);
+        this.shadowsManager.disable();
         bindFramebuffer(null);
         scene.render(this, BaseScene.Layer.UI, scene.getUiCamera());
-        glPolygonMode(GL_FRONT_AND_BACK, GL_FILL);
+        this.state.polygonMode(GL_FILL);
         bindFramebuffer(null);
         this.viewport.setViewport(scene.getMainCamera());
         this.viewport.update();
+        this.streamingBuffer.endFrame();
+        this.state.publishCounters(this.engine.getProfiler());
     }
 
     public ViewportManager getViewport() {
@@ -112,38 +151,98 @@ public class Renderer {
     }
 
     public void useShader(ShaderProgram program) {
-        if (program == null) {
-            GL20C.glUseProgram(0);
-            this.programInUse = null;
-            return;
-        }
+        this.state.useProgram(program == null ? 0 : program.getProgramId());
+        this.programInUse = program;
+    }
 
-        if (!program.equals(this.programInUse)) {
-            GL20C.glUseProgram(program.getProgramId());
-            this.programInUse = program;
-        }
+    /**
+     * Bind the texture to the texture unit, skipping the call if it is already bound there
+     *
+     * @param unit    Texture unit index
+     * @param texture The texture
+     */
+    public void bindTexture(int unit, int texture) {
+        this.state.bindTexture(unit, texture);
+    }
+
+    /**
+     * Forget the texture bindings, must be called after binding textures directly through GL
+     */
+    public void invalidateTextures() {
+        this.state.invalidateTextures();
+    }
+
+    /**
+     * Bind the vertex array, skipping the call if it is already bound
+     *
+     * @param array The vertex array
+     */
+    public void bindVertexArray(int array) {
+        this.state.bindVertexArray(array);
+    }
+
+    /**
+     * Get tracker of shader programs which are being compiled
+     */
+    public ShaderCompiler getShaderCompiler() {
+        return shaderCompiler;
+    }
+
+    /**
+     * Get the on-disk cache of linked shader programs
+     */
+    public ProgramBinaryCache getProgramCache() {
+        return programCache;
+    }
+
+    /**
+     * Get the GL state cache, all state changes made by the engine must go through it
+     */
+    public GLState getState() {
+        return state;
     }
 
     public FontManager getFontManager() {
         return fontManager;
     }
 
+    /**
+     * Get buffer for the geometry which changes every frame
+     */
+    public StreamingBuffer getStreamingBuffer() {
+        return streamingBuffer;
+    }
+
+    /**
+     * Get queue of the draws which are sorted before being drawn
+     */
+    public RenderQueue getRenderQueue() {
+        return renderQueue;
+    }
+
+    /**
+     * Get shared storage for static meshes
+     */
+    public GpuHeap getGpuHeap() {
+        return gpuHeap;
+    }
+
     @Nullable
     public ShaderProgram getCurrentProgram() {
         return programInUse;
     }
 
     public void bindFramebuffer(Framebuffer fb) {
-        if (fb == null) {
-            glBindFramebuffer(GL_FRAMEBUFFER, 0);
-            return;
-        }
-
         Display display = Engine.getInstance().getDisplay();
         this.currentFramebuffer = fb;
-        glBindFramebuffer(GL_FRAMEBUFFER, fb.getBufferId());
-        glViewport(0, 0, display.getWidth(), display.getHeight());
-        Engine.getInstance().getProfiler().incCounter(Profiler.Task.FRAMEBUFFER_BINDS);
+        if (fb == null) {
+            this.state.bindFramebuffer(0);
+            this.state.viewport(0, 0, display.getWidth(), display.getHeight());
+        }
+        else {
+            this.state.bindFramebuffer(fb.getBufferId());
+            this.state.viewport(0, 0, fb.getWidth(), fb.getHeight());
+        }
     }
 
     public Framebuffer getCurrentFramebuffer() {
@@ -158,28 +257,38 @@ public class Renderer {
         return uiFramebuffer;
     }
 
+    public DynamicResolution getDynamicResolution() {
+        return dynamicResolution;
+    }
+
     public void drawCall(DrawCall type, int array, int mode, int count) {
+        drawCall(type, array, mode, count, 0, 0);
+    }
+
+    /**
+     * Draw a range of the vertex array
+     *
+     * @param first      First vertex (for ARRAYS) or index (for ELEMENTS) to draw
+     * @param baseVertex Value added to each index, used only for ELEMENTS
+     */
+    public void drawCall(DrawCall type, int array, int mode, int count, int first, int baseVertex) {
         long start = System.nanoTime();
         if (array <= 0 || mode <= 0 || count <= 0)
             return;
 
         switch (type) {
             case ARRAYS -> {
-                if (array != this.vaoInUse) {
-                    glBindVertexArray(array);
-                    this.vaoInUse = array;
-                    this.eboInUse = -1;
-                }
-                glDrawArrays(mode, 0, count);
+                this.bindVertexArray(array);
+                glDrawArrays(mode, first, count);
             }
 
             case ELEMENTS -> {
-                if (array != this.vaoInUse) {
-                    glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, array);
-                    this.vaoInUse = array;
-                    this.eboInUse = -1;
-                }
-                glDrawElements(mode, count, GL_UNSIGNED_INT, 0);
+                // The element buffer is a part of the VAO state, so binding the VAO is enough
+                this.bindVertexArray(array);
+                if (baseVertex != 0)
+                    glDrawElementsBaseVertex(mode, count, GL_UNSIGNED_INT, (long) first * Integer.BYTES, baseVertex);
+                else
+                    glDrawElements(mode, count, GL_UNSIGNED_INT, (long) first * Integer.BYTES);
             }
         }
 
@@ -188,6 +297,29 @@ public class Renderer {
         Engine.getInstance().getProfiler().addGpuTime((System.nanoTime() - start) / 1000000f);
     }
 
+    /**
+     * Draw all commands of the list with one call
+     *
+     * @param commands Draws which share one VAO
+     * @param mode     Primitive mode, e.g. GL_TRIANGLES
+     */
+    public void multiDrawCall(MultiDrawCommands commands, int mode) {
+        long start = System.nanoTime();
+        if (commands.size() == 0 || commands.getVao() <= 0 || mode <= 0)
+            return;
+
+        // The element buffer is a part of the VAO state, so binding the VAO is enough
+        this.bindVertexArray(commands.getVao());
+        if (commands.isIndexed())
+            glMultiDrawElementsBaseVertex(mode, commands.getCounts(), GL_UNSIGNED_INT, commands.getOffsets(), commands.getBaseVertices());
+        else
+            glMultiDrawArrays(mode, commands.getFirsts(), commands.getCounts());
+
+        Engine.getInstance().getProfiler().incCounter(Profiler.Task.DRAW_CALLS);
+        Engine.getInstance().getProfiler().addCounter(Profiler.Task.VERTICES_DRAWN, commands.getTotalCount());
+        Engine.getInstance().getProfiler().addGpuTime((System.nanoTime() - start) / 1000000f);
+    }
+
     public void drawCallInstanced(DrawCall type, int array, int mode, int count, int n) {
         long start = System.nanoTime();
         if (array <= 0 || mode <= 0 || count <= 0 || n <= 0)
@@ -195,20 +327,13 @@ public class Renderer {
 
         switch (type) {
             case ARRAYS -> {
-                if (array != this.vaoInUse) {
-                    glBindVertexArray(array);
-                    this.vaoInUse = array;
-                    this.eboInUse = -1;
-                }
+                this.bindVertexArray(array);
                 glDrawArraysInstanced(mode, 0, count, n);
             }
 
             case ELEMENTS -> {
-                if (array != this.vaoInUse) {
-                    glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, array);
-                    this.vaoInUse = array;
-                    this.eboInUse = -1;
-                }
+                // The element buffer is a part of the VAO state, so binding the VAO is enough
+                this.bindVertexArray(array);
                 glDrawElementsInstanced(mode, count, GL_UNSIGNED_INT, 0, n);
             }
         }
@@ -238,6 +363,20 @@ public class Renderer {
         return isWireframeEnabled;
     }
 
+    /**
+     * Get shadow maps controller
+     */
+    public ShadowsManager getShadows() {
+        return this.shadowsManager;
+    }
+
+    /**
+     * Get CPU occlusion culler of the main camera
+     */
+    public OcclusionCuller getOcclusionCuller() {
+        return this.occlusionCuller;
+    }
+
     /**
      * Get post-process controller
      */
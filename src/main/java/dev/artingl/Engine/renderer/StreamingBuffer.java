@@ -0,0 +1,140 @@
+package dev.artingl.Engine.renderer;
+
+import dev.artingl.Engine.Engine;
+import dev.artingl.Engine.debug.LogLevel;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL15C.*;
+import static org.lwjgl.opengl.GL30C.*;
+import static org.lwjgl.opengl.GL32C.*;
+
+/**
+ * Ring buffer for geometry which changes every frame.
+ * The buffer is split into regions (one per frame in flight) and each region is protected with a fence,
+ * so writing to the buffer never waits for the GPU unless it is more than {@link #FRAMES} frames behind.
+ * The data written into the buffer is valid only until the end of the frame.
+ */
+public class StreamingBuffer {
+
+    // Amount of frames which can be in flight at the same time
+    public static final int FRAMES = 3;
+
+    // Offsets of the written data are aligned to this value, so any attribute type can be placed at them
+    public static final int ALIGNMENT = 64;
+
+    private final int frameSize;
+    private final long[] fences;
+    private int vbo;
+    private int region;
+    private int cursor;
+    private boolean overflowReported;
+
+    /**
+     * @param frameSize Amount of bytes that can be written during one frame
+     */
+    public StreamingBuffer(int frameSize) {
+        this.frameSize = frameSize;
+        this.fences = new long[FRAMES];
+        this.vbo = -1;
+        this.region = 0;
+        this.cursor = 0;
+    }
+
+    public void init() {
+        this.vbo = glGenBuffers();
+        Engine.getInstance().getRenderer().getState().bindBuffer(GL_ARRAY_BUFFER, this.vbo);
+        glBufferData(GL_ARRAY_BUFFER, (long) this.frameSize * FRAMES, GL_STREAM_DRAW);
+
+        Engine.getInstance().getLogger().log(LogLevel.INFO, "Creating streaming buffer: vbo=%d, frameSize=%d, frames=%d", vbo, frameSize, FRAMES);
+    }
+
+    public void cleanup() {
+        for (int i = 0; i < FRAMES; i++) {
+            if (this.fences[i] != 0)
+                glDeleteSync(this.fences[i]);
+            this.fences[i] = 0;
+        }
+
+        Engine.getInstance().getRenderer().getState().deleteBuffer(this.vbo);
+        this.vbo = -1;
+    }
+
+    /**
+     * Move to the next region of the buffer, waiting for the GPU to finish using it if needed.
+     */
+    public void beginFrame() {
+        this.region = (this.region + 1) % FRAMES;
+        this.cursor = this.region * this.frameSize;
+        this.overflowReported = false;
+
+        long fence = this.fences[this.region];
+        if (fence != 0) {
+            // Wait up to 1 second, it should never actually happen unless the GPU is way behind
+            int status = glClientWaitSync(fence, GL_SYNC_FLUSH_COMMANDS_BIT, 1000000000L);
+            if (status == GL_TIMEOUT_EXPIRED || status == GL_WAIT_FAILED)
+                Engine.getInstance().getLogger().log(LogLevel.WARNING, "Streaming buffer region %d wasn't released by the GPU in time", this.region);
+            glDeleteSync(fence);
+            this.fences[this.region] = 0;
+        }
+    }
+
+    /**
+     * Protect the region written during this frame until the GPU is done with it.
+     */
+    public void endFrame() {
+        if (this.fences[this.region] != 0)
+            glDeleteSync(this.fences[this.region]);
+        this.fences[this.region] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+    }
+
+    /**
+     * Write data into the current region of the buffer.
+     * The buffer is left bound to GL_ARRAY_BUFFER.
+     *
+     * @param data Data to be written, from its position to the limit
+     *
+     * @return Offset in bytes of the data in the buffer, or -1 if there is no space left in this frame
+     */
+    public int write(ByteBuffer data) {
+        int size = data.remaining();
+        int offset = (this.cursor + ALIGNMENT - 1) & -ALIGNMENT;
+
+        if (this.vbo <= 0 || size == 0)
+            return -1;
+
+        if (offset + size > (this.region + 1) * this.frameSize) {
+            if (!this.overflowReported)
+                Engine.getInstance().getLogger().log(LogLevel.WARNING, "Streaming buffer is out of space for this frame (frameSize=%d)", this.frameSize);
+            this.overflowReported = true;
+            return -1;
+        }
+
+        // The region is guarded by the fence, so there is no need for the driver to synchronize
+        Engine.getInstance().getRenderer().getState().bindBuffer(GL_ARRAY_BUFFER, this.vbo);
+        ByteBuffer mapped = glMapBufferRange(GL_ARRAY_BUFFER, offset, size,
+                GL_MAP_WRITE_BIT | GL_MAP_UNSYNCHRONIZED_BIT | GL_MAP_INVALIDATE_RANGE_BIT);
+        if (mapped == null)
+            return -1;
+
+        mapped.put(data.duplicate());
+        glUnmapBuffer(GL_ARRAY_BUFFER);
+
+        this.cursor = offset + size;
+        return offset;
+    }
+
+    /**
+     * Get the GL buffer
+     */
+    public int getBuffer() {
+        return this.vbo;
+    }
+
+    /**
+     * Get amount of bytes that can be written during one frame
+     */
+    public int getFrameSize() {
+        return this.frameSize;
+    }
+}
@@ -2,14 +2,15 @@ package dev.artingl.Engine.renderer.mesh;
 
 import dev.artingl.Engine.Engine;
 import dev.artingl.Engine.debug.LogLevel;
+import dev.artingl.Engine.misc.BoundingBox;
 import dev.artingl.Engine.misc.Color;
 import dev.artingl.Engine.misc.MathUtils;
+import dev.artingl.Engine.renderer.GLState;
 import dev.artingl.Engine.renderer.Quality;
 import dev.artingl.Engine.renderer.Renderer;
 import dev.artingl.Engine.renderer.shader.Shader;
 import dev.artingl.Engine.renderer.shader.ShaderProgram;
 import dev.artingl.Engine.renderer.shader.ShaderType;
-import dev.artingl.Engine.renderer.viewport.ViewportManager;
 import dev.artingl.Engine.resources.Resource;
 import dev.artingl.Engine.resources.texture.Texture;
 import org.jetbrains.annotations.Nullable;
@@ -43,11 +44,17 @@ public class BaseMesh implements IMesh {
     private int mode;
     private boolean isBaked;
     private boolean isDirty;
+    private volatile int dirtyVersion;
     private Texture currentTexture;
     private ShaderProgram program;
     private ShaderProgram instancedProgram;
     private final List<VerticesBuffer> instances;
+    private InstanceBuffer instanceBuffer;
     private boolean enableFadeAnimation;
+    private boolean isStreaming;
+    private boolean isShared;
+    private GpuHeap.Allocation allocation;
+    private BoundingBox bounds;
     private Color color;
 
 
@@ -89,6 +96,7 @@ public class BaseMesh implements IMesh {
      * Get current mesh's texture
      * */
     @Nullable
+    @Override
     public Texture getTexture() {
         return currentTexture;
     }
@@ -107,6 +115,11 @@ public class BaseMesh implements IMesh {
         return opacity;
     }
 
+    @Override
+    public boolean isTransparent() {
+        return this.opacity < 1;
+    }
+
     /**
      * Enable/Disable mesh fade animation after being baked
      * */
@@ -123,6 +136,34 @@ public class BaseMesh implements IMesh {
         this.color = color;
     }
 
+    /**
+     * Stream the mesh's vertices through the renderer's streaming buffer each time it is rendered
+     * instead of keeping them in its own VBO. Should be used for geometry which changes often.
+     * Instances and indices are not supported in this mode.
+     * */
+    public void setStreaming(boolean state) {
+        this.isStreaming = state;
+        this.makeDirty();
+    }
+
+    /**
+     * Place the mesh's vertices into the renderer's shared GPU heap instead of its own VAO/VBO.
+     * Meshes with the same vertex layout then share one VAO and are drawn with base vertex offsets.
+     * Meshes with instances always use their own buffers.
+     * */
+    public void setShared(boolean state) {
+        this.isShared = state;
+        this.makeDirty();
+    }
+
+    /**
+     * Get place of the mesh in the shared GPU heap, or null if the mesh is not shared or not baked
+     * */
+    @Nullable
+    public GpuHeap.Allocation getAllocation() {
+        return allocation;
+    }
+
     /**
      * Set render mode to be used by default
      * */
@@ -136,6 +177,7 @@ public class BaseMesh implements IMesh {
     @Override
     public void makeDirty() {
         isDirty = true;
+        dirtyVersion++;
     }
 
     /**
@@ -190,17 +232,16 @@ public class BaseMesh implements IMesh {
 
     @Override
     public void render(Renderer renderer, int mode) {
-        if (!BASE_PROGRAM.isBaked() || !INSTANCED_BASE_PROGRAM.isBaked()) {
-            BASE_PROGRAM.bake();
-            INSTANCED_BASE_PROGRAM.bake();
-        }
+        // Skip the mesh until its program is compiled, so the frame doesn't wait for the driver
+        if (program != null && !program.isReady())
+            return;
 
         if (verticesCount > 0 && vao <= 0) {
             Engine.getInstance().getLogger().log(LogLevel.WARNING, "Trying to render an empty mesh! VAO=%d, VERT_CNT=%d, INSTANCE=%s", vao, verticesCount, this);
             this.makeDirty();
             return;
         }
-        if (indicesCount > 0 && ebo <= 0) {
+        if (indicesCount > 0 && ebo <= 0 && allocation == null) {
             Engine.getInstance().getLogger().log(LogLevel.WARNING, "Trying to render an empty mesh! EBO=%d, INDT_CNT=%d, INSTANCE=%s", ebo, indicesCount, this);
             this.makeDirty();
             return;
@@ -217,16 +258,37 @@ public class BaseMesh implements IMesh {
             program.updateModelMatrix(getModelMatrix());
             program.setUniformVector4f("color", color.asVector4f());
             program.setUniformFloat("opacity", this.opacity * MathUtils.easeInOutCirc(meshFade));
-            ViewportManager viewport = renderer.getViewport();
-            viewport.uploadMatrices(program);
             program.use();
         }
 
+        // Upload the vertices for this frame
+        if (this.isStreaming) {
+            synchronized (this.vertices) {
+                this.verticesCount = this.vertices.stream(vao, renderer.getStreamingBuffer());
+            }
+        }
+
         // Render the mesh
-        if (verticesCount > 0)
+        this.draw(renderer, mode);
+    }
+
+    /**
+     * Issue the draw call for the mesh's vertices, the shader program must already be in use.
+     * */
+    protected void draw(Renderer renderer, int mode) {
+        GpuHeap.Allocation allocation = this.allocation;
+        if (allocation != null) {
+            if (allocation.isIndexed())
+                renderer.drawCall(Renderer.DrawCall.ELEMENTS, allocation.getVao(), mode, allocation.getIndicesCount(),
+                        allocation.getFirstIndex(), allocation.getBaseVertex());
+            else
+                renderer.drawCall(Renderer.DrawCall.ARRAYS, allocation.getVao(), mode, allocation.getVerticesCount(),
+                        allocation.getBaseVertex(), 0);
+        }
+        else if (verticesCount > 0)
             renderer.drawCall(Renderer.DrawCall.ARRAYS, vao, mode, verticesCount);
         else if (indicesCount > 0)
-            renderer.drawCall(Renderer.DrawCall.ELEMENTS, ebo, mode, indicesCount);
+            renderer.drawCall(Renderer.DrawCall.ELEMENTS, vao, mode, indicesCount);
     }
 
     @Override
@@ -236,24 +298,27 @@ public class BaseMesh implements IMesh {
 
     @Override
     public void renderInstanced(Renderer renderer, int mode) {
-        if (!BASE_PROGRAM.isBaked() || !INSTANCED_BASE_PROGRAM.isBaked()) {
-            BASE_PROGRAM.bake();
-            INSTANCED_BASE_PROGRAM.bake();
-        }
+        if (!this.instancedProgram.isReady())
+            return;
 
         if (verticesCount > 0 && vao <= 0) {
             Engine.getInstance().getLogger().log(LogLevel.WARNING, "Trying to render an empty mesh! VAO=%d, VERT_CNT=%d, INSTANCE=%s", vao, verticesCount, this);
             this.makeDirty();
             return;
         }
-        if (indicesCount > 0 && ebo <= 0) {
+        if (indicesCount > 0 && ebo <= 0 && allocation == null) {
             Engine.getInstance().getLogger().log(LogLevel.WARNING, "Trying to render an empty mesh! EBO=%d, INDT_CNT=%d, INSTANCE=%s", ebo, indicesCount, this);
             this.makeDirty();
             return;
         }
 
-        if (!this.isBaked || this.instances.isEmpty() || mode <= 0)
+        int instancesCount = this.instanceBuffer != null ? this.instanceBuffer.getCount() : this.instances.size();
+        if (!this.isBaked || instancesCount == 0 || mode <= 0)
             return;
+
+        // Send changed instances to the GPU
+        if (this.instanceBuffer != null && this.instanceBuffer.isDirty())
+            this.instanceBuffer.upload();
         this.fadeAnimationStep();
 
         this.instancedProgram.setMainTexture(currentTexture);
@@ -261,14 +326,12 @@ public class BaseMesh implements IMesh {
         this.instancedProgram.setUniformVector4f("color", color.asVector4f());
         this.instancedProgram.setUniformFloat("opacity", this.opacity * MathUtils.easeInOutCirc(meshFade));
         this.instancedProgram.use();
-        ViewportManager viewport = renderer.getViewport();
-        viewport.uploadMatrices(this.instancedProgram);
 
         // Render the mesh
         if (verticesCount > 0)
-            renderer.drawCallInstanced(Renderer.DrawCall.ARRAYS, vao, mode, verticesCount, this.instances.size());
+            renderer.drawCallInstanced(Renderer.DrawCall.ARRAYS, vao, mode, verticesCount, instancesCount);
         else if (indicesCount > 0)
-            renderer.drawCallInstanced(Renderer.DrawCall.ELEMENTS, ebo, mode, indicesCount, this.instances.size());
+            renderer.drawCallInstanced(Renderer.DrawCall.ELEMENTS, vao, mode, indicesCount, instancesCount);
     }
 
     @Override
@@ -283,6 +346,21 @@ public class BaseMesh implements IMesh {
         this.makeDirty();
     }
 
+    @Override
+    public void setInstanceBuffer(InstanceBuffer buffer) {
+        if (this.instanceBuffer == buffer)
+            return;
+
+        // Only the instance attributes of the VAO have to point to the other buffer
+        if (this.isBaked && !this.isDirty && this.vao > 0 && this.allocation == null && this.instanceBuffer != null && buffer != null) {
+            Engine.getInstance().getRenderer().bindVertexArray(this.vao);
+            buffer.bind(this.vertices.getAttributes().length);
+        }
+        else
+            this.makeDirty();
+        this.instanceBuffer = buffer;
+    }
+
     @Override
     public void clearInstances() {
         for (VerticesBuffer b: this.instances)
@@ -310,18 +388,7 @@ public class BaseMesh implements IMesh {
                     .getMeshManager()
                     .deactivateMesh(this);
 
-            if (this.vao > 0)
-                glDeleteVertexArrays(vao);
-            if (this.vbo > 0)
-                glDeleteBuffers(vbo);
-            if (this.ebo > 0)
-                glDeleteBuffers(ebo);
-            if (this.instancesVBO > 0)
-                glDeleteBuffers(this.instancesVBO);
-            this.vao = -1;
-            this.vbo = -1;
-            this.ebo = -1;
-            this.instancesVBO = -1;
+            this.release();
             this.verticesCount = -1;
             this.indicesCount = -1;
 
@@ -339,29 +406,121 @@ public class BaseMesh implements IMesh {
             return;
         if (!this.isDirty && this.isBaked)
             return;
+        if (!this.prepare())
+            return;
 
+        this.bounds = this.calculateBounds();
+        this.upload();
+    }
+
+    @Override
+    public PreparedBake prepareBake() {
+        if (getQuality() == Quality.NOT_RENDERED)
+            return null;
+
+        int version = this.dirtyVersion;
+        if (!this.prepare())
+            return null;
+
+        // Bounds are calculated here, so the render thread doesn't go through the vertices
+        BoundingBox bounds = this.calculateBounds();
+        VerticesBuffer vertices = this.vertices;
+        int bytes = vertices.getBytesSize() + vertices.getIndicesCount() * Integer.BYTES;
+        return new PreparedBake(this, bytes, () -> {
+            if (getQuality() == Quality.NOT_RENDERED || (!this.isDirty && this.isBaked))
+                return;
+            this.bounds = bounds;
+            this.upload();
+
+            // The mesh was changed while it was being prepared, so it must be baked again
+            if (this.dirtyVersion != version)
+                this.makeDirty();
+        });
+    }
+
+    /**
+     * CPU part of baking which sets up the mesh's vertices. Can be called from any thread.
+     *
+     * @return False if the mesh is not ready to be baked yet
+     * */
+    protected boolean prepare() {
+        return true;
+    }
+
+    /**
+     * Calculate bounds of the vertices, streaming meshes change their vertices all the time so their bounds are unknown
+     * */
+    @Nullable
+    private BoundingBox calculateBounds() {
+        if (this.isStreaming || this.vertices == null)
+            return null;
         synchronized (this.vertices) {
-            if (this.vao > 0)
-                glDeleteVertexArrays(vao);
-            if (this.vbo > 0)
-                glDeleteBuffers(vbo);
-            if (this.ebo > 0)
-                glDeleteBuffers(ebo);
-            if (this.instancesVBO > 0)
-                glDeleteBuffers(this.instancesVBO);
+            return this.vertices.calculateBounds();
+        }
+    }
 
+    /**
+     * Upload the mesh's vertices to the GPU, must be called on the render thread
+     * */
+    private void upload() {
+        synchronized (this.vertices) {
+            // Streaming meshes keep only the VAO, the vertices are uploaded when the mesh is rendered
+            if (this.isStreaming && this.vertices != null) {
+                GLState state = Engine.getInstance().getRenderer().getState();
+                if (this.allocation != null)
+                    this.release();
+                state.deleteBuffer(this.vbo);
+                state.deleteBuffer(this.ebo);
+                state.deleteBuffer(this.instancesVBO);
+                if (this.vao <= 0)
+                    this.vao = glGenVertexArrays();
+
+                this.vbo = -1;
+                this.ebo = -1;
+                this.instancesVBO = -1;
+                this.verticesCount = this.vertices.getVerticesCount();
+                this.indicesCount = -1;
+                this.isBaked = true;
+                this.isDirty = false;
+
+                Engine.getInstance()
+                        .getRenderer()
+                        .getMeshManager()
+                        .activateMesh(this);
+                return;
+            }
+
+            this.release();
             this.meshFade = 0;
-            this.ebo = -1;
-            this.vao = -1;
-            this.vbo = -1;
-            this.instancesVBO = -1;
             this.verticesCount = -1;
             this.indicesCount = -1;
 
             if (this.vertices == null)
                 return;
 
-            if (!this.instances.isEmpty())
+            // Static meshes without instances can be placed into the shared heap
+            if (this.isShared && this.instances.isEmpty() && this.instanceBuffer == null) {
+                this.allocation = Engine.getInstance().getRenderer().getGpuHeap().allocate(this.vertices);
+                if (this.allocation != null) {
+                    this.vao = this.allocation.getVao();
+                    if (this.allocation.isIndexed())
+                        this.indicesCount = this.allocation.getIndicesCount();
+                    else
+                        this.verticesCount = this.allocation.getVerticesCount();
+                }
+
+                this.isBaked = true;
+                this.isDirty = false;
+
+                // Activate the mesh in the mesh manager
+                Engine.getInstance()
+                        .getRenderer()
+                        .getMeshManager()
+                        .activateMesh(this);
+                return;
+            }
+
+            if (!this.instances.isEmpty() && this.instanceBuffer == null)
                 this.instancesVBO = glGenBuffers();
             this.vao = glGenVertexArrays();
             this.vbo = glGenBuffers();
@@ -373,11 +532,17 @@ public class BaseMesh implements IMesh {
                 this.verticesCount = this.vertices.bake(vao, vbo, ebo);
 
             // Initialize instance rendering if we have any instances provided
-            if (!this.instances.isEmpty() && this.instancesVBO > 0) {
-                int indexOffset = this.vertices.getAttributes().length;
-                for (VerticesBuffer buffer: this.instances) {
-                    buffer.bake(-1, this.instancesVBO, -1, indexOffset);
-                }
+            int indexOffset = this.vertices.getAttributes().length;
+            if (this.instanceBuffer != null) {
+                if (this.instanceBuffer.isDirty())
+                    this.instanceBuffer.upload();
+                this.instanceBuffer.bind(indexOffset);
+            }
+            else if (!this.instances.isEmpty() && this.instancesVBO > 0) {
+                // All instances must be in one buffer, otherwise every upload would overwrite the previous one
+                VerticesBuffer buffer = VerticesBuffer.concat(this.instances);
+                buffer.bake(-1, this.instancesVBO, -1, indexOffset);
+                buffer.cleanup();
             }
 
             this.isBaked = true;
@@ -391,11 +556,38 @@ public class BaseMesh implements IMesh {
         }
     }
 
+    /**
+     * Delete the mesh's GL buffers or release its place in the shared heap
+     * */
+    private void release() {
+        GLState state = Engine.getInstance().getRenderer().getState();
+        if (this.allocation != null) {
+            // The VAO belongs to the heap, so it must not be deleted
+            Engine.getInstance().getRenderer().getGpuHeap().free(this.allocation);
+            this.allocation = null;
+        }
+        else
+            state.deleteVertexArray(this.vao);
+        state.deleteBuffer(this.vbo);
+        state.deleteBuffer(this.ebo);
+        state.deleteBuffer(this.instancesVBO);
+        this.vao = -1;
+        this.vbo = -1;
+        this.ebo = -1;
+        this.instancesVBO = -1;
+    }
+
     @Override
     public Quality getQuality() {
         return Quality.HIGH;
     }
 
+    @Nullable
+    @Override
+    public BoundingBox getBounds() {
+        return bounds;
+    }
+
     public VerticesBuffer getVerticesBuffer() {
         return vertices;
     }
@@ -430,6 +622,7 @@ public class BaseMesh implements IMesh {
         return isDirty;
     }
 
+    @Override
     public int getVao() {
         return vao;
     }
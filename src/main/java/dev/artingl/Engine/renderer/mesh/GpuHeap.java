@@ -0,0 +1,337 @@
+package dev.artingl.Engine.renderer.mesh;
+
+import dev.artingl.Engine.Engine;
+import dev.artingl.Engine.debug.LogLevel;
+import dev.artingl.Engine.renderer.GLState;
+
+import java.util.*;
+
+import static org.lwjgl.opengl.GL15C.*;
+import static org.lwjgl.opengl.GL30C.*;
+import static org.lwjgl.opengl.GL31C.*;
+
+/**
+ * Shared storage for static meshes.
+ * Meshes with identical vertex layouts are placed into one large VBO/EBO pair (a pool) with one VAO,
+ * so they can be drawn one after another with base vertex offsets without rebinding anything.
+ * Space in the pools is managed with a first-fit free list, pools are compacted or grown when
+ * an allocation doesn't fit.
+ */
+public class GpuHeap {
+
+    // Initial capacity of a pool
+    public static final int INITIAL_VERTICES = 64 * 1024;
+    public static final int INITIAL_INDICES = 3 * INITIAL_VERTICES;
+
+    private final Map<List<VerticesBuffer.Attribute>, Pool> pools;
+
+    public GpuHeap() {
+        this.pools = new HashMap<>();
+    }
+
+    /**
+     * Place the vertices into the pool for their layout and upload them.
+     *
+     * @param buffer Vertices to be uploaded
+     *
+     * @return Allocation describing where the vertices are, or null if the buffer is empty
+     */
+    public Allocation allocate(VerticesBuffer buffer) {
+        synchronized (this) {
+            if (buffer.getVerticesCount() == 0)
+                return null;
+
+            Pool pool = this.pools.computeIfAbsent(List.of(buffer.getAttributes()), Pool::new);
+            Allocation allocation = pool.allocate(buffer.getVerticesCount(), buffer.getIndicesCount());
+            pool.upload(allocation, buffer);
+            return allocation;
+        }
+    }
+
+    /**
+     * Release space taken by the allocation
+     */
+    public void free(Allocation allocation) {
+        synchronized (this) {
+            if (allocation == null || allocation.pool == null)
+                return;
+
+            allocation.pool.free(allocation);
+            allocation.pool = null;
+        }
+    }
+
+    /**
+     * Compact all pools which have their free space split into too many small blocks
+     */
+    public void defragment() {
+        synchronized (this) {
+            for (Pool pool : this.pools.values()) {
+                if (pool.isFragmented())
+                    pool.repack(pool.vertices.capacity, pool.indices.capacity);
+            }
+        }
+    }
+
+    public void cleanup() {
+        synchronized (this) {
+            for (Pool pool : this.pools.values())
+                pool.cleanup();
+            this.pools.clear();
+        }
+    }
+
+    /**
+     * Place of a mesh inside the heap.
+     * Offsets may change when the pool is compacted, so they must be read every time the mesh is drawn.
+     */
+    public static class Allocation {
+        private Pool pool;
+        private int baseVertex, firstIndex;
+        private final int verticesCount, indicesCount;
+
+        private Allocation(Pool pool, int baseVertex, int firstIndex, int verticesCount, int indicesCount) {
+            this.pool = pool;
+            this.baseVertex = baseVertex;
+            this.firstIndex = firstIndex;
+            this.verticesCount = verticesCount;
+            this.indicesCount = indicesCount;
+        }
+
+        /**
+         * Get the VAO shared by all meshes with the same layout
+         */
+        public int getVao() {
+            return this.pool == null ? -1 : this.pool.vao;
+        }
+
+        public int getBaseVertex() {
+            return baseVertex;
+        }
+
+        public int getFirstIndex() {
+            return firstIndex;
+        }
+
+        public int getVerticesCount() {
+            return verticesCount;
+        }
+
+        public int getIndicesCount() {
+            return indicesCount;
+        }
+
+        public boolean isIndexed() {
+            return this.indicesCount > 0;
+        }
+    }
+
+    private static class Pool {
+        private final VerticesBuffer.Attribute[] attributes;
+        private final int stride;
+        private final List<Allocation> allocations;
+        private FreeList vertices, indices;
+        private int vao, vbo, ebo;
+
+        private Pool(List<VerticesBuffer.Attribute> layout) {
+            this.attributes = layout.toArray(new VerticesBuffer.Attribute[0]);
+            this.stride = VerticesBuffer.calculateStride(this.attributes);
+            this.allocations = new ArrayList<>();
+            this.vertices = new FreeList(0);
+            this.indices = new FreeList(0);
+            this.vao = glGenVertexArrays();
+            this.vbo = -1;
+            this.ebo = -1;
+            this.repack(INITIAL_VERTICES, INITIAL_INDICES);
+        }
+
+        private Allocation allocate(int verticesCount, int indicesCount) {
+            int vertex = this.vertices.allocate(verticesCount);
+            int index = this.indices.allocate(indicesCount);
+
+            if (vertex == -1 || index == -1) {
+                if (vertex != -1)
+                    this.vertices.free(vertex, verticesCount);
+                if (index != -1)
+                    this.indices.free(index, indicesCount);
+
+                // Compact the pool, and grow it if the free space is not enough even after that
+                int vertexCapacity = this.vertices.capacity, indexCapacity = this.indices.capacity;
+                if (this.vertices.getFree() < verticesCount)
+                    vertexCapacity = Math.max(vertexCapacity * 2, vertexCapacity - this.vertices.getFree() + verticesCount);
+                if (this.indices.getFree() < indicesCount)
+                    indexCapacity = Math.max(indexCapacity * 2, indexCapacity - this.indices.getFree() + indicesCount);
+                this.repack(vertexCapacity, indexCapacity);
+
+                vertex = this.vertices.allocate(verticesCount);
+                index = this.indices.allocate(indicesCount);
+            }
+
+            Allocation allocation = new Allocation(this, vertex, index, verticesCount, indicesCount);
+            this.allocations.add(allocation);
+            return allocation;
+        }
+
+        private void free(Allocation allocation) {
+            if (!this.allocations.remove(allocation))
+                return;
+
+            this.vertices.free(allocation.baseVertex, allocation.verticesCount);
+            this.indices.free(allocation.firstIndex, allocation.indicesCount);
+        }
+
+        private void upload(Allocation allocation, VerticesBuffer buffer) {
+            GLState state = Engine.getInstance().getRenderer().getState();
+
+            // Use the copy target, so the element buffer binding of the current VAO is not touched
+            state.bindBuffer(GL_COPY_WRITE_BUFFER, this.vbo);
+            glBufferSubData(GL_COPY_WRITE_BUFFER, (long) allocation.baseVertex * this.stride, buffer.getData());
+
+            if (allocation.isIndexed()) {
+                state.bindBuffer(GL_COPY_WRITE_BUFFER, this.ebo);
+                glBufferSubData(GL_COPY_WRITE_BUFFER, (long) allocation.firstIndex * Integer.BYTES, buffer.getIndices());
+            }
+        }
+
+        private boolean isFragmented() {
+            return this.vertices.getBlocksCount() > 8 || this.indices.getBlocksCount() > 8;
+        }
+
+        /**
+         * Move all allocations into new buffers one after another and set up the VAO for them.
+         */
+        private void repack(int vertexCapacity, int indexCapacity) {
+            GLState state = Engine.getInstance().getRenderer().getState();
+            int vbo = glGenBuffers();
+            state.bindBuffer(GL_COPY_WRITE_BUFFER, vbo);
+            glBufferData(GL_COPY_WRITE_BUFFER, (long) vertexCapacity * this.stride, GL_STATIC_DRAW);
+            int ebo = glGenBuffers();
+            state.bindBuffer(GL_COPY_WRITE_BUFFER, ebo);
+            glBufferData(GL_COPY_WRITE_BUFFER, (long) indexCapacity * Integer.BYTES, GL_STATIC_DRAW);
+
+            // Copy all allocations to the beginning of the new buffers
+            int vertex = 0, index = 0;
+            for (Allocation allocation : this.allocations) {
+                state.bindBuffer(GL_COPY_READ_BUFFER, this.vbo);
+                state.bindBuffer(GL_COPY_WRITE_BUFFER, vbo);
+                glCopyBufferSubData(GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER,
+                        (long) allocation.baseVertex * this.stride, (long) vertex * this.stride,
+                        (long) allocation.verticesCount * this.stride);
+
+                if (allocation.isIndexed()) {
+                    state.bindBuffer(GL_COPY_READ_BUFFER, this.ebo);
+                    state.bindBuffer(GL_COPY_WRITE_BUFFER, ebo);
+                    glCopyBufferSubData(GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER,
+                            (long) allocation.firstIndex * Integer.BYTES, (long) index * Integer.BYTES,
+                            (long) allocation.indicesCount * Integer.BYTES);
+                }
+
+                allocation.baseVertex = vertex;
+                allocation.firstIndex = index;
+                vertex += allocation.verticesCount;
+                index += allocation.indicesCount;
+            }
+
+            state.deleteBuffer(this.vbo);
+            state.deleteBuffer(this.ebo);
+            this.vbo = vbo;
+            this.ebo = ebo;
+            this.vertices = new FreeList(vertexCapacity);
+            this.vertices.allocate(vertex);
+            this.indices = new FreeList(indexCapacity);
+            this.indices.allocate(index);
+
+            // Point the shared VAO to the new buffers
+            state.bindVertexArray(this.vao);
+            state.bindBuffer(GL_ARRAY_BUFFER, this.vbo);
+            VerticesBuffer.setupAttributes(this.attributes, this.stride, 0, 0);
+            state.bindBuffer(GL_ELEMENT_ARRAY_BUFFER, this.ebo);
+
+            Engine.getInstance().getLogger().log(LogLevel.INFO, "Packed GPU heap pool: vao=%d, stride=%d, vertices=%d/%d, indices=%d/%d",
+                    this.vao, this.stride, vertex, vertexCapacity, index, indexCapacity);
+        }
+
+        private void cleanup() {
+            GLState state = Engine.getInstance().getRenderer().getState();
+            state.deleteVertexArray(this.vao);
+            state.deleteBuffer(this.vbo);
+            state.deleteBuffer(this.ebo);
+            this.vao = -1;
+            this.vbo = -1;
+            this.ebo = -1;
+
+            for (Allocation allocation : this.allocations)
+                allocation.pool = null;
+            this.allocations.clear();
+        }
+    }
+
+    /**
+     * First-fit allocator over a range of elements, free blocks are merged with their neighbours when released.
+     */
+    static class FreeList {
+        // Free blocks, offset to size
+        private final TreeMap<Integer, Integer> blocks;
+        private final int capacity;
+        private int free;
+
+        FreeList(int capacity) {
+            this.blocks = new TreeMap<>();
+            this.capacity = capacity;
+            this.free = capacity;
+            if (capacity > 0)
+                this.blocks.put(0, capacity);
+        }
+
+        /**
+         * @return Offset of the allocated block, or -1 if there is no block big enough
+         */
+        int allocate(int size) {
+            if (size <= 0)
+                return 0;
+
+            for (Map.Entry<Integer, Integer> block : this.blocks.entrySet()) {
+                int offset = block.getKey(), length = block.getValue();
+                if (length < size)
+                    continue;
+
+                this.blocks.remove(offset);
+                if (length > size)
+                    this.blocks.put(offset + size, length - size);
+                this.free -= size;
+                return offset;
+            }
+
+            return -1;
+        }
+
+        void free(int offset, int size) {
+            if (size <= 0)
+                return;
+
+            int start = offset, end = offset + size;
+
+            // Merge with the blocks right before and after the released one
+            Map.Entry<Integer, Integer> before = this.blocks.floorEntry(offset);
+            if (before != null && before.getKey() + before.getValue() == offset) {
+                start = before.getKey();
+                this.blocks.remove(before.getKey());
+            }
+
+            Integer after = this.blocks.remove(end);
+            if (after != null)
+                end += after;
+
+            this.blocks.put(start, end - start);
+            this.free += size;
+        }
+
+        int getFree() {
+            return free;
+        }
+
+        int getBlocksCount() {
+            return this.blocks.size();
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package dev.artingl.Engine.renderer.mesh;
 
+import dev.artingl.Engine.misc.BoundingBox;
 import dev.artingl.Engine.renderer.Quality;
 import dev.artingl.Engine.renderer.Renderer;
 import dev.artingl.Engine.renderer.shader.ShaderProgram;
+import dev.artingl.Engine.resources.texture.Texture;
+import org.jetbrains.annotations.Nullable;
 import org.joml.Matrix4f;
 
 
@@ -56,6 +59,18 @@ public interface IMesh {
      * */
     void bake();
 
+    /**
+     * Do the CPU part of baking (generating, loading or packing vertices). Can be called from any thread.
+     * The GL part is done by the commit of the result on the render thread, until then
+     * the mesh keeps rendering its previous baked version.
+     * By default, everything is done in the commit.
+     *
+     * @return The prepared bake, or null if the mesh can't be baked yet
+     * */
+    default PreparedBake prepareBake() {
+        return new PreparedBake(this, 0, this::bake);
+    }
+
     /**
      * Get current mesh quality
      * */
@@ -91,6 +106,39 @@ public interface IMesh {
      * */
     void makeDirty();
 
+    /**
+     * Tells if the mesh is blended with what's behind it, so it must be drawn after opaque meshes
+     * */
+    default boolean isTransparent() {
+        return false;
+    }
+
+    /**
+     * Get the main texture of the mesh, used for sorting the draws
+     * */
+    @Nullable
+    default Texture getTexture() {
+        return null;
+    }
+
+    /**
+     * Get the vertex array of the mesh, used for sorting the draws
+     * */
+    default int getVao() {
+        return 0;
+    }
+
+    /**
+     * Get bounds of the mesh in its local space, used for culling. They are calculated when the mesh is baked,
+     * and a new object is returned each time they change.
+     *
+     * @return The bounds, or null if they are not known
+     * */
+    @Nullable
+    default BoundingBox getBounds() {
+        return null;
+    }
+
     /**
      * Change the mesh's model
      * */
@@ -115,6 +163,17 @@ public interface IMesh {
      * */
     void addInstance(VerticesBuffer buffer);
 
+    /**
+     * Set buffer with transforms of the instances (for instanced rendering).
+     * The buffer is used instead of the instances added with {@link #addInstance(VerticesBuffer)},
+     * and changes in it are uploaded without re-baking the mesh.
+     * Note: switching between two buffers of a baked mesh only points its instance attributes to the new buffer,
+     * otherwise this will make the mesh dirty if the buffer is changed.
+     *
+     * @param buffer The instances buffer, or null to use the list of instances
+     * */
+    void setInstanceBuffer(InstanceBuffer buffer);
+
     /**
      * Clear list of instances (for instanced rendering).
      * Note: this will make the mesh dirty.
@@ -0,0 +1,160 @@
+package dev.artingl.Engine.renderer.mesh;
+
+import dev.artingl.Engine.Engine;
+import org.joml.Matrix4f;
+import org.lwjgl.BufferUtils;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL11C.GL_FLOAT;
+import static org.lwjgl.opengl.GL15C.*;
+import static org.lwjgl.opengl.GL20C.glEnableVertexAttribArray;
+import static org.lwjgl.opengl.GL20C.glVertexAttribPointer;
+import static org.lwjgl.opengl.GL33C.glVertexAttribDivisor;
+
+/**
+ * Packed per-instance transforms of a mesh stored in one VBO.
+ * Each instance takes one {@link VerticesBuffer.Attribute#MAT3X4F} slot. Only the slots
+ * which were changed since the last upload are sent to the GPU.
+ */
+public class InstanceBuffer {
+
+    public static final VerticesBuffer.Attribute ATTRIBUTE = VerticesBuffer.Attribute.MAT3X4F;
+
+    private ByteBuffer data;
+    private int count;
+    private int vbo;
+    private int gpuCapacity;
+
+    // Range of instances [dirtyFrom; dirtyTo) which must be uploaded
+    private int dirtyFrom, dirtyTo;
+
+    public InstanceBuffer() {
+        this.data = BufferUtils.createByteBuffer(0);
+        this.count = 0;
+        this.vbo = -1;
+        this.gpuCapacity = 0;
+        this.dirtyFrom = Integer.MAX_VALUE;
+        this.dirtyTo = 0;
+    }
+
+    /**
+     * Set amount of instances in the buffer
+     */
+    public void resize(int count) {
+        synchronized (this) {
+            int capacity = this.data.capacity() / ATTRIBUTE.size;
+            if (count > capacity) {
+                ByteBuffer grown = BufferUtils.createByteBuffer(Math.max(capacity * 2, count) * ATTRIBUTE.size);
+                grown.put(this.data.duplicate().clear());
+                this.data = grown.clear();
+            }
+
+            this.count = count;
+        }
+    }
+
+    /**
+     * Set transform of the instance
+     *
+     * @param index  Index of the instance
+     * @param matrix The transform, only its affine part is used
+     */
+    public void set(int index, Matrix4f matrix) {
+        synchronized (this) {
+            if (index >= this.count)
+                resize(index + 1);
+
+            VerticesBuffer.putAffine(this.data.position(index * ATTRIBUTE.size), matrix);
+            this.dirtyFrom = Math.min(this.dirtyFrom, index);
+            this.dirtyTo = Math.max(this.dirtyTo, index + 1);
+        }
+    }
+
+    /**
+     * Copy transform of an instance from another buffer
+     *
+     * @param index       Index of the instance
+     * @param source      Buffer to copy from
+     * @param sourceIndex Index of the instance in the source buffer
+     */
+    public void copy(int index, InstanceBuffer source, int sourceIndex) {
+        synchronized (this) {
+            if (index >= this.count)
+                resize(index + 1);
+
+            this.data.put(index * ATTRIBUTE.size, source.data, sourceIndex * ATTRIBUTE.size, ATTRIBUTE.size);
+            this.dirtyFrom = Math.min(this.dirtyFrom, index);
+            this.dirtyTo = Math.max(this.dirtyTo, index + 1);
+        }
+    }
+
+    /**
+     * Get amount of instances in the buffer
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * Tells if any instance was changed since the last upload
+     */
+    public boolean isDirty() {
+        return this.dirtyFrom < this.dirtyTo || this.vbo <= 0 || this.gpuCapacity < this.count;
+    }
+
+    /**
+     * Send changed instances to the GPU.
+     * The whole buffer is reallocated only when it has grown, otherwise only the changed range is sent.
+     */
+    public void upload() {
+        synchronized (this) {
+            if (this.vbo <= 0)
+                this.vbo = glGenBuffers();
+            Engine.getInstance().getRenderer().getState().bindBuffer(GL_ARRAY_BUFFER, this.vbo);
+
+            if (this.gpuCapacity < this.count) {
+                int capacity = this.data.capacity() / ATTRIBUTE.size;
+                glBufferData(GL_ARRAY_BUFFER, this.data.duplicate().clear(), GL_DYNAMIC_DRAW);
+                this.gpuCapacity = capacity;
+            }
+            else if (this.dirtyFrom < this.dirtyTo) {
+                int to = Math.min(this.dirtyTo, this.count);
+                if (this.dirtyFrom < to)
+                    glBufferSubData(GL_ARRAY_BUFFER, (long) this.dirtyFrom * ATTRIBUTE.size,
+                            this.data.duplicate().clear().position(this.dirtyFrom * ATTRIBUTE.size).limit(to * ATTRIBUTE.size));
+            }
+
+            this.dirtyFrom = Integer.MAX_VALUE;
+            this.dirtyTo = 0;
+        }
+    }
+
+    /**
+     * Set up instance attributes in the currently bound VAO.
+     *
+     * @param indexOffset Location of the first instance attribute
+     */
+    public void bind(int indexOffset) {
+        if (this.vbo <= 0)
+            upload();
+
+        Engine.getInstance().getRenderer().getState().bindBuffer(GL_ARRAY_BUFFER, this.vbo);
+        for (int i = 0; i < ATTRIBUTE.columns; i++) {
+            glVertexAttribPointer(indexOffset + i, ATTRIBUTE.components, GL_FLOAT, false, ATTRIBUTE.size, i * 16L);
+            glEnableVertexAttribArray(indexOffset + i);
+            glVertexAttribDivisor(indexOffset + i, 1);
+        }
+    }
+
+    public void cleanup() {
+        synchronized (this) {
+            Engine.getInstance().getRenderer().getState().deleteBuffer(this.vbo);
+            this.vbo = -1;
+            this.gpuCapacity = 0;
+            this.count = 0;
+            this.dirtyFrom = Integer.MAX_VALUE;
+            this.dirtyTo = 0;
+        }
+    }
+}
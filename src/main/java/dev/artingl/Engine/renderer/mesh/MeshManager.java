@@ -4,19 +4,28 @@ import dev.artingl.Engine.Engine;
 import dev.artingl.Engine.EngineEventListener;
 import dev.artingl.Engine.debug.LogLevel;
 import dev.artingl.Engine.debug.Logger;
+import dev.artingl.Engine.renderer.Quality;
 import dev.artingl.Engine.renderer.Renderer;
+import dev.artingl.Engine.resources.Options;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 public class MeshManager implements EngineEventListener {
 
     private final ConcurrentLinkedDeque<IMesh> activeMeshes;
+    private final Set<IMesh> pendingBakes;
+    private final ConcurrentLinkedQueue<PreparedBake> preparedBakes;
     private final Logger logger;
     private final Renderer renderer;
 
 
     public MeshManager(Logger logger, Renderer renderer) {
         this.activeMeshes = new ConcurrentLinkedDeque<>();
+        this.pendingBakes = ConcurrentHashMap.newKeySet();
+        this.preparedBakes = new ConcurrentLinkedQueue<>();
         this.logger = logger;
         this.renderer = renderer;
     }
@@ -27,6 +36,62 @@ public class MeshManager implements EngineEventListener {
 
     public void cleanup() {
         Engine.getInstance().unsubscribeEngineEvents(this);
+        this.pendingBakes.clear();
+        this.preparedBakes.clear();
+    }
+
+    /**
+     * Bake the mesh in the background. The CPU part is done on the worker threads,
+     * and the upload is done later by {@link #commitBakes()} on the render thread.
+     * The mesh keeps rendering its previous baked version until then.
+     * Does nothing if the mesh is already being baked.
+     *
+     * @param mesh Mesh to be baked
+     * */
+    public void bakeAsync(IMesh mesh) {
+        if (mesh.getQuality() == Quality.NOT_RENDERED || !this.pendingBakes.add(mesh))
+            return;
+
+        Engine.getInstance().getThreadsManager().execute(() -> {
+            try {
+                PreparedBake bake = mesh.prepareBake();
+                if (bake != null)
+                    this.preparedBakes.add(bake);
+                else
+                    this.pendingBakes.remove(mesh);
+            } catch (Exception e) {
+                this.logger.exception(e, "Unable to prepare mesh for baking");
+                this.pendingBakes.remove(mesh);
+            }
+        });
+    }
+
+    /**
+     * Upload meshes prepared by {@link #bakeAsync(IMesh)} until the frame's budget is exceeded.
+     * The budget is set by {@link Options.Values#BAKE_TIME_BUDGET} and {@link Options.Values#BAKE_BYTES_BUDGET},
+     * at least one mesh is uploaded each frame regardless of it.
+     * Must be called on the render thread.
+     * */
+    public void commitBakes() {
+        Options options = Engine.getInstance().getOptions();
+        long start = System.nanoTime();
+        long budget = (long) (options.getFloat(Options.Values.BAKE_TIME_BUDGET) * 1000000);
+        int bytesBudget = options.getInt(Options.Values.BAKE_BYTES_BUDGET);
+        int bytes = 0;
+        PreparedBake bake;
+
+        while ((bake = this.preparedBakes.peek()) != null) {
+            if (bytes > 0 && (System.nanoTime() - start > budget || bytes + bake.bytes() > bytesBudget))
+                break;
+            this.preparedBakes.poll();
+
+            // Skip meshes which were cleaned up while being prepared
+            if (!this.pendingBakes.remove(bake.mesh()))
+                continue;
+
+            bake.commit().run();
+            bytes += Math.max(1, bake.bytes());
+        }
     }
 
     /**
@@ -46,6 +111,7 @@ public class MeshManager implements EngineEventListener {
      * */
     public void deactivateMesh(IMesh mesh) {
         this.activeMeshes.remove(mesh);
+        this.pendingBakes.remove(mesh);
     }
 
     @Override
@@ -0,0 +1,235 @@
+package dev.artingl.Engine.renderer.mesh;
+
+import org.lwjgl.BufferUtils;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MeshOptimizer {
+
+    // Size of the post-transform vertex cache the indices are ordered for
+    public static final int VERTEX_CACHE_SIZE = 16;
+
+    /**
+     * Weld identical vertices, generate indices and reorder them for better vertex cache usage.
+     * The buffer is expected to contain a triangle list without indices, otherwise it is returned as it is.
+     *
+     * @param buffer Buffer to be optimized
+     *
+     * @return New optimized buffer
+     */
+    public static VerticesBuffer optimize(VerticesBuffer buffer) {
+        if (buffer.hasIndices() || buffer.getVerticesCount() % 3 != 0)
+            return buffer;
+
+        VerticesBuffer welded = weld(buffer);
+        int[] indices = welded.getIndices();
+        optimizeVertexCache(indices, welded.getVerticesCount());
+        return optimizeVertexFetch(welded, indices);
+    }
+
+    /**
+     * Merge vertices with identical attributes into one and generate indices for the buffer.
+     * Buffers which already have indices are returned as they are.
+     *
+     * @param buffer Buffer to be welded
+     *
+     * @return New buffer with unique vertices and indices
+     */
+    public static VerticesBuffer weld(VerticesBuffer buffer) {
+        if (buffer.hasIndices())
+            return buffer;
+
+        int stride = buffer.getStride();
+        int count = buffer.getVerticesCount();
+        ByteBuffer data = buffer.getData();
+        ByteBuffer result = BufferUtils.createByteBuffer(count * stride);
+        int[] indices = new int[count];
+
+        // Open addressing table of the unique vertices (stored as index + 1, so 0 means an empty slot)
+        int[] table = new int[Math.max(16, Integer.highestOneBit(Math.max(1, count)) << 2)];
+        int mask = table.length - 1;
+        int unique = 0;
+
+        for (int i = 0; i < count; i++) {
+            int ptr = i * stride;
+            int slot = hash(data, ptr, stride) & mask;
+
+            while (true) {
+                int entry = table[slot];
+
+                // Found a new vertex, copy it to the result
+                if (entry == 0) {
+                    for (int j = 0; j < stride; j += 4)
+                        result.putInt(unique * stride + j, data.getInt(ptr + j));
+                    table[slot] = unique + 1;
+                    indices[i] = unique++;
+                    break;
+                }
+
+                // The same vertex already exists
+                if (equals(data, ptr, result, (entry - 1) * stride, stride)) {
+                    indices[i] = entry - 1;
+                    break;
+                }
+
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        result.position(unique * stride);
+        return new VerticesBuffer(buffer.getAttributes(), result, indices, count, new AtomicInteger(1));
+    }
+
+    /**
+     * Reorder triangles in place, so vertices are reused while they are still in the post-transform cache.
+     * Implements "Fast Triangle Reordering for Vertex Locality and Reduced Overdraw" (Tipsify).
+     *
+     * @param indices  Indices of a triangle list
+     * @param vertices Amount of vertices the indices refer to
+     */
+    public static void optimizeVertexCache(int[] indices, int vertices) {
+        int triangles = indices.length / 3;
+        if (triangles == 0)
+            return;
+
+        // Build vertex to triangles adjacency
+        int[] live = new int[vertices];
+        for (int index : indices)
+            live[index]++;
+
+        int[] offsets = new int[vertices + 1];
+        for (int v = 0; v < vertices; v++)
+            offsets[v + 1] = offsets[v] + live[v];
+
+        int[] adjacency = new int[indices.length];
+        int[] fill = new int[vertices];
+        for (int i = 0; i < indices.length; i++) {
+            int v = indices[i];
+            adjacency[offsets[v] + fill[v]++] = i / 3;
+        }
+
+        int maxAdjacency = 0;
+        for (int v = 0; v < vertices; v++)
+            maxAdjacency = Math.max(maxAdjacency, live[v]);
+
+        int[] result = new int[indices.length];
+        int[] cacheTime = new int[vertices];
+        boolean[] emitted = new boolean[triangles];
+        int[] deadEnd = new int[indices.length];
+        int[] candidates = new int[maxAdjacency * 3];
+        int deadEndSize = 0, written = 0;
+        int time = VERTEX_CACHE_SIZE + 1;
+        int cursor = 1;
+        int fanning = 0;
+
+        while (fanning >= 0) {
+            int candidatesCount = 0;
+
+            // Emit all triangles around the fanning vertex
+            for (int i = offsets[fanning]; i < offsets[fanning + 1]; i++) {
+                int triangle = adjacency[i];
+                if (emitted[triangle])
+                    continue;
+
+                for (int j = 0; j < 3; j++) {
+                    int v = indices[triangle * 3 + j];
+                    result[written++] = v;
+                    deadEnd[deadEndSize++] = v;
+                    candidates[candidatesCount++] = v;
+                    live[v]--;
+
+                    if (time - cacheTime[v] > VERTEX_CACHE_SIZE)
+                        cacheTime[v] = time++;
+                }
+
+                emitted[triangle] = true;
+            }
+
+            // Pick the next vertex which is still in the cache and will stay there
+            int best = -1, bestPriority = -1;
+            for (int i = 0; i < candidatesCount; i++) {
+                int v = candidates[i];
+                if (live[v] <= 0)
+                    continue;
+
+                int priority = 0;
+                if (time - cacheTime[v] + 2 * live[v] <= VERTEX_CACHE_SIZE)
+                    priority = time - cacheTime[v];
+
+                if (priority > bestPriority) {
+                    bestPriority = priority;
+                    best = v;
+                }
+            }
+
+            // Nothing left around, use the recently used vertices or just the next one in order
+            if (best == -1) {
+                while (deadEndSize > 0 && best == -1) {
+                    int v = deadEnd[--deadEndSize];
+                    if (live[v] > 0)
+                        best = v;
+                }
+
+                while (cursor < vertices && best == -1) {
+                    if (live[cursor] > 0)
+                        best = cursor;
+                    cursor++;
+                }
+            }
+
+            fanning = best;
+        }
+
+        System.arraycopy(result, 0, indices, 0, written);
+    }
+
+    /**
+     * Reorder vertices in the order they are used by the indices, so the vertex fetch is more sequential.
+     *
+     * @param buffer  Buffer with the vertices
+     * @param indices Indices to be used, they are remapped to the new vertices order
+     *
+     * @return New buffer with the reordered vertices
+     */
+    public static VerticesBuffer optimizeVertexFetch(VerticesBuffer buffer, int[] indices) {
+        int stride = buffer.getStride();
+        int count = buffer.getVerticesCount();
+        ByteBuffer data = buffer.getData();
+        ByteBuffer result = BufferUtils.createByteBuffer(count * stride);
+
+        int[] remap = new int[count];
+        Arrays.fill(remap, -1);
+        int next = 0;
+
+        for (int i = 0; i < indices.length; i++) {
+            int v = indices[i];
+            if (remap[v] == -1) {
+                for (int j = 0; j < stride; j += 4)
+                    result.putInt(next * stride + j, data.getInt(v * stride + j));
+                remap[v] = next++;
+            }
+
+            indices[i] = remap[v];
+        }
+
+        result.position(next * stride);
+        return new VerticesBuffer(buffer.getAttributes(), result, indices, indices.length, new AtomicInteger(1));
+    }
+
+    private static int hash(ByteBuffer data, int ptr, int stride) {
+        int hash = 0x811c9dc5;
+        for (int i = 0; i < stride; i += 4)
+            hash = (hash ^ data.getInt(ptr + i)) * 0x01000193;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equals(ByteBuffer a, int aPtr, ByteBuffer b, int bPtr, int stride) {
+        for (int i = 0; i < stride; i += 4)
+            if (a.getInt(aPtr + i) != b.getInt(bPtr + i))
+                return false;
+        return true;
+    }
+
+}
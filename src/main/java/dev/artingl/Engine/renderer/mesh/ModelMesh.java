@@ -2,6 +2,7 @@ package dev.artingl.Engine.renderer.mesh;
 
 import dev.artingl.Engine.Engine;
 import dev.artingl.Engine.debug.LogLevel;
+import dev.artingl.Engine.misc.BoundingBox;
 import dev.artingl.Engine.renderer.Quality;
 import dev.artingl.Engine.renderer.Renderer;
 import dev.artingl.Engine.renderer.models.IModel;
@@ -28,10 +29,13 @@ public class ModelMesh implements IMesh {
     private final String[] customMeshes;
     private final List<String> meshes;
     private final List<VerticesBuffer> instances;
+    private InstanceBuffer instanceBuffer;
     private Quality currentQuality;
     private Matrix4f modelMatrix;
+    private BoundingBox bounds;
     private int totalIndices, totalVertices;
     private boolean isDirty;
+    private volatile int dirtyVersion;
     private boolean isBaked;
     private boolean enableFadeAnimation;
     private int mode;
@@ -93,8 +97,10 @@ public class ModelMesh implements IMesh {
      * @param name The name of the mesh
      * */
     public void addMesh(String name) {
+        BaseMesh mesh = new BaseMesh();
+        mesh.setShared(true);
         this.meshes.add(name);
-        this.modelMeshes.put(name, new BaseMesh());
+        this.modelMeshes.put(name, mesh);
 
         this.makeDirty();
     }
@@ -237,7 +243,7 @@ public class ModelMesh implements IMesh {
     @Override
     public void setQuality(Quality quality) {
         if (this.currentQuality != quality)
-            this.isDirty = true;
+            this.makeDirty();
         this.currentQuality = quality;
     }
 
@@ -263,22 +269,50 @@ public class ModelMesh implements IMesh {
         if (!this.isDirty && this.isBaked)
             return;
 
-        // Bake all meshes
+        this.prepareBake().commit().run();
+    }
+
+    @Override
+    public PreparedBake prepareBake() {
+        int version = this.dirtyVersion;
+        int bytes = 0;
+
+        // Load vertices of all meshes, it's the heaviest part of baking
+        Map<BaseMesh, VerticesBuffer> loaded = new HashMap<>();
         for (Map.Entry<String, BaseMesh> entry: this.modelMeshes.entrySet()) {
-            BaseMesh mesh = entry.getValue();
-            String name = entry.getKey();
+            VerticesBuffer vertices = model.load(this.currentQuality, entry.getKey());
+            loaded.put(entry.getValue(), vertices);
+            bytes += vertices.getBytesSize() + vertices.getIndicesCount() * Integer.BYTES;
+        }
 
-            mesh.setVertices(model.load(this.currentQuality, name));
+        return new PreparedBake(this, bytes, () -> this.commit(loaded, version));
+    }
+
+    private void commit(Map<BaseMesh, VerticesBuffer> loaded, int version) {
+        // Bake all meshes
+        for (Map.Entry<BaseMesh, VerticesBuffer> entry: loaded.entrySet()) {
+            BaseMesh mesh = entry.getKey();
+            mesh.setVertices(entry.getValue());
 
             // Add all global instances for all meshes
             mesh.clearInstances();
             for (VerticesBuffer buffer: this.instances) {
                 mesh.addInstance(buffer);
             }
+            mesh.setInstanceBuffer(this.instanceBuffer);
             mesh.bake();
         }
 
-        this.isDirty = false;
+        // The model is bounded by all of its meshes
+        BoundingBox bounds = new BoundingBox();
+        for (BaseMesh mesh: this.modelMeshes.values()) {
+            if (mesh.getBounds() != null)
+                bounds.add(mesh.getBounds());
+        }
+        this.bounds = bounds.isEmpty() ? null : bounds;
+
+        // The mesh was changed while it was being prepared, so it must be baked again
+        this.isDirty = this.dirtyVersion != version;
         this.isBaked = true;
 
         // Activate the mesh in the mesh manager
@@ -293,6 +327,12 @@ public class ModelMesh implements IMesh {
         return currentQuality;
     }
 
+    @Nullable
+    @Override
+    public BoundingBox getBounds() {
+        return bounds;
+    }
+
     @Override
     public Matrix4f getModelMatrix() {
         return modelMatrix;
@@ -318,9 +358,20 @@ public class ModelMesh implements IMesh {
         return BaseMesh.INSTANCED_BASE_PROGRAM;
     }
 
+    @Override
+    public boolean isTransparent() {
+        for (BaseMesh mesh: this.modelMeshes.values()) {
+            if (mesh.isTransparent())
+                return true;
+        }
+
+        return false;
+    }
+
     @Override
     public void makeDirty() {
         this.isDirty = true;
+        this.dirtyVersion++;
     }
 
     @Override
@@ -344,6 +395,19 @@ public class ModelMesh implements IMesh {
         this.makeDirty();
     }
 
+    @Override
+    public void setInstanceBuffer(InstanceBuffer buffer) {
+        // All meshes of the model share the same instances
+        if (this.instanceBuffer == buffer)
+            return;
+        if (this.instanceBuffer == null || buffer == null)
+            this.makeDirty();
+        else
+            for (BaseMesh mesh: this.modelMeshes.values())
+                mesh.setInstanceBuffer(buffer);
+        this.instanceBuffer = buffer;
+    }
+
     @Override
     public void clearInstances() {
         for (VerticesBuffer b: this.instances)
@@ -0,0 +1,133 @@
+package dev.artingl.Engine.renderer.mesh;
+
+import dev.artingl.Engine.EngineException;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.PointerBuffer;
+
+import java.nio.IntBuffer;
+
+/**
+ * List of draws from the {@link GpuHeap} which share one VAO, so they can be submitted with one multi-draw call.
+ * All draws must be either indexed or not indexed.
+ */
+public class MultiDrawCommands {
+
+    private IntBuffer counts, firsts, baseVertices;
+    private PointerBuffer offsets;
+    private int vao, size;
+    private boolean isIndexed;
+
+    public MultiDrawCommands() {
+        this.allocate(64);
+        this.clear();
+    }
+
+    /**
+     * Add the allocation to the list, its offsets are read right away
+     */
+    public void add(GpuHeap.Allocation allocation) {
+        if (this.size == 0) {
+            this.vao = allocation.getVao();
+            this.isIndexed = allocation.isIndexed();
+        }
+        else if (this.vao != allocation.getVao() || this.isIndexed != allocation.isIndexed()) {
+            throw new EngineException("Draws with different VAOs or index types can't be in one multi-draw");
+        }
+
+        if (this.size == this.counts.capacity())
+            this.allocate(this.size * 2);
+
+        if (this.isIndexed) {
+            this.counts.put(this.size, allocation.getIndicesCount());
+            this.offsets.put(this.size, (long) allocation.getFirstIndex() * Integer.BYTES);
+            this.baseVertices.put(this.size, allocation.getBaseVertex());
+        }
+        else {
+            this.counts.put(this.size, allocation.getVerticesCount());
+            this.firsts.put(this.size, allocation.getBaseVertex());
+        }
+
+        this.size++;
+    }
+
+    public void clear() {
+        this.size = 0;
+        this.vao = -1;
+    }
+
+    private void allocate(int capacity) {
+        IntBuffer counts = BufferUtils.createIntBuffer(capacity);
+        IntBuffer firsts = BufferUtils.createIntBuffer(capacity);
+        IntBuffer baseVertices = BufferUtils.createIntBuffer(capacity);
+        PointerBuffer offsets = BufferUtils.createPointerBuffer(capacity);
+
+        // Keep the commands which were already added
+        for (int i = 0; i < this.size; i++) {
+            counts.put(i, this.counts.get(i));
+            firsts.put(i, this.firsts.get(i));
+            baseVertices.put(i, this.baseVertices.get(i));
+            offsets.put(i, this.offsets.get(i));
+        }
+
+        this.counts = counts;
+        this.firsts = firsts;
+        this.baseVertices = baseVertices;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Get the VAO shared by all draws
+     */
+    public int getVao() {
+        return vao;
+    }
+
+    /**
+     * Get amount of draws
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isIndexed() {
+        return isIndexed;
+    }
+
+    /**
+     * Get amount of elements of each draw, valid up to {@link #size()}
+     */
+    public IntBuffer getCounts() {
+        return this.counts.duplicate().limit(this.size);
+    }
+
+    /**
+     * Get first vertex of each draw, used only when the draws are not indexed
+     */
+    public IntBuffer getFirsts() {
+        return this.firsts.duplicate().limit(this.size);
+    }
+
+    /**
+     * Get byte offset of the first index of each draw, used only when the draws are indexed
+     */
+    public PointerBuffer getOffsets() {
+        return this.offsets.duplicate().limit(this.size);
+    }
+
+    /**
+     * Get base vertex of each draw, used only when the draws are indexed
+     */
+    public IntBuffer getBaseVertices() {
+        return this.baseVertices.duplicate().limit(this.size);
+    }
+
+    /**
+     * Get total amount of elements of all draws
+     */
+    public int getTotalCount() {
+        int total = 0;
+        for (int i = 0; i < this.size; i++)
+            total += this.counts.get(i);
+        return total;
+    }
+}
@@ -0,0 +1,11 @@
+package dev.artingl.Engine.renderer.mesh;
+
+/**
+ * Result of the CPU part of mesh baking which waits to be uploaded on the render thread.
+ *
+ * @param mesh   The mesh being baked
+ * @param bytes  Amount of bytes the commit is going to upload
+ * @param commit Uploads the prepared data, must be called on the render thread
+ */
+public record PreparedBake(IMesh mesh, int bytes, Runnable commit) {
+}
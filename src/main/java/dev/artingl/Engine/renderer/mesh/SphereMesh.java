@@ -121,7 +121,7 @@ public class SphereMesh extends BaseMesh {
     }
 
     @Override
-    public void bake() {
+    protected boolean prepare() {
         if (this.updateMesh) {
             int stackCount = currentQuality == Quality.HIGH ? 48 : currentQuality == Quality.MEDIUM ? 28 : 7;
             int sectorCount = currentQuality == Quality.HIGH ? 32 : currentQuality == Quality.MEDIUM ? 25 : 12;
@@ -129,7 +129,7 @@ public class SphereMesh extends BaseMesh {
             this.updateMesh = false;
         }
 
-        super.bake();
+        return true;
     }
 
 //    @Override
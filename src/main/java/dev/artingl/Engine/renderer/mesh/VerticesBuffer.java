@@ -1,23 +1,31 @@
 package dev.artingl.Engine.renderer.mesh;
 
+import dev.artingl.Engine.Engine;
 import dev.artingl.Engine.EngineException;
+import dev.artingl.Engine.misc.BoundingBox;
 import dev.artingl.Engine.misc.Color;
-import org.joml.*;
+import dev.artingl.Engine.renderer.GLState;
+import dev.artingl.Engine.renderer.StreamingBuffer;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Matrix4f;
+import org.joml.Vector2f;
+import org.joml.Vector2i;
+import org.joml.Vector3f;
+import org.joml.Vector3i;
+import org.joml.Vector4f;
+import org.joml.Vector4i;
 import org.lwjgl.BufferUtils;
-import org.lwjgl.system.MemoryStack;
-import org.w3c.dom.Attr;
 
 import java.nio.ByteBuffer;
-import java.nio.FloatBuffer;
-import java.util.ArrayList;
+import java.nio.ByteOrder;
 import java.util.List;
-import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.lwjgl.opengl.GL11C.GL_FLOAT;
 import static org.lwjgl.opengl.GL15C.*;
 import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
 import static org.lwjgl.opengl.GL20C.glEnableVertexAttribArray;
-import static org.lwjgl.opengl.GL30C.glBindVertexArray;
+import static org.lwjgl.opengl.GL30C.GL_HALF_FLOAT;
 import static org.lwjgl.opengl.GL30C.glVertexAttribIPointer;
 import static org.lwjgl.opengl.GL33.glVertexAttribDivisor;
 
@@ -26,93 +34,149 @@ public class VerticesBuffer {
     // -------------
 
     public static VerticesBuffer wrap(Matrix4f v) {
-        VerticesBuffer buffer = new VerticesBuffer(Attribute.MAT4F);
+        VerticesBuffer buffer = new VerticesBuffer(1, Attribute.MAT4F);
         buffer.addAttribute(v);
         return buffer;
     }
 
+    /**
+     * Wrap the affine part of the matrix into a compact 3x4 matrix attribute
+     */
+    public static VerticesBuffer wrapAffine(Matrix4f v) {
+        VerticesBuffer buffer = new VerticesBuffer(1, Attribute.MAT3X4F);
+        buffer.addAffine(v);
+        return buffer;
+    }
+
     public static VerticesBuffer wrap(Vector3f value) {
-            VerticesBuffer buffer = new VerticesBuffer(Attribute.VEC3F);
-            buffer.addAttribute(value);
+        VerticesBuffer buffer = new VerticesBuffer(1, Attribute.VEC3F);
+        buffer.addAttribute(value);
         return buffer;
     }
 
     public static VerticesBuffer wrap(Color value) {
-        VerticesBuffer buffer = new VerticesBuffer(Attribute.VEC4F);
+        VerticesBuffer buffer = new VerticesBuffer(1, Attribute.VEC4F);
         buffer.addAttribute(value);
         return buffer;
     }
 
     public static VerticesBuffer wrap(Vector2f value) {
-        VerticesBuffer buffer = new VerticesBuffer(Attribute.VEC2F);
+        VerticesBuffer buffer = new VerticesBuffer(1, Attribute.VEC2F);
         buffer.addAttribute(value);
         return buffer;
     }
 
     public static VerticesBuffer wrap(Vector3i value) {
-        VerticesBuffer buffer = new VerticesBuffer(Attribute.VEC3I);
+        VerticesBuffer buffer = new VerticesBuffer(1, Attribute.VEC3I);
         buffer.addAttribute(value);
         return buffer;
     }
 
     public static VerticesBuffer wrap(Vector2i value) {
-        VerticesBuffer buffer = new VerticesBuffer(Attribute.VEC2I);
+        VerticesBuffer buffer = new VerticesBuffer(1, Attribute.VEC2I);
         buffer.addAttribute(value);
         return buffer;
     }
 
     public static VerticesBuffer wrap(Vector4i value) {
-        VerticesBuffer buffer = new VerticesBuffer(Attribute.VEC4I);
+        VerticesBuffer buffer = new VerticesBuffer(1, Attribute.VEC4I);
         buffer.addAttribute(value);
         return buffer;
     }
 
     public static VerticesBuffer wrap(Vector4f value) {
-        VerticesBuffer buffer = new VerticesBuffer(Attribute.VEC4F);
+        VerticesBuffer buffer = new VerticesBuffer(1, Attribute.VEC4F);
         buffer.addAttribute(value);
         return buffer;
     }
 
     public static VerticesBuffer wrap(float value) {
-        VerticesBuffer buffer = new VerticesBuffer(Attribute.FLOAT);
+        VerticesBuffer buffer = new VerticesBuffer(1, Attribute.FLOAT);
         buffer.addAttribute(value);
         return buffer;
     }
 
     public static VerticesBuffer wrap(int value) {
-        VerticesBuffer buffer = new VerticesBuffer(Attribute.INT);
+        VerticesBuffer buffer = new VerticesBuffer(1, Attribute.INT);
         buffer.addAttribute(value);
         return buffer;
     }
 
+    /**
+     * Make a new buffer without any vertices. Each call returns a new buffer, so holders can't change each other's data
+     */
+    public static VerticesBuffer empty() {
+        return new VerticesBuffer(0, Attribute.INT);
+    }
+
+    /**
+     * Join vertices of the buffers into one buffer, the buffers must have the same attributes.
+     * Indices are not copied.
+     */
+    public static VerticesBuffer concat(List<VerticesBuffer> buffers) {
+        if (buffers.isEmpty())
+            return empty();
+
+        int size = 0;
+        for (VerticesBuffer buffer : buffers)
+            size += buffer.getBytesSize();
+
+        ByteBuffer data = BufferUtils.createByteBuffer(size);
+        for (VerticesBuffer buffer : buffers)
+            data.put(buffer.getData());
+
+        return new VerticesBuffer(buffers.get(0).getAttributes(), data, new int[0], 0, new AtomicInteger(1));
+    }
+
     // -------------
 
-    public static final VerticesBuffer EMPTY = new VerticesBuffer(Attribute.INT);
+    // How many vertices we reserve space for when the caller doesn't know it in advance
+    private static final int DEFAULT_CAPACITY = 64;
 
-    private final List<Attribute> fieldsDescription;
-    private final List<Object> fields;
-    private final List<Integer> indices;
     private final Attribute[] attributes;
-    private int size;
+    private final int stride;
 
-    public VerticesBuffer(List<Attribute> fieldsDescription, List<Object> fields, List<Integer> indices, Attribute[] attributes, int size) {
-        this.fieldsDescription = fieldsDescription;
-        this.fields = fields;
-        this.indices = indices;
+    // Interleaved vertex data laid out by the attributes, the buffer's position is the write cursor
+    private ByteBuffer data;
+    private int[] indices;
+    private int indicesCount;
+
+    // Amount of buffers sharing the data and indices with this one (including this buffer).
+    // The memory is copied on the first write if anyone else still uses it.
+    private AtomicInteger references;
+
+    // Buffers made by the builder are shared as they are, so they can't be written to. Forks of them can be
+    private boolean readOnly;
+
+    VerticesBuffer(Attribute[] attributes, ByteBuffer data, int[] indices, int indicesCount, AtomicInteger references) {
         this.attributes = attributes;
-        this.size = size;
+        this.stride = calculateStride(attributes);
+        this.data = data;
+        this.indices = indices;
+        this.indicesCount = indicesCount;
+        this.references = references;
     }
 
     public VerticesBuffer(Attribute... attributes) {
-        this.fieldsDescription = new ArrayList<>();
-        this.fields = new ArrayList<>();
-        this.indices = new ArrayList<>();
+        this(DEFAULT_CAPACITY, attributes);
+    }
+
+    /**
+     * @param capacity   Amount of vertices the buffer should reserve memory for
+     * @param attributes Attributes of each vertex
+     */
+    public VerticesBuffer(int capacity, Attribute... attributes) {
         this.attributes = attributes;
+        this.stride = calculateStride(attributes);
+        this.data = BufferUtils.createByteBuffer(Math.max(0, capacity) * this.stride);
+        this.indices = new int[0];
+        this.indicesCount = 0;
+        this.references = new AtomicInteger(1);
     }
 
     @Override
     public String toString() {
-        return "VerticesBuffer{indices=" + indices.size() + ", fields=" + fields.size() + ", attributes=" + this.attributes.length + "}";
+        return "VerticesBuffer{indices=" + indicesCount + ", vertices=" + getVerticesCount() + ", attributes=" + this.attributes.length + "}";
     }
 
     /**
@@ -123,158 +187,345 @@ public class VerticesBuffer {
     }
 
     /**
-     * Get list with the information about each field in the buffer
+     * Get size of one vertex in bytes
      */
-    public final List<Attribute> getFieldsDescription() {
-        return fieldsDescription;
+    public int getStride() {
+        return stride;
     }
 
     /**
-     * Get list of the fields
+     * Get amount of vertices written into the buffer
      */
-    public final List<Object> getFields() {
-        return fields;
+    public int getVerticesCount() {
+        if (this.stride == 0)
+            return 0;
+        return this.data.position() / this.stride;
     }
 
-    public VerticesBuffer addAttribute(Matrix4f value) {
-        synchronized (this.fields) {
-            synchronized (this.fieldsDescription) {
-                this.fieldsDescription.add(Attribute.MAT4F);
-                this.fields.add(value);
-                this.size += Attribute.MAT4F.size;
+    /**
+     * Get amount of indices in the buffer
+     */
+    public int getIndicesCount() {
+        return this.indicesCount;
+    }
+
+    /**
+     * Get vertex index stored at the position
+     */
+    public int getIndex(int i) {
+        synchronized (this) {
+            return this.indices[i];
+        }
+    }
+
+    /**
+     * Get read-only view of the written vertices data
+     */
+    ByteBuffer getData() {
+        synchronized (this) {
+            return this.data.asReadOnlyBuffer().order(ByteOrder.nativeOrder()).flip();
+        }
+    }
+
+    /**
+     * Get copy of the indices
+     */
+    int[] getIndices() {
+        synchronized (this) {
+            int[] indices = new int[this.indicesCount];
+            System.arraycopy(this.indices, 0, indices, 0, this.indicesCount);
+            return indices;
+        }
+    }
+
+    /**
+     * Read a float from the vertex.
+     *
+     * @param vertex The vertex index
+     * @param offset Offset in bytes from the start of the vertex
+     */
+    public float getFloat(int vertex, int offset) {
+        synchronized (this) {
+            return this.data.getFloat(vertex * this.stride + offset);
+        }
+    }
+
+    /**
+     * Read a 3-component float vector from the vertex.
+     *
+     * @param vertex The vertex index
+     * @param offset Offset in bytes from the start of the vertex
+     * @param dest   Where to store the result
+     */
+    public Vector3f getVector3f(int vertex, int offset, Vector3f dest) {
+        synchronized (this) {
+            int ptr = vertex * this.stride + offset;
+            return dest.set(this.data.getFloat(ptr), this.data.getFloat(ptr + 4), this.data.getFloat(ptr + 8));
+        }
+    }
+
+    /**
+     * Calculate bounds of the vertices positions, which must be the first attribute (in {@link Attribute#VEC3F} or {@link Attribute#VEC3H} format).
+     *
+     * @return The bounds, or null if the buffer has no positions
+     */
+    @Nullable
+    public BoundingBox calculateBounds() {
+        if (this.attributes.length == 0 || (this.attributes[0] != Attribute.VEC3F && this.attributes[0] != Attribute.VEC3H))
+            return null;
+
+        synchronized (this) {
+            BoundingBox bounds = new BoundingBox();
+            boolean isHalf = this.attributes[0] == Attribute.VEC3H;
+            int count = this.getVerticesCount();
+            for (int i = 0; i < count; i++) {
+                int ptr = i * this.stride;
+                if (isHalf)
+                    bounds.add(fromHalf(this.data.getShort(ptr)), fromHalf(this.data.getShort(ptr + 2)), fromHalf(this.data.getShort(ptr + 4)));
+                else
+                    bounds.add(this.data.getFloat(ptr), this.data.getFloat(ptr + 4), this.data.getFloat(ptr + 8));
             }
+
+            return bounds.isEmpty() ? null : bounds;
+        }
+    }
+
+    public VerticesBuffer addAttribute(Matrix4f value) {
+        synchronized (this) {
+            reserve(Attribute.MAT4F.size);
+            value.get(this.data);
+            this.data.position(this.data.position() + Attribute.MAT4F.size);
         }
 
         return this;
     }
 
     public VerticesBuffer addAttribute(Vector3f value) {
-        synchronized (this.fields) {
-            synchronized (this.fieldsDescription) {
-                this.fieldsDescription.add(Attribute.VEC3F);
-                this.fields.add(value);
-                this.size += Attribute.VEC3F.size;
-            }
+        return put(value.x, value.y, value.z);
+    }
+
+    public VerticesBuffer addAttribute(Color value) {
+        return put(value.red() / 255.f, value.green() / 255.f, value.blue() / 255.f, value.alpha() / 255.f);
+    }
+
+    public VerticesBuffer addAttribute(Vector2f value) {
+        return put(value.x, value.y);
+    }
+
+    public VerticesBuffer addAttribute(Vector3i value) {
+        return putInt(value.x, value.y, value.z);
+    }
+
+    public VerticesBuffer addAttribute(Vector2i value) {
+        return putInt(value.x, value.y);
+    }
+
+    public VerticesBuffer addAttribute(Vector4i value) {
+        return putInt(value.x, value.y, value.z, value.w);
+    }
+
+    public VerticesBuffer addAttribute(Vector4f value) {
+        return put(value.x, value.y, value.z, value.w);
+    }
+
+    public VerticesBuffer addAttribute(float value) {
+        return put(value);
+    }
+
+    public VerticesBuffer addAttribute(int value) {
+        return putInt(value);
+    }
+
+    public VerticesBuffer addAttribute(Object value, Attribute type) {
+        switch (type) {
+            case INT -> addAttribute((int) (Integer) value);
+            case FLOAT -> addAttribute((float) (Float) value);
+            case VEC2F -> addAttribute((Vector2f) value);
+            case VEC3F -> addAttribute((Vector3f) value);
+            case VEC4F -> addAttribute((Vector4f) value);
+            case VEC2I -> addAttribute((Vector2i) value);
+            case VEC3I -> addAttribute((Vector3i) value);
+            case VEC4I -> addAttribute((Vector4i) value);
+            case MAT4F -> addAttribute((Matrix4f) value);
+            case VEC3H -> putHalf(((Vector3f) value).x, ((Vector3f) value).y, ((Vector3f) value).z);
+            case NORMAL_OCT -> putNormal(((Vector3f) value).x, ((Vector3f) value).y, ((Vector3f) value).z);
+            case COLOR_RGBA8 -> putColor((Color) value);
+            case UV16 -> putUv(((Vector2f) value).x, ((Vector2f) value).y);
+            case MAT3X4F -> addAffine((Matrix4f) value);
+            case VEC2S -> putShort(((Vector2i) value).x, ((Vector2i) value).y);
+            default -> throw new EngineException("Unsupported attribute type " + type);
         }
 
         return this;
     }
 
-    public VerticesBuffer addAttribute(Color value) {
-        synchronized (this.fields) {
-            synchronized (this.fieldsDescription) {
-                this.fieldsDescription.add(Attribute.VEC4F);
-                this.fields.add(value.asVector4f());
-                this.size += Attribute.VEC4F.size;
-            }
+    public VerticesBuffer addColor3f(Color value) {
+        return put(value.red() / 255.f, value.green() / 255.f, value.blue() / 255.f);
+    }
+
+    /**
+     * Write the affine part of the matrix as {@link Attribute#MAT3X4F}
+     */
+    public VerticesBuffer addAffine(Matrix4f value) {
+        synchronized (this) {
+            reserve(Attribute.MAT3X4F.size);
+            putAffine(this.data, value);
         }
 
         return this;
     }
 
-    public VerticesBuffer addAttribute(Vector2f value) {
-        synchronized (this.fields) {
-            synchronized (this.fieldsDescription) {
-                this.fieldsDescription.add(Attribute.VEC2F);
-                this.fields.add(value);
-                this.size += Attribute.VEC2F.size;
-            }
+    /**
+     * Write a position as {@link Attribute#VEC3H}
+     */
+    public VerticesBuffer putHalf(float x, float y, float z) {
+        synchronized (this) {
+            reserve(Attribute.VEC3H.size);
+            this.data.putShort(toHalf(x)).putShort(toHalf(y)).putShort(toHalf(z)).putShort((short) 0);
         }
 
         return this;
     }
 
-    public VerticesBuffer addAttribute(Vector3i value) {
-        synchronized (this.fields) {
-            synchronized (this.fieldsDescription) {
-                this.fieldsDescription.add(Attribute.VEC3I);
-                this.fields.add(value);
-                this.size += Attribute.VEC3I.size;
-            }
+    /**
+     * Write a unit vector as {@link Attribute#NORMAL_OCT}
+     */
+    public VerticesBuffer putNormal(float x, float y, float z) {
+        synchronized (this) {
+            reserve(Attribute.NORMAL_OCT.size);
+            this.data.putInt(toOctahedral(x, y, z));
         }
 
         return this;
     }
 
-    public VerticesBuffer addAttribute(Vector2i value) {
-        synchronized (this.fields) {
-            synchronized (this.fieldsDescription) {
-                this.fieldsDescription.add(Attribute.VEC2I);
-                this.fields.add(value);
-                this.size += Attribute.VEC2I.size;
-            }
+    /**
+     * Write a color as {@link Attribute#COLOR_RGBA8}
+     */
+    public VerticesBuffer putColor(Color value) {
+        synchronized (this) {
+            reserve(Attribute.COLOR_RGBA8.size);
+            this.data.put((byte) value.red()).put((byte) value.green()).put((byte) value.blue()).put((byte) value.alpha());
         }
 
         return this;
     }
 
-    public VerticesBuffer addAttribute(Vector4i value) {
-        synchronized (this.fields) {
-            synchronized (this.fieldsDescription) {
-                this.fieldsDescription.add(Attribute.VEC4I);
-                this.fields.add(value);
-                this.size += Attribute.VEC4I.size;
-            }
+    /**
+     * Write texture coordinates as {@link Attribute#UV16}. The values are clamped to [0; 1] range
+     */
+    public VerticesBuffer putUv(float u, float v) {
+        synchronized (this) {
+            reserve(Attribute.UV16.size);
+            this.data.putShort(toUnorm16(u)).putShort(toUnorm16(v));
         }
 
         return this;
     }
 
-    public VerticesBuffer addAttribute(Vector4f value) {
-        synchronized (this.fields) {
-            synchronized (this.fieldsDescription) {
-                this.fieldsDescription.add(Attribute.VEC4F);
-                this.fields.add(value);
-                this.size += Attribute.VEC4F.size;
-            }
+    /**
+     * Write a 2-component short attribute as {@link Attribute#VEC2S}
+     */
+    public VerticesBuffer putShort(int x, int y) {
+        synchronized (this) {
+            reserve(Attribute.VEC2S.size);
+            this.data.putShort((short) x).putShort((short) y);
         }
 
         return this;
     }
 
-    public VerticesBuffer addAttribute(float value) {
-        synchronized (this.fields) {
-            synchronized (this.fieldsDescription) {
-                this.fieldsDescription.add(Attribute.FLOAT);
-                this.fields.add(value);
-                this.size += Attribute.FLOAT.size;
-            }
+    /**
+     * Write a float attribute into the buffer
+     */
+    public VerticesBuffer put(float x) {
+        synchronized (this) {
+            reserve(4);
+            this.data.putFloat(x);
         }
 
         return this;
     }
 
-    public VerticesBuffer addAttribute(int value) {
-        synchronized (this.fields) {
-            synchronized (this.fieldsDescription) {
-                this.fieldsDescription.add(Attribute.INT);
-                this.fields.add(value);
-                this.size += Attribute.INT.size;
-            }
+    /**
+     * Write a 2-component float attribute into the buffer
+     */
+    public VerticesBuffer put(float x, float y) {
+        synchronized (this) {
+            reserve(8);
+            this.data.putFloat(x).putFloat(y);
         }
 
         return this;
     }
 
-    public VerticesBuffer addAttribute(Object value, Attribute type) {
-        synchronized (this.fields) {
-            synchronized (this.fieldsDescription) {
-                this.fieldsDescription.add(type);
-                this.fields.add(value);
-                this.size += type.size;
-            }
+    /**
+     * Write a 3-component float attribute into the buffer
+     */
+    public VerticesBuffer put(float x, float y, float z) {
+        synchronized (this) {
+            reserve(12);
+            this.data.putFloat(x).putFloat(y).putFloat(z);
         }
 
         return this;
     }
 
-    public VerticesBuffer addColor3f(Color value) {
-        synchronized (this.fields) {
-            synchronized (this.fieldsDescription) {
-                this.fieldsDescription.add(Attribute.VEC3F);
-                this.fields.add(value.asVector3f());
-                this.size += Attribute.VEC3F.size;
-            }
+    /**
+     * Write a 4-component float attribute into the buffer
+     */
+    public VerticesBuffer put(float x, float y, float z, float w) {
+        synchronized (this) {
+            reserve(16);
+            this.data.putFloat(x).putFloat(y).putFloat(z).putFloat(w);
+        }
+
+        return this;
+    }
+
+    /**
+     * Write an integer attribute into the buffer
+     */
+    public VerticesBuffer putInt(int x) {
+        synchronized (this) {
+            reserve(4);
+            this.data.putInt(x);
+        }
+
+        return this;
+    }
+
+    /**
+     * Write a 2-component integer attribute into the buffer
+     */
+    public VerticesBuffer putInt(int x, int y) {
+        synchronized (this) {
+            reserve(8);
+            this.data.putInt(x).putInt(y);
+        }
+
+        return this;
+    }
+
+    /**
+     * Write a 3-component integer attribute into the buffer
+     */
+    public VerticesBuffer putInt(int x, int y, int z) {
+        synchronized (this) {
+            reserve(12);
+            this.data.putInt(x).putInt(y).putInt(z);
+        }
+
+        return this;
+    }
+
+    /**
+     * Write a 4-component integer attribute into the buffer
+     */
+    public VerticesBuffer putInt(int x, int y, int z, int w) {
+        synchronized (this) {
+            reserve(16);
+            this.data.putInt(x).putInt(y).putInt(z).putInt(w);
         }
 
         return this;
@@ -286,8 +537,13 @@ public class VerticesBuffer {
      * @param indices Indices to be added
      */
     public void addIndices(int... indices) {
-        for (int i : indices)
-            this.indices.add(i);
+        synchronized (this) {
+            checkWritable();
+            detach();
+            this.indices = reserve(this.indices, this.indicesCount, indices.length);
+            System.arraycopy(indices, 0, this.indices, this.indicesCount, indices.length);
+            this.indicesCount += indices.length;
+        }
     }
 
     /**
@@ -314,191 +570,494 @@ public class VerticesBuffer {
      * @return Either amount of vertices if no indices provided or amount if indices to be rendered
      */
     public int bake(int vao, int vbo, int ebo, int indexOffset) {
-        return synchronizedFields(() -> {
-            // Put all fields to the buffer
-            ByteBuffer buffer = BufferUtils.createByteBuffer(getBytesSize());
-            for (int i = 0; i < this.fields.size(); i++) {
-                Attribute attribute = this.fieldsDescription.get(i);
-                Object value = this.fields.get(i);
-
-                switch (attribute) {
-                    case INT -> buffer.putInt((Integer) value);
-                    case FLOAT -> buffer.putFloat((Float) value);
-                    case VEC2F -> {
-                        buffer.putFloat(((Vector2f) value).x);
-                        buffer.putFloat(((Vector2f) value).y);
-                    }
-                    case VEC3F -> {
-                        buffer.putFloat(((Vector3f) value).x);
-                        buffer.putFloat(((Vector3f) value).y);
-                        buffer.putFloat(((Vector3f) value).z);
-                    }
-                    case VEC4F -> {
-                        buffer.putFloat(((Vector4f) value).x);
-                        buffer.putFloat(((Vector4f) value).y);
-                        buffer.putFloat(((Vector4f) value).z);
-                        buffer.putFloat(((Vector4f) value).w);
-                    }
-                    case VEC2I -> {
-                        buffer.putInt(((Vector2i) value).x);
-                        buffer.putInt(((Vector2i) value).y);
-                    }
-                    case VEC3I -> {
-                        buffer.putInt(((Vector3i) value).x);
-                        buffer.putInt(((Vector3i) value).y);
-                        buffer.putInt(((Vector3i) value).z);
-                    }
-                    case VEC4I -> {
-                        buffer.putInt(((Vector4i) value).x);
-                        buffer.putInt(((Vector4i) value).y);
-                        buffer.putInt(((Vector4i) value).z);
-                        buffer.putInt(((Vector4i) value).w);
-                    }
-                    case MAT4F -> {
-                        buffer.putFloat(((Matrix4f) value).m00());
-                        buffer.putFloat(((Matrix4f) value).m01());
-                        buffer.putFloat(((Matrix4f) value).m02());
-                        buffer.putFloat(((Matrix4f) value).m03());
-                        buffer.putFloat(((Matrix4f) value).m10());
-                        buffer.putFloat(((Matrix4f) value).m11());
-                        buffer.putFloat(((Matrix4f) value).m12());
-                        buffer.putFloat(((Matrix4f) value).m13());
-                        buffer.putFloat(((Matrix4f) value).m20());
-                        buffer.putFloat(((Matrix4f) value).m21());
-                        buffer.putFloat(((Matrix4f) value).m22());
-                        buffer.putFloat(((Matrix4f) value).m23());
-                        buffer.putFloat(((Matrix4f) value).m30());
-                        buffer.putFloat(((Matrix4f) value).m31());
-                        buffer.putFloat(((Matrix4f) value).m32());
-                        buffer.putFloat(((Matrix4f) value).m33());
-                    }
-                }
-            }
-            buffer.flip();
+        synchronized (this) {
+            // The data is already laid out the way GL expects it, so just send the written part
+            ByteBuffer buffer = this.data.duplicate().flip();
 
+            GLState state = Engine.getInstance().getRenderer().getState();
             if (vao != -1)
-                glBindVertexArray(vao);
+                state.bindVertexArray(vao);
 
             // Send data to the GPU
-            glBindBuffer(GL_ARRAY_BUFFER, vbo);
+            state.bindBuffer(GL_ARRAY_BUFFER, vbo);
             glBufferData(GL_ARRAY_BUFFER, buffer, GL_STATIC_DRAW);
 
             // Send indices to the GPU if we have them
             if (hasIndices() && ebo != -1) {
-                int[] indices = new int[this.indices.size()];
-                for (int i = 0; i < indices.length; i++)
-                    indices[i] = this.indices.get(i);
-                glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, ebo);
+                int[] indices = new int[this.indicesCount];
+                System.arraycopy(this.indices, 0, indices, 0, this.indicesCount);
+                state.bindBuffer(GL_ELEMENT_ARRAY_BUFFER, ebo);
                 glBufferData(GL_ELEMENT_ARRAY_BUFFER, indices, GL_STATIC_DRAW);
             }
 
-            // Calculate the stride
-            int stride = 0;
-            for (Attribute attribute : this.attributes)
-                stride += attribute.size;
-
             // Tell OpenGL types of our attributes
-            int ptr = 0, index = indexOffset;
-            for (Attribute attribute : this.attributes) {
-                if (attribute.isMatrix) {
-                    int i0 = index++, i1 = index++, i2 = index++, i3 = index++;
-                    glVertexAttribPointer(i0, 4, GL_FLOAT, false, stride, ptr + 0);
-                    glVertexAttribPointer(i1, 4, GL_FLOAT, false, stride, ptr + 16);
-                    glVertexAttribPointer(i2, 4, GL_FLOAT, false, stride, ptr + 32);
-                    glVertexAttribPointer(i3, 4, GL_FLOAT, false, stride, ptr + 48);
-                    glEnableVertexAttribArray(i0);
-                    glEnableVertexAttribArray(i1);
-                    glEnableVertexAttribArray(i2);
-                    glEnableVertexAttribArray(i3);
-                    glVertexAttribDivisor(i0, 1);
-                    glVertexAttribDivisor(i1, 1);
-                    glVertexAttribDivisor(i2, 1);
-                    glVertexAttribDivisor(i3, 1);
-                }
-                else {
-                    if (attribute.type == GL_FLOAT) {
-                        glVertexAttribPointer(index, attribute.size / 4, GL_FLOAT, false, stride, ptr);
-                    } else {
-                        glVertexAttribIPointer(index, attribute.size / 4, attribute.type, stride, ptr);
-                    }
-                    glEnableVertexAttribArray(index++);
-                }
-                ptr += attribute.size;
-            }
+            setupAttributes(0, indexOffset);
 
-            buffer.clear();
             if (hasIndices() && ebo != -1)
-                return this.indices.size();
+                return this.indicesCount;
+
+            return getVerticesCount();
+        }
+    }
 
-            return this.fields.size() / this.attributes.length;
-        });
+    /**
+     * Writes vertices to the streaming buffer and sets up attributes for them in the VAO.
+     * The vertices are valid only until the end of the frame. Indices are not streamed.
+     *
+     * @param vao    The VAO buffer
+     * @param buffer The streaming buffer
+     *
+     * @return Amount of vertices to be rendered, or -1 if the streaming buffer is out of space
+     */
+    public int stream(int vao, StreamingBuffer buffer) {
+        synchronized (this) {
+            int offset = buffer.write(this.data.duplicate().flip());
+            if (offset < 0)
+                return -1;
+
+            GLState state = Engine.getInstance().getRenderer().getState();
+            state.bindVertexArray(vao);
+            state.bindBuffer(GL_ARRAY_BUFFER, buffer.getBuffer());
+            setupAttributes(offset, 0);
+
+            return getVerticesCount();
+        }
+    }
+
+    private void setupAttributes(int baseOffset, int indexOffset) {
+        setupAttributes(this.attributes, this.stride, baseOffset, indexOffset);
+    }
+
+    /**
+     * Set up attributes of the layout in the currently bound VAO for the buffer bound to GL_ARRAY_BUFFER.
+     */
+    static void setupAttributes(Attribute[] attributes, int stride, int baseOffset, int indexOffset) {
+        int ptr = baseOffset, index = indexOffset;
+        for (Attribute attribute : attributes) {
+            if (attribute.isMatrix) {
+                // Matrices take one location per column and are always per instance
+                for (int i = 0; i < attribute.columns; i++) {
+                    glVertexAttribPointer(index, attribute.components, GL_FLOAT, false, stride, ptr + i * 16);
+                    glEnableVertexAttribArray(index);
+                    glVertexAttribDivisor(index++, 1);
+                }
+            }
+            else {
+                if (attribute.type == GL_INT) {
+                    glVertexAttribIPointer(index, attribute.components, attribute.type, stride, ptr);
+                } else {
+                    glVertexAttribPointer(index, attribute.components, attribute.type, attribute.normalized, stride, ptr);
+                }
+                glEnableVertexAttribArray(index++);
+            }
+            ptr += attribute.size;
+        }
     }
 
     public void cleanup() {
-        this.fieldsDescription.clear();
-        this.fields.clear();
-        this.indices.clear();
-        this.size = 0;
+        synchronized (this) {
+            // Release our reference and drop the memory, so it can be collected once no fork uses it.
+            // The buffer will grow again if anything is written to it
+            this.references.decrementAndGet();
+            this.references = new AtomicInteger(1);
+            this.data = BufferUtils.createByteBuffer(0);
+            this.indices = new int[0];
+            this.indicesCount = 0;
+        }
     }
 
     public int getBytesSize() {
-        return this.size;
+        return this.data.position();
     }
 
     /**
      * Tells if the buffer has indices.
      */
     public boolean hasIndices() {
-        return !this.indices.isEmpty();
+        return this.indicesCount != 0;
+    }
+
+    /**
+     * Tells if the buffer was made by {@link Builder} and can't be written to.
+     */
+    public boolean isReadOnly() {
+        return this.readOnly;
     }
 
     /**
-     * Fork (copy) this buffer into a new one.
+     * Fork (copy) this buffer into a new one, which can be written to even if this one is read-only.
+     * The data is shared between the buffers and copied only when one of them is written to.
      */
     public VerticesBuffer fork() {
-        return synchronizedFields(() ->
-                new VerticesBuffer(new ArrayList<>(fieldsDescription), new ArrayList<>(fields), new ArrayList<>(indices), attributes, size));
-    }
-
-    private <T> T synchronizedFields(Callable<T> handler) {
-        // TODO: messy code...
-        synchronized (fieldsDescription) {
-            synchronized (fields) {
-                synchronized (indices) {
-                    synchronized (attributes) {
-                        T result;
-                        try {
-                            result = handler.call();
-                        } catch (Exception e) {
-                            throw new EngineException(e);
-                        }
-
-                        return result;
-                    }
-                }
-            }
+        synchronized (this) {
+            this.references.incrementAndGet();
+            ByteBuffer data = this.data.duplicate().order(ByteOrder.nativeOrder());
+            return new VerticesBuffer(attributes, data, this.indices, this.indicesCount, this.references);
+        }
+    }
+
+    /**
+     * Make sure the buffer can fit the amount of bytes, growing it if needed.
+     */
+    private void reserve(int bytes) {
+        checkWritable();
+        detach();
+        this.data = reserve(this.data, bytes, this.stride);
+    }
+
+    private void checkWritable() {
+        if (this.readOnly)
+            throw new EngineException("The vertices buffer is read-only, fork it to make changes");
+    }
+
+    /**
+     * Take a private copy of the data if it is shared with other forks.
+     */
+    private void detach() {
+        if (this.references.get() <= 1)
+            return;
+
+        ByteBuffer data = BufferUtils.createByteBuffer(this.data.capacity());
+        data.put(this.data.duplicate().flip());
+
+        int[] indices = new int[this.indices.length];
+        System.arraycopy(this.indices, 0, indices, 0, this.indicesCount);
+
+        this.data = data;
+        this.indices = indices;
+        this.references.decrementAndGet();
+        this.references = new AtomicInteger(1);
+    }
+
+    private static ByteBuffer reserve(ByteBuffer data, int bytes, int stride) {
+        if (data.remaining() >= bytes)
+            return data;
+
+        int capacity = Math.max(data.capacity() * 2, data.position() + Math.max(bytes, stride * DEFAULT_CAPACITY));
+        ByteBuffer grown = BufferUtils.createByteBuffer(capacity);
+        grown.put(data.flip());
+        return grown;
+    }
+
+    private static int[] reserve(int[] indices, int count, int amount) {
+        if (count + amount <= indices.length)
+            return indices;
+
+        int[] grown = new int[Math.max(indices.length * 2, count + amount)];
+        System.arraycopy(indices, 0, grown, 0, count);
+        return grown;
+    }
+
+    static void putAffine(ByteBuffer data, Matrix4f value) {
+        // Store rows of the upper 3x4 part, so the shader can transform with 3 dot products
+        data.putFloat(value.m00()).putFloat(value.m10()).putFloat(value.m20()).putFloat(value.m30());
+        data.putFloat(value.m01()).putFloat(value.m11()).putFloat(value.m21()).putFloat(value.m31());
+        data.putFloat(value.m02()).putFloat(value.m12()).putFloat(value.m22()).putFloat(value.m32());
+    }
+
+    /**
+     * Convert float to IEEE 754 half-precision float bits (rounded to nearest).
+     * Finite values out of the half range are clamped to the largest half instead of becoming infinity.
+     */
+    static short toHalf(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int abs = bits & 0x7fffffff;
+
+        // Infinity or NaN, keep NaN a quiet NaN even if its payload doesn't fit into half
+        if (abs >= 0x7f800000)
+            return (short) (sign | (abs == 0x7f800000 ? 0x7c00 : 0x7e00));
+
+        // Too large for half
+        int rounded = abs + 0x1000;
+        if (rounded >= 0x47800000)
+            return (short) (sign | 0x7bff);
+
+        // Normal half
+        if (rounded >= 0x38800000)
+            return (short) (sign | ((rounded - 0x38000000) >>> 13));
+
+        // Too small, even for subnormal half
+        if (rounded < 0x33000000)
+            return (short) sign;
+
+        // Subnormal half
+        int exponent = abs >>> 23;
+        return (short) (sign | ((((bits & 0x7fffff) | 0x800000) + (0x800000 >>> (exponent - 102))) >>> (126 - exponent)));
+    }
+
+    /**
+     * Convert IEEE 754 half-precision float bits to float
+     */
+    static float fromHalf(short value) {
+        int sign = (value & 0x8000) << 16;
+        int exponent = (value >>> 10) & 0x1f;
+        int mantissa = value & 0x3ff;
+
+        // Infinity or NaN
+        if (exponent == 0x1f)
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+
+        // Zero or subnormal half, which is normal as float
+        if (exponent == 0) {
+            float abs = mantissa / 1024f / 16384f;
+            return sign != 0 ? -abs : abs;
+        }
+
+        return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+    }
+
+    /**
+     * Encode unit vector into 2 normalized shorts using octahedral mapping.
+     * The shader decodes it as: n = vec3(e, 1 - |e.x| - |e.y|); if (n.z < 0) n.xy = (1 - |n.yx|) * sign(n.xy)
+     */
+    static int toOctahedral(float x, float y, float z) {
+        float length = Math.abs(x) + Math.abs(y) + Math.abs(z);
+        if (length == 0)
+            return 0;
+
+        float ox = x / length;
+        float oy = y / length;
+        if (z < 0) {
+            float tx = (1 - Math.abs(oy)) * (ox >= 0 ? 1 : -1);
+            float ty = (1 - Math.abs(ox)) * (oy >= 0 ? 1 : -1);
+            ox = tx;
+            oy = ty;
+        }
+
+        int ex = Math.round(Math.max(-1, Math.min(1, ox)) * 32767);
+        int ey = Math.round(Math.max(-1, Math.min(1, oy)) * 32767);
+
+        // Keep the memory order (x, y) independent of the buffer byte order
+        return ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN
+                ? (ex & 0xffff) | (ey << 16)
+                : (ey & 0xffff) | (ex << 16);
+    }
+
+    static short toUnorm16(float value) {
+        return (short) Math.round(Math.max(0, Math.min(1, value)) * 65535);
+    }
+
+    static int calculateStride(Attribute[] attributes) {
+        int stride = 0;
+        for (Attribute attribute : attributes)
+            stride += attribute.size;
+        return stride;
+    }
+
+    /**
+     * Builds vertices buffer without any locking. The builder must be used only by one thread,
+     * after {@link #build()} is called the data is handed over to the resulting buffer and the builder can't be used anymore.
+     */
+    public static class Builder {
+        private final Attribute[] attributes;
+        private final int stride;
+
+        private ByteBuffer data;
+        private int[] indices;
+        private int indicesCount;
+
+        public Builder(Attribute... attributes) {
+            this(DEFAULT_CAPACITY, attributes);
+        }
+
+        /**
+         * @param capacity   Amount of vertices the builder should reserve memory for
+         * @param attributes Attributes of each vertex
+         */
+        public Builder(int capacity, Attribute... attributes) {
+            this.attributes = attributes;
+            this.stride = calculateStride(attributes);
+            this.data = BufferUtils.createByteBuffer(Math.max(0, capacity) * this.stride);
+            this.indices = new int[0];
+            this.indicesCount = 0;
+        }
+
+        public Builder addAttribute(Matrix4f value) {
+            this.data = reserve(this.data, Attribute.MAT4F.size, this.stride);
+            value.get(this.data);
+            this.data.position(this.data.position() + Attribute.MAT4F.size);
+            return this;
+        }
+
+        public Builder addAttribute(Vector3f value) {
+            return put(value.x, value.y, value.z);
+        }
+
+        public Builder addAttribute(Vector2f value) {
+            return put(value.x, value.y);
+        }
+
+        public Builder addColor3f(Color value) {
+            return put(value.red() / 255.f, value.green() / 255.f, value.blue() / 255.f);
+        }
+
+        public Builder addAffine(Matrix4f value) {
+            this.data = reserve(this.data, Attribute.MAT3X4F.size, this.stride);
+            putAffine(this.data, value);
+            return this;
+        }
+
+        public Builder putHalf(float x, float y, float z) {
+            this.data = reserve(this.data, Attribute.VEC3H.size, this.stride);
+            this.data.putShort(toHalf(x)).putShort(toHalf(y)).putShort(toHalf(z)).putShort((short) 0);
+            return this;
+        }
+
+        public Builder putHalf(Vector3f value) {
+            return putHalf(value.x, value.y, value.z);
+        }
+
+        public Builder putNormal(Vector3f value) {
+            return putNormal(value.x, value.y, value.z);
+        }
+
+        public Builder putNormal(float x, float y, float z) {
+            this.data = reserve(this.data, Attribute.NORMAL_OCT.size, this.stride);
+            this.data.putInt(toOctahedral(x, y, z));
+            return this;
+        }
+
+        public Builder putColor(Color value) {
+            this.data = reserve(this.data, Attribute.COLOR_RGBA8.size, this.stride);
+            this.data.put((byte) value.red()).put((byte) value.green()).put((byte) value.blue()).put((byte) value.alpha());
+            return this;
+        }
+
+        public Builder putUv(float u, float v) {
+            this.data = reserve(this.data, Attribute.UV16.size, this.stride);
+            this.data.putShort(toUnorm16(u)).putShort(toUnorm16(v));
+            return this;
+        }
+
+        public Builder putShort(int x, int y) {
+            this.data = reserve(this.data, Attribute.VEC2S.size, this.stride);
+            this.data.putShort((short) x).putShort((short) y);
+            return this;
+        }
+
+        public Builder put(float x) {
+            this.data = reserve(this.data, 4, this.stride);
+            this.data.putFloat(x);
+            return this;
+        }
+
+        public Builder put(float x, float y) {
+            this.data = reserve(this.data, 8, this.stride);
+            this.data.putFloat(x).putFloat(y);
+            return this;
+        }
+
+        public Builder put(float x, float y, float z) {
+            this.data = reserve(this.data, 12, this.stride);
+            this.data.putFloat(x).putFloat(y).putFloat(z);
+            return this;
+        }
+
+        public Builder put(float x, float y, float z, float w) {
+            this.data = reserve(this.data, 16, this.stride);
+            this.data.putFloat(x).putFloat(y).putFloat(z).putFloat(w);
+            return this;
+        }
+
+        public Builder putInt(int x) {
+            this.data = reserve(this.data, 4, this.stride);
+            this.data.putInt(x);
+            return this;
+        }
+
+        public Builder putInt(int x, int y) {
+            this.data = reserve(this.data, 8, this.stride);
+            this.data.putInt(x).putInt(y);
+            return this;
+        }
+
+        public Builder putInt(int x, int y, int z) {
+            this.data = reserve(this.data, 12, this.stride);
+            this.data.putInt(x).putInt(y).putInt(z);
+            return this;
+        }
+
+        public Builder putInt(int x, int y, int z, int w) {
+            this.data = reserve(this.data, 16, this.stride);
+            this.data.putInt(x).putInt(y).putInt(z).putInt(w);
+            return this;
+        }
+
+        public Builder addIndices(int... indices) {
+            this.indices = reserve(this.indices, this.indicesCount, indices.length);
+            System.arraycopy(indices, 0, this.indices, this.indicesCount, indices.length);
+            this.indicesCount += indices.length;
+            return this;
+        }
+
+        /**
+         * Get amount of vertices written into the builder
+         */
+        public int getVerticesCount() {
+            if (this.stride == 0)
+                return 0;
+            return this.data.position() / this.stride;
+        }
+
+        /**
+         * Hand over the written data to a new read-only vertices buffer.
+         */
+        public VerticesBuffer build() {
+            if (this.data == null)
+                throw new EngineException("The vertices builder was already used");
+
+            VerticesBuffer buffer = new VerticesBuffer(this.attributes, this.data, this.indices, this.indicesCount, new AtomicInteger(1));
+            buffer.readOnly = true;
+            this.data = null;
+            this.indices = null;
+            return buffer;
         }
     }
 
     public enum Attribute {
-        FLOAT(4, GL_FLOAT, false),
-        INT(4, GL_INT, false),
-        VEC3F(12, GL_FLOAT, false),
-        VEC2F(8, GL_FLOAT, false),
-        VEC2I(8, GL_INT, false),
-        VEC3I(12, GL_INT, false),
-        VEC4F(16, GL_FLOAT, false),
-        VEC4I(16, GL_INT, false),
-        MAT4F(64, GL_FLOAT, true);
+        FLOAT(4, 1, GL_FLOAT, false, 0),
+        INT(4, 1, GL_INT, false, 0),
+        VEC3F(12, 3, GL_FLOAT, false, 0),
+        VEC2F(8, 2, GL_FLOAT, false, 0),
+        VEC2I(8, 2, GL_INT, false, 0),
+        VEC3I(12, 3, GL_INT, false, 0),
+        VEC4F(16, 4, GL_FLOAT, false, 0),
+        VEC4I(16, 4, GL_INT, false, 0),
+        MAT4F(64, 4, GL_FLOAT, false, 4),
+
+        // Half-float vector, padded to 8 bytes to keep the next attribute aligned
+        VEC3H(8, 3, GL_HALF_FLOAT, false, 0),
+
+        // Octahedral-encoded unit vector in 2 normalized shorts, must be decoded in the shader
+        NORMAL_OCT(4, 2, GL_SHORT, true, 0),
+
+        // RGBA color in normalized unsigned bytes
+        COLOR_RGBA8(4, 4, GL_UNSIGNED_BYTE, true, 0),
+
+        // Texture coordinates in [0; 1] range in normalized unsigned shorts
+        UV16(4, 2, GL_UNSIGNED_SHORT, true, 0),
+
+        // Affine transformation stored as 3 rows of the matrix
+        MAT3X4F(48, 4, GL_FLOAT, false, 3),
+
+        // Integer vector in 2 shorts, converted to float in the shader
+        VEC2S(4, 2, GL_SHORT, false, 0);
 
         public final int size;
+        public final int components;
         public final int type;
+        public final boolean normalized;
         public final boolean isMatrix;
+        public final int columns;
 
-        Attribute(int size, int type, boolean isMatrix) {
+        Attribute(int size, int components, int type, boolean normalized, int columns) {
             this.size = size;
+            this.components = components;
             this.type = type;
-            this.isMatrix = isMatrix;
+            this.normalized = normalized;
+            this.isMatrix = columns != 0;
+            this.columns = columns;
         }
     }
 }
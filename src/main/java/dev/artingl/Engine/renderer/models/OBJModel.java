@@ -5,12 +5,11 @@ import dev.artingl.Engine.Engine;
 import dev.artingl.Engine.debug.LogLevel;
 import dev.artingl.Engine.debug.Logger;
 import dev.artingl.Engine.renderer.Quality;
+import dev.artingl.Engine.renderer.mesh.MeshOptimizer;
 import dev.artingl.Engine.renderer.mesh.VerticesBuffer;
 import dev.artingl.Engine.resources.Resource;
 import dev.artingl.Engine.resources.texture.Texture;
 import dev.artingl.Engine.resources.texture.TextureManager;
-import org.joml.Vector2f;
-import org.joml.Vector3f;
 
 import java.io.IOException;
 import java.util.Map;
@@ -56,33 +55,36 @@ public class OBJModel implements IModel {
         if (!this.validMesh) {
             logger.log(LogLevel.WARNING, "Mesh " + meshName + " for model " + resource + " will not be loaded " +
                     "because the resource is invalid.");
-            return VerticesBuffer.EMPTY;
+            return VerticesBuffer.empty();
         }
 
         // Check if the mesh name is valid
         if ((buffers = this.meshes.get(meshName)) == null) {
             logger.log(LogLevel.WARNING, "Invalid mesh " + meshName + " for model " + resource);
-            return VerticesBuffer.EMPTY;
+            return VerticesBuffer.empty();
         }
 
         synchronized (meshes) {
             if (quality == Quality.NOT_RENDERED)
-                return VerticesBuffer.EMPTY;
+                return VerticesBuffer.empty();
 
             int bufferId = quality.ordinal();
             if (buffers[bufferId] != null)
                 return buffers[bufferId].fork();
 
-            VerticesBuffer buffer = new VerticesBuffer(
-                    VerticesBuffer.Attribute.VEC3F,
-                    VerticesBuffer.Attribute.VEC3F,
-                    VerticesBuffer.Attribute.VEC2F
-            );
+            VerticesBuffer buffer;
 
             try {
+                VerticesBuffer.Builder builder = new VerticesBuffer.Builder(
+                        VerticesBuffer.Attribute.VEC3F,
+                        VerticesBuffer.Attribute.VEC3F,
+                        VerticesBuffer.Attribute.VEC2F
+                );
+
                 Resource resource = this.resource.relative(quality.name().toLowerCase() + ".obj");
                 com.mokiat.data.front.parser.OBJModel model = parser.parse(resource.load());
-                this.parseModel(buffer, model, meshName);
+                this.parseModel(builder, model, meshName);
+                buffer = MeshOptimizer.optimize(builder.build());
 
                 logger.log(LogLevel.INFO, "OBJ model " + resource +
                         "; quality=" + quality + " info: v=" + model.getVertices().size() +
@@ -90,7 +92,6 @@ public class OBJModel implements IModel {
                         ", t=" + model.getTexCoords().size());
             } catch (IOException ex) {
                 logger.exception(ex, "Unable to load OBJ model.");
-                buffer.cleanup();
                 buffer = null;
             }
 
@@ -104,7 +105,7 @@ public class OBJModel implements IModel {
         }
     }
 
-    private void parseModel(VerticesBuffer buffer, com.mokiat.data.front.parser.OBJModel model, String name) {
+    private void parseModel(VerticesBuffer.Builder buffer, com.mokiat.data.front.parser.OBJModel model, String name) {
         for (OBJObject object : model.getObjects()) {
             if (!object.getName().equals(name))
                 continue;
@@ -113,22 +114,19 @@ public class OBJModel implements IModel {
                 for (OBJFace face : mesh.getFaces()) {
                     for (OBJDataReference reference : face.getReferences()) {
                         OBJVertex vertex = model.getVertex(reference);
-                        Vector3f position = new Vector3f(vertex.x, vertex.y, vertex.z);
-                        Vector3f normal = new Vector3f(0, 0, 0);
-                        Vector2f uv = new Vector2f();
+                        buffer.put(vertex.x, vertex.y, vertex.z);
 
                         if (reference.hasNormalIndex()) {
                             OBJNormal verNormal = model.getNormal(reference);
-                            normal.set(verNormal.x, verNormal.y, verNormal.z);
+                            buffer.put(verNormal.x, verNormal.y, verNormal.z);
                         }
+                        else buffer.put(0, 0, 0);
+
                         if (reference.hasTexCoordIndex()) {
                             OBJTexCoord texCoord = model.getTexCoord(reference);
-                            uv.set(texCoord.u, texCoord.v);
+                            buffer.put(texCoord.u, texCoord.v);
                         }
-
-                        buffer.addAttribute(position);
-                        buffer.addAttribute(normal);
-                        buffer.addAttribute(uv);
+                        else buffer.put(0, 0);
                     }
                 }
             }
@@ -0,0 +1,136 @@
+package dev.artingl.Engine.renderer.occlusion;
+
+import dev.artingl.Engine.misc.BoundingBox;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Simplified geometry which hides everything behind it, rasterized by the {@link OcclusionCuller}.
+ * The geometry must never be bigger than what is actually rendered, otherwise visible objects would be culled.
+ */
+public class Occluder {
+
+    private volatile Geometry geometry;
+    private boolean isClosed;
+
+    public Occluder() {
+    }
+
+    /**
+     * @param positions Positions of the vertices in local space, 3 floats per vertex
+     * @param indices   Indices of the triangles' vertices
+     */
+    public Occluder(float[] positions, int[] indices) {
+        this.setGeometry(positions, indices);
+    }
+
+    /**
+     * Replace the geometry, can be called from any thread
+     *
+     * @param positions Positions of the vertices in local space, 3 floats per vertex
+     * @param indices   Indices of the triangles' vertices
+     */
+    public void setGeometry(float[] positions, int[] indices) {
+        this.geometry = new Geometry(positions, indices);
+    }
+
+    /**
+     * Tells if the occluder has any triangles
+     */
+    public boolean isEmpty() {
+        Geometry geometry = this.geometry;
+        return geometry == null || geometry.indices.length == 0;
+    }
+
+    /**
+     * Tells if the occluder is a closed volume, which hides everything when the camera is inside of it
+     */
+    public boolean isClosed() {
+        return isClosed;
+    }
+
+    /**
+     * Get the current geometry, or null if it wasn't set yet
+     */
+    @Nullable
+    public Geometry getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * Make occluder from a solid box, e.g. hull of a building
+     *
+     * @param box The box in local space
+     */
+    public static Occluder box(BoundingBox box) {
+        float[] positions = new float[8 * 3];
+        for (int i = 0; i < 8; i++) {
+            positions[i * 3] = (i & 1) == 0 ? box.min.x : box.max.x;
+            positions[i * 3 + 1] = (i & 2) == 0 ? box.min.y : box.max.y;
+            positions[i * 3 + 2] = (i & 4) == 0 ? box.min.z : box.max.z;
+        }
+
+        int[] indices = {
+                0, 1, 3, 0, 3, 2,   4, 6, 7, 4, 7, 5,
+                0, 4, 5, 0, 5, 1,   2, 3, 7, 2, 7, 6,
+                0, 2, 6, 0, 6, 4,   1, 5, 7, 1, 7, 3
+        };
+        Occluder occluder = new Occluder(positions, indices);
+        occluder.isClosed = true;
+        return occluder;
+    }
+
+    /**
+     * Make simplified occluder from a heightfield. Every vertex of the result takes the lowest height of the cells
+     * around it, so the simplified surface always stays below the original one.
+     *
+     * @param heights  Heights of the grid, row by row along the X axis
+     * @param width    Amount of grid points along the X axis
+     * @param depth    Amount of grid points along the Z axis
+     * @param cellSize Distance between the grid points
+     * @param simplify How many cells of the original grid are merged into one cell along each axis
+     */
+    public static Occluder heightfield(float[] heights, int width, int depth, float cellSize, int simplify) {
+        int columns = (width - 2 + simplify) / simplify + 1;
+        int rows = (depth - 2 + simplify) / simplify + 1;
+        float[] positions = new float[columns * rows * 3];
+
+        for (int row = 0; row < rows; row++)
+            for (int column = 0; column < columns; column++) {
+                int x = Math.min(column * simplify, width - 1);
+                int z = Math.min(row * simplify, depth - 1);
+
+                // Take the lowest point of all simplified cells which share the vertex
+                float height = Float.POSITIVE_INFINITY;
+                for (int dz = Math.max(0, z - simplify); dz <= Math.min(depth - 1, z + simplify); dz++)
+                    for (int dx = Math.max(0, x - simplify); dx <= Math.min(width - 1, x + simplify); dx++)
+                        height = Math.min(height, heights[dz * width + dx]);
+
+                int i = (row * columns + column) * 3;
+                positions[i] = x * cellSize;
+                positions[i + 1] = height;
+                positions[i + 2] = z * cellSize;
+            }
+
+        int[] indices = new int[(columns - 1) * (rows - 1) * 6];
+        int i = 0;
+        for (int row = 0; row < rows - 1; row++)
+            for (int column = 0; column < columns - 1; column++) {
+                int v = row * columns + column;
+                indices[i++] = v;
+                indices[i++] = v + 1;
+                indices[i++] = v + columns;
+                indices[i++] = v + 1;
+                indices[i++] = v + columns + 1;
+                indices[i++] = v + columns;
+            }
+
+        return new Occluder(positions, indices);
+    }
+
+    /**
+     * @param positions Positions of the vertices in local space, 3 floats per vertex
+     * @param indices   Indices of the triangles' vertices
+     */
+    public record Geometry(float[] positions, int[] indices) {
+    }
+}
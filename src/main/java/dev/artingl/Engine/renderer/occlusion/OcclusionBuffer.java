@@ -0,0 +1,291 @@
+package dev.artingl.Engine.renderer.occlusion;
+
+import dev.artingl.Engine.misc.BoundingBox;
+import org.joml.Matrix4f;
+import org.joml.Vector4f;
+
+import java.util.Arrays;
+
+/**
+ * Low resolution depth buffer which is rendered on the CPU. Occluders are projected to the screen with {@link #addOccluder(Occluder, Matrix4f)},
+ * rasterized band by band with {@link #rasterize(int, int)} (different bands can be rasterized by different threads at once),
+ * and reduced into a hierarchy of the farthest depths by {@link #buildHierarchy()}.
+ * Bounds are then tested against the level of the hierarchy where they cover at most 2x2 texels.
+ * Depth is stored as z/w of the clip space remapped to [0; 1], the same way as the GPU does it.
+ */
+public class OcclusionBuffer {
+
+    // Vertices closer to the camera plane than this are clipped
+    private static final float NEAR_EPSILON = 1e-5f;
+
+    private final int width, height;
+    private final float[][] levels;
+    private final int[] levelWidth, levelHeight;
+    private final Matrix4f viewProjection;
+
+    // Projected triangles, 9 floats each: x, y and depth of every vertex in pixels
+    private float[] triangles;
+    private int trianglesCount;
+    private float[] clip;
+
+    public OcclusionBuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.viewProjection = new Matrix4f();
+        this.triangles = new float[9 * 1024];
+        this.clip = new float[4 * 256];
+
+        int count = 1;
+        while ((width >> count) > 0 || (height >> count) > 0)
+            count++;
+
+        this.levels = new float[count][];
+        this.levelWidth = new int[count];
+        this.levelHeight = new int[count];
+        for (int i = 0, w = width, h = height; i < count; i++, w = (w + 1) / 2, h = (h + 1) / 2) {
+            this.levels[i] = new float[w * h];
+            this.levelWidth[i] = w;
+            this.levelHeight[i] = h;
+        }
+    }
+
+    /**
+     * Start a new frame
+     *
+     * @param viewProjection Matrix which transforms world positions into the clip space
+     */
+    public void begin(Matrix4f viewProjection) {
+        this.viewProjection.set(viewProjection);
+        this.trianglesCount = 0;
+    }
+
+    /**
+     * Project triangles of the occluder to the screen. Must not be called while the buffer is rasterized.
+     *
+     * @param occluder The occluder
+     * @param model    Matrix which transforms the occluder into the world
+     */
+    public void addOccluder(Occluder occluder, Matrix4f model) {
+        Occluder.Geometry geometry = occluder.getGeometry();
+        if (geometry == null)
+            return;
+
+        float[] positions = geometry.positions();
+        int[] indices = geometry.indices();
+        int vertices = positions.length / 3;
+        if (this.clip.length < vertices * 4)
+            this.clip = new float[vertices * 4];
+
+        // Transform all vertices into the clip space
+        Matrix4f matrix = new Matrix4f(this.viewProjection).mul(model);
+        Vector4f vertex = new Vector4f();
+        for (int i = 0; i < vertices; i++) {
+            matrix.transform(vertex.set(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2], 1));
+            this.clip[i * 4] = vertex.x;
+            this.clip[i * 4 + 1] = vertex.y;
+            this.clip[i * 4 + 2] = vertex.z;
+            this.clip[i * 4 + 3] = vertex.w;
+        }
+
+        float[] polygon = new float[4 * 4];
+        for (int i = 0; i + 2 < indices.length; i += 3) {
+            int a = indices[i] * 4, b = indices[i + 1] * 4, c = indices[i + 2] * 4;
+            if (this.isOutside(a, b, c))
+                continue;
+
+            // Clip the triangle by the near plane (z >= -w), which can turn it into a quad
+            int count = 0;
+            int[] corners = {a, b, c};
+            for (int j = 0; j < 3; j++) {
+                int from = corners[j], to = corners[(j + 1) % 3];
+                float fromDistance = this.clip[from + 2] + this.clip[from + 3];
+                float toDistance = this.clip[to + 2] + this.clip[to + 3];
+
+                if (fromDistance >= 0) {
+                    System.arraycopy(this.clip, from, polygon, count * 4, 4);
+                    count++;
+                }
+                if ((fromDistance >= 0) != (toDistance >= 0)) {
+                    float t = fromDistance / (fromDistance - toDistance);
+                    for (int k = 0; k < 4; k++)
+                        polygon[count * 4 + k] = this.clip[from + k] + (this.clip[to + k] - this.clip[from + k]) * t;
+                    count++;
+                }
+            }
+
+            for (int j = 1; j + 1 < count; j++)
+                this.addTriangle(polygon, 0, j * 4, (j + 1) * 4);
+        }
+    }
+
+    /**
+     * Tells if all vertices of the triangle are outside of the same side of the clip space
+     */
+    private boolean isOutside(int a, int b, int c) {
+        float[] v = this.clip;
+        return (v[a] > v[a + 3] && v[b] > v[b + 3] && v[c] > v[c + 3]) ||
+                (v[a] < -v[a + 3] && v[b] < -v[b + 3] && v[c] < -v[c + 3]) ||
+                (v[a + 1] > v[a + 3] && v[b + 1] > v[b + 3] && v[c + 1] > v[c + 3]) ||
+                (v[a + 1] < -v[a + 3] && v[b + 1] < -v[b + 3] && v[c + 1] < -v[c + 3]) ||
+                (v[a + 2] > v[a + 3] && v[b + 2] > v[b + 3] && v[c + 2] > v[c + 3]);
+    }
+
+    private void addTriangle(float[] polygon, int a, int b, int c) {
+        if (polygon[a + 3] < NEAR_EPSILON || polygon[b + 3] < NEAR_EPSILON || polygon[c + 3] < NEAR_EPSILON)
+            return;
+
+        if ((this.trianglesCount + 1) * 9 > this.triangles.length)
+            this.triangles = Arrays.copyOf(this.triangles, this.triangles.length * 2);
+
+        int offset = this.trianglesCount * 9;
+        for (int vertex: new int[]{a, b, c}) {
+            float w = polygon[vertex + 3];
+            this.triangles[offset++] = (polygon[vertex] / w * 0.5f + 0.5f) * this.width;
+            this.triangles[offset++] = (polygon[vertex + 1] / w * 0.5f + 0.5f) * this.height;
+            this.triangles[offset++] = polygon[vertex + 2] / w * 0.5f + 0.5f;
+        }
+        this.trianglesCount++;
+    }
+
+    /**
+     * Clear the rows and rasterize all projected triangles into them. Different rows can be rasterized by different threads at once.
+     *
+     * @param fromRow First row of the band
+     * @param toRow   Row after the last row of the band
+     */
+    public void rasterize(int fromRow, int toRow) {
+        float[] depth = this.levels[0];
+        Arrays.fill(depth, fromRow * this.width, toRow * this.width, 1);
+
+        for (int i = 0; i < this.trianglesCount; i++) {
+            int t = i * 9;
+            float x0 = this.triangles[t], y0 = this.triangles[t + 1], z0 = this.triangles[t + 2];
+            float x1 = this.triangles[t + 3], y1 = this.triangles[t + 4], z1 = this.triangles[t + 5];
+            float x2 = this.triangles[t + 6], y2 = this.triangles[t + 7], z2 = this.triangles[t + 8];
+
+            float area = (x1 - x0) * (y2 - y0) - (y1 - y0) * (x2 - x0);
+            if (Math.abs(area) < 1e-6f)
+                continue;
+
+            // Pixels are covered when their centers are inside the triangle
+            int minX = Math.max(0, (int) Math.ceil(Math.min(x0, Math.min(x1, x2)) - 0.5f));
+            int maxX = Math.min(this.width - 1, (int) Math.floor(Math.max(x0, Math.max(x1, x2)) - 0.5f));
+            int minY = Math.max(fromRow, (int) Math.ceil(Math.min(y0, Math.min(y1, y2)) - 0.5f));
+            int maxY = Math.min(toRow - 1, (int) Math.floor(Math.max(y0, Math.max(y1, y2)) - 0.5f));
+            if (minX > maxX || minY > maxY)
+                continue;
+
+            float inverseArea = 1 / area;
+            for (int y = minY; y <= maxY; y++) {
+                float py = y + 0.5f;
+                int row = y * this.width;
+                for (int x = minX; x <= maxX; x++) {
+                    float px = x + 0.5f;
+
+                    // Barycentric weights of the pixel center, all of them are positive inside the triangle
+                    float w0 = ((x2 - x1) * (py - y1) - (y2 - y1) * (px - x1)) * inverseArea;
+                    float w1 = ((x0 - x2) * (py - y2) - (y0 - y2) * (px - x2)) * inverseArea;
+                    float w2 = 1 - w0 - w1;
+                    if (w0 < 0 || w1 < 0 || w2 < 0)
+                        continue;
+
+                    float z = w0 * z0 + w1 * z1 + w2 * z2;
+                    if (z < depth[row + x])
+                        depth[row + x] = Math.max(0, z);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reduce the depth buffer into the hierarchy, each texel of a level keeps the farthest depth of 2x2 texels of the level below
+     */
+    public void buildHierarchy() {
+        for (int level = 1; level < this.levels.length; level++) {
+            float[] source = this.levels[level - 1], target = this.levels[level];
+            int sourceWidth = this.levelWidth[level - 1], sourceHeight = this.levelHeight[level - 1];
+            int targetWidth = this.levelWidth[level], targetHeight = this.levelHeight[level];
+
+            for (int y = 0; y < targetHeight; y++)
+                for (int x = 0; x < targetWidth; x++) {
+                    int sx = x * 2, sy = y * 2;
+                    int nx = Math.min(sx + 1, sourceWidth - 1), ny = Math.min(sy + 1, sourceHeight - 1);
+                    target[y * targetWidth + x] = Math.max(
+                            Math.max(source[sy * sourceWidth + sx], source[sy * sourceWidth + nx]),
+                            Math.max(source[ny * sourceWidth + sx], source[ny * sourceWidth + nx]));
+                }
+        }
+    }
+
+    /**
+     * Tells if anything inside the bounds can be seen through the occluders
+     *
+     * @param bounds Bounds in world space
+     */
+    public boolean isVisible(BoundingBox bounds) {
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minDepth = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+
+        Vector4f corner = new Vector4f();
+        for (int i = 0; i < 8; i++) {
+            this.viewProjection.transform(corner.set(
+                    (i & 1) == 0 ? bounds.min.x : bounds.max.x,
+                    (i & 2) == 0 ? bounds.min.y : bounds.max.y,
+                    (i & 4) == 0 ? bounds.min.z : bounds.max.z, 1));
+
+            // The bounds are around the camera, they can't be hidden
+            if (corner.w < NEAR_EPSILON || corner.z < -corner.w)
+                return true;
+
+            float x = (corner.x / corner.w * 0.5f + 0.5f) * this.width;
+            float y = (corner.y / corner.w * 0.5f + 0.5f) * this.height;
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+            minDepth = Math.min(minDepth, corner.z / corner.w * 0.5f + 0.5f);
+        }
+
+        int x0 = Math.max(0, (int) Math.floor(minX)), x1 = Math.min(this.width - 1, (int) Math.floor(maxX));
+        int y0 = Math.max(0, (int) Math.floor(minY)), y1 = Math.min(this.height - 1, (int) Math.floor(maxY));
+        if (x0 > x1 || y0 > y1)
+            return true;
+
+        // Find the level where the bounds cover at most 2x2 texels
+        int level = 0;
+        while (level < this.levels.length - 1 && ((x1 >> level) - (x0 >> level) > 1 || (y1 >> level) - (y0 >> level) > 1))
+            level++;
+
+        float[] depth = this.levels[level];
+        int levelWidth = this.levelWidth[level];
+        for (int y = y0 >> level; y <= y1 >> level; y++)
+            for (int x = x0 >> level; x <= x1 >> level; x++) {
+                if (depth[y * levelWidth + x] >= minDepth)
+                    return true;
+            }
+
+        return false;
+    }
+
+    /**
+     * Get depth of the pixel, 1 if nothing was rasterized there
+     */
+    public float getDepth(int x, int y) {
+        return this.levels[0][y * this.width + x];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Get amount of triangles projected since the last {@link #begin(Matrix4f)} call
+     */
+    public int getTrianglesCount() {
+        return trianglesCount;
+    }
+}
@@ -0,0 +1,84 @@
+package dev.artingl.Engine.renderer.occlusion;
+
+import dev.artingl.Engine.Engine;
+import dev.artingl.Engine.debug.Logger;
+import dev.artingl.Engine.misc.BoundingBox;
+import org.joml.Matrix4f;
+
+/**
+ * Hides objects which are behind big occluders (terrain, buildings) before they are submitted to the render queue.
+ * Occluders are rasterized every frame into a small {@link OcclusionBuffer} on the worker threads, each of them
+ * takes bands of rows. The render thread takes bands as well, so it waits only for bands which are already being rasterized
+ * and never for jobs which are still in the queue.
+ */
+public class OcclusionCuller {
+
+    public static final int WIDTH = 256, HEIGHT = 128;
+
+    // Amount of rows rasterized by one job
+    private static final int BAND_ROWS = 16;
+
+    private final Logger logger;
+    private final OcclusionBuffer buffer;
+    private int occluders;
+
+    public OcclusionCuller(Logger logger) {
+        this.logger = logger;
+        this.buffer = new OcclusionBuffer(WIDTH, HEIGHT);
+    }
+
+    /**
+     * Start a new frame
+     *
+     * @param viewProjection Matrix which transforms world positions into the clip space of the camera
+     */
+    public void begin(Matrix4f viewProjection) {
+        this.buffer.begin(viewProjection);
+        this.occluders = 0;
+    }
+
+    /**
+     * Add occluder to the frame
+     *
+     * @param occluder The occluder
+     * @param model    Matrix which transforms the occluder into the world
+     */
+    public void addOccluder(Occluder occluder, Matrix4f model) {
+        if (occluder.isEmpty())
+            return;
+
+        this.buffer.addOccluder(occluder, model);
+        this.occluders++;
+    }
+
+    /**
+     * Rasterize all occluders of the frame and build the depth hierarchy
+     */
+    public void rasterize() {
+        int bands = (HEIGHT + BAND_ROWS - 1) / BAND_ROWS;
+        Engine.getInstance().getThreadsManager().parallelFor(bands,
+                band -> this.buffer.rasterize(band * BAND_ROWS, Math.min(HEIGHT, (band + 1) * BAND_ROWS)));
+
+        this.buffer.buildHierarchy();
+    }
+
+    /**
+     * Tells if anything inside the bounds can be seen through the occluders
+     *
+     * @param bounds Bounds in world space
+     */
+    public boolean isVisible(BoundingBox bounds) {
+        return this.buffer.isVisible(bounds);
+    }
+
+    /**
+     * Get amount of occluders rasterized in the last frame
+     */
+    public int getOccluders() {
+        return occluders;
+    }
+
+    public OcclusionBuffer getBuffer() {
+        return buffer;
+    }
+}
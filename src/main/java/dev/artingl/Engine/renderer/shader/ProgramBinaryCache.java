@@ -0,0 +1,191 @@
+package dev.artingl.Engine.renderer.shader;
+
+import dev.artingl.Engine.Engine;
+import dev.artingl.Engine.debug.LogLevel;
+import dev.artingl.Engine.debug.Logger;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.system.MemoryStack;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static org.lwjgl.opengl.GL11C.*;
+import static org.lwjgl.opengl.GL20C.GL_LINK_STATUS;
+import static org.lwjgl.opengl.GL20C.glGetProgrami;
+import static org.lwjgl.opengl.GL41C.*;
+
+/**
+ * On-disk cache of linked shader programs.
+ * Programs are stored as driver binaries (glGetProgramBinary) in files named by a hash of the shader sources
+ * and the GL renderer, vendor and version, so a driver update or a changed shader never loads a stale binary.
+ * The cache is disabled unless {@link #DIRECTORY_PROPERTY} is set.
+ */
+public class ProgramBinaryCache {
+
+    // System property with the directory where the binaries are stored
+    public static final String DIRECTORY_PROPERTY = "engine.shaderCache";
+
+    private final Path directory;
+    private String driver;
+    private Boolean isSupported;
+
+    // Startup statistics
+    private int programs, hits;
+    private float totalTime;
+
+    public ProgramBinaryCache() {
+        String directory = System.getProperty(DIRECTORY_PROPERTY);
+        this.directory = directory == null || directory.isEmpty() ? null : Paths.get(directory);
+    }
+
+    /**
+     * Tells if the cache is enabled and the driver can save program binaries.
+     * Must be called with the GL context.
+     */
+    public boolean isEnabled() {
+        if (this.directory == null)
+            return false;
+
+        if (this.isSupported == null) {
+            GLCapabilities caps = GL.getCapabilities();
+            this.isSupported = (caps.OpenGL41 || caps.GL_ARB_get_program_binary) && glGetInteger(GL_NUM_PROGRAM_BINARY_FORMATS) > 0;
+            this.driver = glGetString(GL_VENDOR) + "|" + glGetString(GL_RENDERER) + "|" + glGetString(GL_VERSION);
+
+            Logger logger = Engine.getInstance().getLogger();
+            if (this.isSupported)
+                logger.log(LogLevel.INFO, "Using shader program cache in %s", this.directory.toAbsolutePath());
+            else
+                logger.log(LogLevel.WARNING, "Shader program cache is enabled, but the driver has no program binary formats");
+        }
+
+        return this.isSupported;
+    }
+
+    /**
+     * Make the cache key of the program
+     *
+     * @param types   Types of the shaders
+     * @param sources Sources of the shaders
+     */
+    public String makeKey(ShaderType[] types, String[] sources) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(this.driver.getBytes(StandardCharsets.UTF_8));
+            for (int i = 0; i < sources.length; i++) {
+                digest.update((byte) 0);
+                digest.update(types[i].name().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(sources[i].getBytes(StandardCharsets.UTF_8));
+            }
+
+            StringBuilder key = new StringBuilder();
+            for (byte value : digest.digest())
+                key.append(Integer.toString((value & 0xff) + 0x100, 16).substring(1));
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Must be called before the program is linked, so the driver keeps its binary
+     */
+    public void prepare(int program) {
+        glProgramParameteri(program, GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL_TRUE);
+    }
+
+    /**
+     * Load the cached binary into the program
+     *
+     * @return True if the program was loaded and linked, false if it must be compiled
+     */
+    public boolean load(int program, String key) {
+        Path file = this.directory.resolve(key + ".bin");
+        if (!Files.isRegularFile(file))
+            return false;
+
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            if (bytes.length <= Integer.BYTES)
+                return false;
+
+            ByteBuffer data = BufferUtils.createByteBuffer(bytes.length).put(bytes).flip();
+            int format = data.getInt();
+            glProgramBinary(program, format, data);
+
+            if (glGetProgrami(program, GL_LINK_STATUS) == 0) {
+                // The driver refused the binary, it will be replaced after the program is compiled
+                Engine.getInstance().getLogger().log(LogLevel.WARNING, "Cached shader program %s was rejected by the driver", key);
+                Files.deleteIfExists(file);
+                return false;
+            }
+
+            return true;
+        } catch (IOException e) {
+            Engine.getInstance().getLogger().exception(e, "Unable to read cached shader program %s", key);
+            return false;
+        }
+    }
+
+    /**
+     * Save binary of the linked program
+     */
+    public void store(int program, String key) {
+        int length = glGetProgrami(program, GL_PROGRAM_BINARY_LENGTH);
+        if (length <= 0)
+            return;
+
+        ByteBuffer data = BufferUtils.createByteBuffer(Integer.BYTES + length);
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer format = stack.mallocInt(1);
+            glGetProgramBinary(program, null, format, data.position(Integer.BYTES));
+            data.putInt(0, format.get(0));
+        }
+
+        try {
+            Files.createDirectories(this.directory);
+            byte[] bytes = new byte[data.clear().remaining()];
+            data.get(bytes);
+            Files.write(this.directory.resolve(key + ".bin"), bytes);
+        } catch (IOException e) {
+            Engine.getInstance().getLogger().exception(e, "Unable to write cached shader program %s", key);
+        }
+    }
+
+    /**
+     * Record time spent on making a program
+     *
+     * @param time   Time in milliseconds
+     * @param cached Was the program loaded from the cache
+     */
+    public void record(float time, boolean cached) {
+        this.programs++;
+        this.totalTime += time;
+        if (cached)
+            this.hits++;
+    }
+
+    public int getPrograms() {
+        return programs;
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    /**
+     * Get total time spent on making programs in milliseconds
+     */
+    public float getTotalTime() {
+        return totalTime;
+    }
+}
@@ -42,12 +42,30 @@ public class Shader {
         this.shaderId = -1;
     }
 
+    /**
+     * Read source code of the shader
+     */
+    public String getSource() throws IOException {
+        return resource.readAsString();
+    }
+
     /**
      * Compile the shader, so it can be used in the shader program
      *
      * @return The OpenGL shader ID or -1 on error
      */
     public int compile() {
+        if (this.submit() == -1 || !this.check())
+            return -1;
+        return this.shaderId;
+    }
+
+    /**
+     * Start compiling the shader without waiting for the result, see {@link #check()}
+     *
+     * @return The OpenGL shader ID or -1 if the source can't be read
+     */
+    public int submit() {
         if (this.shaderId != -1) {
             // Shader already compiled
             return this.shaderId;
@@ -58,28 +76,35 @@ public class Shader {
 
         try {
             // Try to read the shader's code and compile it
-            glShaderSource(this.shaderId, resource.readAsString());
+            glShaderSource(this.shaderId, getSource());
             glCompileShader(this.shaderId);
-
-            if (glGetShaderi(this.shaderId, GL_COMPILE_STATUS) == 0) {
-                /* We're unable to compile the shader.
-                 * Get the error message and throw an exception, so it'll cleanup everything.
-                 */
-                int ln = glGetShaderi(this.shaderId, GL_INFO_LOG_LENGTH);
-                String errMsg = glGetShaderInfoLog(this.shaderId, ln);
-                throw new EngineException(errMsg);
-            }
-
-            /* At this point we successfully compiled the shader.
-             * Just go on and return the ID at the bottom of the function.
-             */
-        } catch (Exception e) {
+        } catch (IOException e) {
             // Print the exception and cleanup everything
             cleanup();
-            logger.exception(e, "Unable to initialize the shader \"%s\"", resource);
+            logger.exception(e, "Unable to read the shader \"%s\"", resource);
         }
 
         return this.shaderId;
     }
 
+    /**
+     * Check if the shader was compiled successfully, waits for the driver if it's still compiling.
+     * The shader is deleted and the error is logged if the compilation failed.
+     */
+    public boolean check() {
+        if (this.shaderId == -1)
+            return false;
+
+        if (glGetShaderi(this.shaderId, GL_COMPILE_STATUS) == 0) {
+            // We're unable to compile the shader. Get the error message and cleanup everything
+            int ln = glGetShaderi(this.shaderId, GL_INFO_LOG_LENGTH);
+            String errMsg = glGetShaderInfoLog(this.shaderId, ln);
+            cleanup();
+            Engine.getInstance().getLogger().exception(new EngineException(errMsg), "Unable to initialize the shader \"%s\"", resource);
+            return false;
+        }
+
+        return true;
+    }
+
 }
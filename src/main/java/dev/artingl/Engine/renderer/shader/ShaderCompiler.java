@@ -0,0 +1,100 @@
+package dev.artingl.Engine.renderer.shader;
+
+import dev.artingl.Engine.Engine;
+import dev.artingl.Engine.debug.LogLevel;
+import dev.artingl.Engine.debug.Logger;
+import org.lwjgl.opengl.ARBParallelShaderCompile;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.opengl.KHRParallelShaderCompile;
+
+import static org.lwjgl.opengl.GL20C.glGetProgrami;
+import static org.lwjgl.opengl.KHRParallelShaderCompile.GL_COMPLETION_STATUS_KHR;
+
+/**
+ * Tracks compilation of shader programs, so the render loop never waits for the driver.
+ * With GL_KHR_parallel_shader_compile (or the ARB version) the driver compiles programs on its own threads
+ * and the completion status is polled every frame. Without it a program is finished one frame after it was
+ * submitted, which gives drivers that compile in the background a chance to do so.
+ */
+public class ShaderCompiler {
+
+    private boolean isParallel;
+    private long frame;
+
+    public ShaderCompiler() {
+        this.frame = 0;
+    }
+
+    public void init() {
+        GLCapabilities caps = GL.getCapabilities();
+        Logger logger = Engine.getInstance().getLogger();
+
+        // Let the driver use as many threads as it wants
+        if (caps.GL_KHR_parallel_shader_compile) {
+            KHRParallelShaderCompile.glMaxShaderCompilerThreadsKHR(0xFFFFFFFF);
+            this.isParallel = true;
+        }
+        else if (caps.GL_ARB_parallel_shader_compile) {
+            ARBParallelShaderCompile.glMaxShaderCompilerThreadsARB(0xFFFFFFFF);
+            this.isParallel = true;
+        }
+
+        logger.log(LogLevel.INFO, "Parallel shader compilation: %s", this.isParallel ? "supported" : "not supported");
+    }
+
+    /**
+     * Gets called every frame by the renderer
+     */
+    public void frame() {
+        this.frame++;
+    }
+
+    /**
+     * Start compiling all known programs which are not compiled yet.
+     * If the driver can't compile in parallel, the programs are finished right away, so the stall
+     * happens while the scene is being activated and not in the middle of the game.
+     */
+    public void warmUp() {
+        long start = System.nanoTime();
+        int submitted = 0;
+
+        for (ShaderProgram program : ShaderProgram.getPrograms()) {
+            if (program.isSubmitted())
+                continue;
+
+            if (this.isParallel)
+                program.submit();
+            else
+                program.bake();
+            submitted++;
+        }
+
+        if (submitted > 0)
+            Engine.getInstance().getLogger().log(LogLevel.INFO, "Shader warm-up: %s %d programs in %.2f ms",
+                    this.isParallel ? "submitted" : "baked", submitted, (System.nanoTime() - start) / 1000000f);
+    }
+
+    /**
+     * Tells if the driver has finished compiling and linking the program, so querying its status will not block
+     *
+     * @param program     The GL program
+     * @param submitFrame Frame when the program was submitted
+     */
+    public boolean isComplete(int program, long submitFrame) {
+        if (this.isParallel)
+            return glGetProgrami(program, GL_COMPLETION_STATUS_KHR) != 0;
+        return submitFrame < this.frame;
+    }
+
+    public boolean isParallel() {
+        return isParallel;
+    }
+
+    /**
+     * Get index of the current frame
+     */
+    public long getFrame() {
+        return frame;
+    }
+}
@@ -7,84 +7,222 @@ import dev.artingl.Engine.debug.Logger;
 import dev.artingl.Engine.misc.Color;
 import dev.artingl.Engine.renderer.Framebuffer;
 import dev.artingl.Engine.renderer.Renderer;
-import dev.artingl.Engine.renderer.viewport.Viewport;
 import dev.artingl.Engine.renderer.viewport.ViewportManager;
+import dev.artingl.Engine.renderer.visual.shadow.ShadowsManager;
 import dev.artingl.Engine.resources.texture.Texture;
-import dev.artingl.Engine.timer.TickListener;
-import dev.artingl.Engine.timer.Timer;
 import org.joml.*;
 import org.lwjgl.system.MemoryStack;
 
-import java.nio.FloatBuffer;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL31C.GL_INVALID_INDEX;
+import static org.lwjgl.opengl.GL31C.glGetUniformBlockIndex;
+import static org.lwjgl.opengl.GL31C.glUniformBlockBinding;
 
-public class ShaderProgram implements TickListener {
+public class ShaderProgram {
 
+    // All created programs, so they can be compiled before they are needed
+    private static final List<WeakReference<ShaderProgram>> PROGRAMS = new ArrayList<>();
 
     private final Shader[] shadersList;
     private final List<TextureUniform> textures;
-    private final List<UniformProp> uniforms;
+    private final Map<String, Uniform> uniformsCache;
+    private final List<Uniform> dirtyUniforms;
     private int programId;
     private int mainTexture;
-    private float time;
+    private boolean isLinked;
+    private boolean isCached;
+    private String cacheKey;
+    private long submitFrame;
+    private long bakeTime;
 
     public ShaderProgram(Shader ...shaders) {
         this.textures = new ArrayList<>();
-        this.uniforms = new ArrayList<>();
+        this.uniformsCache = new HashMap<>();
+        this.dirtyUniforms = new ArrayList<>();
         this.shadersList = shaders;
         this.programId = -1;
+
+        synchronized (PROGRAMS) {
+            PROGRAMS.removeIf(ref -> ref.get() == null);
+            PROGRAMS.add(new WeakReference<>(this));
+        }
+    }
+
+    /**
+     * Get all created programs, used to compile them ahead of time
+     * */
+    public static List<ShaderProgram> getPrograms() {
+        List<ShaderProgram> programs = new ArrayList<>();
+        synchronized (PROGRAMS) {
+            for (WeakReference<ShaderProgram> ref : PROGRAMS) {
+                ShaderProgram program = ref.get();
+                if (program != null)
+                    programs.add(program);
+            }
+        }
+        return programs;
     }
 
     /**
      * Bake the shader program to use it later in the pipeline.
+     * Waits until the program is compiled and linked.
      * */
     public void bake() throws EngineException {
+        this.submit();
+        this.finish();
+    }
+
+    /**
+     * Start compiling and linking the program without waiting for the driver to finish,
+     * see {@link #isReady()}.
+     * */
+    public void submit() throws EngineException {
         if (this.programId != -1) {
-            // Already baked
+            // Already submitted
             return;
         }
 
-        Engine.getInstance().getTimer().subscribe(this);
-
+        long start = System.nanoTime();
+        Renderer renderer = Engine.getInstance().getRenderer();
         this.programId = glCreateProgram();
+        this.submitFrame = renderer.getShaderCompiler().getFrame();
+
+        // Try to load the linked program from the cache first
+        ProgramBinaryCache cache = renderer.getProgramCache();
+        this.cacheKey = cache.isEnabled() ? this.makeCacheKey(cache) : null;
+        this.isCached = this.cacheKey != null && cache.load(this.programId, this.cacheKey);
+
+        if (!this.isCached) {
+            // Start compiling all shaders, the results are checked after linking
+            for (Shader shader: shadersList) {
+                int id = shader.submit();
+
+                if (id == -1) {
+                    /* We do not need to cleanup the program, because after making
+                     * this exception the pipeline manager will call pipelineCleanup.
+                     */
+                    throw new EngineException("Unable to initialize shader program!");
+                }
 
-        // Compile all shaders
-        for (Shader shader: shadersList) {
-            int id = shader.compile();
-
-            if (id == -1) {
-                /* We do not need to cleanup the program, because after making
-                 * this exception the pipeline manager will call pipelineCleanup.
-                 */
-                throw new EngineException("Unable to initialize shader program!");
+                // We got valid shader, attach it to the program
+                glAttachShader(programId, id);
             }
 
-            // We got valid shader, attach it to the program
-            glAttachShader(programId, id);
+            // Link the program
+            if (this.cacheKey != null)
+                cache.prepare(programId);
+            glLinkProgram(programId);
         }
 
-        // Link the program
-        glLinkProgram(programId);
+        this.bakeTime = System.nanoTime() - start;
+    }
 
-        if (glGetProgrami(programId, GL_LINK_STATUS) == 0) {
-            // We're unable to link the program. Get the error message and throw an exception
-            int ln = glGetProgrami(programId, GL_INFO_LOG_LENGTH);
-            String errMsg = glGetProgramInfoLog(programId, ln);
+    /**
+     * Tells if the program is linked and can be used.
+     * Starts compiling the program if it's not started yet, and never waits for the driver to finish it.
+     * */
+    public boolean isReady() throws EngineException {
+        if (this.isLinked)
+            return true;
 
-            // Again, the same thing as for the EngineException above. We don't need to call cleanup here
-            throw new EngineException(errMsg);
-        }
+        if (this.programId == -1)
+            this.submit();
+        if (!Engine.getInstance().getRenderer().getShaderCompiler().isComplete(this.programId, this.submitFrame))
+            return false;
 
-        // Cleanup all shaders because we successfully linked the shader program
-        for (Shader shader: shadersList) {
-            shader.cleanup();
+        this.finish();
+        return true;
+    }
+
+    /**
+     * Tells if compiling of the program has been started
+     * */
+    public boolean isSubmitted() {
+        return this.programId != -1;
+    }
+
+    /**
+     * Check the result of linking and prepare the program to be used
+     * */
+    private void finish() throws EngineException {
+        if (this.isLinked)
+            return;
+
+        long start = System.nanoTime();
+        ProgramBinaryCache cache = Engine.getInstance().getRenderer().getProgramCache();
+
+        if (!this.isCached) {
+            if (glGetProgrami(programId, GL_LINK_STATUS) == 0) {
+                // Report compile errors of the shaders, they are the usual reason
+                for (Shader shader: shadersList) {
+                    shader.check();
+                }
+
+                // We're unable to link the program. Get the error message and throw an exception
+                int ln = glGetProgrami(programId, GL_INFO_LOG_LENGTH);
+                String errMsg = glGetProgramInfoLog(programId, ln);
+
+                // Again, the same thing as for the EngineException above. We don't need to call cleanup here
+                throw new EngineException(errMsg);
+            }
+
+            // Cleanup all shaders because we successfully linked the shader program
+            for (Shader shader: shadersList) {
+                shader.cleanup();
+            }
+
+            if (this.cacheKey != null)
+                cache.store(programId, this.cacheKey);
         }
 
+        this.resolveUniforms();
+
+        // Camera and global state come from the uniform buffer owned by the viewport manager
+        int globals = glGetUniformBlockIndex(this.programId, "Globals");
+        if (globals != GL_INVALID_INDEX)
+            glUniformBlockBinding(this.programId, globals, ViewportManager.GLOBALS_BINDING);
+
+        // Cascades of the shadow maps come from the shadows manager
+        int shadows = glGetUniformBlockIndex(this.programId, "Shadows");
+        if (shadows != GL_INVALID_INDEX)
+            glUniformBlockBinding(this.programId, shadows, ShadowsManager.SHADOWS_BINDING);
+        this.isLinked = true;
+
+        // Count only the time spent in the engine, not the time the driver compiled in the background
+        float time = (this.bakeTime + System.nanoTime() - start) / 1000000f;
+        cache.record(time, this.isCached);
+
         Logger logger = Engine.getInstance().getLogger();
-        logger.log(LogLevel.INFO, "Baked shader program: " + this);
+        logger.log(LogLevel.INFO, "Baked shader program: %s in %.2f ms%s (total %.2f ms for %d programs, %d from cache)",
+                this, time, this.isCached ? " from cache" : "", cache.getTotalTime(), cache.getPrograms(), cache.getHits());
+    }
+
+    /**
+     * Make key of the program in the binary cache, or null if the sources can't be read
+     * */
+    private String makeCacheKey(ProgramBinaryCache cache) {
+        ShaderType[] types = new ShaderType[shadersList.length];
+        String[] sources = new String[shadersList.length];
+
+        try {
+            for (int i = 0; i < shadersList.length; i++) {
+                types[i] = shadersList[i].getType();
+                sources[i] = shadersList[i].getSource();
+            }
+        } catch (IOException e) {
+            // Compiling will fail as well and report the error
+            return null;
+        }
+
+        return cache.makeKey(types, sources);
     }
 
     @Override
@@ -103,8 +241,9 @@ public class ShaderProgram implements TickListener {
      * Cleanup everything related to this program
      * */
     public void cleanup() {
-        Engine.getInstance().getTimer().unsubscribe(this);
         this.textures.clear();
+        this.uniformsCache.clear();
+        this.dirtyUniforms.clear();
 
         // Cleanup all shaders just in case
         for (Shader shader: shadersList) {
@@ -116,77 +255,104 @@ public class ShaderProgram implements TickListener {
             return;
         }
 
+        Engine.getInstance().getRenderer().getState().forgetProgram(this.programId);
         glDeleteProgram(this.programId);
         this.programId = -1;
+        this.isLinked = false;
     }
 
     /**
      * Tells is the program has been already baked or not
      * */
     public boolean isBaked() {
-        return this.programId != -1;
+        return this.isLinked;
     }
 
-    public int getUniformLoc(String name)
-    {
-        return glGetUniformLocation(this.programId, name);
+    /**
+     * Get location of the uniform, resolved once after the program is linked.
+     *
+     * @return Location of the uniform, or -1 if the program has no such active uniform
+     * */
+    public int getUniformLoc(String name) {
+        return uniform(name, true).location;
     }
 
-    public void setUniformMatrix4f(String uniform, Matrix4f mat)  {
-        this.uniforms.add(new UniformProp(uniform, mat));
+    public void setUniformMatrix4f(String uniform, Matrix4f mat) {
+        setMatrix(uniform(uniform, true), mat);
     }
 
     public void setUniformObject(String uniform, Object o) {
-        this.uniforms.add(new UniformProp(uniform, o));
+        if (o instanceof Matrix4f v) setUniformMatrix4f(uniform, v);
+        else if (o instanceof Float v) setUniformFloat(uniform, v);
+        else if (o instanceof Integer v) setUniformInt(uniform, v);
+        else if (o instanceof Color v) setUniformVector4f(uniform, v.asVector4f());
+        else if (o instanceof Boolean v) setUniformBoolean(uniform, v);
+        else if (o instanceof Vector2f v) setUniformVector2f(uniform, v);
+        else if (o instanceof Vector3f v) setUniformVector3f(uniform, v);
+        else if (o instanceof Vector4f v) setUniformVector4f(uniform, v);
+        else if (o instanceof Vector2i v) setUniformVector2i(uniform, v);
+        else if (o instanceof Vector3i v) setUniformVector3i(uniform, v);
+        else if (o instanceof Vector4i v) setUniformVector4i(uniform, v);
     }
 
     public void setUniformFloat(String uniform, float f) {
-        this.uniforms.add(new UniformProp(uniform, f));
+        setFloats(uniform(uniform, true), Uniform.FLOAT, f, 0, 0, 0);
     }
 
-    public void setUniformVector3f(String uniform, Vector3f vec) {
-        this.uniforms.add(new UniformProp(uniform, vec));
+    public void setUniformVector2f(String uniform, float x, float y) {
+        setFloats(uniform(uniform, true), Uniform.VEC2, x, y, 0, 0);
     }
 
-    public void setUniformVector4f(String uniform, Vector4f vec) {
-        this.uniforms.add(new UniformProp(uniform, vec));
+    public void setUniformVector3f(String uniform, float x, float y, float z) {
+        setFloats(uniform(uniform, true), Uniform.VEC3, x, y, z, 0);
     }
 
-    public void setUniformVector4i(String uniform, Vector4i vec) {
-        this.uniforms.add(new UniformProp(uniform, vec));
+    public void setUniformVector4f(String uniform, float x, float y, float z, float w) {
+        setFloats(uniform(uniform, true), Uniform.VEC4, x, y, z, w);
     }
 
     public void setUniformVector2f(String uniform, Vector2f vec) {
-        this.uniforms.add(new UniformProp(uniform, vec));
+        setUniformVector2f(uniform, vec.x, vec.y);
     }
 
-    public void setUniformInt(String uniform, int f) {
-        this.uniforms.add(new UniformProp(uniform, f));
+    public void setUniformVector3f(String uniform, Vector3f vec) {
+        setUniformVector3f(uniform, vec.x, vec.y, vec.z);
     }
 
-    public void setUniformVector3i(String uniform, Vector3i vec) {
-        this.uniforms.add(new UniformProp(uniform, vec));
+    public void setUniformVector4f(String uniform, Vector4f vec) {
+        setUniformVector4f(uniform, vec.x, vec.y, vec.z, vec.w);
+    }
+
+    public void setUniformInt(String uniform, int i) {
+        setInts(uniform(uniform, true), Uniform.INT, i, 0, 0, 0);
+    }
+
+    public void setUniformBoolean(String uniform, boolean b) {
+        setInts(uniform(uniform, true), Uniform.INT, b ? 1 : 0, 0, 0, 0);
     }
 
     public void setUniformVector2i(String uniform, Vector2i vec) {
-        this.uniforms.add(new UniformProp(uniform, vec));
+        setInts(uniform(uniform, true), Uniform.IVEC2, vec.x, vec.y, 0, 0);
     }
 
-    public void updateViewport(ViewportManager viewport) {
-        this.uniforms.add(new UniformProp("m_proj", viewport.getProjection()));
-        this.uniforms.add(new UniformProp("m_view", viewport.getView()));
-        this.uniforms.add(new UniformProp("m_pos", viewport.getPosition()));
-        this.uniforms.add(new UniformProp("m_rot", viewport.getRotation()));
+    public void setUniformVector3i(String uniform, Vector3i vec) {
+        setInts(uniform(uniform, true), Uniform.IVEC3, vec.x, vec.y, vec.z, 0);
+    }
+
+    public void setUniformVector4i(String uniform, Vector4i vec) {
+        setInts(uniform(uniform, true), Uniform.IVEC4, vec.x, vec.y, vec.z, vec.w);
     }
 
     public void updateModelMatrix(Matrix4f model) {
-        this.uniforms.add(new UniformProp("m_model", model));
+        setMatrix(uniform("m_model", false), model);
     }
 
     private void activateTexture(String uniform, int offset, int id) {
-        glUniform1i(getUniformLoc(uniform), offset);
-        glActiveTexture(GL_TEXTURE0 + offset);
-        glBindTexture(GL_TEXTURE_2D, id);
+        Uniform u = uniform(uniform, false);
+        setInts(u, Uniform.INT, offset, 0, 0, 0);
+        if (u.dirty)
+            upload(u);
+        Engine.getInstance().getRenderer().bindTexture(offset, id);
     }
 
     public void setTextureUniform(String uniform, int id) {
@@ -207,46 +373,21 @@ public class ShaderProgram implements TickListener {
     public void use() {
         Engine engine = Engine.getInstance();
         Renderer renderer = engine.getRenderer();
-        Viewport viewport = renderer.getViewport().getCurrentViewport();
         Framebuffer framebuffer = renderer.getMainFramebuffer();
         renderer.useShader(this);
 
-        float farPlane = viewport != null ? viewport.getFarPlane() : 0;
-        float nearPlane = viewport != null ? viewport.getNearPlane() : 0;
-
         // Setup and bind textures for the shader
         this.activateTexture("tex0", 0, mainTexture);
-        this.uniforms.add(new UniformProp("isTex0Set", mainTexture > 0));
-        this.uniforms.add(new UniformProp("m_time", time));
-        this.uniforms.add(new UniformProp("farPlane", farPlane));
-        this.uniforms.add(new UniformProp("nearPlane", nearPlane));
-        this.uniforms.add(new UniformProp("screenResolution", new Vector3f(engine.getDisplay().getWidth(), engine.getDisplay().getHeight(), engine.getDisplay().getAspectRatio())));
+        setInts(uniform("isTex0Set", false), Uniform.INT, mainTexture > 0 ? 1 : 0, 0, 0, 0);
         this.mainTexture = Texture.MISSING.getTextureId();
 
-        // Set all uniforms
-        for (UniformProp uniform: uniforms) {
-            int loc = getUniformLoc(uniform.name);
-            if (uniform.value instanceof Matrix4f mat) {
-                try (MemoryStack stack = MemoryStack.stackPush()) {
-                    FloatBuffer fb = mat.get(stack.mallocFloat(16));
-                    glUniformMatrix4fv(loc, false, fb);
-                }
-            }
-            else if (uniform.value instanceof Float v) glUniform1f(loc, v);
-            else if (uniform.value instanceof Integer v) glUniform1i(loc, v);
-            else if (uniform.value instanceof Color v){
-                Vector4f clr = v.asVector4f();
-                glUniform4f(loc, clr.x, clr.y, clr.z, clr.w);
-            }
-            else if (uniform.value instanceof Boolean v) glUniform1i(loc, v ? 1 : 0);
-            else if (uniform.value instanceof Vector2f v) glUniform2f(loc, v.x, v.y);
-            else if (uniform.value instanceof Vector3f v) glUniform3f(loc, v.x, v.y, v.z);
-            else if (uniform.value instanceof Vector2i v) glUniform2i(loc, v.x, v.y);
-            else if (uniform.value instanceof Vector3i v) glUniform3i(loc, v.x, v.y, v.z);
-            else if (uniform.value instanceof Vector4i v) glUniform4i(loc, v.x, v.y, v.z, v.w);
-            else if (uniform.value instanceof Vector4f v) glUniform4f(loc, v.x, v.y, v.z, v.w);
+        // Upload only the uniforms which have changed since the last use
+        for (int i = 0; i < this.dirtyUniforms.size(); i++) {
+            Uniform uniform = this.dirtyUniforms.get(i);
+            if (uniform.dirty)
+                upload(uniform);
         }
-        this.uniforms.clear();
+        this.dirtyUniforms.clear();
 
         int i = 1;
         for (TextureUniform tex: this.textures) {
@@ -255,6 +396,7 @@ public class ShaderProgram implements TickListener {
         this.textures.clear();
         this.textures.add(new TextureUniform("fbTex", framebuffer.getFrameTexture()));
         this.textures.add(new TextureUniform("depthTex", framebuffer.getDepthTexture()));
+        this.textures.add(new TextureUniform("shadowMap", renderer.getShadows().getShadowTexture()));
     }
 
     @Override
@@ -264,13 +406,137 @@ public class ShaderProgram implements TickListener {
         return shd.programId == programId;
     }
 
-    @Override
-    public void tick(Timer timer) {
-        this.time += 1f / timer.getTickPerSecond();
+    /**
+     * Get cached uniform by its name.
+     * Uniforms which are not active in the program are reported once and then ignored.
+     *
+     * @param report Report the uniform if it's not active in the program
+     * */
+    private Uniform uniform(String name, boolean report) {
+        Uniform uniform = this.uniformsCache.get(name);
+        if (uniform != null)
+            return uniform;
+
+        uniform = new Uniform();
+        this.uniformsCache.put(name, uniform);
+
+        // The program is not baked yet, the location will be resolved after linking
+        if (!this.isLinked)
+            return uniform;
+
+        if (report)
+            Engine.getInstance().getLogger().log(LogLevel.WARNING, "Uniform '%s' is not active in %s", name, this);
+        return uniform;
+    }
+
+    /**
+     * Resolve locations of all active uniforms of the linked program
+     * */
+    private void resolveUniforms() {
+        int count = glGetProgrami(this.programId, GL_ACTIVE_UNIFORMS);
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer size = stack.mallocInt(1), type = stack.mallocInt(1);
+
+            for (int i = 0; i < count; i++) {
+                String name = glGetActiveUniform(this.programId, i, size, type);
+                int location = glGetUniformLocation(this.programId, name);
+
+                // Arrays are reported as "name[0]", make them accessible by the plain name too
+                if (name.endsWith("[0]"))
+                    name = name.substring(0, name.length() - 3);
+
+                Uniform uniform = this.uniformsCache.computeIfAbsent(name, n -> new Uniform());
+                uniform.location = location;
+                if (uniform.kind != Uniform.NONE)
+                    markDirty(uniform);
+            }
+        }
+    }
+
+    private void setFloats(Uniform uniform, int kind, float x, float y, float z, float w) {
+        float[] v = uniform.floats;
+        if (uniform.kind == kind && v[0] == x && v[1] == y && v[2] == z && v[3] == w)
+            return;
+
+        uniform.kind = kind;
+        v[0] = x;
+        v[1] = y;
+        v[2] = z;
+        v[3] = w;
+        markDirty(uniform);
+    }
+
+    private void setInts(Uniform uniform, int kind, int x, int y, int z, int w) {
+        int[] v = uniform.ints;
+        if (uniform.kind == kind && v[0] == x && v[1] == y && v[2] == z && v[3] == w)
+            return;
+
+        uniform.kind = kind;
+        v[0] = x;
+        v[1] = y;
+        v[2] = z;
+        v[3] = w;
+        markDirty(uniform);
+    }
+
+    private void setMatrix(Uniform uniform, Matrix4f mat) {
+        float[] v = uniform.floats;
+        if (uniform.kind == Uniform.MAT4 &&
+                v[0] == mat.m00() && v[1] == mat.m01() && v[2] == mat.m02() && v[3] == mat.m03() &&
+                v[4] == mat.m10() && v[5] == mat.m11() && v[6] == mat.m12() && v[7] == mat.m13() &&
+                v[8] == mat.m20() && v[9] == mat.m21() && v[10] == mat.m22() && v[11] == mat.m23() &&
+                v[12] == mat.m30() && v[13] == mat.m31() && v[14] == mat.m32() && v[15] == mat.m33())
+            return;
+
+        uniform.kind = Uniform.MAT4;
+        mat.get(v);
+        markDirty(uniform);
+    }
+
+    private void markDirty(Uniform uniform) {
+        if (uniform.location < 0 || uniform.dirty)
+            return;
+
+        uniform.dirty = true;
+        this.dirtyUniforms.add(uniform);
+    }
+
+    private void upload(Uniform uniform) {
+        uniform.dirty = false;
+        if (uniform.location < 0)
+            return;
+
+        int loc = uniform.location;
+        float[] f = uniform.floats;
+        int[] i = uniform.ints;
+        switch (uniform.kind) {
+            case Uniform.FLOAT -> glUniform1f(loc, f[0]);
+            case Uniform.VEC2 -> glUniform2f(loc, f[0], f[1]);
+            case Uniform.VEC3 -> glUniform3f(loc, f[0], f[1], f[2]);
+            case Uniform.VEC4 -> glUniform4f(loc, f[0], f[1], f[2], f[3]);
+            case Uniform.INT -> glUniform1i(loc, i[0]);
+            case Uniform.IVEC2 -> glUniform2i(loc, i[0], i[1]);
+            case Uniform.IVEC3 -> glUniform3i(loc, i[0], i[1], i[2]);
+            case Uniform.IVEC4 -> glUniform4i(loc, i[0], i[1], i[2], i[3]);
+            case Uniform.MAT4 -> glUniformMatrix4fv(loc, false, f);
+        }
     }
 
     private record TextureUniform(String uniform, int textureId) {}
 
-    private record UniformProp(String name, Object value) {}
+    /**
+     * Shadow state of a uniform, the value is uploaded only when it changes
+     * */
+    private static final class Uniform {
+        static final int NONE = 0, FLOAT = 1, VEC2 = 2, VEC3 = 3, VEC4 = 4,
+                INT = 5, IVEC2 = 6, IVEC3 = 7, IVEC4 = 8, MAT4 = 9;
+
+        final float[] floats = new float[16];
+        final int[] ints = new int[4];
+        int location = -1;
+        int kind = NONE;
+        boolean dirty;
+    }
 
 }
@@ -1,20 +1,46 @@
 package dev.artingl.Engine.renderer.viewport;
 
+import dev.artingl.Engine.Display;
 import dev.artingl.Engine.Engine;
+import dev.artingl.Engine.debug.LogLevel;
 import dev.artingl.Engine.debug.Logger;
 import dev.artingl.Engine.misc.Color;
+import dev.artingl.Engine.renderer.GLState;
 import dev.artingl.Engine.renderer.Renderer;
-import dev.artingl.Engine.renderer.shader.ShaderProgram;
+import dev.artingl.Engine.timer.TickListener;
+import dev.artingl.Engine.timer.Timer;
 import org.jetbrains.annotations.Nullable;
 import org.joml.FrustumIntersection;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
+import org.lwjgl.BufferUtils;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL15C.*;
+import static org.lwjgl.opengl.GL31C.GL_UNIFORM_BUFFER;
+
+public class ViewportManager implements TickListener {
+
+    // Binding point of the "Globals" uniform block shared by all shaders
+    public static final int GLOBALS_BINDING = 0;
+
+    /* Layout of the "Globals" uniform block (std140):
+     *   mat4 m_proj;                                 0
+     *   mat4 m_view;                                 64
+     *   vec3 m_pos;             float m_time;        128, 140
+     *   vec3 m_rot;             float nearPlane;     144, 156
+     *   vec3 screenResolution;  float farPlane;      160, 172
+     */
+    public static final int GLOBALS_SIZE = 176;
 
-public class ViewportManager {
     private final Logger logger;
     private final Matrix4f view, proj;
     private final FrustumIntersection frustum;
+    private final ByteBuffer globals;
     private Viewport currentViewport;
+    private int globalsBuffer;
+    private float time;
 
     public ViewportManager(Logger logger, Renderer renderer) {
         this.frustum = new FrustumIntersection();
@@ -22,6 +48,30 @@ public class ViewportManager {
 
         this.view = new Matrix4f();
         this.proj = new Matrix4f();
+        this.globals = BufferUtils.createByteBuffer(GLOBALS_SIZE);
+        this.globalsBuffer = -1;
+    }
+
+    public void init() {
+        this.globalsBuffer = glGenBuffers();
+        GLState state = Engine.getInstance().getRenderer().getState();
+        state.bindBuffer(GL_UNIFORM_BUFFER, this.globalsBuffer);
+        glBufferData(GL_UNIFORM_BUFFER, GLOBALS_SIZE, GL_DYNAMIC_DRAW);
+        state.bindBufferBase(GL_UNIFORM_BUFFER, GLOBALS_BINDING, this.globalsBuffer);
+        Engine.getInstance().getTimer().subscribe(this);
+
+        this.logger.log(LogLevel.INFO, "Creating globals uniform buffer: ubo=%d, binding=%d", this.globalsBuffer, GLOBALS_BINDING);
+    }
+
+    public void cleanup() {
+        Engine.getInstance().getTimer().unsubscribe(this);
+        Engine.getInstance().getRenderer().getState().deleteBuffer(this.globalsBuffer);
+        this.globalsBuffer = -1;
+    }
+
+    @Override
+    public void tick(Timer timer) {
+        this.time += 1f / timer.getTickPerSecond();
     }
 
     /**
@@ -52,8 +102,9 @@ public class ViewportManager {
     public void update() {
         if (currentViewport == null) {
             // No viewport is being used
-            this.view.set(new Matrix4f().zero());
-            this.proj.set(new Matrix4f().zero());
+            this.view.zero();
+            this.proj.zero();
+            this.uploadGlobals(0, 0);
             return;
         }
 
@@ -99,6 +150,32 @@ public class ViewportManager {
         this.proj.translate(off);
 
         this.frustum.set(new Matrix4f(proj).mul(view));
+        this.uploadGlobals(nearPlane, farPlane);
+    }
+
+    /**
+     * Write the camera and global state into the uniform buffer
+     * */
+    private void uploadGlobals(float nearPlane, float farPlane) {
+        if (this.globalsBuffer <= 0)
+            return;
+
+        Display display = Engine.getInstance().getDisplay();
+        Vector3f position = getPosition(), rotation = getRotation();
+        ByteBuffer buffer = this.globals;
+        this.proj.get(0, buffer);
+        this.view.get(64, buffer);
+        position.get(128, buffer);
+        buffer.putFloat(140, this.time);
+        rotation.get(144, buffer);
+        buffer.putFloat(156, nearPlane);
+        buffer.putFloat(160, display.getWidth());
+        buffer.putFloat(164, display.getHeight());
+        buffer.putFloat(168, display.getAspectRatio());
+        buffer.putFloat(172, farPlane);
+
+        Engine.getInstance().getRenderer().getState().bindBuffer(GL_UNIFORM_BUFFER, this.globalsBuffer);
+        glBufferSubData(GL_UNIFORM_BUFFER, 0, buffer);
     }
 
     /**
@@ -133,15 +210,6 @@ public class ViewportManager {
         return currentViewport.getBackgroundColor();
     }
 
-    /**
-     * Uploads matrices to the shader program
-     *
-     * @param program The target shader program
-     */
-    public void uploadMatrices(ShaderProgram program) {
-        program.updateViewport(this);
-    }
-
     /**
      * Get current projection matrix.
      * */
@@ -156,6 +224,13 @@ public class ViewportManager {
         return new Matrix4f(view);
     }
 
+    /**
+     * Get time in seconds which is passed to the shaders
+     * */
+    public float getTime() {
+        return time;
+    }
+
     /**
      * Tells whether the renderer should apply postprocessing effects when rendering to this viewport
      * */
@@ -6,13 +6,11 @@ import dev.artingl.Engine.debug.Logger;
 import dev.artingl.Engine.misc.Color;
 import dev.artingl.Engine.renderer.Renderer;
 import dev.artingl.Engine.renderer.mesh.BaseMesh;
-import dev.artingl.Engine.renderer.mesh.IMesh;
 import dev.artingl.Engine.renderer.mesh.VerticesBuffer;
 import dev.artingl.Engine.resources.Resource;
 import dev.artingl.Engine.resources.texture.Texture;
 import org.jetbrains.annotations.Nullable;
 import org.joml.Matrix4f;
-import org.joml.Vector2f;
 import org.joml.Vector3f;
 import org.lwjgl.BufferUtils;
 import org.lwjgl.stb.STBTTAlignedQuad;
@@ -44,7 +42,8 @@ public class FontManager {
 
     private final Logger logger;
     private final Renderer renderer;
-    private final ConcurrentHashMap<String, BaseMesh> cachedText;
+    private final ConcurrentHashMap<String, CachedText> cachedText;
+    private final BaseMesh textMesh;
     private final ConcurrentHashMap<Resource, FontInfo> fontsMap;
     private final List<Resource> lazyFonts;
     private long cacheClearTime;
@@ -55,6 +54,11 @@ public class FontManager {
         this.fontsMap = new ConcurrentHashMap<>();
         this.cachedText = new ConcurrentHashMap<>();
         this.lazyFonts = new ArrayList<>();
+
+        // All text is rendered through one mesh which streams vertices of the text being rendered
+        this.textMesh = new BaseMesh();
+        this.textMesh.enableFade(false);
+        this.textMesh.setStreaming(true);
     }
 
     /**
@@ -110,17 +114,18 @@ public class FontManager {
      */
     public void renderText(Renderer renderer, Resource font, String text, Vector3f position, Color color, int size) {
         String cacheKey = text + " " + size + " " + font.toString();
-        BaseMesh mesh;
+        CachedText cached;
         position = new Vector3f(position);
 
         synchronized (this.cachedText) {
-            if ((mesh = this.cachedText.get(cacheKey)) == null) {
+            if ((cached = this.cachedText.get(cacheKey)) == null) {
                 FontInfo info = this.fontsMap.get(font);
 
                 if (info == null)
                     return;
 
-                VerticesBuffer vertices = new VerticesBuffer(
+                // Each character is a quad made of 2 triangles
+                VerticesBuffer.Builder vertices = new VerticesBuffer.Builder(text.length() * 6,
                         VerticesBuffer.Attribute.VEC3F,
                         VerticesBuffer.Attribute.VEC3F,
                         VerticesBuffer.Attribute.VEC2F);
@@ -166,29 +171,30 @@ public class FontManager {
                                 y0 = scale(lineY, q.y0(), factorY),
                                 y1 = scale(lineY, q.y1(), factorY);
 
-                        vertices.addAttribute(new Vector3f(x0, 1 - y0, 0)).addAttribute(new Vector3f()).addAttribute(new Vector2f(q.s0(), q.t0()));
-                        vertices.addAttribute(new Vector3f(x1, 1 - y0, 0)).addAttribute(new Vector3f()).addAttribute(new Vector2f(q.s1(), q.t0()));
-                        vertices.addAttribute(new Vector3f(x0, 1 - y1, 0)).addAttribute(new Vector3f()).addAttribute(new Vector2f(q.s0(), q.t1()));
+                        vertices.put(x0, 1 - y0, 0).put(0, 0, 0).put(q.s0(), q.t0());
+                        vertices.put(x1, 1 - y0, 0).put(0, 0, 0).put(q.s1(), q.t0());
+                        vertices.put(x0, 1 - y1, 0).put(0, 0, 0).put(q.s0(), q.t1());
 
-                        vertices.addAttribute(new Vector3f(x1, 1 - y1, 0)).addAttribute(new Vector3f()).addAttribute(new Vector2f(q.s1(), q.t1()));
-                        vertices.addAttribute(new Vector3f(x0, 1 - y1, 0)).addAttribute(new Vector3f()).addAttribute(new Vector2f(q.s0(), q.t1()));
-                        vertices.addAttribute(new Vector3f(x1, 1 - y0, 0)).addAttribute(new Vector3f()).addAttribute(new Vector2f(q.s1(), q.t0()));
+                        vertices.put(x1, 1 - y1, 0).put(0, 0, 0).put(q.s1(), q.t1());
+                        vertices.put(x0, 1 - y1, 0).put(0, 0, 0).put(q.s0(), q.t1());
+                        vertices.put(x1, 1 - y0, 0).put(0, 0, 0).put(q.s1(), q.t0());
                     }
 
-                    mesh = new BaseMesh(vertices);
-                    mesh.enableFade(false);
-                    mesh.setTexture(sizeInfo.getTexture());
-                    mesh.bake();
-                    this.cachedText.put(cacheKey, mesh);
+                    cached = new CachedText(vertices.build(), sizeInfo.getTexture());
+                    this.cachedText.put(cacheKey, cached);
                 }
             }
 
-            mesh.setColor(color);
-            mesh.transform(new Matrix4f()
+            // The fork shares the cached vertices, so nothing is copied here
+            textMesh.setVertices(cached.vertices().fork());
+            textMesh.setTexture(cached.texture());
+            textMesh.setColor(color);
+            textMesh.transform(new Matrix4f()
                     .scale(new Vector3f(0.05f))
                     .translate(position)
                     .rotateXYZ(new Vector3f()));
-            mesh.render(renderer);
+            textMesh.bake();
+            textMesh.render(renderer);
         }
     }
 
@@ -266,6 +272,13 @@ public class FontManager {
     }
 
     public void cleanup() {
+        synchronized (this.cachedText) {
+            for (CachedText cached : this.cachedText.values())
+                cached.vertices().cleanup();
+            this.cachedText.clear();
+            this.textMesh.cleanup();
+        }
+
         synchronized (this.fontsMap) {
             for (FontInfo info : this.fontsMap.values()) {
                 if (info.font != null)
@@ -299,8 +312,8 @@ public class FontManager {
         if (cacheClearTime + 30 * 1000 < System.currentTimeMillis()) {
             this.cacheClearTime = System.currentTimeMillis();
             synchronized (this.cachedText) {
-                for (IMesh mesh : this.cachedText.values())
-                    mesh.cleanup();
+                for (CachedText cached : this.cachedText.values())
+                    cached.vertices().cleanup();
                 this.cachedText.clear();
             }
         }
@@ -314,6 +327,9 @@ public class FontManager {
         }
     }
 
+    private record CachedText(VerticesBuffer vertices, Texture texture) {
+    }
+
     private record FontInfo(Font awtFont, STBTTFontinfo font, ByteBuffer buffer, Map<Integer, FontSizeInfo> sizes, int ascent, int descent, int lineGap) {
     }
 
@@ -1,16 +1,22 @@
 package dev.artingl.Engine.renderer.visual.postprocessing;
 
+import dev.artingl.Engine.Engine;
 import dev.artingl.Engine.renderer.shader.Shader;
+import dev.artingl.Engine.renderer.shader.ShaderProgram;
+import dev.artingl.Engine.resources.Options;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
+import static org.lwjgl.opengl.GL30C.GL_RGBA16F;
+
 public abstract class PostprocessEffect {
 
     private final Map<String, Object> properties;
     private boolean isEnabled = true;
+    private RenderScale renderScale = RenderScale.FULL;
 
     public void setEnabled(boolean enabled) {
         this.isEnabled = enabled;
@@ -24,6 +30,33 @@ public abstract class PostprocessEffect {
         this.properties = new ConcurrentHashMap<>();
     }
 
+    public RenderScale getRenderScale() {
+        return renderScale;
+    }
+
+    /**
+     * Set resolution of the effect targets relative to its input.
+     * Pre-effects run with the render scale of their effect.
+     * */
+    public void setRenderScale(RenderScale renderScale) {
+        this.renderScale = renderScale;
+    }
+
+    /**
+     * Get the render scale multiplied by {@link Options.Values#POSTPROCESS_SCALE}
+     * */
+    public float getScale() {
+        float scale = Engine.getInstance().getOptions().getFloat(Options.Values.POSTPROCESS_SCALE);
+        return Math.min(1.0f, this.renderScale.getFactor() * scale);
+    }
+
+    /**
+     * Get size of the effect target for the input size
+     * */
+    public int scaled(int size) {
+        return Math.max(1, Math.round(size * this.getScale()));
+    }
+
     public Set<Map.Entry<String, Object>> getProperties() {
         return this.properties.entrySet();
     }
@@ -54,4 +87,30 @@ public abstract class PostprocessEffect {
 
     public void prepareRender() {}
 
+    /**
+     * Declare passes of the effect in the render graph.
+     * By default, the shaders are applied one after another, each one reading result of the previous one as ppTex.
+     * The result may be smaller than the input, it is upsampled by the post-processing manager then.
+     *
+     * @param graph    The render graph
+     * @param input    Result of the previous effects
+     * @param source   Result of the pre-effects, same as the input if there are none
+     * @param programs Programs made of {@link #getShaders()}
+     * @return Result of the effect
+     * */
+    public RenderGraph.Resource setup(RenderGraph graph, RenderGraph.Resource input, RenderGraph.Resource source, ShaderProgram[] programs) {
+        String name = this.getClass().getSimpleName();
+        RenderGraph.Resource result = source;
+
+        for (int i = 0; i < programs.length; i++) {
+            RenderGraph.Resource output = graph.createTarget(name + "#" + i, this.scaled(input.getWidth()), this.scaled(input.getHeight()), GL_RGBA16F);
+            graph.addPass(name + "#" + i, programs[i], output)
+                    .read("ppTex", result)
+                    .properties(this.getProperties());
+            result = output;
+        }
+
+        return result;
+    }
+
 }
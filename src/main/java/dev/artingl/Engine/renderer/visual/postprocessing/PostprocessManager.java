@@ -2,11 +2,9 @@ package dev.artingl.Engine.renderer.visual.postprocessing;
 
 import dev.artingl.Engine.EngineException;
 import dev.artingl.Engine.debug.Logger;
-import dev.artingl.Engine.misc.Color;
 import dev.artingl.Engine.renderer.Framebuffer;
 import dev.artingl.Engine.renderer.Renderer;
 import dev.artingl.Engine.renderer.mesh.BaseMesh;
-import dev.artingl.Engine.renderer.mesh.IMesh;
 import dev.artingl.Engine.renderer.mesh.VerticesBuffer;
 import dev.artingl.Engine.renderer.shader.Shader;
 import dev.artingl.Engine.renderer.shader.ShaderProgram;
@@ -19,7 +17,6 @@ import org.joml.Vector3f;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 
 import static org.lwjgl.opengl.GL11C.*;
 
@@ -30,19 +27,24 @@ public class PostprocessManager {
     );
 
     public static final Shader EFFECT_VERT = new Shader(ShaderType.VERTEX, new Resource("engine", "shaders/postprocess/effects/effect.vert"));
+    public static final ShaderProgram UPSAMPLE_PROGRAM = new ShaderProgram(
+            EFFECT_VERT,
+            new Shader(ShaderType.FRAGMENT, new Resource("engine", "shaders/postprocess/effects/upsample.glsl"))
+    );
     private static final int MODE = GL_TRIANGLES;
 
     private final Logger logger;
     private final List<EffectInstance> effects;
     private final List<PostprocessEffect> lazyEffects;
-    private final Framebuffer[] framebuffers;
-    private int bufferId;
+    private final RenderGraph graph;
+    private final RenderTargetPool targetPool;
     private BaseMesh screenQuad;
 
     public PostprocessManager(Logger logger) {
         this.effects = new ArrayList<>();
         this.lazyEffects = new ArrayList<>();
-        this.framebuffers = new Framebuffer[]{ new Framebuffer(), new Framebuffer() };
+        this.graph = new RenderGraph();
+        this.targetPool = new RenderTargetPool();
         this.logger = logger;
     }
 
@@ -63,8 +65,12 @@ public class PostprocessManager {
         return effects;
     }
 
-    public Framebuffer getFramebuffer() {
-        return framebuffers[bufferId++ % 2];
+    public RenderGraph getGraph() {
+        return graph;
+    }
+
+    public RenderTargetPool getTargetPool() {
+        return targetPool;
     }
 
     public void cleanup() {
@@ -75,8 +81,7 @@ public class PostprocessManager {
         this.lazyEffects.clear();
         this.effects.clear();
         this.screenQuad.cleanup();
-        this.framebuffers[0].cleanup();
-        this.framebuffers[1].cleanup();
+        this.targetPool.cleanup();
     }
 
     public void init() throws EngineException {
@@ -96,32 +101,40 @@ public class PostprocessManager {
         this.screenQuad.bake();
         this.screenQuad.enableFade(false);
         POSTPROCESSING_PROGRAM.bake();
-        this.framebuffers[0].init();
-        this.framebuffers[1].init();
+        UPSAMPLE_PROGRAM.bake();
     }
 
-    public void render(Renderer renderer) throws EngineException {
-        if (this.framebuffers[0].updateBuffer() || this.framebuffers[1].updateBuffer())
-            return;
+    /**
+     * Declare depth-aware upsample of the resource to size of the target
+     *
+     * @param graph  The render graph
+     * @param source Resource to upsample
+     * @param target Resource which size is used
+     * @return Upsampled resource, or the source if it has the size already
+     * */
+    public static RenderGraph.Resource upsample(RenderGraph graph, RenderGraph.Resource source, RenderGraph.Resource target) {
+        if (source.getWidth() == target.getWidth() && source.getHeight() == target.getHeight())
+            return source;
+
+        RenderGraph.Resource output = graph.createTarget(source.getName() + ".upsampled", target.getWidth(), target.getHeight(), source.getFormat());
+        graph.addPass("upsample", UPSAMPLE_PROGRAM, output)
+                .read("ppTex", source)
+                .read("depthTex", graph.getDepth());
+        return output;
+    }
 
+    public void render(Renderer renderer) throws EngineException {
         Framebuffer mainFb = renderer.getMainFramebuffer();
         Viewport viewport = renderer.getViewport().getCurrentViewport();
         if (viewport == null)
             return;
 
-        renderer.bindFramebuffer(null);
-        glPolygonMode(GL_FRONT_AND_BACK, GL_FILL);
+        renderer.getState().polygonMode(GL_FILL);
+        this.targetPool.frame();
 
-        // Clear buffers
-        this.framebuffers[0].clear(renderer, Color.BLACK);
-        this.framebuffers[1].clear(renderer, Color.BLACK);
-
-        // Render initial framebuffer to postprocessing framebuffer to work with it later
-        this.bufferId = 0;
-        renderer.bindFramebuffer(getFramebuffer());
-        POSTPROCESSING_PROGRAM.setTextureUniform("ppTex", mainFb.getFrameTexture());
-        this.screenQuad.setShaderProgram(POSTPROCESSING_PROGRAM);
-        this.screenQuad.render(renderer, MODE);
+        // Effects read the scene straight from the main framebuffer, so it is not copied
+        this.graph.reset(mainFb);
+        RenderGraph.Resource result = this.graph.getScene();
 
         // Check if the rendering of effects is enabled
         if (viewport.isPostprocessingEnabled()) {
@@ -136,19 +149,16 @@ public class PostprocessManager {
                 this.lazyEffects.clear();
             }
 
-            // Render all effects
+            // Declare passes of all effects
             for (EffectInstance inst: effects) {
                 if (inst.effect.isEnabled())
-                    inst.render(renderer, this, this.screenQuad);
+                    result = upsample(this.graph, inst.setup(this.graph, result), result);
             }
         }
-        this.bufferId++;
 
         // Render the result to the screen
-        renderer.bindFramebuffer(null);
-        POSTPROCESSING_PROGRAM.setTextureUniform("ppTex", getFramebuffer().getFrameTexture());
-        this.screenQuad.setShaderProgram(POSTPROCESSING_PROGRAM);
-        this.screenQuad.render(renderer, MODE);
+        this.graph.present(result, POSTPROCESSING_PROGRAM);
+        this.graph.execute(renderer, this.targetPool, this.screenQuad);
 
         // Render UI
 //        POSTPROCESSING_PROGRAM.setTextureUniform("ppTex", renderer.getUiFramebuffer().getFrameTexture());
@@ -156,7 +166,7 @@ public class PostprocessManager {
 //        this.screenQuad.render(renderer, MODE);
 
         if (renderer.isWireframeEnabled())
-            glPolygonMode(GL_FRONT_AND_BACK, GL_LINE);
+            renderer.getState().polygonMode(GL_LINE);
     }
 
     private static class EffectInstance {
@@ -179,7 +189,7 @@ public class PostprocessManager {
                         EFFECT_VERT,
                         shaders[i]
                 );
-                program.bake();
+                program.submit();
                 this.programs[i] = program;
             }
 
@@ -194,23 +204,23 @@ public class PostprocessManager {
             }
         }
 
-        public void render(Renderer renderer, PostprocessManager postprocess, IMesh screenQuad) {
-            // Firstly render all child effects
+        public RenderGraph.Resource setup(RenderGraph graph, RenderGraph.Resource input) {
+            // Firstly declare all child effects, they run with the same scale and are not upsampled
+            RenderGraph.Resource source = input;
             for (EffectInstance child: children) {
-                child.render(renderer, postprocess, screenQuad);
+                child.effect.setRenderScale(effect.getRenderScale());
+                if (child.effect.isEnabled())
+                    source = child.setup(graph, source);
             }
 
-            // Render the effect itself
+            // Skip the effect while its programs are being compiled, passes of the children are culled then
             for (ShaderProgram program: programs) {
-                effect.prepareRender();
-                renderer.bindFramebuffer(postprocess.getFramebuffer());
-                program.setTextureUniform("ppTex", postprocess.getFramebuffer().getFrameTexture());
-                postprocess.getFramebuffer();
-                for (Map.Entry<String, Object> entry: effect.getProperties())
-                    program.setUniformObject(entry.getKey(), entry.getValue());
-                screenQuad.setShaderProgram(program);
-                screenQuad.render(renderer, MODE);
+                if (!program.isReady())
+                    return input;
             }
+
+            effect.prepareRender();
+            return effect.setup(graph, input, source, programs);
         }
 
         public void cleanup(PostprocessManager postprocess) {
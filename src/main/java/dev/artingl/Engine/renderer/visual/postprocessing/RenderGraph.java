@@ -0,0 +1,332 @@
+package dev.artingl.Engine.renderer.visual.postprocessing;
+
+import dev.artingl.Engine.Display;
+import dev.artingl.Engine.Engine;
+import dev.artingl.Engine.EngineException;
+import dev.artingl.Engine.renderer.Framebuffer;
+import dev.artingl.Engine.renderer.GLState;
+import dev.artingl.Engine.renderer.Renderer;
+import dev.artingl.Engine.renderer.mesh.IMesh;
+import dev.artingl.Engine.renderer.shader.ShaderProgram;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.lwjgl.opengl.GL11C.*;
+
+/**
+ * Full-screen passes of one frame together with the textures they read and write.
+ * Passes are declared first and executed afterward, so the graph knows the lifetime of every resource:
+ * passes which results are never used are culled, and transient targets are taken from the {@link RenderTargetPool}
+ * right before their first write and returned right after their last read, so they can be aliased by later passes.
+ * Every pass covers its whole target, so targets are never cleared. The last pass renders straight to the screen
+ * when its size matches the display.
+ */
+public class RenderGraph {
+
+    private final List<Pass> passes;
+    private Resource scene, depth, output;
+    private int executedPasses, culledPasses;
+
+    public RenderGraph() {
+        this.passes = new ArrayList<>();
+    }
+
+    /**
+     * Forget all passes and resources, so the graph can be declared again
+     *
+     * @param framebuffer Framebuffer with the rendered scene
+     */
+    public void reset(Framebuffer framebuffer) {
+        this.passes.clear();
+        this.output = null;
+        this.scene = this.importTexture("scene", framebuffer.getFrameTexture(), framebuffer.getWidth(), framebuffer.getHeight());
+        this.depth = this.importTexture("depth", framebuffer.getDepthTexture(), framebuffer.getWidth(), framebuffer.getHeight());
+    }
+
+    /**
+     * Get color of the rendered scene
+     */
+    public Resource getScene() {
+        return scene;
+    }
+
+    /**
+     * Get depth of the rendered scene
+     */
+    public Resource getDepth() {
+        return depth;
+    }
+
+    /**
+     * Make resource of the texture which is owned by something else, e.g. by the main framebuffer
+     *
+     * @param name    Name of the resource
+     * @param texture The texture
+     * @param width   Width of the texture
+     * @param height  Height of the texture
+     */
+    public Resource importTexture(String name, int texture, int width, int height) {
+        Resource resource = new Resource(name, width, height, 0);
+        resource.texture = texture;
+        return resource;
+    }
+
+    /**
+     * Declare transient target which will be allocated from the pool
+     *
+     * @param name   Name of the resource
+     * @param width  Width of the target
+     * @param height Height of the target
+     * @param format Internal format of the target, e.g. GL_RGBA16F
+     */
+    public Resource createTarget(String name, int width, int height, int format) {
+        return new Resource(name, width, height, format);
+    }
+
+    /**
+     * Declare pass which renders the program on a full-screen quad into the output
+     *
+     * @param name    Name of the pass
+     * @param program Program of the pass
+     * @param output  Resource written by the pass
+     */
+    public Pass addPass(String name, ShaderProgram program, Resource output) {
+        if (output.isImported())
+            throw new EngineException("Pass '" + name + "' can't write into imported resource '" + output.name + "'");
+        if (output.writer != null)
+            throw new EngineException("Resource '" + output.name + "' is already written by pass '" + output.writer.name + "'");
+
+        Pass pass = new Pass(name, program, output);
+        output.writer = pass;
+        this.passes.add(pass);
+        return pass;
+    }
+
+    /**
+     * Make the resource the final result of the graph which will be shown on the screen
+     *
+     * @param result      Final resource
+     * @param copyProgram Program which copies ppTex, used if the result can't be rendered to the screen directly
+     */
+    public void present(Resource result, ShaderProgram copyProgram) {
+        Display display = Engine.getInstance().getDisplay();
+
+        // Render the last pass straight to the screen instead of copying its result
+        if (result.writer != null && result.width == display.getWidth() && result.height == display.getHeight()) {
+            result.isScreen = true;
+            this.output = result;
+            return;
+        }
+
+        Resource screen = this.createTarget("screen", display.getWidth(), display.getHeight(), 0);
+        screen.isScreen = true;
+        this.addPass("present", copyProgram, screen).read("ppTex", result);
+        this.output = screen;
+    }
+
+    /**
+     * Execute all passes which contribute to the presented result
+     *
+     * @param renderer The renderer
+     * @param pool     Pool to allocate transient targets from
+     * @param quad     Full-screen quad
+     */
+    public void execute(Renderer renderer, RenderTargetPool pool, IMesh quad) throws EngineException {
+        if (this.output == null)
+            throw new EngineException("Render graph has no presented result");
+
+        List<Pass> alive = this.cull();
+        this.culledPasses = this.passes.size() - alive.size();
+        this.executedPasses = alive.size();
+
+        // Find lifetimes of the resources
+        for (int i = 0; i < alive.size(); i++) {
+            Pass pass = alive.get(i);
+            pass.output.lastPass = Math.max(pass.output.lastPass, i);
+            for (Resource resource: pass.reads.values())
+                resource.lastPass = Math.max(resource.lastPass, i);
+        }
+
+        // Passes cover the whole target, so neither blending nor depth is needed
+        GLState state = renderer.getState();
+        state.setEnabled(GL_BLEND, false);
+        state.setEnabled(GL_DEPTH_TEST, false);
+
+        for (int i = 0; i < alive.size(); i++) {
+            Pass pass = alive.get(i);
+            Resource output = pass.output;
+
+            if (output.isScreen) {
+                renderer.bindFramebuffer(null);
+            }
+            else {
+                output.target = pool.acquire(output.width, output.height, output.format);
+                renderer.bindFramebuffer(output.target);
+            }
+
+            ShaderProgram program = pass.program;
+            for (Map.Entry<String, Resource> read: pass.reads.entrySet())
+                program.setTextureUniform(read.getKey(), read.getValue().getTexture());
+            if (pass.properties != null) {
+                for (Map.Entry<String, Object> entry: pass.properties)
+                    program.setUniformObject(entry.getKey(), entry.getValue());
+            }
+            quad.setShaderProgram(program);
+            quad.render(renderer, GL_TRIANGLES);
+
+            // Return targets which are not needed anymore, so following passes can reuse them
+            for (Resource resource: pass.reads.values())
+                this.release(pool, resource, i);
+            this.release(pool, output, i);
+        }
+
+        // Restore the defaults, see Engine
+        state.setEnabled(GL_BLEND, true);
+        state.setEnabled(GL_DEPTH_TEST, true);
+    }
+
+    private void release(RenderTargetPool pool, Resource resource, int pass) {
+        if (resource.target == null || resource.lastPass != pass)
+            return;
+        pool.release(resource.target);
+        resource.target = null;
+    }
+
+    /**
+     * Get passes which the presented result depends on, in order of declaration
+     */
+    private List<Pass> cull() {
+        Deque<Resource> queue = new ArrayDeque<>();
+        queue.add(this.output);
+
+        while (!queue.isEmpty()) {
+            Resource resource = queue.poll();
+            if (resource.isImported())
+                continue;
+
+            Pass writer = resource.writer;
+            if (writer == null)
+                throw new EngineException("Resource '" + resource.name + "' is read, but never written");
+            if (writer.isAlive)
+                continue;
+
+            writer.isAlive = true;
+            queue.addAll(writer.reads.values());
+        }
+
+        List<Pass> alive = new ArrayList<>();
+        for (Pass pass: this.passes) {
+            if (pass.isAlive)
+                alive.add(pass);
+        }
+
+        return alive;
+    }
+
+    /**
+     * Get amount of passes executed in the last frame
+     */
+    public int getExecutedPasses() {
+        return executedPasses;
+    }
+
+    /**
+     * Get amount of passes culled in the last frame
+     */
+    public int getCulledPasses() {
+        return culledPasses;
+    }
+
+    public static class Resource {
+        private final String name;
+        private final int width, height, format;
+        private int texture;
+        private Pass writer;
+        private Framebuffer target;
+        private boolean isScreen;
+        private int lastPass = -1;
+
+        private Resource(String name, int width, int height, int format) {
+            this.name = name;
+            this.width = width;
+            this.height = height;
+            this.format = format;
+        }
+
+        /**
+         * Get texture of the resource, valid only while the graph is executed
+         */
+        public int getTexture() {
+            if (this.isImported())
+                return this.texture;
+            if (this.target == null)
+                throw new EngineException("Resource '" + this.name + "' is not allocated");
+            return this.target.getFrameTexture();
+        }
+
+        public boolean isImported() {
+            return this.texture > 0;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public int getFormat() {
+            return format;
+        }
+    }
+
+    public static class Pass {
+        private final String name;
+        private final ShaderProgram program;
+        private final Resource output;
+        private final Map<String, Resource> reads;
+        private Set<Map.Entry<String, Object>> properties;
+        private boolean isAlive;
+
+        private Pass(String name, ShaderProgram program, Resource output) {
+            this.name = name;
+            this.program = program;
+            this.output = output;
+            this.reads = new LinkedHashMap<>();
+        }
+
+        /**
+         * Declare that the pass samples the resource
+         *
+         * @param uniform  Name of the sampler uniform
+         * @param resource The resource
+         */
+        public Pass read(String uniform, Resource resource) {
+            this.reads.put(uniform, resource);
+            return this;
+        }
+
+        /**
+         * Set uniforms which are uploaded before the pass is rendered
+         */
+        public Pass properties(Set<Map.Entry<String, Object>> properties) {
+            this.properties = properties;
+            return this;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
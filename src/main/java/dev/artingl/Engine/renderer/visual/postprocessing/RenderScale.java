@@ -0,0 +1,20 @@
+package dev.artingl.Engine.renderer.visual.postprocessing;
+
+/**
+ * Resolution of post-processing effect targets relative to the input image
+ */
+public enum RenderScale {
+    FULL(1.0f), HALF(0.5f), QUARTER(0.25f)
+
+    ;
+
+    private final float factor;
+
+    RenderScale(float factor) {
+        this.factor = factor;
+    }
+
+    public float getFactor() {
+        return factor;
+    }
+}
@@ -0,0 +1,106 @@
+package dev.artingl.Engine.renderer.visual.postprocessing;
+
+import dev.artingl.Engine.renderer.Framebuffer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pool of color-only framebuffers used as transient targets of the render graph.
+ * Targets are shared by size and format, so passes which are not alive at the same time alias one target.
+ * Targets which were not used for {@link #MAX_UNUSED_FRAMES} frames (e.g. after the display was resized) are destroyed.
+ */
+public class RenderTargetPool {
+
+    private static final int MAX_UNUSED_FRAMES = 120;
+
+    private final Map<Key, List<Target>> free;
+    private final List<Target> targets;
+    private long frame;
+
+    public RenderTargetPool() {
+        this.free = new HashMap<>();
+        this.targets = new ArrayList<>();
+    }
+
+    /**
+     * Get a free target of the size and format, a new one is created if there is none
+     *
+     * @param width  Width of the target
+     * @param height Height of the target
+     * @param format Internal format of the target, e.g. GL_RGBA16F
+     */
+    public Framebuffer acquire(int width, int height, int format) {
+        List<Target> list = this.free.get(new Key(width, height, format));
+        if (list != null && !list.isEmpty())
+            return list.remove(list.size() - 1).framebuffer;
+
+        Framebuffer framebuffer = new Framebuffer(width, height, format, false);
+        framebuffer.init();
+        this.targets.add(new Target(new Key(width, height, format), framebuffer));
+        return framebuffer;
+    }
+
+    /**
+     * Return the target to the pool, so other passes can use it
+     */
+    public void release(Framebuffer framebuffer) {
+        for (Target target: this.targets) {
+            if (target.framebuffer == framebuffer) {
+                target.lastUsed = this.frame;
+                this.free.computeIfAbsent(target.key, k -> new ArrayList<>()).add(target);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Destroy targets which were not used for a while, gets called once per frame
+     */
+    public void frame() {
+        this.frame++;
+
+        for (List<Target> list: this.free.values()) {
+            Iterator<Target> it = list.iterator();
+            while (it.hasNext()) {
+                Target target = it.next();
+                if (target.lastUsed + MAX_UNUSED_FRAMES < this.frame) {
+                    target.framebuffer.cleanup();
+                    this.targets.remove(target);
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    public void cleanup() {
+        for (Target target: this.targets)
+            target.framebuffer.cleanup();
+        this.targets.clear();
+        this.free.clear();
+    }
+
+    /**
+     * Get amount of allocated targets
+     */
+    public int getTargets() {
+        return this.targets.size();
+    }
+
+    private record Key(int width, int height, int format) {
+    }
+
+    private static class Target {
+        private final Key key;
+        private final Framebuffer framebuffer;
+        private long lastUsed;
+
+        private Target(Key key, Framebuffer framebuffer) {
+            this.key = key;
+            this.framebuffer = framebuffer;
+        }
+    }
+}
@@ -1,12 +1,23 @@
 package dev.artingl.Engine.renderer.visual.postprocessing.effects;
 
+import dev.artingl.Engine.renderer.shader.ShaderProgram;
 import dev.artingl.Engine.renderer.visual.postprocessing.PostprocessEffect;
+import dev.artingl.Engine.renderer.visual.postprocessing.PostprocessManager;
+import dev.artingl.Engine.renderer.visual.postprocessing.RenderGraph;
+import dev.artingl.Engine.renderer.visual.postprocessing.RenderScale;
 import dev.artingl.Engine.renderer.shader.Shader;
 import dev.artingl.Engine.renderer.shader.ShaderType;
 import dev.artingl.Engine.resources.Resource;
 
+import static org.lwjgl.opengl.GL30C.GL_RGBA16F;
+
 public class PostprocessBloomEffect extends PostprocessEffect {
 
+    public PostprocessBloomEffect() {
+        super();
+        this.setRenderScale(RenderScale.HALF);
+    }
+
     public static final Shader SHADER = new Shader(
             ShaderType.FRAGMENT,
             new Resource("engine", "shaders/postprocess/effects/bloom/bloom.glsl"));
@@ -17,7 +28,7 @@ public class PostprocessBloomEffect extends PostprocessEffect {
 
         for (int i = 0; i < effects.length; i++) {
             PostprocessBoxBlurEffect blur = new PostprocessBoxBlurEffect();
-            blur.setProperty("kernel", 2 * (1 + i));
+            blur.setProperty("blurKernel", 2 * (1 + i));
             effects[i] = blur;
         }
 
@@ -38,4 +49,16 @@ public class PostprocessBloomEffect extends PostprocessEffect {
     public void prepareRender() {
 
     }
+
+    @Override
+    public RenderGraph.Resource setup(RenderGraph graph, RenderGraph.Resource input, RenderGraph.Resource source, ShaderProgram[] programs) {
+        // Add the blurred image of the pre-effects on top of the input
+        RenderGraph.Resource blurred = PostprocessManager.upsample(graph, source, input);
+        RenderGraph.Resource output = graph.createTarget("bloom", input.getWidth(), input.getHeight(), GL_RGBA16F);
+        graph.addPass("bloom", programs[0], output)
+                .read("ppTex", blurred)
+                .read("fbTex", input)
+                .properties(this.getProperties());
+        return output;
+    }
 }
@@ -1,10 +1,16 @@
 package dev.artingl.Engine.renderer.visual.postprocessing.effects;
 
+import dev.artingl.Engine.renderer.shader.ShaderProgram;
 import dev.artingl.Engine.renderer.visual.postprocessing.PostprocessEffect;
+import dev.artingl.Engine.renderer.visual.postprocessing.RenderGraph;
+import dev.artingl.Engine.renderer.visual.postprocessing.RenderScale;
 import dev.artingl.Engine.renderer.shader.Shader;
 import dev.artingl.Engine.renderer.shader.ShaderType;
 import dev.artingl.Engine.resources.Resource;
 
+import static org.lwjgl.opengl.GL30C.GL_R8;
+import static org.lwjgl.opengl.GL30C.GL_RGBA16F;
+
 public class PostprocessSSAOEffect extends PostprocessEffect {
     public static final Shader SHADER0 = new Shader(
             ShaderType.FRAGMENT,
@@ -18,6 +24,7 @@ public class PostprocessSSAOEffect extends PostprocessEffect {
         this.setProperty("ssaoKernel", 6.0f);
         this.setProperty("ssaoMaxDistance", 100.0f);
         this.setProperty("ssaoBias", 0.000001f);
+        this.setRenderScale(RenderScale.HALF);
     }
 
     @Override
@@ -25,4 +32,22 @@ public class PostprocessSSAOEffect extends PostprocessEffect {
         return new Shader[]{ SHADER0, SHADER1 };
     }
 
+    @Override
+    public RenderGraph.Resource setup(RenderGraph graph, RenderGraph.Resource input, RenderGraph.Resource source, ShaderProgram[] programs) {
+        // The occlusion is a single channel, computed only from the depth
+        RenderGraph.Resource occlusion = graph.createTarget("ssao.occlusion", this.scaled(input.getWidth()), this.scaled(input.getHeight()), GL_R8);
+        graph.addPass("ssao.pre", programs[0], occlusion)
+                .read("depthTex", graph.getDepth())
+                .properties(this.getProperties());
+
+        // Blur the occlusion and apply it to the image, the blur is depth-aware, so it also upsamples the occlusion
+        RenderGraph.Resource output = graph.createTarget("ssao", input.getWidth(), input.getHeight(), GL_RGBA16F);
+        graph.addPass("ssao.post", programs[1], output)
+                .read("ppTex", occlusion)
+                .read("fbTex", source)
+                .read("depthTex", graph.getDepth())
+                .properties(this.getProperties());
+        return output;
+    }
+
 }
@@ -20,6 +20,9 @@ public class DirectionalLightSource implements LightSource {
         this.position = position;
     }
 
+    /**
+     * Get rotation of the light in degrees, it's applied the same way as the rotation of a camera
+     */
     public Vector3f getRotation() {
         return rotation;
     }
@@ -27,4 +30,28 @@ public class DirectionalLightSource implements LightSource {
     public void setRotation(Vector3f rotation) {
         this.rotation = rotation;
     }
+
+    /**
+     * Set rotation of the light, so it travels in the direction
+     *
+     * @param direction Direction in which the light travels
+     */
+    public void setDirection(Vector3f direction) {
+        Vector3f dir = new Vector3f(direction).normalize();
+        this.rotation = new Vector3f(
+                (float) Math.toDegrees(Math.asin(-dir.y)),
+                (float) Math.toDegrees(Math.atan2(dir.x, -dir.z)),
+                0);
+    }
+
+    @Override
+    public Vector3f getDirection() {
+        double x = Math.toRadians(this.rotation.x), y = Math.toRadians(this.rotation.y);
+
+        // Forward direction of the camera with the same rotation, see ViewportManager
+        return new Vector3f(
+                (float) (Math.cos(x) * Math.sin(y)),
+                (float) -Math.sin(x),
+                (float) (-Math.cos(x) * Math.cos(y)));
+    }
 }
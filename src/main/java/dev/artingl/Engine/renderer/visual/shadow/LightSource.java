@@ -1,5 +1,12 @@
 package dev.artingl.Engine.renderer.visual.shadow;
 
+import org.joml.Vector3f;
+
 public interface LightSource {
 
+    /**
+     * Get direction in which the light travels
+     */
+    Vector3f getDirection();
+
 }
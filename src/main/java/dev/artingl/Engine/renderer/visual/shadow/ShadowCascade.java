@@ -0,0 +1,228 @@
+package dev.artingl.Engine.renderer.visual.shadow;
+
+import dev.artingl.Engine.misc.Color;
+import dev.artingl.Engine.renderer.viewport.Viewport;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+/**
+ * One cascade of the directional shadow map, rendered from the light with an orthographic projection.
+ * The cascade covers a sphere around the point it was last updated at, so its static casters stay cached
+ * until the light turns or the camera moves too far from that point.
+ */
+public class ShadowCascade implements Viewport {
+
+    // How far behind the covered sphere the light is placed, so casters outside the sphere still cast shadows into it
+    private static final float CASTER_DISTANCE = 256;
+
+    private final int index;
+    private final Vector3f position, rotation, center, direction;
+    private final Vector3f scale, projectionRotation, projectionOffset;
+    private final Matrix4f matrix;
+    private int x, y, resolution;
+    private float radius, extent;
+    private boolean isValid;
+
+    public ShadowCascade(int index) {
+        this.index = index;
+        this.position = new Vector3f();
+        this.rotation = new Vector3f();
+        this.center = new Vector3f();
+        this.direction = new Vector3f();
+        this.scale = new Vector3f(1);
+        this.projectionRotation = new Vector3f();
+        this.projectionOffset = new Vector3f();
+        this.matrix = new Matrix4f();
+    }
+
+    /**
+     * Set region of the shadow atlas the cascade is rendered to
+     *
+     * @param x          Left side of the region in pixels
+     * @param y          Bottom side of the region in pixels
+     * @param resolution Size of the region in pixels
+     */
+    public void setRegion(int x, int y, int resolution) {
+        this.x = x;
+        this.y = y;
+        this.resolution = resolution;
+        this.isValid = false;
+    }
+
+    /**
+     * Tells if the static casters must be rendered again
+     *
+     * @param center    Point the cascade must cover
+     * @param light     The light
+     * @param radius    Distance from the center the cascade must cover
+     * @param threshold Angle in degrees the light can turn before the cascade is updated
+     * @param margin    Part of the radius the center can move before the cascade is updated
+     */
+    public boolean isStale(Vector3f center, LightSource light, float radius, float threshold, float margin) {
+        if (!this.isValid || this.radius != radius)
+            return true;
+
+        float angle = (float) Math.toDegrees(this.direction.angle(light.getDirection()));
+        return angle > threshold || this.center.distance(center) > radius * margin;
+    }
+
+    /**
+     * Move the cascade to the point and turn it to the light
+     *
+     * @param center Point the cascade must cover
+     * @param light  The light
+     * @param radius Distance from the center the cascade must cover
+     * @param margin Part of the radius the center can move before the cascade is updated
+     */
+    public void update(Vector3f center, DirectionalLightSource light, float radius, float margin) {
+        this.rotation.set(light.getRotation().x, light.getRotation().y, 0);
+        this.direction.set(light.getDirection());
+        this.radius = radius;
+
+        // Cover the margin as well, so everything within the radius is covered until the center moves too far
+        this.extent = radius * (1 + margin);
+
+        // Snap the center to the texels in light space, so edges of the shadows don't crawl when the cascade moves
+        Matrix4f lightRotation = new Matrix4f()
+                .rotateX((float) Math.toRadians(this.rotation.x))
+                .rotateY((float) Math.toRadians(this.rotation.y));
+        Vector3f local = lightRotation.transformPosition(new Vector3f(center));
+        float texel = this.getSize();
+        local.x = (float) Math.floor(local.x / texel) * texel;
+        local.y = (float) Math.floor(local.y / texel) * texel;
+        lightRotation.invert().transformPosition(local, this.center);
+
+        this.position.set(this.direction).mul(-(CASTER_DISTANCE + this.extent)).add(this.center);
+        this.isValid = true;
+    }
+
+    /**
+     * Make the cascade render its static casters again
+     */
+    public void invalidate() {
+        this.isValid = false;
+    }
+
+    public boolean isValid() {
+        return isValid;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getResolution() {
+        return resolution;
+    }
+
+    /**
+     * Get distance from the center covered by the cascade, including the margin
+     */
+    public float getExtent() {
+        return extent;
+    }
+
+    /**
+     * Get matrix which transforms world positions into the clip space of the cascade
+     */
+    public Matrix4f getMatrix() {
+        return matrix;
+    }
+
+    public void setMatrix(Matrix4f matrix) {
+        this.matrix.set(matrix);
+    }
+
+    @Override
+    public Vector3f getPosition() {
+        return position;
+    }
+
+    @Override
+    public Vector3f getRotation() {
+        return rotation;
+    }
+
+    @Override
+    public Vector3f getScale() {
+        return scale;
+    }
+
+    @Override
+    public Vector3f getProjectionRotation() {
+        return projectionRotation;
+    }
+
+    @Override
+    public Vector3f getProjectionOffset() {
+        return projectionOffset;
+    }
+
+    @Override
+    public float getFov() {
+        return 0;
+    }
+
+    @Override
+    public float getAspect() {
+        return 1;
+    }
+
+    @Override
+    public float getWidth() {
+        return resolution;
+    }
+
+    @Override
+    public float getHeight() {
+        return resolution;
+    }
+
+    @Override
+    public float getNearPlane() {
+        return 0;
+    }
+
+    @Override
+    public float getFarPlane() {
+        return CASTER_DISTANCE + 2 * this.extent;
+    }
+
+    @Override
+    public float getSize() {
+        return 2 * this.extent / this.resolution;
+    }
+
+    @Override
+    public ViewType getViewType() {
+        return ViewType.ORTHOGRAPHIC;
+    }
+
+    @Override
+    public RenderType getRenderType() {
+        return RenderType.MAIN;
+    }
+
+    @Override
+    public Color getBackgroundColor() {
+        return Color.WHITE;
+    }
+
+    @Override
+    public boolean isShadowMappingEnabled() {
+        return false;
+    }
+
+    @Override
+    public boolean isPostprocessingEnabled() {
+        return false;
+    }
+}
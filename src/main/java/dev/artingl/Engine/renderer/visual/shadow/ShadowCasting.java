@@ -0,0 +1,15 @@
+package dev.artingl.Engine.renderer.visual.shadow;
+
+/**
+ * Tells how the mesh is drawn into the shadow maps
+ */
+public enum ShadowCasting {
+    // The mesh doesn't cast shadows
+    NONE,
+
+    // The mesh never moves, it is drawn only when the cached shadow map of the cascade is updated
+    STATIC,
+
+    // The mesh can move, it is drawn into the shadow maps every frame
+    DYNAMIC
+}
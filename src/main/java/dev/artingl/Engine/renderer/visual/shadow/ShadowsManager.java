@@ -1,31 +1,356 @@
 package dev.artingl.Engine.renderer.visual.shadow;
 
+import dev.artingl.Engine.Engine;
 import dev.artingl.Engine.EngineException;
+import dev.artingl.Engine.debug.LogLevel;
 import dev.artingl.Engine.debug.Logger;
+import dev.artingl.Engine.renderer.Framebuffer;
+import dev.artingl.Engine.renderer.GLState;
 import dev.artingl.Engine.renderer.Renderer;
+import dev.artingl.Engine.renderer.viewport.ViewportManager;
+import dev.artingl.Engine.resources.Options;
+import dev.artingl.Engine.world.scene.BaseScene;
+import dev.artingl.Engine.world.scene.nodes.CameraNode;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Matrix4f;
+import org.lwjgl.BufferUtils;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
+import static org.lwjgl.opengl.GL11C.*;
+import static org.lwjgl.opengl.GL14C.GL_TEXTURE_COMPARE_FUNC;
+import static org.lwjgl.opengl.GL14C.GL_TEXTURE_COMPARE_MODE;
+import static org.lwjgl.opengl.GL15C.*;
+import static org.lwjgl.opengl.GL30C.*;
+import static org.lwjgl.opengl.GL31C.GL_UNIFORM_BUFFER;
+
+/**
+ * Cascaded shadow maps of the directional light.
+ * Cascades are stored side by side in one depth atlas, and each of them covers a sphere around the camera,
+ * bigger for every next cascade. Static casters (see {@link ShadowCasting}) are rendered into a separate cached atlas
+ * only when the light turns past the threshold or the camera moves too far from the point the cascade was rendered at,
+ * and at most one cascade is updated per update interval. Every frame the cached atlas is copied and
+ * dynamic casters are drawn on top of it.
+ */
 public class ShadowsManager {
+
+    // Binding point of the "Shadows" uniform block
+    public static final int SHADOWS_BINDING = 1;
+
+    public static final int MAX_CASCADES = 4;
+
+    /* Layout of the "Shadows" uniform block (std140):
+     *   mat4 shadowMatrices[4];   0     world to [0, 1] of the cascade
+     *   vec4 shadowRegions[4];    256   offset and size of the cascade in the atlas
+     *   vec4 shadowParams;        320   x - amount of cascades, y - strength, zw - texel size of the atlas
+     */
+    public static final int SHADOWS_SIZE = 336;
+
+    // How much of the light is blocked by the shadows
+    private static final float STRENGTH = 0.5f;
+
+    // Part of the cascade radius the camera can move before the cascade is updated
+    private static final float SCROLL_MARGIN = 0.25f;
+
+    // Split distances of the cascades, the blend between uniform and logarithmic splits and the nearest distance
+    private static final float SPLIT_LAMBDA = 0.7f;
+    private static final float SPLIT_NEAR = 4;
+
+    // Slope-scaled bias of the casters to prevent shadow acne
+    private static final float OFFSET_FACTOR = 2;
+    private static final float OFFSET_UNITS = 4;
+
     private final Logger logger;
     private final List<LightSource> lightSources;
+    private final List<ShadowCascade> cascades;
+    private final ByteBuffer uniforms;
+    private Framebuffer staticAtlas, atlas;
+    private ShadowCasting currentPass;
+    private int uniformBuffer;
+    private int resolution, activeCascades;
+    private boolean isSampled;
+    private long frame, lastStaticUpdate;
+    private int staticUpdates;
 
     public ShadowsManager(Logger logger, Renderer renderer) {
         this.logger = logger;
         this.lightSources = new ArrayList<>();
+        this.cascades = new ArrayList<>();
+        this.uniforms = BufferUtils.createByteBuffer(SHADOWS_SIZE);
+        this.uniformBuffer = -1;
     }
 
     public void cleanup() {
-
+        this.freeAtlas();
+        Engine.getInstance().getRenderer().getState().deleteBuffer(this.uniformBuffer);
+        this.uniformBuffer = -1;
     }
 
     public void init() throws EngineException {
+        this.uniformBuffer = glGenBuffers();
+        GLState state = Engine.getInstance().getRenderer().getState();
+        state.bindBuffer(GL_UNIFORM_BUFFER, this.uniformBuffer);
+        glBufferData(GL_UNIFORM_BUFFER, SHADOWS_SIZE, GL_DYNAMIC_DRAW);
+        state.bindBufferBase(GL_UNIFORM_BUFFER, SHADOWS_BINDING, this.uniformBuffer);
+        this.upload(false);
 
+        this.logger.log(LogLevel.INFO, "Creating shadows uniform buffer: ubo=%d, binding=%d", this.uniformBuffer, SHADOWS_BINDING);
     }
 
+    /**
+     * Render shadow maps of the current scene, gets called every frame before the scene is rendered
+     */
     public void render(Renderer renderer) throws EngineException {
-        // check if shadow mapping is enabled
+        BaseScene scene = Engine.getInstance().getSceneManager().getCurrentScene();
+        CameraNode camera = scene == null ? null : scene.getMainCamera();
+        DirectionalLightSource light = this.getDirectionalLight();
+        this.frame++;
+        this.staticUpdates = 0;
+        this.activeCascades = 0;
+
+        // Shadows are disabled until the maps are rendered, so the casters don't sample the atlas they write to
+        this.upload(false);
+
+        // Check if shadow mapping is enabled
+        if (camera == null || !camera.isShadowMappingEnabled() || light == null)
+            return;
+
+        Options options = Engine.getInstance().getOptions();
+        int count = Math.max(1, Math.min(MAX_CASCADES, options.getInt(Options.Values.SHADOW_CASCADES)));
+        int interval = Math.max(1, options.getInt(Options.Values.SHADOW_UPDATE_INTERVAL));
+        float distance = options.getFloat(Options.Values.SHADOW_DISTANCE);
+        float threshold = options.getFloat(Options.Values.SHADOW_LIGHT_THRESHOLD);
+        this.allocate(count, options.getInt(Options.Values.SHADOW_RESOLUTION));
+
+        GLState state = renderer.getState();
+        ViewportManager viewport = renderer.getViewport();
+        state.polygonMode(GL_FILL);
+        state.setEnabled(GL_POLYGON_OFFSET_FILL, true);
+        glPolygonOffset(OFFSET_FACTOR, OFFSET_UNITS);
+
+        // Update static casters of one cascade, the nearest cascades go first
+        if (this.frame - this.lastStaticUpdate >= interval) {
+            for (ShadowCascade cascade: this.cascades) {
+                float radius = this.getSplit(cascade.getIndex(), count, distance);
+                if (!cascade.isStale(camera.getPosition(), light, radius, threshold, SCROLL_MARGIN))
+                    continue;
+
+                cascade.update(camera.getPosition(), light, radius, SCROLL_MARGIN);
+                this.renderCascade(renderer, scene, cascade, this.staticAtlas, ShadowCasting.STATIC);
+                cascade.setMatrix(viewport.getProjection().mul(viewport.getView()));
+                this.lastStaticUpdate = this.frame;
+                this.staticUpdates++;
+                break;
+            }
+        }
+
+        // Start from the cached static casters and draw the dynamic ones on top
+        renderer.bindFramebuffer(this.atlas);
+        glBindFramebuffer(GL_READ_FRAMEBUFFER, this.staticAtlas.getBufferId());
+        glBlitFramebuffer(0, 0, this.atlas.getWidth(), this.atlas.getHeight(),
+                0, 0, this.atlas.getWidth(), this.atlas.getHeight(), GL_DEPTH_BUFFER_BIT, GL_NEAREST);
+        glBindFramebuffer(GL_READ_FRAMEBUFFER, this.atlas.getBufferId());
+
+        for (ShadowCascade cascade: this.cascades) {
+            if (cascade.isValid())
+                this.renderCascade(renderer, scene, cascade, this.atlas, ShadowCasting.DYNAMIC);
+        }
+
+        state.setEnabled(GL_POLYGON_OFFSET_FILL, false);
+        state.polygonMode(renderer.isWireframeEnabled() ? GL_LINE : GL_FILL);
+        this.upload(true);
+    }
+
+    private void renderCascade(Renderer renderer, BaseScene scene, ShadowCascade cascade, Framebuffer target, ShadowCasting pass) {
+        GLState state = renderer.getState();
+        int x = cascade.getX(), y = cascade.getY(), size = cascade.getResolution();
+        renderer.bindFramebuffer(target);
+        state.viewport(x, y, size, size);
+
+        // Static casters replace the whole region, dynamic ones are drawn over the copy of the static ones
+        if (pass == ShadowCasting.STATIC) {
+            state.depthMask(true);
+            state.setEnabled(GL_SCISSOR_TEST, true);
+            glScissor(x, y, size, size);
+            glClear(GL_DEPTH_BUFFER_BIT);
+            state.setEnabled(GL_SCISSOR_TEST, false);
+        }
+
+        this.currentPass = pass;
+        try {
+            scene.render(renderer, BaseScene.Layer.MAIN, cascade);
+        } finally {
+            this.currentPass = null;
+        }
+    }
+
+    /**
+     * Recreate the atlases if amount of cascades or the resolution has changed
+     */
+    private void allocate(int count, int resolution) {
+        if (this.atlas != null && this.cascades.size() == count && this.resolution == resolution)
+            return;
+
+        this.freeAtlas();
+        int columns = (int) Math.ceil(Math.sqrt(count));
+        int rows = (count + columns - 1) / columns;
+
+        this.resolution = resolution;
+        this.staticAtlas = new Framebuffer(columns * resolution, rows * resolution, 0, true);
+        this.atlas = new Framebuffer(columns * resolution, rows * resolution, 0, true);
+        this.staticAtlas.init();
+        this.atlas.init();
+
+        // The atlas is sampled with hardware depth comparison and filtering
+        GLState state = Engine.getInstance().getRenderer().getState();
+        state.bindTexture(this.atlas.getDepthTexture());
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_COMPARE_MODE, GL_COMPARE_REF_TO_TEXTURE);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_COMPARE_FUNC, GL_LEQUAL);
+
+        for (int i = 0; i < count; i++) {
+            ShadowCascade cascade = new ShadowCascade(i);
+            cascade.setRegion((i % columns) * resolution, (i / columns) * resolution, resolution);
+            this.cascades.add(cascade);
+        }
+
+        this.logger.log(LogLevel.INFO, "Creating shadow atlas: %d cascades of %dx%d", count, resolution, resolution);
+    }
+
+    private void freeAtlas() {
+        if (this.atlas != null)
+            this.atlas.cleanup();
+        if (this.staticAtlas != null)
+            this.staticAtlas.cleanup();
+        this.atlas = null;
+        this.staticAtlas = null;
+        this.cascades.clear();
+    }
+
+    /**
+     * Get distance from the camera covered by the cascade
+     *
+     * @param cascade  Index of the cascade
+     * @param count    Amount of cascades
+     * @param distance Distance covered by the last cascade
+     */
+    private float getSplit(int cascade, int count, float distance) {
+        float t = (cascade + 1) / (float) count;
+        float uniform = SPLIT_NEAR + (distance - SPLIT_NEAR) * t;
+        float log = SPLIT_NEAR * (float) Math.pow(distance / SPLIT_NEAR, t);
+        return uniform + (log - uniform) * SPLIT_LAMBDA;
+    }
+
+    /**
+     * Write the cascades into the uniform buffer
+     *
+     * @param enabled Should the shaders sample the shadow maps
+     */
+    private void upload(boolean enabled) {
+        if (this.uniformBuffer <= 0)
+            return;
+
+        ByteBuffer buffer = this.uniforms;
+        Matrix4f bias = new Matrix4f().translate(0.5f, 0.5f, 0.5f).scale(0.5f);
+        int count = 0;
+
+        if (enabled) {
+            float width = this.atlas.getWidth(), height = this.atlas.getHeight();
+            for (ShadowCascade cascade: this.cascades) {
+                if (!cascade.isValid())
+                    continue;
+
+                new Matrix4f(bias).mul(cascade.getMatrix()).get(count * 64, buffer);
+                buffer.putFloat(256 + count * 16, cascade.getX() / width);
+                buffer.putFloat(260 + count * 16, cascade.getY() / height);
+                buffer.putFloat(264 + count * 16, cascade.getResolution() / width);
+                buffer.putFloat(268 + count * 16, cascade.getResolution() / height);
+                count++;
+            }
+
+            buffer.putFloat(328, 1 / width);
+            buffer.putFloat(332, 1 / height);
+        }
+
+        buffer.putFloat(320, count);
+        buffer.putFloat(324, STRENGTH);
+        this.isSampled = count > 0;
+        if (enabled)
+            this.activeCascades = count;
+
+        Engine.getInstance().getRenderer().getState().bindBuffer(GL_UNIFORM_BUFFER, this.uniformBuffer);
+        glBufferSubData(GL_UNIFORM_BUFFER, 0, buffer);
+    }
+
+    /**
+     * Stop sampling the shadow maps until the next frame, must be called before the UI is rendered
+     */
+    public void disable() {
+        if (this.isSampled)
+            this.upload(false);
+    }
+
+    /**
+     * Get the light which casts the shadows
+     */
+    @Nullable
+    public DirectionalLightSource getDirectionalLight() {
+        for (LightSource light: this.lightSources) {
+            if (light instanceof DirectionalLightSource directional)
+                return directional;
+        }
+
+        return null;
     }
 
+    public void addLightSource(LightSource light) {
+        if (!this.lightSources.contains(light))
+            this.lightSources.add(light);
+    }
+
+    public void removeLightSource(LightSource light) {
+        this.lightSources.remove(light);
+    }
+
+    public List<LightSource> getLightSources() {
+        return lightSources;
+    }
+
+    /**
+     * Get casters which are being rendered into the shadow maps, or null if the scene is rendered normally
+     */
+    @Nullable
+    public ShadowCasting getCurrentPass() {
+        return currentPass;
+    }
+
+    /**
+     * Get depth texture of the shadow atlas, or 0 if there are no shadow maps to sample
+     */
+    public int getShadowTexture() {
+        if (this.currentPass != null || !this.isSampled)
+            return 0;
+        return this.atlas.getDepthTexture();
+    }
+
+    public List<ShadowCascade> getCascades() {
+        return cascades;
+    }
+
+    /**
+     * Get amount of cascades which are sampled by the shaders
+     */
+    public int getActiveCascades() {
+        return activeCascades;
+    }
+
+    /**
+     * Get amount of cascades which static casters were rendered in the last frame
+     */
+    public int getStaticUpdates() {
+        return staticUpdates;
+    }
 }
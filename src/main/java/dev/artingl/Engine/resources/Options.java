@@ -25,6 +25,19 @@ public class Options {
         this.options.put(Values.DEBUG, false);
         this.options.put(Values.RENDER_DISTANCE, 0.5f);
         this.options.put(Values.QUALITY_SETTING, Quality.HIGH);
+        this.options.put(Values.BAKE_TIME_BUDGET, 2.0f);
+        this.options.put(Values.BAKE_BYTES_BUDGET, 8 * 1024 * 1024);
+        this.options.put(Values.POSTPROCESS_SCALE, 1.0f);
+        this.options.put(Values.DYNAMIC_RESOLUTION, false);
+        this.options.put(Values.TARGET_FRAME_TIME, 1000 / 60.0f);
+        this.options.put(Values.MIN_RESOLUTION_SCALE, 0.5f);
+        this.options.put(Values.MAX_RESOLUTION_SCALE, 1.0f);
+        this.options.put(Values.SHADOW_CASCADES, 3);
+        this.options.put(Values.SHADOW_RESOLUTION, 1024);
+        this.options.put(Values.SHADOW_DISTANCE, 160.0f);
+        this.options.put(Values.SHADOW_UPDATE_INTERVAL, 4);
+        this.options.put(Values.SHADOW_LIGHT_THRESHOLD, 0.5f);
+        this.options.put(Values.OCCLUSION_CULLING, true);
     }
 
     /**
@@ -73,7 +86,22 @@ public class Options {
     }
 
     public enum Values {
-        DEBUG, QUALITY_SETTING, RENDER_DISTANCE
+        DEBUG, QUALITY_SETTING, RENDER_DISTANCE,
+
+        // Limits for uploading baked meshes during one frame, in milliseconds and bytes. See MeshManager
+        BAKE_TIME_BUDGET, BAKE_BYTES_BUDGET,
+
+        // Multiplier of the render scale of all post-processing effects
+        POSTPROCESS_SCALE,
+
+        // Dynamic resolution of the main framebuffer, see DynamicResolution
+        DYNAMIC_RESOLUTION, TARGET_FRAME_TIME, MIN_RESOLUTION_SCALE, MAX_RESOLUTION_SCALE,
+
+        // Cascaded shadow maps, see ShadowsManager. The interval is in frames and the threshold is in degrees
+        SHADOW_CASCADES, SHADOW_RESOLUTION, SHADOW_DISTANCE, SHADOW_UPDATE_INTERVAL, SHADOW_LIGHT_THRESHOLD,
+
+        // CPU occlusion culling of the main camera, see OcclusionCuller
+        OCCLUSION_CULLING
     }
 
 }
@@ -2,6 +2,7 @@ package dev.artingl.Engine.resources.texture;
 
 import dev.artingl.Engine.Engine;
 import dev.artingl.Engine.misc.Color;
+import dev.artingl.Engine.renderer.GLState;
 import dev.artingl.Engine.resources.Resource;
 import org.lwjgl.BufferUtils;
 
@@ -104,7 +105,8 @@ public class Texture {
                     this.textureId = glGenTextures();
 
                 // Bind texture
-                glBindTexture(GL_TEXTURE_2D, textureId);
+                GLState state = Engine.getInstance().getRenderer().getState();
+                state.bindTexture(textureId);
                 ByteBuffer buffer = this.buffer;
                 int width = this.width, height = this.height;
                 int textureFormat = this.format;
@@ -143,12 +145,13 @@ public class Texture {
                 glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP);
                 glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
                 glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
-                glBindTexture(GL_TEXTURE_2D, 0);
+                state.bindTexture(0);
             }
 
             if (this.updateParams) {
                 this.updateParams = false;
-                glBindTexture(GL_TEXTURE_2D, textureId);
+                GLState state = Engine.getInstance().getRenderer().getState();
+                state.bindTexture(textureId);
 
                 if (isTiled) {
                     glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);
@@ -158,13 +161,13 @@ public class Texture {
                     glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP);
                 }
 
-                glBindTexture(GL_TEXTURE_2D, 0);
+                state.bindTexture(0);
             }
         }
     }
 
     public void cleanup() {
-        glDeleteTextures(this.textureId);
+        Engine.getInstance().getRenderer().getState().deleteTexture(this.textureId);
         this.textureId = -1;
         this.isTiled = false;
         this.updateParams = false;
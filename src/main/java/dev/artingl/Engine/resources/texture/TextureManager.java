@@ -16,7 +16,6 @@ import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
-import static org.lwjgl.opengl.GL11.glDeleteTextures;
 
 public class TextureManager {
 
@@ -136,7 +135,7 @@ public class TextureManager {
         for (Texture texture: this.textures.values()) {
             if (texture.getTextureId() == Texture.MISSING.getTextureId() || texture.getTextureId() == Texture.UV_TEST.getTextureId())
                 continue;
-            glDeleteTextures(texture.getTextureId());
+            Engine.getInstance().getRenderer().getState().deleteTexture(texture.getTextureId());
         }
         this.textures.clear();
 
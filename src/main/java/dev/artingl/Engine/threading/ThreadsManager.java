@@ -4,6 +4,8 @@ import dev.artingl.Engine.debug.LogLevel;
 import dev.artingl.Engine.debug.Logger;
 
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
 
 public class ThreadsManager {
 
@@ -36,6 +38,44 @@ public class ThreadsManager {
         this.executor.execute(handler);
     }
 
+    /**
+     * Run the job for each index from 0 to count on the worker threads and wait until all of them are done.
+     * The calling thread takes indices as well, so it never waits for jobs which are still in the queue.
+     *
+     * @param count Amount of indices
+     * @param job   Gets called once for each index
+     */
+    public void parallelFor(int count, IntConsumer job) {
+        AtomicInteger nextIndex = new AtomicInteger();
+        CountDownLatch finished = new CountDownLatch(count);
+
+        Runnable worker = () -> {
+            int index;
+            while ((index = nextIndex.getAndIncrement()) < count) {
+                try {
+                    job.accept(index);
+                } catch (Exception e) {
+                    this.logger.exception(e, "Parallel job %d has failed", index);
+                } finally {
+                    finished.countDown();
+                }
+            }
+        };
+
+        // The calling thread is one of the workers
+        int workers = Math.min(count, this.getAvailableCores()) - 1;
+        for (int i = 0; i < workers; i++)
+            this.execute(worker);
+        worker.run();
+
+        try {
+            finished.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.logger.log(LogLevel.WARNING, "Interrupted while waiting for parallel jobs");
+        }
+    }
+
     public <T> Future<T> submit(Callable<T> handler, int timeout) {
         this.logger.log(LogLevel.UNIMPLEMENTED, "Threading: submit(Callable<T> handler, int timeout)");
         return null;
@@ -0,0 +1,435 @@
+package dev.artingl.Engine.world.scene;
+
+import dev.artingl.Engine.EngineException;
+import dev.artingl.Engine.misc.BoundingBox;
+import org.joml.FrustumIntersection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Dynamic bounding volume hierarchy of axis-aligned boxes.
+ * Leaves keep boxes which are fattened by a margin, so objects which move a little don't change the tree at all,
+ * and objects which leave their fat box are removed and inserted again. New leaves are placed next to the node
+ * which makes the tree grow the least, and parents are rotated on the way up, so the tree stays balanced.
+ *
+ * @param <T> Type of objects stored in the leaves
+ */
+public class AABBTree<T> {
+
+    public static final int NULL = -1;
+
+    private final List<Node<T>> nodes;
+    private final float margin;
+    private int root, freeList, leaves;
+    private int[] stack;
+
+    /**
+     * @param margin How far from their bounds the objects can move before their leaves are reinserted
+     */
+    public AABBTree(float margin) {
+        this.nodes = new ArrayList<>();
+        this.margin = margin;
+        this.root = NULL;
+        this.freeList = NULL;
+        this.stack = new int[64];
+    }
+
+    /**
+     * Add object to the tree
+     *
+     * @param bounds Bounds of the object
+     * @param data   The object
+     * @return Proxy of the object which is used to move or remove it
+     */
+    public int insert(BoundingBox bounds, T data) {
+        if (bounds.isEmpty() || bounds.isInfinite())
+            throw new EngineException("Only finite bounds can be added to the tree: " + bounds);
+
+        int proxy = this.allocate();
+        Node<T> node = this.nodes.get(proxy);
+        node.box.set(bounds).expand(this.margin);
+        node.data = data;
+        node.height = 0;
+        this.insertLeaf(proxy);
+        this.leaves++;
+        return proxy;
+    }
+
+    /**
+     * Remove object from the tree
+     *
+     * @param proxy Proxy returned by {@link #insert(BoundingBox, Object)}
+     */
+    public void remove(int proxy) {
+        this.removeLeaf(proxy);
+        this.release(proxy);
+        this.leaves--;
+    }
+
+    /**
+     * Change bounds of the object. The tree is changed only if the new bounds are outside of the fat box of the leaf.
+     *
+     * @param proxy  Proxy returned by {@link #insert(BoundingBox, Object)}
+     * @param bounds New bounds of the object
+     * @return True if the leaf was reinserted
+     */
+    public boolean move(int proxy, BoundingBox bounds) {
+        if (bounds.isEmpty() || bounds.isInfinite())
+            throw new EngineException("Only finite bounds can be added to the tree: " + bounds);
+
+        Node<T> node = this.nodes.get(proxy);
+        if (node.box.contains(bounds))
+            return false;
+
+        this.removeLeaf(proxy);
+        node.box.set(bounds).expand(this.margin);
+        this.insertLeaf(proxy);
+        return true;
+    }
+
+    /**
+     * Get the object stored with the proxy
+     */
+    public T getData(int proxy) {
+        return this.nodes.get(proxy).data;
+    }
+
+    /**
+     * Get fattened bounds of the object
+     */
+    public BoundingBox getFatBounds(int proxy) {
+        return this.nodes.get(proxy).box;
+    }
+
+    /**
+     * Get amount of objects in the tree
+     */
+    public int size() {
+        return leaves;
+    }
+
+    /**
+     * Get height of the tree, 0 if the tree has one object or none
+     */
+    public int getHeight() {
+        return this.root == NULL ? 0 : this.nodes.get(this.root).height;
+    }
+
+    /**
+     * Remove all objects from the tree
+     */
+    public void clear() {
+        this.nodes.clear();
+        this.root = NULL;
+        this.freeList = NULL;
+        this.leaves = 0;
+    }
+
+    /**
+     * Find all objects which are at least partially inside the frustum.
+     * Subtrees which are fully inside the frustum are accepted without testing their nodes.
+     *
+     * @param frustum The frustum
+     * @param visitor Gets called for each visible object
+     * @return Amount of boxes which were tested against the frustum
+     */
+    public int query(FrustumIntersection frustum, Consumer<T> visitor) {
+        if (this.root == NULL)
+            return 0;
+
+        int tested = 0;
+        int size = 0;
+        this.stack[size++] = this.root;
+        while (size > 0) {
+            Node<T> node = this.nodes.get(this.stack[--size]);
+            BoundingBox box = node.box;
+
+            tested++;
+            int result = frustum.intersectAab(box.min.x, box.min.y, box.min.z, box.max.x, box.max.y, box.max.z);
+            if (result >= 0)
+                continue;
+
+            if (result == FrustumIntersection.INSIDE)
+                this.visitAll(node, visitor);
+            else if (node.isLeaf())
+                visitor.accept(node.data);
+            else {
+                if (size + 2 > this.stack.length)
+                    this.stack = Arrays.copyOf(this.stack, this.stack.length * 2);
+                this.stack[size++] = node.left;
+                this.stack[size++] = node.right;
+            }
+        }
+
+        return tested;
+    }
+
+    /**
+     * Check links, boxes and heights of all nodes, used by the tests.
+     *
+     * @throws EngineException If the tree is broken
+     */
+    void validate() {
+        if (this.root != NULL && this.nodes.get(this.root).parent != NULL)
+            throw new EngineException("Root of the tree has a parent");
+
+        int reachable = this.validate(this.root);
+        int free = 0;
+        for (int index = this.freeList; index != NULL; index = this.nodes.get(index).parent)
+            free++;
+
+        if (reachable + free != this.nodes.size())
+            throw new EngineException("Tree has " + this.nodes.size() + " nodes, but " + reachable + " are reachable and " + free + " are free");
+
+        if (this.root != NULL && (reachable + 1) / 2 != this.leaves)
+            throw new EngineException("Tree has " + (reachable + 1) / 2 + " leaves, expected " + this.leaves);
+    }
+
+    private int validate(int index) {
+        if (index == NULL)
+            return 0;
+
+        Node<T> node = this.nodes.get(index);
+        if (node.isLeaf()) {
+            if (node.right != NULL || node.height != 0)
+                throw new EngineException("Leaf " + index + " has a child or a height");
+            return 1;
+        }
+
+        Node<T> left = this.nodes.get(node.left);
+        Node<T> right = this.nodes.get(node.right);
+        if (left.parent != index || right.parent != index)
+            throw new EngineException("Children of node " + index + " have another parent");
+        if (node.height != 1 + Math.max(left.height, right.height))
+            throw new EngineException("Node " + index + " has height " + node.height);
+        BoundingBox union = new BoundingBox(left.box).add(right.box);
+        if (!node.box.min.equals(union.min) || !node.box.max.equals(union.max))
+            throw new EngineException("Box of node " + index + " doesn't match its children");
+
+        return 1 + this.validate(node.left) + this.validate(node.right);
+    }
+
+    private void visitAll(Node<T> node, Consumer<T> visitor) {
+        if (node.isLeaf()) {
+            visitor.accept(node.data);
+            return;
+        }
+
+        this.visitAll(this.nodes.get(node.left), visitor);
+        this.visitAll(this.nodes.get(node.right), visitor);
+    }
+
+    private void insertLeaf(int leaf) {
+        if (this.root == NULL) {
+            this.root = leaf;
+            this.nodes.get(leaf).parent = NULL;
+            return;
+        }
+
+        // Find the best sibling for the leaf by the surface area heuristic
+        BoundingBox leafBox = this.nodes.get(leaf).box;
+        BoundingBox combined = new BoundingBox();
+        int index = this.root;
+        while (!this.nodes.get(index).isLeaf()) {
+            Node<T> node = this.nodes.get(index);
+            float area = node.box.getArea();
+            float combinedArea = combined.set(node.box).add(leafBox).getArea();
+
+            // Cost of making a new parent for this node and the leaf, and minimum cost of pushing the leaf further down
+            float cost = 2 * combinedArea;
+            float inheritance = 2 * (combinedArea - area);
+
+            float leftCost = this.descendCost(this.nodes.get(node.left), leafBox, combined) + inheritance;
+            float rightCost = this.descendCost(this.nodes.get(node.right), leafBox, combined) + inheritance;
+            if (cost < leftCost && cost < rightCost)
+                break;
+
+            index = leftCost < rightCost ? node.left : node.right;
+        }
+
+        // Make a new parent for the sibling and the leaf
+        int sibling = index;
+        int oldParent = this.nodes.get(sibling).parent;
+        int newParent = this.allocate();
+        Node<T> parent = this.nodes.get(newParent);
+        parent.parent = oldParent;
+        parent.data = null;
+        parent.box.set(leafBox).add(this.nodes.get(sibling).box);
+        parent.height = this.nodes.get(sibling).height + 1;
+        parent.left = sibling;
+        parent.right = leaf;
+        this.nodes.get(sibling).parent = newParent;
+        this.nodes.get(leaf).parent = newParent;
+
+        if (oldParent == NULL)
+            this.root = newParent;
+        else {
+            Node<T> old = this.nodes.get(oldParent);
+            if (old.left == sibling)
+                old.left = newParent;
+            else
+                old.right = newParent;
+        }
+
+        this.refit(this.nodes.get(leaf).parent);
+    }
+
+    private float descendCost(Node<T> node, BoundingBox leafBox, BoundingBox combined) {
+        float area = combined.set(node.box).add(leafBox).getArea();
+        if (node.isLeaf())
+            return area;
+        return area - node.box.getArea();
+    }
+
+    private void removeLeaf(int leaf) {
+        if (leaf == this.root) {
+            this.root = NULL;
+            return;
+        }
+
+        int parent = this.nodes.get(leaf).parent;
+        Node<T> parentNode = this.nodes.get(parent);
+        int grandParent = parentNode.parent;
+        int sibling = parentNode.left == leaf ? parentNode.right : parentNode.left;
+
+        // Put the sibling in place of the parent
+        if (grandParent == NULL) {
+            this.root = sibling;
+            this.nodes.get(sibling).parent = NULL;
+        }
+        else {
+            Node<T> grandParentNode = this.nodes.get(grandParent);
+            if (grandParentNode.left == parent)
+                grandParentNode.left = sibling;
+            else
+                grandParentNode.right = sibling;
+            this.nodes.get(sibling).parent = grandParent;
+            this.refit(grandParent);
+        }
+
+        this.release(parent);
+    }
+
+    /**
+     * Recalculate boxes and heights from the node up to the root, balancing the tree on the way
+     */
+    private void refit(int index) {
+        while (index != NULL) {
+            index = this.balance(index);
+
+            Node<T> node = this.nodes.get(index);
+            Node<T> left = this.nodes.get(node.left);
+            Node<T> right = this.nodes.get(node.right);
+            node.box.set(left.box).add(right.box);
+            node.height = 1 + Math.max(left.height, right.height);
+            index = node.parent;
+        }
+    }
+
+    /**
+     * Rotate the node if one of its children is much higher than the other
+     *
+     * @return Index of the node which took the place of the node
+     */
+    private int balance(int a) {
+        Node<T> nodeA = this.nodes.get(a);
+        if (nodeA.isLeaf() || nodeA.height < 2)
+            return a;
+
+        int b = nodeA.left, c = nodeA.right;
+        int difference = this.nodes.get(c).height - this.nodes.get(b).height;
+        if (difference > 1)
+            return this.rotate(a, c, b, false);
+        if (difference < -1)
+            return this.rotate(a, b, c, true);
+        return a;
+    }
+
+    /**
+     * Move the higher child up in place of the node
+     *
+     * @param a      The node
+     * @param up     Child of the node which goes up
+     * @param other  Another child of the node
+     * @param isLeft Tells if the child which goes up is the left one
+     */
+    private int rotate(int a, int up, int other, boolean isLeft) {
+        Node<T> nodeA = this.nodes.get(a);
+        Node<T> nodeUp = this.nodes.get(up);
+        int f = nodeUp.left, g = nodeUp.right;
+        Node<T> nodeF = this.nodes.get(f), nodeG = this.nodes.get(g);
+
+        // The child takes place of the node
+        nodeUp.left = a;
+        nodeUp.parent = nodeA.parent;
+        nodeA.parent = up;
+        if (nodeUp.parent == NULL)
+            this.root = up;
+        else {
+            Node<T> parent = this.nodes.get(nodeUp.parent);
+            if (parent.left == a)
+                parent.left = up;
+            else
+                parent.right = up;
+        }
+
+        // The higher grandchild stays with the child, the lower one goes to the node
+        int keep = nodeF.height > nodeG.height ? f : g;
+        int give = keep == f ? g : f;
+        Node<T> nodeKeep = this.nodes.get(keep), nodeGive = this.nodes.get(give);
+        nodeUp.right = keep;
+        if (isLeft)
+            nodeA.left = give;
+        else
+            nodeA.right = give;
+        nodeGive.parent = a;
+
+        Node<T> nodeOther = this.nodes.get(other);
+        nodeA.box.set(nodeOther.box).add(nodeGive.box);
+        nodeA.height = 1 + Math.max(nodeOther.height, nodeGive.height);
+        nodeUp.box.set(nodeA.box).add(nodeKeep.box);
+        nodeUp.height = 1 + Math.max(nodeA.height, nodeKeep.height);
+        return up;
+    }
+
+    private int allocate() {
+        if (this.freeList == NULL) {
+            this.nodes.add(new Node<>());
+            return this.nodes.size() - 1;
+        }
+
+        int index = this.freeList;
+        Node<T> node = this.nodes.get(index);
+        this.freeList = node.parent;
+        node.parent = NULL;
+        node.left = NULL;
+        node.right = NULL;
+        return index;
+    }
+
+    private void release(int index) {
+        Node<T> node = this.nodes.get(index);
+        node.data = null;
+        node.height = -1;
+        node.left = NULL;
+        node.right = NULL;
+
+        // Free nodes are linked through their parent index
+        node.parent = this.freeList;
+        this.freeList = index;
+    }
+
+    private static class Node<T> {
+        private final BoundingBox box = new BoundingBox();
+        private T data;
+        private int parent = NULL, left = NULL, right = NULL;
+        private int height;
+
+        private boolean isLeaf() {
+            return this.left == NULL;
+        }
+    }
+}
@@ -6,28 +6,48 @@ import dev.artingl.Engine.Engine;
 import dev.artingl.Engine.EngineException;
 import dev.artingl.Engine.debug.LogLevel;
 import dev.artingl.Engine.debug.Logger;
+import dev.artingl.Engine.debug.Profiler;
 import dev.artingl.Engine.input.InputListener;
 import dev.artingl.Engine.input.Input;
+import dev.artingl.Engine.misc.BoundingBox;
 import dev.artingl.Engine.misc.Color;
+import dev.artingl.Engine.renderer.RenderQueue;
 import dev.artingl.Engine.renderer.Renderer;
+import dev.artingl.Engine.renderer.occlusion.Occluder;
+import dev.artingl.Engine.renderer.occlusion.OcclusionCuller;
 import dev.artingl.Engine.renderer.viewport.Viewport;
 import dev.artingl.Engine.world.Dimension;
 import dev.artingl.Engine.world.scene.components.CameraComponent;
+import dev.artingl.Engine.world.scene.components.OccluderComponent;
 import dev.artingl.Engine.world.scene.nodes.CameraNode;
 import dev.artingl.Engine.world.scene.nodes.SceneNode;
 import dev.artingl.Engine.renderer.viewport.ViewportManager;
 import dev.artingl.Engine.timer.TickListener;
 import dev.artingl.Engine.timer.Timer;
+import dev.artingl.Engine.resources.Options;
 import org.jetbrains.annotations.Nullable;
+import org.joml.Matrix4f;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
 
 public class BaseScene implements TickListener, InputListener {
+
+    // How far the bounds of a node can move before the node is moved in the bounds tree
+    private static final float BOUNDS_MARGIN = 2;
+
+    // Smallest amount of nodes which is worth to be rendered by a separate thread
+    private static final int SLICE_NODES = 32;
+
     private final Logger logger;
     private final Map<UUID, SceneNode> nodesList;
     private final Map<Layer, List<SceneNode>> renderNodes;
+    private final AABBTree<SceneNode> boundsTree;
+    private final Map<SceneNode, Integer> treeProxies;
+    private final Set<SceneNode> visibleNodes;
+    private final List<SceneNode> parallelNodes, serialNodes;
+    private final List<RenderQueue.CommandList> commandLists;
 
     private final Collection<Runnable> spaceCallbacks;
     private final Collection<SceneNode> lazyNodes;
@@ -45,6 +65,12 @@ public class BaseScene implements TickListener, InputListener {
         this.isInitialized = false;
         this.dimension = new Dimension();
         this.renderNodes = new ConcurrentHashMap<>();
+        this.boundsTree = new AABBTree<>(BOUNDS_MARGIN);
+        this.treeProxies = new HashMap<>();
+        this.visibleNodes = new HashSet<>();
+        this.parallelNodes = new ArrayList<>();
+        this.serialNodes = new ArrayList<>();
+        this.commandLists = new ArrayList<>();
 
         for (Layer layer: Layer.values())
             this.renderNodes.put(layer, new ArrayList<>());
@@ -174,6 +200,12 @@ public class BaseScene implements TickListener, InputListener {
             for (List<SceneNode> nodes: this.renderNodes.values())
                 nodes.remove(node);
 
+            synchronized (this.renderNodes) {
+                Integer proxy = this.treeProxies.remove(node);
+                if (proxy != null)
+                    this.boundsTree.remove(proxy);
+            }
+
             /* If we have camera on the scene and the node we want to
              * remove has the same ID as the main camera, set the main camera to null
              */
@@ -259,6 +291,21 @@ public class BaseScene implements TickListener, InputListener {
 
             viewportManager.setViewport(viewport);
             viewportManager.update();
+
+            // Nodes which are not in the tree have no known bounds, so they are always rendered
+            boolean isCulled = layer == Layer.MAIN && viewport != null;
+            if (isCulled) {
+                this.cullNodes(renderer);
+
+                // Occluders are rasterized only for the camera, shadow maps must see what is behind them
+                Options options = getEngine().getOptions();
+                if (options.getBoolean(Options.Values.OCCLUSION_CULLING) && renderer.getShadows().getCurrentPass() == null
+                        && viewport.getViewType() == Viewport.ViewType.PERSPECTIVE)
+                    this.cullOccludedNodes(renderer);
+            }
+
+            this.parallelNodes.clear();
+            this.serialNodes.clear();
             for (SceneNode node: nodes) {
                 if (!node.getLayer().equals(layer)) {
                     // Move node to a different layer
@@ -271,9 +318,155 @@ public class BaseScene implements TickListener, InputListener {
                 // Make sure the child node has the same layer as the parent
                 if (node.getParent() != null)
                     node.setLayer(node.getParent().getLayer());
-                node.render(renderer);
+
+                if (node.canRenderInParallel())
+                    this.parallelNodes.add(node);
+                else
+                    this.serialNodes.add(node);
+            }
+
+            // Nodes which can be rendered on the workers go first, so the children rendered here can see their parents
+            this.renderInParallel(renderer, isCulled);
+            for (SceneNode node: this.serialNodes)
+                this.renderNode(renderer, node, isCulled);
+
+            // Draw everything the nodes have submitted to the queue
+            renderer.getRenderQueue().execute();
+        }
+    }
+
+    /**
+     * Render the nodes which allow that on the worker threads. Each thread takes a slice of the nodes and records
+     * their draws into its own command list, which are merged into the render queue afterwards.
+     *
+     * @param renderer The renderer
+     * @param isCulled Tells if the nodes should be culled
+     */
+    private void renderInParallel(Renderer renderer, boolean isCulled) {
+        int count = this.parallelNodes.size();
+        int slices = Math.min(getEngine().getThreadsManager().getAvailableCores(), count / SLICE_NODES);
+        if (slices <= 1) {
+            for (SceneNode node: this.parallelNodes)
+                this.renderNode(renderer, node, isCulled);
+            return;
+        }
+
+        while (this.commandLists.size() < slices)
+            this.commandLists.add(new RenderQueue.CommandList());
+
+        RenderQueue queue = renderer.getRenderQueue();
+        getEngine().getThreadsManager().parallelFor(slices, slice -> {
+            queue.beginRecording(this.commandLists.get(slice));
+            try {
+                for (int i = slice * count / slices; i < (slice + 1) * count / slices; i++)
+                    this.renderNode(renderer, this.parallelNodes.get(i), isCulled);
+            } finally {
+                queue.endRecording();
             }
+        });
+
+        // Merge in the order of the slices, so the order of the draws doesn't depend on the threads
+        for (int i = 0; i < slices; i++)
+            queue.merge(this.commandLists.get(i));
+    }
+
+    private void renderNode(Renderer renderer, SceneNode node, boolean isCulled) {
+        if (isCulled && this.treeProxies.containsKey(node) && !this.visibleNodes.contains(node)) {
+            node.skipRender();
+            return;
         }
+
+        node.render(renderer);
+    }
+
+    /**
+     * Find nodes which are visible in the current viewport
+     *
+     * @param renderer The renderer
+     */
+    private void cullNodes(Renderer renderer) {
+        Profiler profiler = getEngine().getProfiler();
+
+        this.visibleNodes.clear();
+        int tests = this.boundsTree.query(renderer.getViewport().getFrustum(), this.visibleNodes::add);
+
+        profiler.addCounter(Profiler.Task.CULL_TESTS, tests);
+        profiler.addCounter(Profiler.Task.NODES_VISIBLE, this.visibleNodes.size());
+        profiler.addCounter(Profiler.Task.NODES_CULLED, this.boundsTree.size() - this.visibleNodes.size());
+    }
+
+    /**
+     * Remove nodes which are hidden behind occluders from the visible nodes
+     *
+     * @param renderer The renderer
+     */
+    private void cullOccludedNodes(Renderer renderer) {
+        ViewportManager viewportManager = renderer.getViewport();
+        OcclusionCuller culler = renderer.getOcclusionCuller();
+        org.joml.Vector3f camera = viewportManager.getPosition();
+
+        culler.begin(new Matrix4f(viewportManager.getProjection()).mul(viewportManager.getView()));
+        for (SceneNode node: this.visibleNodes) {
+            OccluderComponent component = node.getComponent(OccluderComponent.class);
+            Occluder occluder = component == null ? null : component.getOccluder(node);
+            if (occluder == null)
+                continue;
+
+            // Closed hulls would hide everything around the camera inside of them
+            if (occluder.isClosed() && node.getBounds().contains(camera))
+                continue;
+
+            culler.addOccluder(occluder, node.getTransform().getMatrix());
+        }
+
+        if (culler.getOccluders() == 0)
+            return;
+        culler.rasterize();
+
+        // Occluders are not tested, they would be hidden by themselves
+        int occluded = 0;
+        Iterator<SceneNode> iterator = this.visibleNodes.iterator();
+        while (iterator.hasNext()) {
+            SceneNode node = iterator.next();
+            if (node.getComponent(OccluderComponent.class) == null && !culler.isVisible(node.getBounds())) {
+                iterator.remove();
+                occluded++;
+            }
+        }
+
+        getEngine().getProfiler().addCounter(Profiler.Task.NODES_OCCLUDED, occluded);
+    }
+
+    /**
+     * Update the bounds tree with nodes which were moved or changed since the last frame
+     */
+    private void updateBoundsTree() {
+        synchronized (this.renderNodes) {
+            for (SceneNode node: this.renderNodes.get(Layer.MAIN)) {
+                if (!node.updateBounds())
+                    continue;
+
+                BoundingBox bounds = node.getBounds();
+                Integer proxy = this.treeProxies.get(node);
+                if (bounds.isEmpty() || bounds.isInfinite()) {
+                    if (proxy != null) {
+                        this.boundsTree.remove(proxy);
+                        this.treeProxies.remove(node);
+                    }
+                }
+                else if (proxy == null)
+                    this.treeProxies.put(node, this.boundsTree.insert(bounds, node));
+                else
+                    this.boundsTree.move(proxy, bounds);
+            }
+        }
+    }
+
+    /**
+     * Get tree of the bounds of all nodes on the main layer which have known bounds
+     */
+    public AABBTree<SceneNode> getBoundsTree() {
+        return boundsTree;
     }
 
     /**
@@ -297,6 +490,9 @@ public class BaseScene implements TickListener, InputListener {
             this.lazyNodes.clear();
         }
 
+        // Move the nodes which have changed in the bounds tree, once for all viewports of the frame
+        this.updateBoundsTree();
+
         // Update the viewport with the main camera if it exists
         if (mainCamera == null) {
             // Print warning that we don't have any camera on the scene
@@ -106,6 +106,9 @@ public class SceneManager {
         this.currentScene = scene;
         this.currentSceneName = key;
 
+        // Start compiling all known shader programs, so the first frames don't wait for them
+        engine.getRenderer().getShaderCompiler().warmUp();
+
         // Subscribe the scene for events
         timer.subscribe(scene);
         input.subscribe(scene);
@@ -2,6 +2,7 @@ package dev.artingl.Engine.world.scene.components;
 
 import dev.artingl.Engine.Engine;
 import dev.artingl.Engine.EngineException;
+import dev.artingl.Engine.misc.BoundingBox;
 import dev.artingl.Engine.renderer.Renderer;
 import dev.artingl.Engine.world.scene.nodes.SceneNode;
 import dev.artingl.Engine.timer.TickListener;
@@ -17,6 +18,28 @@ public class Component implements TickListener {
 
     public void render(SceneNode node, Renderer renderer) {}
 
+    /**
+     * Tells if {@link #render(SceneNode, Renderer)} can be called on a worker thread. Such components must not touch GL,
+     * and everything they draw must be submitted to the render queue.
+     * */
+    public boolean canRenderInParallel(SceneNode node) {
+        return true;
+    }
+
+    /**
+     * Add world bounds of everything the component draws to the box, used by the scene to cull the node.
+     * Components which don't draw anything leave the box as is, components which can't tell their bounds make it infinite.
+     * */
+    public void addBounds(SceneNode node, BoundingBox bounds) {}
+
+    /**
+     * Tells if bounds of the component have changed since the last {@link #addBounds(SceneNode, BoundingBox)} call
+     * for any reason other than a change of the node's transform
+     * */
+    public boolean hasBoundsChanged() {
+        return false;
+    }
+
     public String getName() {
         return getClass().getSimpleName();
     }
@@ -3,6 +3,7 @@ package dev.artingl.Engine.world.scene.components;
 import dev.artingl.Engine.EngineException;
 import dev.artingl.Engine.debug.LogLevel;
 import dev.artingl.Engine.misc.Color;
+import dev.artingl.Engine.misc.BoundingBox;
 import dev.artingl.Engine.renderer.Renderer;
 import dev.artingl.Engine.renderer.mesh.IMesh;
 import dev.artingl.Engine.renderer.mesh.VerticesBuffer;
@@ -51,12 +52,17 @@ public class FurryRendererComponent extends Component {
     }
 
     @Override
-    public void render(SceneNode node, Renderer renderer) {
-        if (!FURRY_PROGRAM.isBaked())
-            FURRY_PROGRAM.bake();
+    public boolean canRenderInParallel(SceneNode node) {
+        return false;
+    }
 
+    @Override
+    public void render(SceneNode node, Renderer renderer) {
         super.render(node, renderer);
-        if (!this.meshComponent.enableRendering || !this.isEnabled)
+
+        // The fur is skipped until its program is compiled, and it doesn't cast shadows
+        if (!this.meshComponent.enableRendering || !this.isEnabled || !FURRY_PROGRAM.isReady()
+                || renderer.getShadows().getCurrentPass() != null)
             return;
 
         if (this.currentLayers != this.layers) {
@@ -80,6 +86,12 @@ public class FurryRendererComponent extends Component {
         mesh.setInstancedShaderProgram(defaultShader);
     }
 
+    @Override
+    public void addBounds(SceneNode node, BoundingBox bounds) {
+        // Layers of the fur are pushed out of the mesh in the shader
+        bounds.setInfinite();
+    }
+
     @Override
     public String getName() {
         return "FurryPlaneComponent";
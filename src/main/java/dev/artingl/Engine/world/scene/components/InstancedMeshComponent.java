@@ -3,16 +3,58 @@ package dev.artingl.Engine.world.scene.components;
 import dev.artingl.Engine.Engine;
 import dev.artingl.Engine.EngineException;
 import dev.artingl.Engine.debug.LogLevel;
+import dev.artingl.Engine.debug.Profiler;
+import dev.artingl.Engine.misc.BoundingBox;
 import dev.artingl.Engine.renderer.Renderer;
 import dev.artingl.Engine.renderer.mesh.IMesh;
-import dev.artingl.Engine.renderer.mesh.VerticesBuffer;
+import dev.artingl.Engine.renderer.mesh.InstanceBuffer;
+import dev.artingl.Engine.renderer.viewport.Viewport;
+import dev.artingl.Engine.renderer.viewport.ViewportManager;
 import dev.artingl.Engine.world.scene.components.transform.InstancedTransformComponent;
 import dev.artingl.Engine.world.scene.components.transform.TransformComponent;
+import dev.artingl.Engine.world.scene.nodes.CameraNode;
 import dev.artingl.Engine.world.scene.nodes.SceneNode;
 
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Draws the mesh once for each transform of the node's {@link InstancedTransformComponent}.
+ * Instances are culled one by one against the frustum of the current pass and the draw distance,
+ * and transforms of the visible ones are packed into a buffer of the pass which is drawn by the mesh.
+ */
 public class InstancedMeshComponent extends MeshComponent {
 
-    private int lastTransformsHash = -1;
+    // Instances further from the main camera are not drawn, 0 to draw them at any distance
+    public float maxDrawDistance = 0;
+
+    // Transforms of all instances, and the instances drawn by each pass (the camera or a shadow cascade)
+    private final InstanceBuffer instances = new InstanceBuffer();
+    private final Map<Viewport, Pass> passes = new IdentityHashMap<>();
+    private long frame = -1;
+    private final Matrix4f matrix = new Matrix4f();
+    private final BoundingBox instanceBounds = new BoundingBox();
+    private BoundingBox boundsOf;
+
+    // World bounds of the instances, one array per coordinate so the culling loop reads them sequentially
+    private float[] minX = new float[0], minY = new float[0], minZ = new float[0];
+    private float[] maxX = new float[0], maxY = new float[0], maxZ = new float[0];
+
+    // Indices of the instances found by the current pass
+    private int[] found = new int[0];
+
+    // Planes of the frustum, and the coordinates of the box corners which are tested against them
+    private final float[] planes = new float[6 * 4];
+    private final float[][] planeX = new float[6][], planeY = new float[6][], planeZ = new float[6][];
+    private final Vector4f plane = new Vector4f();
+    private final Matrix4f viewProjection = new Matrix4f();
 
     public InstancedMeshComponent(IMesh mesh) {
         super(mesh);
@@ -29,18 +71,61 @@ public class InstancedMeshComponent extends MeshComponent {
             mesh.bake();
     }
 
+    @Override
+    public boolean canRenderInParallel(SceneNode node) {
+        return false;
+    }
+
     @Override
     public void render(SceneNode node, Renderer renderer) {
-        if (mesh != null && enableRendering) {
+        if (mesh != null && enableRendering && isDrawnInPass(renderer)) {
             if (getNode().getTransform() instanceof InstancedTransformComponent transform) {
-                // Update transform instances for the mesh if they were updated
-                if (transform.getTransformsHash() != lastTransformsHash || mesh.isDirty()) {
-                    this.lastTransformsHash = transform.getTransformsHash();
-                    this.mesh.clearInstances();
-                    for (TransformComponent instance: transform.getTransforms())
-                        this.mesh.addInstance(VerticesBuffer.wrap(instance.getMatrix()));
-                    this.mesh.bake();
+                List<TransformComponent> transforms = transform.getTransforms();
+                BoundingBox meshBounds = mesh.getBounds();
+
+                // Update only the instances which were changed
+                if (transform.isDirty()) {
+                    int from = transform.getDirtyFrom(), to = transform.getDirtyTo();
+                    this.resize(transforms.size());
+                    for (int i = from; i < to; i++) {
+                        this.instances.set(i, transforms.get(i).getMatrix(this.matrix));
+                        this.updateBounds(i, meshBounds, this.matrix);
+                    }
+                    transform.clearDirty();
+
+                    // Each pass copies the changed instances into its own buffer when it's drawn
+                    for (Pass pass: this.passes.values()) {
+                        pass.dirtyFrom = Math.min(pass.dirtyFrom, from);
+                        pass.dirtyTo = Math.max(pass.dirtyTo, to);
+                    }
+                }
+
+                // The mesh knows its bounds only after it is baked
+                if (meshBounds != this.boundsOf) {
+                    this.boundsOf = meshBounds;
+                    for (int i = 0; i < transforms.size(); i++)
+                        this.updateBounds(i, meshBounds, transforms.get(i).getMatrix(this.matrix));
+                }
+
+                long frame = getEngine().getFrameIndex();
+                this.evictPasses(frame);
+                Pass pass = this.passes.computeIfAbsent(renderer.getViewport().getCurrentViewport(), viewport -> new Pass());
+                pass.frame = frame;
+                int drawn = this.cullInstances(renderer, pass, transforms.size());
+
+                // Count the instances once per frame, not for each shadow cascade
+                if (renderer.getShadows().getCurrentPass() == null) {
+                    Profiler profiler = getEngine().getProfiler();
+                    profiler.addCounter(Profiler.Task.INSTANCES_DRAWN, drawn);
+                    profiler.addCounter(Profiler.Task.INSTANCES_CULLED, transforms.size() - drawn);
                 }
+                if (drawn == 0)
+                    return;
+
+                // The mesh will upload changed instances by itself
+                this.mesh.setInstanceBuffer(pass.buffer);
+                if (this.mesh.isDirty())
+                    this.mesh.bake();
 
                 this.mesh.renderInstanced(renderer);
             } else {
@@ -49,8 +134,214 @@ public class InstancedMeshComponent extends MeshComponent {
         }
     }
 
+    /**
+     * Drop the passes which weren't drawn in the last frame, e.g. of the shadow cascades which were recreated
+     */
+    private void evictPasses(long frame) {
+        if (frame == this.frame)
+            return;
+
+        this.frame = frame;
+        Iterator<Pass> iterator = this.passes.values().iterator();
+        while (iterator.hasNext()) {
+            Pass pass = iterator.next();
+            if (pass.frame < frame - 1) {
+                pass.buffer.cleanup();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Find the instances which are visible in the current pass and put them into the buffer of the pass
+     *
+     * @param renderer The renderer
+     * @param pass     The current pass
+     * @param count    Amount of instances
+     * @return Amount of visible instances
+     */
+    private int cullInstances(Renderer renderer, Pass pass, int count) {
+        ViewportManager viewportManager = renderer.getViewport();
+        CameraNode camera = getNode().getScene().getMainCamera();
+        int foundCount;
+
+        if (this.boundsOf == null || viewportManager.getCurrentViewport() == null) {
+            // Bounds are not known yet
+            for (int i = 0; i < count; i++)
+                this.found[i] = i;
+            foundCount = count;
+        }
+        else {
+            Vector3f cameraPosition = camera == null || this.maxDrawDistance <= 0 ? null : camera.getPosition();
+            foundCount = this.testInstances(viewportManager, cameraPosition, count);
+        }
+
+        this.updatePass(pass, foundCount, count);
+        return foundCount;
+    }
+
+    /**
+     * Make the buffer of the pass hold the found instances. The buffer is packed again only from the first slot
+     * which must hold another instance, and the changed instances which stay in their slots are copied one by one,
+     * so moving a few instances uploads only their slots.
+     */
+    private void updatePass(Pass pass, int foundCount, int count) {
+        if (pass.slots.length < count) {
+            int capacity = pass.slots.length;
+            pass.slots = Arrays.copyOf(pass.slots, Math.max(count, capacity * 2));
+            pass.instances = Arrays.copyOf(pass.instances, pass.slots.length);
+            Arrays.fill(pass.slots, capacity, pass.slots.length, -1);
+        }
+
+        int first = 0;
+        while (first < foundCount && first < pass.count && this.found[first] == pass.instances[first])
+            first++;
+
+        // The set of visible instances has changed, pack the slots after the first changed one
+        if (first < foundCount || foundCount != pass.count) {
+            for (int i = first; i < pass.count; i++)
+                pass.slots[pass.instances[i]] = -1;
+
+            pass.buffer.resize(foundCount);
+            for (int i = first; i < foundCount; i++) {
+                int instance = this.found[i];
+                pass.instances[i] = instance;
+                pass.slots[instance] = i;
+                pass.buffer.copy(i, this.instances, instance);
+            }
+            pass.count = foundCount;
+        }
+
+        // Slots before the packed ones still hold the old transforms of the changed instances
+        int to = Math.min(pass.dirtyTo, count);
+        for (int i = pass.dirtyFrom; i < to; i++) {
+            int slot = pass.slots[i];
+            if (slot >= 0 && slot < first)
+                pass.buffer.copy(slot, this.instances, i);
+        }
+
+        pass.dirtyFrom = Integer.MAX_VALUE;
+        pass.dirtyTo = 0;
+    }
+
+    /**
+     * Test bounds of the instances against the frustum planes and the draw distance
+     *
+     * @return Amount of instances which were put into the found array
+     */
+    private int testInstances(ViewportManager viewportManager, Vector3f cameraPosition, int count) {
+        this.viewProjection.set(viewportManager.getProjection()).mul(viewportManager.getView());
+        for (int p = 0; p < 6; p++) {
+            this.viewProjection.frustumPlane(p, this.plane);
+            this.planes[p * 4] = this.plane.x;
+            this.planes[p * 4 + 1] = this.plane.y;
+            this.planes[p * 4 + 2] = this.plane.z;
+            this.planes[p * 4 + 3] = this.plane.w;
+
+            // The corner which is the furthest along the normal of the plane is the last one to leave it,
+            // it's the same for all boxes, so the loop below doesn't have to choose it
+            this.planeX[p] = this.plane.x > 0 ? this.maxX : this.minX;
+            this.planeY[p] = this.plane.y > 0 ? this.maxY : this.minY;
+            this.planeZ[p] = this.plane.z > 0 ? this.maxZ : this.minZ;
+        }
+
+        float maxDistance = this.maxDrawDistance * this.maxDrawDistance;
+        int foundCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (cameraPosition != null) {
+                // Distance from the camera to the closest point of the box
+                float dx = Math.max(0, Math.max(this.minX[i] - cameraPosition.x, cameraPosition.x - this.maxX[i]));
+                float dy = Math.max(0, Math.max(this.minY[i] - cameraPosition.y, cameraPosition.y - this.maxY[i]));
+                float dz = Math.max(0, Math.max(this.minZ[i] - cameraPosition.z, cameraPosition.z - this.maxZ[i]));
+                if (dx * dx + dy * dy + dz * dz > maxDistance)
+                    continue;
+            }
+
+            boolean isInside = true;
+            for (int p = 0; p < 6 && isInside; p++)
+                isInside = this.planes[p * 4] * this.planeX[p][i] + this.planes[p * 4 + 1] * this.planeY[p][i]
+                        + this.planes[p * 4 + 2] * this.planeZ[p][i] + this.planes[p * 4 + 3] >= 0;
+
+            if (isInside)
+                this.found[foundCount++] = i;
+        }
+
+        return foundCount;
+    }
+
+    private void updateBounds(int index, BoundingBox meshBounds, Matrix4f matrix) {
+        if (meshBounds == null)
+            return;
+
+        this.instanceBounds.setEmpty().add(meshBounds, matrix);
+        this.minX[index] = this.instanceBounds.min.x;
+        this.minY[index] = this.instanceBounds.min.y;
+        this.minZ[index] = this.instanceBounds.min.z;
+        this.maxX[index] = this.instanceBounds.max.x;
+        this.maxY[index] = this.instanceBounds.max.y;
+        this.maxZ[index] = this.instanceBounds.max.z;
+    }
+
+    private void resize(int count) {
+        this.instances.resize(count);
+        if (count <= this.minX.length)
+            return;
+
+        int capacity = Math.max(count, this.minX.length * 2);
+        this.minX = Arrays.copyOf(this.minX, capacity);
+        this.minY = Arrays.copyOf(this.minY, capacity);
+        this.minZ = Arrays.copyOf(this.minZ, capacity);
+        this.maxX = Arrays.copyOf(this.maxX, capacity);
+        this.maxY = Arrays.copyOf(this.maxY, capacity);
+        this.maxZ = Arrays.copyOf(this.maxZ, capacity);
+        this.found = Arrays.copyOf(this.found, capacity);
+    }
+
+    @Override
+    public void addBounds(SceneNode node, BoundingBox bounds) {
+        if (mesh == null)
+            return;
+
+        BoundingBox meshBounds = mesh.getBounds();
+        this.meshBounds = meshBounds;
+        if (meshBounds == null || !(node.getTransform() instanceof InstancedTransformComponent transform)) {
+            bounds.setInfinite();
+            return;
+        }
+
+        // Instances are placed in the world by their own transforms
+        for (TransformComponent instance: transform.getTransforms())
+            bounds.add(meshBounds, instance.getMatrix(this.matrix));
+    }
+
+    @Override
+    public void cleanup() {
+        super.cleanup();
+        this.instances.cleanup();
+        for (Pass pass: this.passes.values())
+            pass.buffer.cleanup();
+        this.passes.clear();
+    }
+
     @Override
     public String getName() {
         return "Instanced Mesh Renderer";
     }
+
+    /**
+     * Instances drawn by one pass. Each pass keeps its own buffer, so the passes of a frame don't overwrite each other
+     */
+    private static class Pass {
+        private final InstanceBuffer buffer = new InstanceBuffer();
+
+        // Instance of each slot of the buffer, and slot of each instance or -1 if the instance is not in the buffer
+        private int[] instances = new int[0], slots = new int[0];
+        private int count = -1;
+
+        // Last frame in which the pass was drawn
+        private long frame;
+
+        // Range of instances [dirtyFrom; dirtyTo) which were changed since the buffer was updated
+        private int dirtyFrom = Integer.MAX_VALUE, dirtyTo = 0;
+    }
 }
@@ -1,9 +1,14 @@
 package dev.artingl.Engine.world.scene.components;
 
 import dev.artingl.Engine.Engine;
+import dev.artingl.Engine.misc.BoundingBox;
+import dev.artingl.Engine.renderer.RenderQueue;
 import dev.artingl.Engine.renderer.Renderer;
 import dev.artingl.Engine.renderer.mesh.IMesh;
 import dev.artingl.Engine.renderer.Quality;
+import dev.artingl.Engine.renderer.viewport.Viewport;
+import dev.artingl.Engine.renderer.visual.shadow.ShadowCasting;
+import dev.artingl.Engine.resources.texture.Texture;
 import dev.artingl.Engine.world.scene.BaseScene;
 import dev.artingl.Engine.world.scene.components.transform.TransformComponent;
 import dev.artingl.Engine.world.scene.nodes.CameraNode;
@@ -11,12 +16,16 @@ import dev.artingl.Engine.world.scene.nodes.SceneNode;
 import dev.artingl.Engine.resources.Options;
 import dev.artingl.Engine.timer.Timer;
 import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
 
 public class MeshComponent extends Component {
     public boolean enableRendering = true;
+    public ShadowCasting shadowCasting = ShadowCasting.DYNAMIC;
 
     public IMesh mesh;
 
+    protected BoundingBox meshBounds;
+    private final Matrix4f model = new Matrix4f();
     private float lastCameraDistance;
     private int qualityUpdateTicks;
     private int qualityDistance = 0;
@@ -82,19 +91,70 @@ public class MeshComponent extends Component {
             mesh.cleanup();
     }
 
+    /**
+     * Tells if the mesh is drawn in the current pass, shadow passes draw only their own casters
+     * */
+    protected boolean isDrawnInPass(Renderer renderer) {
+        ShadowCasting pass = renderer.getShadows().getCurrentPass();
+        return pass == null || pass == this.shadowCasting;
+    }
+
+    @Override
+    public boolean canRenderInParallel(SceneNode node) {
+        // Only the main layer is drawn through the render queue
+        return node.getLayer() == BaseScene.Layer.MAIN;
+    }
+
     @Override
     public void render(SceneNode node, Renderer renderer) {
-        if (mesh != null && enableRendering) {
+        if (mesh != null && enableRendering && isDrawnInPass(renderer)) {
             TransformComponent transform = node.getTransform();
 
+            // The mesh is uploaded later, until then its previous version is rendered
             if (!mesh.isBaked() || mesh.isDirty())
-                mesh.bake();
-
-            mesh.transform(transform.getMatrix());
-            mesh.render(renderer);
+                renderer.getMeshManager().bakeAsync(mesh);
+
+            // Draws on the main layer are sorted by the render queue, the UI is drawn in order.
+            // The queue is drawn at the end of each pass, so the matrix can be reused by the next one
+            Matrix4f model = transform.getMatrix(this.model);
+            if (node.getLayer() == BaseScene.Layer.MAIN) {
+                Texture texture = mesh.getTexture();
+                Viewport viewport = renderer.getViewport().getCurrentViewport();
+                float depth = viewport == null ? 0 :
+                        renderer.getViewport().getPosition().distance(transform.position) / viewport.getFarPlane();
+                long key = RenderQueue.makeKey(node.getLayer(), mesh.isTransparent(), mesh.getShaderProgram(),
+                        texture == null ? 0 : texture.getTextureId(), mesh.getVao(), depth);
+
+                renderer.getRenderQueue().submit(key, () -> {
+                    mesh.transform(model);
+                    mesh.render(renderer);
+                });
+            }
+            else {
+                mesh.transform(model);
+                mesh.render(renderer);
+            }
         }
     }
 
+    @Override
+    public void addBounds(SceneNode node, BoundingBox bounds) {
+        if (mesh == null)
+            return;
+
+        // The mesh is not baked yet, so it must be rendered to be baked
+        this.meshBounds = mesh.getBounds();
+        if (this.meshBounds == null)
+            bounds.setInfinite();
+        else
+            bounds.add(this.meshBounds, node.getTransform().getMatrix(this.model));
+    }
+
+    @Override
+    public boolean hasBoundsChanged() {
+        return mesh != null && mesh.getBounds() != this.meshBounds;
+    }
+
     @Override
     public String getName() {
         return "Mesh Renderer";
@@ -0,0 +1,66 @@
+package dev.artingl.Engine.world.scene.components;
+
+import dev.artingl.Engine.misc.BoundingBox;
+import dev.artingl.Engine.renderer.mesh.IMesh;
+import dev.artingl.Engine.renderer.occlusion.Occluder;
+import dev.artingl.Engine.world.scene.nodes.SceneNode;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Vector3f;
+
+/**
+ * Marks the node as an occluder, which hides other nodes behind it from the camera.
+ * The occluder is either given directly, or made as a hull from bounds of the node's mesh once they are known.
+ */
+public class OccluderComponent extends Component {
+
+    public Occluder occluder;
+
+    private final float hullScale;
+
+    /**
+     * @param occluder Geometry of the occluder in the node's local space
+     */
+    public OccluderComponent(Occluder occluder) {
+        this.occluder = occluder;
+        this.hullScale = 0;
+    }
+
+    private OccluderComponent(float hullScale) {
+        this.hullScale = hullScale;
+    }
+
+    /**
+     * Make occluder from a box inside bounds of the node's mesh. The box must stay inside walls of the building,
+     * so it is scaled around the center of the bounds.
+     *
+     * @param scale Size of the box relative to the bounds of the mesh
+     */
+    public static OccluderComponent hull(float scale) {
+        return new OccluderComponent(scale);
+    }
+
+    /**
+     * Get the occluder, or null if it is not known yet
+     */
+    @Nullable
+    public Occluder getOccluder(SceneNode node) {
+        if (this.occluder == null && this.hullScale > 0) {
+            MeshComponent meshComponent = node.getComponent(MeshComponent.class);
+            IMesh mesh = meshComponent == null ? null : meshComponent.mesh;
+            BoundingBox bounds = mesh == null ? null : mesh.getBounds();
+            if (bounds == null)
+                return null;
+
+            Vector3f center = new Vector3f(bounds.min).add(bounds.max).mul(0.5f);
+            Vector3f extent = new Vector3f(bounds.max).sub(bounds.min).mul(0.5f * this.hullScale);
+            this.occluder = Occluder.box(new BoundingBox(new Vector3f(center).sub(extent), new Vector3f(center).add(extent)));
+        }
+
+        return this.occluder;
+    }
+
+    @Override
+    public String getName() {
+        return "Occluder";
+    }
+}
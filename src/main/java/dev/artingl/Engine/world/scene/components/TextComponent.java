@@ -1,5 +1,6 @@
 package dev.artingl.Engine.world.scene.components;
 
+import dev.artingl.Engine.misc.BoundingBox;
 import dev.artingl.Engine.misc.Color;
 import dev.artingl.Engine.renderer.Renderer;
 import dev.artingl.Engine.renderer.visual.FontManager;
@@ -23,6 +24,17 @@ public class TextComponent extends Component {
         this.font = font;
     }
 
+    @Override
+    public void addBounds(SceneNode node, BoundingBox bounds) {
+        // Size of the text is known only to the font manager
+        bounds.setInfinite();
+    }
+
+    @Override
+    public boolean canRenderInParallel(SceneNode node) {
+        return false;
+    }
+
     @Override
     public void render(SceneNode node, Renderer renderer) {
         if (enableRendering) {
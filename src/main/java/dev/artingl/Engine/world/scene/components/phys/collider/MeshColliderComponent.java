@@ -7,8 +7,6 @@ import dev.artingl.Engine.renderer.mesh.IMesh;
 import dev.artingl.Engine.renderer.mesh.VerticesBuffer;
 import org.joml.Vector3f;
 
-import java.util.List;
-
 public class MeshColliderComponent extends BaseColliderComponent {
 
     private final IMesh mesh;
@@ -31,33 +29,30 @@ public class MeshColliderComponent extends BaseColliderComponent {
 
             // Calculate the buffer size for all vertices in all buffers
             for (VerticesBuffer buffer: buffers) {
-                VerticesBuffer.Attribute[] attributes = buffer.getAttributes();
-                List<Object> fields = buffer.getFields();
-                size += (fields.size() / attributes.length) * 3;
+                size += (buffer.hasIndices() ? buffer.getIndicesCount() : buffer.getVerticesCount()) * 3;
             }
 
             // Iterate through all buffers which are used in the mesh and build the vertices buffer
             float[] finalVertices = new float[size];
             for (VerticesBuffer buffer: buffers) {
-                VerticesBuffer.Attribute[] attributes = buffer.getAttributes();
-                List<Object> fields = buffer.getFields();
+                // Indexed buffers are expanded back into the triangle list
+                int verticesCount = buffer.hasIndices() ? buffer.getIndicesCount() : buffer.getVerticesCount();
+                Vector3f position = new Vector3f();
 
                 // Since we build our meshes not like the jbullet expects it to be,
                 // we need to build new mesh only with positions (we expect the first 3 floats of each vertex to be the position of the vertex)
                 int vertIdx = 0;
 
                 // Parse all positions in the mesh
-                for (int i = 0; i < fields.size(); i += attributes.length) {
-                    Object value = fields.get(i);
-
-                    assert value instanceof Vector3f;
+                for (int i = 0; i < verticesCount; i++) {
+                    buffer.getVector3f(buffer.hasIndices() ? buffer.getIndex(i) : i, 0, position);
 
-                    finalVertices[offset + (vertIdx++)] = ((Vector3f) value).x;
-                    finalVertices[offset + (vertIdx++)] = ((Vector3f) value).y;
-                    finalVertices[offset + (vertIdx++)] = ((Vector3f) value).z;
+                    finalVertices[offset + (vertIdx++)] = position.x;
+                    finalVertices[offset + (vertIdx++)] = position.y;
+                    finalVertices[offset + (vertIdx++)] = position.z;
                 }
 
-                offset += (fields.size() / attributes.length) * 3;
+                offset += verticesCount * 3;
             }
 
             com.jme3.scene.Mesh mesh = new com.jme3.scene.Mesh();
@@ -9,7 +9,6 @@ import org.joml.Matrix4f;
 import org.joml.Vector3f;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 
 public class InstancedTransformComponent extends TransformComponent {
@@ -29,6 +28,9 @@ public class InstancedTransformComponent extends TransformComponent {
     private final List<TransformComponent> transforms = new ArrayList<>();
     private int transformsHash = 0;
 
+    // Range of instances [dirtyFrom; dirtyTo) which were changed since the last clearDirty() call
+    private int dirtyFrom = Integer.MAX_VALUE, dirtyTo = 0;
+
     public void addInstanceTransform(Vector3f position, Vector3f rotation, Vector3f scale) {
         TransformComponent transform = new TransformComponent();
         transform.position = position;
@@ -37,12 +39,66 @@ public class InstancedTransformComponent extends TransformComponent {
         this.transforms.add(transform);
         this.instances = this.transforms.size();
         this.transformsHash += this.instances;
+        this.markDirty(this.instances - 1);
+    }
+
+    /**
+     * Update transform of the instance.
+     *
+     * @param index Index of the instance
+     * */
+    public void setInstanceTransform(int index, Vector3f position, Vector3f rotation, Vector3f scale) {
+        TransformComponent transform = this.transforms.get(index);
+        transform.position = position;
+        transform.rotation = rotation;
+        transform.scale = scale;
+        this.markDirty(index);
+    }
+
+    /**
+     * Mark the instance as changed, must be called after modifying a transform from {@link #getTransforms()} directly.
+     *
+     * @param index Index of the instance
+     * */
+    public void markDirty(int index) {
+        this.dirtyFrom = Math.min(this.dirtyFrom, index);
+        this.dirtyTo = Math.max(this.dirtyTo, index + 1);
+        this.transformsHash++;
+    }
+
+    /**
+     * Tells if any instance was changed since the last {@link #clearDirty()} call.
+     * */
+    public boolean isDirty() {
+        return this.dirtyFrom < this.dirtyTo;
     }
 
     /**
-     * Get collection of all transform instaces.
+     * Get index of the first changed instance.
      * */
-    public Collection<TransformComponent> getTransforms() {
+    public int getDirtyFrom() {
+        return dirtyFrom;
+    }
+
+    /**
+     * Get index after the last changed instance.
+     * */
+    public int getDirtyTo() {
+        return Math.min(dirtyTo, this.transforms.size());
+    }
+
+    /**
+     * Mark all instances as up-to-date.
+     * */
+    public void clearDirty() {
+        this.dirtyFrom = Integer.MAX_VALUE;
+        this.dirtyTo = 0;
+    }
+
+    /**
+     * Get list of all transform instaces.
+     * */
+    public List<TransformComponent> getTransforms() {
         return transforms;
     }
 
@@ -53,14 +109,20 @@ public class InstancedTransformComponent extends TransformComponent {
         return transformsHash;
     }
 
+    @Override
+    public int getVersion() {
+        // Both numbers only grow, so the sum changes whenever any of them does
+        return super.getVersion() + this.transformsHash;
+    }
+
     @Override
     public String getName() {
         return "Instanced Transform";
     }
 
     @Override
-    public Matrix4f getMatrix() {
+    public Matrix4f getMatrix(Matrix4f dest) {
         Engine.getInstance().getLogger().log(LogLevel.WARNING, "Instanced Transform does not provide matrices");
-        return new Matrix4f();
+        return dest.identity();
     }
 }
@@ -13,11 +13,19 @@ public class TransformComponent extends Component {
     public Vector3f scale;
     public Vector3f pivot;
 
+    // Values seen by the last getVersion() call
+    private final Vector3f lastPosition, lastRotation, lastScale, lastPivot;
+    private int version, parentVersion;
+
     public TransformComponent() {
         this.position = new Vector3f();
         this.rotation = new Vector3f();
         this.scale = new Vector3f(1, 1, 1);
         this.pivot = new Vector3f();
+        this.lastPosition = new Vector3f(Float.NaN);
+        this.lastRotation = new Vector3f();
+        this.lastScale = new Vector3f();
+        this.lastPivot = new Vector3f();
     }
 
     @Override
@@ -72,38 +80,66 @@ public class TransformComponent extends Component {
     }
 
     public Matrix4f getMatrix() {
+        return this.getMatrix(new Matrix4f());
+    }
+
+    /**
+     * Calculate the matrix without allocating anything, so it can be done for every node in every frame
+     *
+     * @param dest Matrix which will hold the result
+     * @return The dest matrix
+     * */
+    public Matrix4f getMatrix(Matrix4f dest) {
         /* If the node is a child, calculate relative position to the parent transform
         * TODO: also calculate rotation */
         SceneNode node = getNode();
-
-        if (node != null) {
-            if (node.isChild()) {
-                TransformComponent parentTransform = node.getParent().getTransform();
-                Vector3f relativePosition = new Vector3f(parentTransform.position);
-                Vector3f relativeRotation = new Vector3f(parentTransform.rotation);
-                Vector3f relativeScale = new Vector3f(parentTransform.scale);
-
-                return new Matrix4f()
-                        .scale(relativeScale.mul(this.scale))
-                        .rotateXYZ(0, 0, 0)
-                        .translate(new Vector3f(this.position).add(relativePosition).add(this.pivot))
-                        .rotateXYZ(
-                                (float) Math.toRadians(this.rotation.x),
-                                (float) Math.toRadians(this.rotation.y),
-                                (float) Math.toRadians(this.rotation.z))
-                        .translate(new Vector3f(this.pivot).mul(-1));
-            }
+        float scaleX = this.scale.x, scaleY = this.scale.y, scaleZ = this.scale.z;
+        float x = this.position.x + this.pivot.x, y = this.position.y + this.pivot.y, z = this.position.z + this.pivot.z;
+
+        if (node != null && node.isChild()) {
+            TransformComponent parentTransform = node.getParent().getTransform();
+            scaleX *= parentTransform.scale.x;
+            scaleY *= parentTransform.scale.y;
+            scaleZ *= parentTransform.scale.z;
+            x += parentTransform.position.x;
+            y += parentTransform.position.y;
+            z += parentTransform.position.z;
         }
 
-        return new Matrix4f()
-                .scale(scale)
-                .rotateXYZ(0, 0, 0)
-                .translate(new Vector3f(this.position).add(this.pivot))
+        return dest.scaling(scaleX, scaleY, scaleZ)
+                .translate(x, y, z)
                 .rotateXYZ(
                         (float) Math.toRadians(this.rotation.x),
                         (float) Math.toRadians(this.rotation.y),
                         (float) Math.toRadians(this.rotation.z))
-                .translate(new Vector3f(this.pivot).mul(-1));
+                .translate(-this.pivot.x, -this.pivot.y, -this.pivot.z);
+    }
+
+    /**
+     * Get number which changes each time the transform (or the transform of the parent) is changed.
+     * The fields can be changed directly, so the changes are found by comparing them with the values seen by the previous call.
+     * */
+    public int getVersion() {
+        if (!this.position.equals(this.lastPosition) || !this.rotation.equals(this.lastRotation) ||
+                !this.scale.equals(this.lastScale) || !this.pivot.equals(this.lastPivot)) {
+            this.lastPosition.set(this.position);
+            this.lastRotation.set(this.rotation);
+            this.lastScale.set(this.scale);
+            this.lastPivot.set(this.pivot);
+            this.version++;
+        }
+
+        // Children are placed relative to the parent
+        SceneNode node = getNode();
+        if (node != null && node.isChild()) {
+            int parentVersion = node.getParent().getTransform().getVersion();
+            if (parentVersion != this.parentVersion) {
+                this.parentVersion = parentVersion;
+                this.version++;
+            }
+        }
+
+        return this.version;
     }
 
     public void copy(TransformComponent transform) {
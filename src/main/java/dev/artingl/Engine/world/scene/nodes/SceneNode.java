@@ -3,6 +3,7 @@ package dev.artingl.Engine.world.scene.nodes;
 
 import dev.artingl.Engine.Engine;
 import dev.artingl.Engine.EngineException;
+import dev.artingl.Engine.misc.BoundingBox;
 import dev.artingl.Engine.renderer.Renderer;
 import dev.artingl.Engine.world.scene.BaseScene;
 import dev.artingl.Engine.world.scene.components.Component;
@@ -21,6 +22,8 @@ public class SceneNode implements TickListener {
     private final UUID uuid;
     private final List<UUID> children;
     private final List<Component> components;
+    private final BoundingBox bounds;
+    private int boundsVersion;
 
     private boolean renderingAborted;
     private BaseScene scene;
@@ -47,6 +50,8 @@ public class SceneNode implements TickListener {
         this.uuid = uuid;
         this.children = new ArrayList<>();
         this.components = new ArrayList<>();
+        this.bounds = new BoundingBox();
+        this.boundsVersion = Integer.MIN_VALUE;
         this.isEnabled = true;
         this.layer = layer;
 
@@ -213,6 +218,57 @@ public class SceneNode implements TickListener {
         this.renderingAborted = true;
     }
 
+    /**
+     * Skip rendering of the node in this frame because it is not visible.
+     * Unlike {@link #abortRender()}, children of the node are still rendered.
+     * */
+    public void skipRender() {
+        this.renderingAborted = false;
+    }
+
+    /**
+     * Tells if the node can be rendered on a worker thread, which is possible only if all of its components allow that.
+     * Children depend on the parents being rendered before them, so they are always rendered on the render thread.
+     * */
+    public boolean canRenderInParallel() {
+        if (this.parent != null || this.layer != BaseScene.Layer.MAIN)
+            return false;
+
+        for (Component component: components)
+            if (!component.canRenderInParallel(this))
+                return false;
+        return true;
+    }
+
+    /**
+     * Get world bounds of everything the node draws.
+     * The box is empty if the node doesn't draw anything, and infinite if the bounds are not known.
+     * */
+    public BoundingBox getBounds() {
+        return bounds;
+    }
+
+    /**
+     * Recalculate bounds of the node if its transform or any of its components have changed.
+     *
+     * @return True if the bounds were recalculated
+     * */
+    public boolean updateBounds() {
+        int version = this.getTransform().getVersion();
+        boolean isChanged = version != this.boundsVersion;
+        for (Component component: components)
+            isChanged |= component.hasBoundsChanged();
+
+        if (!isChanged)
+            return false;
+
+        this.boundsVersion = version;
+        this.bounds.setEmpty();
+        for (Component component: components)
+            component.addBounds(this, this.bounds);
+        return true;
+    }
+
     /**
      * Gets called when the node is detached (removed) from the scene.
      * Note: this must be called only once and from the scene class itself.
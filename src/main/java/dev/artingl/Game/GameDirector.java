@@ -4,6 +4,7 @@ import dev.artingl.Engine.debug.Logger;
 import dev.artingl.Engine.Engine;
 import dev.artingl.Engine.renderer.visual.postprocessing.effects.PostprocessSSAOEffect;
 import dev.artingl.Engine.resources.Resource;
+import dev.artingl.Engine.resources.Options;
 import dev.artingl.Engine.world.scene.SceneManager;
 import dev.artingl.Game.common.vm.Sedna;
 import dev.artingl.Game.registries.LevelsRegistry;
@@ -15,6 +16,9 @@ import dev.artingl.Game.scene.GameScene;
 import dev.artingl.Game.scene.MainMenuScene;
 
 public class GameDirector {
+    /* System property with name of the scene to start with, e.g. "dev" or "game" */
+    public static final String SCENE_PROPERTY = "game.scene";
+
     private static GameDirector instance;
     public static GameDirector getInstance() {
         return instance;
@@ -63,6 +67,7 @@ public class GameDirector {
         }
 
         this.engine.getDisplay().setVsync(false);
+        this.engine.getOptions().set(Options.Values.DYNAMIC_RESOLUTION, true);
 
         /* Add post-processing effects */
         this.engine.getRenderer().getPostprocessing().addEffect(new PostprocessSSAOEffect());
@@ -80,7 +85,7 @@ public class GameDirector {
 //        sceneManager.switchScene(new Resource("thegame", "scene/dev"));
 
         sceneManager.registerScene(new Resource("thegame", "scene/game"), new GameScene());
-        sceneManager.switchScene(new Resource("thegame", "scene/game"));
+        sceneManager.switchScene(new Resource("thegame", "scene/" + System.getProperty(SCENE_PROPERTY, "game")));
 
         sceneManager.registerScene(new Resource("thegame", "scene/furry"), new FurryScene());
 //        sceneManager.switchScene(new Resource("thegame", "scene/furry"));
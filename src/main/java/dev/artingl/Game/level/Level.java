@@ -7,6 +7,7 @@ import dev.artingl.Engine.timer.TickListener;
 import dev.artingl.Engine.timer.Timer;
 import dev.artingl.Game.level.ambient.Sky;
 import dev.artingl.Game.level.chunk.Chunk;
+import dev.artingl.Game.level.chunk.TerrainRenderer;
 import org.jetbrains.annotations.Nullable;
 import org.joml.Vector2i;
 import org.joml.Vector3f;
@@ -26,6 +27,7 @@ public class Level implements TickListener {
 
     private final Map<Vector2i, Chunk> chunks;
     private final LevelTerrainGenerator generator;
+    private final TerrainRenderer terrainRenderer;
     private float levelTime;
     private float timeSpeed = 0;
     private float levelLight;
@@ -37,6 +39,7 @@ public class Level implements TickListener {
         this.sky = new Sky(this);
         this.chunks = new ConcurrentHashMap<>();
         this.generator = new LevelTerrainGenerator(this, Utils.randInt(-0xfffff, 0xfffff));
+        this.terrainRenderer = new TerrainRenderer(this);
 
         this.levelTime = SUN_CYCLE_TICKS;
         this.levelLight = 1;
@@ -147,4 +150,11 @@ public class Level implements TickListener {
         return generator;
     }
 
+    /**
+     * Get renderer which draws all visible chunks at once.
+     * */
+    public TerrainRenderer getTerrainRenderer() {
+        return terrainRenderer;
+    }
+
 }
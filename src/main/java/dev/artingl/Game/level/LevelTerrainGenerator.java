@@ -5,7 +5,9 @@ import dev.artingl.Engine.misc.Color;
 import dev.artingl.Engine.misc.Utils;
 import dev.artingl.Engine.misc.noise.PerlinNoise;
 import dev.artingl.Engine.renderer.Quality;
+import dev.artingl.Engine.renderer.mesh.MeshOptimizer;
 import dev.artingl.Engine.renderer.mesh.VerticesBuffer;
+import dev.artingl.Engine.renderer.occlusion.Occluder;
 import dev.artingl.Game.level.chunk.Chunk;
 import dev.artingl.Game.level.chunk.environment.EnvironmentObjects;
 import dev.artingl.Game.level.chunk.terrain.Terrain;
@@ -51,6 +53,7 @@ public class LevelTerrainGenerator {
         chunk.getMesh().setVerticesQuality(
                 Quality.HIGH,
                 generateQualityBuffer(Quality.HIGH, chunk));
+        generateOccluder(chunk);
 
         for (Quality quality: Quality.values()) {
             if (quality == Quality.NOT_RENDERED || quality == Quality.HIGH)
@@ -65,65 +68,87 @@ public class LevelTerrainGenerator {
 
     private VerticesBuffer generateQualityBuffer(Quality quality, Chunk chunk) {
         Vector2i chunkPosition = chunk.getPositionLevel();
+        Vector2i origin = chunk.getPosition();
         int idx = (quality == Quality.POTATO ? Quality.LOW : quality).ordinal();
         float step = 3;
 
-        VerticesBuffer buffer = new VerticesBuffer(
+        // Each cell of the grid is made of 2 triangles
+        int cells = (int) Math.ceil(Chunk.CHUNK_SIZE / step);
+        VerticesBuffer.Builder buffer = new VerticesBuffer.Builder(cells * cells * 6,
                 // Position
-                VerticesBuffer.Attribute.VEC3F,
+                VerticesBuffer.Attribute.VEC3H,
 
                 // Normal
-                VerticesBuffer.Attribute.VEC3F,
+                VerticesBuffer.Attribute.NORMAL_OCT,
 
                 // UV
-                VerticesBuffer.Attribute.VEC2F,
+                VerticesBuffer.Attribute.UV16,
 
                 // Color
-                VerticesBuffer.Attribute.VEC3F);
-
-        for (float x = 0; x < Chunk.CHUNK_SIZE; x += step)
-            for (float z = 0; z < Chunk.CHUNK_SIZE; z += step) {
-                Terrain.TerrainMeta[] corners = calculateCorners(chunk, chunkPosition.x + x, chunkPosition.y + z, step);
-
-                // First triangle vectors and normal
-                Vector3f fv0 = new Vector3f(0.0f, 0.0f, 0.0f).add(x, corners[0].getHeight(), z);
-                Vector3f fv1 = new Vector3f(step, 0.0f, 0.0f).add(x, corners[1].getHeight(), z);
-                Vector3f fv2 = new Vector3f(0.0f, 0.0f, step).add(x, corners[2].getHeight(), z);
-
-                // Second triangle vectors and normal
-                Vector3f sv0 = new Vector3f(step, 0.0f, step).add(x, corners[3].getHeight(), z);
-                Vector3f sv1 = new Vector3f(0.0f, 0.0f, step).add(x, corners[5].getHeight(), z);
-                Vector3f sv2 = new Vector3f(step, 0.0f, 0.0f).add(x, corners[4].getHeight(), z);
-
-                Vector3f normal0 = new Vector3f(fv1).sub(fv0).cross(new Vector3f(fv2).sub(fv0)).normalize();
-                Vector3f normal1 = new Vector3f(sv1).sub(sv0).cross(new Vector3f(sv2).sub(sv0)).normalize();
-
-                float u0 = x / Chunk.CHUNK_SIZE;
-                float v0 = z / Chunk.CHUNK_SIZE;
-                float u1 = (x + step) / Chunk.CHUNK_SIZE;
-                float v1 = (z + step) / Chunk.CHUNK_SIZE;
-
-                buffer
-                        .addAttribute(fv0).addAttribute(normal0).addAttribute(new Vector2f(u0, v0)).addColor3f(corners[0].getColor())
-                        .addAttribute(fv1).addAttribute(normal0).addAttribute(new Vector2f(u1, v0)).addColor3f(corners[1].getColor())
-                        .addAttribute(fv2).addAttribute(normal0).addAttribute(new Vector2f(u0, v1)).addColor3f(corners[2].getColor());
-
-                buffer
-                        .addAttribute(sv0).addAttribute(normal1).addAttribute(new Vector2f(u1, v1)).addColor3f(corners[3].getColor())
-                        .addAttribute(sv1).addAttribute(normal1).addAttribute(new Vector2f(u0, v1)).addColor3f(corners[4].getColor())
-                        .addAttribute(sv2).addAttribute(normal1).addAttribute(new Vector2f(u1, v0)).addColor3f(corners[5].getColor());
+                VerticesBuffer.Attribute.COLOR_RGBA8,
+
+                // Position of the chunk in the level, so all chunks can be drawn together
+                VerticesBuffer.Attribute.VEC2S);
+
+        // Sample the grid points with a border of one point around the chunk, so the normals are smoothed across the chunks too
+        int points = cells + 3;
+        Terrain.TerrainMeta[] grid = new Terrain.TerrainMeta[points * points];
+        for (int z = 0; z < points; z++)
+            for (int x = 0; x < points; x++)
+                grid[z * points + x] = generateTerrain(chunk, chunkPosition.x + (x - 1) * step, chunkPosition.y + (z - 1) * step);
+
+        // Each grid point gets one normal averaged from the neighbour heights instead of one per triangle,
+        // so the vertices shared by the cells are identical and can be welded
+        Vector3f[] normals = new Vector3f[(cells + 1) * (cells + 1)];
+        for (int z = 0; z <= cells; z++)
+            for (int x = 0; x <= cells; x++) {
+                int point = (z + 1) * points + x + 1;
+                float dx = grid[point + 1].getHeight() - grid[point - 1].getHeight();
+                float dz = grid[point + points].getHeight() - grid[point - points].getHeight();
+                normals[z * (cells + 1) + x] = new Vector3f(dx, -2 * step, dz).normalize();
             }
 
-        return buffer;
+        for (int x = 0; x < cells; x++)
+            for (int z = 0; z < cells; z++) {
+                // First triangle
+                putGridVertex(buffer, grid, normals, cells, x, z, step, origin);
+                putGridVertex(buffer, grid, normals, cells, x + 1, z, step, origin);
+                putGridVertex(buffer, grid, normals, cells, x, z + 1, step, origin);
+
+                // Second triangle
+                putGridVertex(buffer, grid, normals, cells, x + 1, z + 1, step, origin);
+                putGridVertex(buffer, grid, normals, cells, x, z + 1, step, origin);
+                putGridVertex(buffer, grid, normals, cells, x + 1, z, step, origin);
+            }
+
+        // Most of the vertices are shared between the triangles, so weld them into indexed mesh
+        return MeshOptimizer.optimize(buffer.build());
     }
 
-    private Terrain.TerrainMeta[] calculateCorners(Chunk chunk, float x, float z, float step) {
-        Terrain.TerrainMeta m0 = this.generateTerrain(chunk, x + 0, z + 0);
-        Terrain.TerrainMeta m1 = this.generateTerrain(chunk, x + step, z + 0);
-        Terrain.TerrainMeta m2 = this.generateTerrain(chunk, x + 0, z + step);
-        Terrain.TerrainMeta m3 = this.generateTerrain(chunk, x + step, z + step);
+    private void generateOccluder(Chunk chunk) {
+        Vector2i chunkPosition = chunk.getPositionLevel();
+        float step = 3;
+
+        // Sample the same grid as the terrain mesh, the occluder merges 4x4 cells of it into one
+        int points = (int) Math.ceil(Chunk.CHUNK_SIZE / step) + 1;
+        float[] heights = new float[points * points];
+        for (int z = 0; z < points; z++)
+            for (int x = 0; x < points; x++)
+                heights[z * points + x] = generateTerrain(chunk, chunkPosition.x + x * step, chunkPosition.y + z * step).getHeight();
+
+        Occluder.Geometry geometry = Occluder.heightfield(heights, points, points, step, 4).getGeometry();
+        chunk.getOccluder().setGeometry(geometry.positions(), geometry.indices());
+    }
 
-        return new Terrain.TerrainMeta[]{m0, m1, m2, m3, m1, m2};
+    private void putGridVertex(VerticesBuffer.Builder buffer, Terrain.TerrainMeta[] grid, Vector3f[] normals,
+                               int cells, int x, int z, float step, Vector2i origin) {
+        Terrain.TerrainMeta meta = grid[(z + 1) * (cells + 3) + x + 1];
+        buffer
+                .putHalf(x * step, meta.getHeight(), z * step)
+                .putNormal(normals[z * (cells + 1) + x])
+                .putUv(x * step / Chunk.CHUNK_SIZE, z * step / Chunk.CHUNK_SIZE)
+                .putColor(meta.getColor())
+                .putShort(origin.x, origin.y);
     }
 
     /**
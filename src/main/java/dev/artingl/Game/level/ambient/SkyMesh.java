@@ -53,8 +53,8 @@ public class SkyMesh extends SphereMesh {
 
     @Override
     public void render(Renderer renderer, int mode) {
-        if (!SKY_PROGRAM.isBaked())
-            SKY_PROGRAM.bake();
+        if (!SKY_PROGRAM.isReady())
+            return;
 
         // Send all necessary info to the shader
         SKY_PROGRAM.updateModelMatrix(getModelMatrix());
@@ -65,7 +65,6 @@ public class SkyMesh extends SphereMesh {
 
         ViewportManager viewport = renderer.getViewport();
         Viewport iViewport = viewport.getCurrentViewport();
-        viewport.uploadMatrices(SKY_PROGRAM);
 
         // Update the sky mesh if render distance has changed
         if (iViewport != null) {
@@ -1,5 +1,6 @@
 package dev.artingl.Game.level.chunk;
 
+import dev.artingl.Engine.renderer.occlusion.Occluder;
 import dev.artingl.Game.level.Level;
 import dev.artingl.Game.level.chunk.environment.EnvironmentObjects;
 import org.joml.Vector2i;
@@ -20,12 +21,14 @@ public class Chunk {
     private final Vector2i position;
     private final Level level;
     private final ChunkMesh mesh;
+    private final Occluder occluder;
     private final ConcurrentLinkedDeque<Pair<EnvironmentObjects, Vector3f>> envObjectsList;
 
     public Chunk(Level level, Vector2i chunkPosition) {
         this.position = chunkPosition;
         this.level = level;
         this.mesh = new ChunkMesh(this, level);
+        this.occluder = new Occluder();
         this.envObjectsList = new ConcurrentLinkedDeque<>();
         this.level.getGenerator().generateChunk(this);
     }
@@ -66,4 +69,11 @@ public class Chunk {
     public ChunkMesh getMesh() {
         return mesh;
     }
+
+    /**
+     * Get simplified terrain of the chunk, which hides objects behind hills
+     * */
+    public Occluder getOccluder() {
+        return occluder;
+    }
 }
@@ -7,7 +7,6 @@ import dev.artingl.Engine.renderer.mesh.VerticesBuffer;
 import dev.artingl.Engine.renderer.shader.Shader;
 import dev.artingl.Engine.renderer.shader.ShaderProgram;
 import dev.artingl.Engine.renderer.shader.ShaderType;
-import dev.artingl.Engine.renderer.viewport.ViewportManager;
 import dev.artingl.Engine.resources.Resource;
 import dev.artingl.Game.level.Level;
 
@@ -28,6 +27,7 @@ public class ChunkMesh extends BaseMesh {
         this.quality = new VerticesBuffer[Quality.values().length - 1];
         this.currentQuality = Quality.NOT_RENDERED;
         this.setShaderProgram(CHUNK_PROGRAM);
+        this.setShared(true);
     }
 
     public Chunk getChunk() {
@@ -35,36 +35,31 @@ public class ChunkMesh extends BaseMesh {
     }
 
     @Override
-    public void bake() {
+    protected boolean prepare() {
         if (this.currentQuality != Quality.NOT_RENDERED) {
             if (this.quality[this.currentQuality.ordinal()] == null)
-                return;
+                return false;
             this.setVertices(this.quality[this.currentQuality.ordinal()].fork());
         }
 
-        super.bake();
+        return true;
     }
 
     @Override
     public void render(Renderer renderer, int mode) {
-        if (!CHUNK_PROGRAM.isBaked())
-            CHUNK_PROGRAM.bake();
-
-        if (this.isDirty() || !this.isBaked())
+        // Keep rendering the previous version of the mesh while the new one is being baked
+        if (!CHUNK_PROGRAM.isReady() || !this.isBaked() || this.currentQuality == Quality.NOT_RENDERED)
             return;
 
         // Send all necessary info to the shader
-        CHUNK_PROGRAM.updateModelMatrix(getModelMatrix());
+        CHUNK_PROGRAM.setUniformFloat("chunkSize", Chunk.CHUNK_SIZE);
         CHUNK_PROGRAM.setUniformFloat("lightLevel", level.getLightLevel());
         CHUNK_PROGRAM.setUniformVector3f("skyColor", level.getSky().getColor().asVector3f());
         CHUNK_PROGRAM.setUniformVector3f("cameraPosition", level.getPlayerPosition());
         CHUNK_PROGRAM.use();
 
-        ViewportManager viewport = renderer.getViewport();
-        viewport.uploadMatrices(CHUNK_PROGRAM);
-
         // Render the mesh
-        renderer.drawCall(Renderer.DrawCall.ARRAYS, getVao(), mode, getVerticesCount());
+        this.draw(renderer, mode);
     }
 
     @Override
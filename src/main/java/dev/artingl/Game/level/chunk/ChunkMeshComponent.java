@@ -0,0 +1,40 @@
+package dev.artingl.Game.level.chunk;
+
+import dev.artingl.Engine.renderer.Renderer;
+import dev.artingl.Engine.world.scene.components.MeshComponent;
+import dev.artingl.Engine.world.scene.nodes.SceneNode;
+
+/**
+ * Mesh renderer of a chunk, instead of drawing the chunk on its own it adds it to the level's {@link TerrainRenderer}
+ */
+public class ChunkMeshComponent extends MeshComponent {
+
+    private final ChunkMesh chunkMesh;
+
+    public ChunkMeshComponent(ChunkMesh mesh) {
+        super(mesh);
+        this.chunkMesh = mesh;
+    }
+
+    @Override
+    public boolean canRenderInParallel(SceneNode node) {
+        return true;
+    }
+
+    @Override
+    public void render(SceneNode node, Renderer renderer) {
+        if (!enableRendering || !isDrawnInPass(renderer))
+            return;
+
+        // The mesh is uploaded later, until then its previous version is rendered
+        if (!chunkMesh.isBaked() || chunkMesh.isDirty())
+            renderer.getMeshManager().bakeAsync(chunkMesh);
+
+        chunkMesh.getChunk().getLevel().getTerrainRenderer().submit(renderer, chunkMesh);
+    }
+
+    @Override
+    public String getName() {
+        return "Chunk Mesh Renderer";
+    }
+}
@@ -0,0 +1,100 @@
+package dev.artingl.Game.level.chunk;
+
+import dev.artingl.Engine.renderer.RenderQueue;
+import dev.artingl.Engine.renderer.Renderer;
+import dev.artingl.Engine.renderer.mesh.GpuHeap;
+import dev.artingl.Engine.renderer.mesh.MultiDrawCommands;
+import dev.artingl.Engine.renderer.shader.ShaderProgram;
+import dev.artingl.Engine.world.scene.BaseScene;
+import dev.artingl.Engine.renderer.Quality;
+import dev.artingl.Game.level.Level;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL11C.GL_TRIANGLES;
+
+/**
+ * Draws all visible chunks of the level with one multi-draw call.
+ * Chunk meshes are stored in the shared GPU heap with the same vertex layout, so they share one VAO,
+ * and every vertex carries position of its chunk, so nothing has to be uploaded per chunk.
+ * Chunks which pass the culling of the chunk node are gathered here, and the first chunk of each pass
+ * submits one packet into the render queue, which uploads the uniforms and draws all gathered chunks.
+ */
+public class TerrainRenderer {
+
+    private final Level level;
+    private final List<ChunkMesh> meshes;
+    private final MultiDrawCommands commands;
+    private long generation;
+    private int drawnChunks;
+
+    public TerrainRenderer(Level level) {
+        this.level = level;
+        this.meshes = new ArrayList<>();
+        this.commands = new MultiDrawCommands();
+        this.generation = -1;
+    }
+
+    /**
+     * Add the chunk to the terrain drawn in the current pass, can be called from the threads which record the scene
+     *
+     * @param renderer The renderer
+     * @param mesh     Mesh of the visible chunk
+     */
+    public synchronized void submit(Renderer renderer, ChunkMesh mesh) {
+        // Keep rendering the previous version of the mesh while the new one is being baked.
+        // Only CPU state is checked here, the program is checked by the draw on the render thread
+        GpuHeap.Allocation allocation = mesh.getAllocation();
+        if (!mesh.isBaked() || mesh.getQuality() == Quality.NOT_RENDERED || allocation == null)
+            return;
+
+        // The packet of the previous pass was drawn (or dropped), start a new one
+        RenderQueue queue = renderer.getRenderQueue();
+        if (this.generation != queue.getGeneration()) {
+            this.generation = queue.getGeneration();
+            this.meshes.clear();
+        }
+
+        this.meshes.add(mesh);
+        if (this.meshes.size() == 1) {
+            long key = RenderQueue.makeKey(BaseScene.Layer.MAIN, false, ChunkMesh.CHUNK_PROGRAM, 0, allocation.getVao(), 0);
+            queue.submit(key, () -> this.draw(renderer));
+        }
+    }
+
+    private synchronized void draw(Renderer renderer) {
+        // Checking the program may call GL, so it can be done only here
+        if (!ChunkMesh.CHUNK_PROGRAM.isReady()) {
+            this.meshes.clear();
+            return;
+        }
+
+        // Offsets are read right before the draw, since the heap could have been compacted after the chunks were submitted
+        this.commands.clear();
+        for (ChunkMesh mesh: this.meshes) {
+            GpuHeap.Allocation allocation = mesh.getAllocation();
+            if (allocation != null)
+                this.commands.add(allocation);
+        }
+        this.meshes.clear();
+        this.drawnChunks = this.commands.size();
+
+        // Send all necessary info to the shader
+        ShaderProgram program = ChunkMesh.CHUNK_PROGRAM;
+        program.setUniformFloat("chunkSize", Chunk.CHUNK_SIZE);
+        program.setUniformFloat("lightLevel", level.getLightLevel());
+        program.setUniformVector3f("skyColor", level.getSky().getColor().asVector3f());
+        program.setUniformVector3f("cameraPosition", level.getPlayerPosition());
+        program.use();
+
+        renderer.multiDrawCall(this.commands, GL_TRIANGLES);
+    }
+
+    /**
+     * Get amount of chunks drawn by the last pass
+     */
+    public int getDrawnChunks() {
+        return drawnChunks;
+    }
+}
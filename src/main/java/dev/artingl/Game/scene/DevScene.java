@@ -4,6 +4,7 @@ import dev.artingl.Engine.misc.Color;
 import dev.artingl.Engine.misc.Utils;
 import dev.artingl.Engine.renderer.models.IModel;
 import dev.artingl.Engine.renderer.mesh.ModelMesh;
+import dev.artingl.Engine.renderer.visual.shadow.ShadowCasting;
 import dev.artingl.Engine.resources.Resource;
 import dev.artingl.Engine.world.audio.SoundBuffer;
 import dev.artingl.Engine.world.scene.BaseScene;
@@ -176,6 +177,10 @@ public class DevScene extends BaseScene {
 
                     InstancedMeshComponent meshComponent = new InstancedMeshComponent(mesh);
                     meshComponent.setQualityDistance(2);
+                    meshComponent.shadowCasting = ShadowCasting.STATIC;
+
+                    // Small objects can't be seen from far away anyway
+                    meshComponent.maxDrawDistance = obj == EnvironmentObjects.TREE ? 400 : 150;
 
                     envNode.addComponent(meshComponent);
                     envNode.changeTransformInstance(new InstancedTransformComponent());
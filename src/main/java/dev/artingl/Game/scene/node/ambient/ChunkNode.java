@@ -2,9 +2,10 @@ package dev.artingl.Game.scene.node.ambient;
 
 import dev.artingl.Engine.Engine;
 import dev.artingl.Engine.renderer.Renderer;
+import dev.artingl.Engine.renderer.visual.shadow.ShadowCasting;
 import dev.artingl.Engine.resources.Options;
 import dev.artingl.Engine.resources.Resource;
-import dev.artingl.Engine.world.scene.components.MeshComponent;
+import dev.artingl.Engine.world.scene.components.OccluderComponent;
 import dev.artingl.Engine.world.scene.components.phys.RigidBodyComponent;
 import dev.artingl.Engine.world.scene.components.phys.collider.HeightfieldColliderComponent;
 import dev.artingl.Engine.world.scene.nodes.SceneNode;
@@ -12,9 +13,8 @@ import dev.artingl.Engine.renderer.viewport.Viewport;
 import dev.artingl.Game.GameDirector;
 import dev.artingl.Game.level.LevelTerrainGenerator;
 import dev.artingl.Game.level.chunk.Chunk;
-import org.joml.FrustumIntersection;
+import dev.artingl.Game.level.chunk.ChunkMeshComponent;
 import org.joml.Vector2i;
-import org.joml.Vector3f;
 
 public class ChunkNode extends SceneNode {
 
@@ -23,7 +23,7 @@ public class ChunkNode extends SceneNode {
     public ChunkNode(Chunk chunk) {
         this.chunk = chunk;
 
-        MeshComponent mesh = new MeshComponent(chunk.getMesh());
+        ChunkMeshComponent mesh = new ChunkMeshComponent(chunk.getMesh());
         HeightfieldColliderComponent collider = new HeightfieldColliderComponent(Chunk.CHUNK_SIZE, Chunk.CHUNK_SIZE, (x, z) -> {
             LevelTerrainGenerator generator = GameDirector.getInstance().getLevelsRegistry().getLevel(new Resource("thegame", "level/map")).getGenerator();
 
@@ -34,11 +34,13 @@ public class ChunkNode extends SceneNode {
 //        FurryRendererComponent fur = new FurryRendererComponent(FurryRendererComponent.Type.PLANE, 256, 1024, 0.005f);
 
         mesh.setQualityDistance(2);
+        mesh.shadowCasting = ShadowCasting.STATIC;
 
 //        this.addComponent(fur);
         this.addComponent(mesh);
         this.addComponent(collider);
         this.addComponent(rb);
+        this.addComponent(new OccluderComponent(chunk.getOccluder()));
     }
 
     /**
@@ -50,8 +52,7 @@ public class ChunkNode extends SceneNode {
 
     @Override
     public void render(Renderer renderer) {
-        // Check if the chunk is visible by the camera or not inside render distance
-        FrustumIntersection frustum = renderer.getViewport().getFrustum();
+        // Check if the chunk is inside render distance, the scene has already checked that the camera can see it
         Viewport viewport = renderer.getViewport().getCurrentViewport();
         if (viewport == null) {
             // We don't have any camera
@@ -64,19 +65,14 @@ public class ChunkNode extends SceneNode {
         float renderDistance = (float) (400 * Math.max(0.3, Engine.getInstance().getOptions().getFloat(Options.Values.RENDER_DISTANCE)));
         renderDistance += Chunk.CHUNK_SIZE;
 
-        if (cameraPos.distance(chunkPos) > renderDistance) {
+        // Shadow maps are rendered from far away and cover only the area around the camera anyway
+        boolean isShadowPass = renderer.getShadows().getCurrentPass() != null;
+        if (!isShadowPass && cameraPos.distance(chunkPos) > renderDistance) {
             // Chunk is too far
             this.abortRender();
             return;
         }
 
-        if (frustum.intersectAab(
-                new Vector3f(chunkPos.x, -512, chunkPos.y),
-                new Vector3f(chunkPos.x + Chunk.CHUNK_SIZE, 512, chunkPos.y + Chunk.CHUNK_SIZE)) >= 0) {
-            this.abortRender();
-            return;
-        }
-
         super.render(renderer);
     }
 }
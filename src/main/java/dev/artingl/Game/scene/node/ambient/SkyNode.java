@@ -1,6 +1,9 @@
 package dev.artingl.Game.scene.node.ambient;
 
+import dev.artingl.Engine.EngineException;
 import dev.artingl.Engine.misc.Color;
+import dev.artingl.Engine.renderer.visual.shadow.DirectionalLightSource;
+import dev.artingl.Engine.renderer.visual.shadow.ShadowCasting;
 import dev.artingl.Engine.timer.Timer;
 import dev.artingl.Engine.world.scene.BaseScene;
 import dev.artingl.Engine.world.scene.components.MeshComponent;
@@ -11,14 +14,34 @@ import dev.artingl.Game.level.ambient.Sky;
 import dev.artingl.Game.scene.DevScene;
 import dev.artingl.Game.scene.GameScene;
 import dev.artingl.Game.scene.node.PlayerControllerNode;
+import org.joml.Vector3f;
 
 public class SkyNode extends SceneNode {
 
+    // Lowest angle of the light above the horizon, so the shadows don't stretch over the whole map at sunset
+    private static final float MIN_LIGHT_ELEVATION = 15;
+
     private final Sky sky;
+    private final DirectionalLightSource light;
 
     public SkyNode(Sky sky) {
-        this.addComponent(new MeshComponent(sky.getMesh()));
+        MeshComponent mesh = new MeshComponent(sky.getMesh());
+        mesh.shadowCasting = ShadowCasting.NONE;
+        this.addComponent(mesh);
         this.sky = sky;
+        this.light = new DirectionalLightSource(new Vector3f(), new Vector3f(90, 0, 0));
+    }
+
+    @Override
+    public void init() throws EngineException {
+        super.init();
+        getEngine().getRenderer().getShadows().addLightSource(this.light);
+    }
+
+    @Override
+    public void cleanup() {
+        super.cleanup();
+        getEngine().getRenderer().getShadows().removeLightSource(this.light);
     }
 
     @Override
@@ -27,6 +50,7 @@ public class SkyNode extends SceneNode {
 
         TransformComponent transform = getTransform();
         BaseScene scene = getScene();
+        this.updateLight();
 
         if (scene instanceof GameScene map) {
             Level level = map.getLevel();
@@ -41,4 +65,22 @@ public class SkyNode extends SceneNode {
             level.getSky().setColor(Color.from("#5b88b5"));
         }
     }
+
+    /**
+     * Point the light from the sun, or from the moon at night
+     * */
+    private void updateLight() {
+        // The sun is on the X axis of the sky rotated around Z, and the moon is on the opposite side
+        double angle = Math.toRadians(this.sky.getSunRotation());
+        Vector3f sun = new Vector3f((float) Math.cos(angle), (float) Math.sin(angle), 0);
+        Vector3f direction = sun.y >= 0 ? sun.negate() : sun;
+
+        double minElevation = Math.toRadians(MIN_LIGHT_ELEVATION);
+        if (-direction.y < Math.sin(minElevation)) {
+            direction.x = Math.signum(direction.x) * (float) Math.cos(minElevation);
+            direction.y = (float) -Math.sin(minElevation);
+        }
+
+        this.light.setDirection(direction);
+    }
 }
@@ -2,8 +2,10 @@ package dev.artingl.Game.scene.node.objects;
 
 import dev.artingl.Engine.EngineException;
 import dev.artingl.Engine.renderer.mesh.ModelMesh;
+import dev.artingl.Engine.renderer.visual.shadow.ShadowCasting;
 import dev.artingl.Engine.world.scene.BaseScene;
 import dev.artingl.Engine.world.scene.components.MeshComponent;
+import dev.artingl.Engine.world.scene.components.OccluderComponent;
 import dev.artingl.Engine.world.scene.components.phys.RigidBodyComponent;
 import dev.artingl.Engine.world.scene.components.phys.collider.MeshColliderComponent;
 import dev.artingl.Engine.world.scene.nodes.sprites.SpriteNode;
@@ -16,8 +18,12 @@ public class ApartmentsNode extends SpriteNode {
         this.addComponent(new MeshColliderComponent(getMesh()));
         this.addComponent(new RigidBodyComponent());
 
+        // Walls of the building hide whatever is behind it
+        this.addComponent(OccluderComponent.hull(0.8f));
+
         MeshComponent meshComponent = getComponent(MeshComponent.class);
         ((ModelMesh)meshComponent.mesh).toggleFade(false);
+        meshComponent.shadowCasting = ShadowCasting.STATIC;
     }
 
     @Override
@@ -4,6 +4,7 @@ import dev.artingl.Engine.EngineException;
 import dev.artingl.Engine.renderer.mesh.ModelMesh;
 import dev.artingl.Engine.world.scene.BaseScene;
 import dev.artingl.Engine.world.scene.components.MeshComponent;
+import dev.artingl.Engine.world.scene.components.OccluderComponent;
 import dev.artingl.Engine.world.scene.components.phys.RigidBodyComponent;
 import dev.artingl.Engine.world.scene.components.phys.collider.MeshColliderComponent;
 import dev.artingl.Engine.world.scene.components.transform.TransformComponent;
@@ -19,6 +20,9 @@ public class ShelterNode extends SpriteNode {
         this.addComponent(new MeshColliderComponent(getMesh()));
         this.addComponent(new RigidBodyComponent());
 
+        // Walls of the building hide whatever is behind it
+        this.addComponent(OccluderComponent.hull(0.8f));
+
         MeshComponent meshComponent = getComponent(MeshComponent.class);
         ((ModelMesh)meshComponent.mesh).toggleFade(false);
     }
@@ -6,12 +6,19 @@ layout (location = 0) in vec3 in_position;
 layout (location = 1) in vec3 in_normal;
 layout (location = 2) in vec2 in_uv;
 
-uniform vec3 m_pos;
-uniform vec3 m_rot;
-uniform mat4 m_proj;
+// Per-frame global state, see ViewportManager
+layout (std140) uniform Globals {
+    mat4 m_proj;
+    mat4 m_view;
+    vec3 m_pos;
+    float m_time;
+    vec3 m_rot;
+    float nearPlane;
+    vec3 screenResolution;
+    float farPlane;
+};
+
 uniform mat4 m_model;
-uniform mat4 m_view;
-uniform float m_time;
 uniform float m_layersStep;
 uniform float m_totalLayers;
 uniform int m_objType;
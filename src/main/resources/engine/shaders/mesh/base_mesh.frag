@@ -7,15 +7,47 @@ uniform int isTex0Set;
 uniform float opacity;
 uniform vec4 color;
 
+// Cascades of the shadow maps, see ShadowsManager
+layout (std140) uniform Shadows {
+    mat4 shadowMatrices[4];
+    vec4 shadowRegions[4];
+    vec4 shadowParams;
+};
+
+uniform sampler2DShadow shadowMap;
+
 in vec3 worldPosition;
 in vec3 normal;
 in vec2 uv;
 
+// Get how much of the light reaches the position, filtered over 3x3 texels of the shadow map
+float shadowVisibility(vec3 position) {
+    int cascades = int(shadowParams.x);
+    for (int i = 0; i < cascades; i++) {
+        vec3 coord = (shadowMatrices[i] * vec4(position, 1.0)).xyz;
+
+        // Use the first cascade which covers the position, keeping the filter inside the cascade
+        if (any(lessThan(coord, vec3(0.01, 0.01, 0.0))) || any(greaterThan(coord, vec3(0.99, 0.99, 1.0))))
+            continue;
+
+        vec2 atlasUv = shadowRegions[i].xy + coord.xy * shadowRegions[i].zw;
+        float lit = 0.0;
+        for (int x = -1; x <= 1; x++)
+            for (int y = -1; y <= 1; y++)
+                lit += texture(shadowMap, vec3(atlasUv + vec2(x, y) * shadowParams.zw, coord.z - 0.0005));
+
+        return mix(1.0 - shadowParams.y, 1.0, lit / 9.0);
+    }
+
+    return 1.0;
+}
+
 void main() {
     float v = min(1, 1 - (abs(normal.x + normal.z) / 16));
     fragColor = color * vec4(v, v, v, 1);
     if (isTex0Set == 1) {
         fragColor *= texture(tex0, uv);
     }
+    fragColor.rgb *= shadowVisibility(worldPosition);
     fragColor.a *= opacity;
 }
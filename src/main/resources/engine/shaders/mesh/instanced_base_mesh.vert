@@ -3,17 +3,30 @@
 layout (location = 0) in vec3 in_position;
 layout (location = 1) in vec3 in_normal;
 layout (location = 2) in vec2 in_uv;
-layout (location = 3) in mat4 in_model;
+// Rows of the affine model matrix
+layout (location = 3) in vec4 in_model0;
+layout (location = 4) in vec4 in_model1;
+layout (location = 5) in vec4 in_model2;
 
-uniform mat4 m_proj;
-uniform mat4 m_view;
+// Per-frame global state, see ViewportManager
+layout (std140) uniform Globals {
+    mat4 m_proj;
+    mat4 m_view;
+    vec3 m_pos;
+    float m_time;
+    vec3 m_rot;
+    float nearPlane;
+    vec3 screenResolution;
+    float farPlane;
+};
 
 out vec3 worldPosition;
 out vec3 normal;
 out vec2 uv;
 
 void main() {
-    worldPosition = (in_model * vec4(in_position, 1.0)).xyz;
+    vec4 position = vec4(in_position, 1.0);
+    worldPosition = vec3(dot(in_model0, position), dot(in_model1, position), dot(in_model2, position));
     gl_Position = m_proj * m_view * vec4(worldPosition, 1.0);
 
     normal = in_normal;
@@ -4,7 +4,18 @@ layout (location = 0) out vec4 fragColor;
 
 uniform sampler2D fbTex;
 uniform sampler2D ppTex;
-uniform vec3 screenResolution;
+
+// Per-frame global state, see ViewportManager
+layout (std140) uniform Globals {
+    mat4 m_proj;
+    mat4 m_view;
+    vec3 m_pos;
+    float m_time;
+    vec3 m_rot;
+    float nearPlane;
+    vec3 screenResolution;
+    float farPlane;
+};
 
 uniform int blurKernel;
 
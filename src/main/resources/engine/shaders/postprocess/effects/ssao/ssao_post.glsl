@@ -5,22 +5,45 @@ layout (location = 0) out vec4 fragColor;
 uniform sampler2D fbTex;
 uniform sampler2D ppTex;
 uniform sampler2D depthTex;
-uniform vec3 screenResolution;
+
+// Per-frame global state, see ViewportManager
+layout (std140) uniform Globals {
+    mat4 m_proj;
+    mat4 m_view;
+    vec3 m_pos;
+    float m_time;
+    vec3 m_rot;
+    float nearPlane;
+    vec3 screenResolution;
+    float farPlane;
+};
+
 uniform float ssaoKernel;
 
 in vec2 uv;
 
+float linearizeDepth(float depth) {
+    return (2.0 * nearPlane * farPlane) / (farPlane + nearPlane - (depth * 2.0 - 1.0) * (farPlane - nearPlane));
+}
+
 void main() {
-    // Apple box blur on the occlusion
-    vec3 clr = vec3(0, 0, 0);
-    vec2 pixSize = vec2(1.0 / screenResolution.x, 1.0 / screenResolution.y);
-    float cnt = 0.0;
-    for (float i = -ssaoKernel; i <= ssaoKernel; ++i) {
-        for (float j = -ssaoKernel; j <= ssaoKernel; ++j) {
-            clr += texture(ppTex, uv + vec2(i, j) * pixSize).rgb;
-            cnt += 1.0f;
+    // Box blur on the occlusion, which is stored in the red channel and may have lower resolution.
+    // The blur goes over texels of the occlusion and every tap is weighted by its depth difference,
+    // so the occlusion is upsampled without leaking over edges of the geometry
+    vec2 size = vec2(textureSize(ppTex, 0));
+    float kernel = max(1.0, floor(ssaoKernel * size.x / screenResolution.x + 0.5));
+    float depth = linearizeDepth(texture(depthTex, uv).r);
+
+    float occlusion = 0.0;
+    float weight = 0.0;
+    for (float i = -kernel; i <= kernel; ++i) {
+        for (float j = -kernel; j <= kernel; ++j) {
+            vec2 tap = uv + vec2(i, j) / size;
+            float w = 1.0 / (0.001 + abs(depth - linearizeDepth(texture(depthTex, tap).r)) / depth);
+            occlusion += texture(ppTex, tap).r * w;
+            weight += w;
         }
     }
-    clr /= cnt;
-    fragColor = texture(fbTex, uv) * vec4(clr, 1);
-}
\ No newline at end of file
+    occlusion /= max(weight, 0.0001);
+    fragColor = texture(fbTex, uv) * vec4(occlusion, occlusion, occlusion, 1);
+}
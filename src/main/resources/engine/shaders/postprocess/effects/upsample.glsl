@@ -0,0 +1,49 @@
+#version 330 core
+
+layout (location = 0) out vec4 fragColor;
+
+uniform sampler2D ppTex;
+uniform sampler2D depthTex;
+
+// Per-frame global state, see ViewportManager
+layout (std140) uniform Globals {
+    mat4 m_proj;
+    mat4 m_view;
+    vec3 m_pos;
+    float m_time;
+    vec3 m_rot;
+    float nearPlane;
+    vec3 screenResolution;
+    float farPlane;
+};
+
+in vec2 uv;
+
+float linearizeDepth(float depth) {
+    return (2.0 * nearPlane * farPlane) / (farPlane + nearPlane - (depth * 2.0 - 1.0) * (farPlane - nearPlane));
+}
+
+void main() {
+    // Bilinear upsample of the low resolution ppTex, where each of the four texels is also weighted
+    // by how close its depth is to the depth of the pixel, so the image does not bleed over edges
+    vec2 size = vec2(textureSize(ppTex, 0));
+    vec2 pos = uv * size - 0.5;
+    ivec2 base = ivec2(floor(pos));
+    vec2 f = fract(pos);
+    float depth = linearizeDepth(texture(depthTex, uv).r);
+
+    vec4 clr = vec4(0);
+    float weight = 0.0;
+    for (int y = 0; y <= 1; y++) {
+        for (int x = 0; x <= 1; x++) {
+            ivec2 texel = clamp(base + ivec2(x, y), ivec2(0), ivec2(size) - 1);
+            float bilinear = (x == 0 ? 1.0 - f.x : f.x) * (y == 0 ? 1.0 - f.y : f.y);
+            float texelDepth = linearizeDepth(texture(depthTex, (vec2(texel) + 0.5) / size).r);
+            float w = bilinear / (0.001 + abs(depth - texelDepth) / depth);
+            clr += texelFetch(ppTex, texel, 0) * w;
+            weight += w;
+        }
+    }
+
+    fragColor = clr / max(weight, 0.0001);
+}
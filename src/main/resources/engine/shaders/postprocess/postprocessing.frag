@@ -8,5 +8,18 @@ uniform sampler2D ppTex;
 in vec2 uv;
 
 void main() {
-    fragColor = texture(ppTex, uv);
-}
\ No newline at end of file
+    // Bilinear filtering done by hand, since targets use nearest filtering.
+    // The ppTex may be smaller than the screen when the dynamic resolution is used,
+    // otherwise every pixel hits center of its texel and is copied as is
+    vec2 size = vec2(textureSize(ppTex, 0));
+    vec2 pos = uv * size - 0.5;
+    ivec2 base = ivec2(floor(pos));
+    ivec2 last = ivec2(size) - 1;
+    vec2 f = fract(pos);
+
+    vec4 a = texelFetch(ppTex, clamp(base, ivec2(0), last), 0);
+    vec4 b = texelFetch(ppTex, clamp(base + ivec2(1, 0), ivec2(0), last), 0);
+    vec4 c = texelFetch(ppTex, clamp(base + ivec2(0, 1), ivec2(0), last), 0);
+    vec4 d = texelFetch(ppTex, clamp(base + ivec2(1, 1), ivec2(0), last), 0);
+    fragColor = mix(mix(a, b, f.x), mix(c, d, f.x), f.y);
+}
@@ -9,10 +9,41 @@ uniform float lightLevel;
 uniform vec3 skyColor;
 uniform vec3 cameraPosition;
 
+// Cascades of the shadow maps, see ShadowsManager
+layout (std140) uniform Shadows {
+    mat4 shadowMatrices[4];
+    vec4 shadowRegions[4];
+    vec4 shadowParams;
+};
+
+uniform sampler2DShadow shadowMap;
+
 in vec3 color;
 in vec3 normal;
 in vec3 worldPosition;
 
+// Get how much of the light reaches the position, filtered over 3x3 texels of the shadow map
+float shadowVisibility(vec3 position) {
+    int cascades = int(shadowParams.x);
+    for (int i = 0; i < cascades; i++) {
+        vec3 coord = (shadowMatrices[i] * vec4(position, 1.0)).xyz;
+
+        // Use the first cascade which covers the position, keeping the filter inside the cascade
+        if (any(lessThan(coord, vec3(0.01, 0.01, 0.0))) || any(greaterThan(coord, vec3(0.99, 0.99, 1.0))))
+            continue;
+
+        vec2 atlasUv = shadowRegions[i].xy + coord.xy * shadowRegions[i].zw;
+        float lit = 0.0;
+        for (int x = -1; x <= 1; x++)
+            for (int y = -1; y <= 1; y++)
+                lit += texture(shadowMap, vec3(atlasUv + vec2(x, y) * shadowParams.zw, coord.z - 0.0005));
+
+        return mix(1.0 - shadowParams.y, 1.0, lit / 9.0);
+    }
+
+    return 1.0;
+}
+
 float mod289(float x) { return x - floor(x * (1.0 / 289.0)) * 289.0; }
 vec4 mod289(vec4 x){ return x - floor(x * (1.0 / 289.0)) * 289.0; }
 vec4 perm(vec4 x) { return mod289(((x * 34.0) + 1.0) * x); }
@@ -82,6 +113,6 @@ void main() {
     // Add some randomness to the mesh color
     resultColor *= 1 - (genericNoise(worldPosition)*0.05f);
 
-    float light = min(1, lightLevel + 0.3f);
+    float light = min(1, lightLevel * shadowVisibility(worldPosition) + 0.3f);
     fragColor = vec4(resultColor * light, 1);
 }
@@ -1,21 +1,41 @@
 #version 330 core
 
 layout (location = 0) in vec3 in_position;
-layout (location = 1) in vec3 in_normal;
+layout (location = 1) in vec2 in_normal;
 layout (location = 2) in vec2 in_uv;
 layout (location = 3) in vec3 in_color;
+layout (location = 4) in vec2 in_origin;
 
-uniform mat4 m_proj;
-uniform mat4 m_view;
-uniform mat4 m_model;
+// Per-frame global state, see ViewportManager
+layout (std140) uniform Globals {
+    mat4 m_proj;
+    mat4 m_view;
+    vec3 m_pos;
+    float m_time;
+    vec3 m_rot;
+    float nearPlane;
+    vec3 screenResolution;
+    float farPlane;
+};
+
+// All chunks are drawn at once, so their position comes with the vertices instead of a model matrix
+uniform float chunkSize;
 
 out vec3 color;
 out vec3 normal;
 out vec3 worldPosition;
 
+// Decode octahedral-encoded normal
+vec3 decodeNormal(vec2 e) {
+    vec3 n = vec3(e, 1.0 - abs(e.x) - abs(e.y));
+    if (n.z < 0.0)
+        n.xy = (1.0 - abs(n.yx)) * vec2(n.x >= 0.0 ? 1.0 : -1.0, n.y >= 0.0 ? 1.0 : -1.0);
+    return normalize(n);
+}
+
 void main() {
     color = in_color;
-    normal = in_normal;
-    worldPosition = (m_model * vec4(in_position, 1.0)).xyz;
+    normal = decodeNormal(in_normal);
+    worldPosition = in_position + vec3(in_origin.x, 0.0, in_origin.y) * chunkSize;
     gl_Position = m_proj * m_view * vec4(worldPosition, 1.0);
 }
\ No newline at end of file
@@ -11,7 +11,18 @@ uniform sampler2D tex0;
 uniform float lightLevel;
 uniform vec3 skyColor;
 uniform float currentRadius;
-uniform float m_time;
+
+// Per-frame global state, see ViewportManager
+layout (std140) uniform Globals {
+    mat4 m_proj;
+    mat4 m_view;
+    vec3 m_pos;
+    float m_time;
+    vec3 m_rot;
+    float nearPlane;
+    vec3 screenResolution;
+    float farPlane;
+};
 
 in vec3 fragPosition;
 in vec3 worldPosition;
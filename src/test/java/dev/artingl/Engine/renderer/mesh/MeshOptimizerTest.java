@@ -0,0 +1,214 @@
+package dev.artingl.Engine.renderer.mesh;
+
+import org.junit.jupiter.api.Test;
+import org.lwjgl.BufferUtils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MeshOptimizerTest {
+
+    private static final int GRID = 24;
+
+    @Test
+    public void weldMergesIdenticalVertices() {
+        VerticesBuffer.Builder builder = new VerticesBuffer.Builder(VerticesBuffer.Attribute.VEC3F, VerticesBuffer.Attribute.VEC2F);
+        // Quad as two triangles, sharing two of the corners
+        builder.put(0, 0, 0).put(0, 0);
+        builder.put(1, 0, 0).put(1, 0);
+        builder.put(1, 0, 1).put(1, 1);
+        builder.put(0, 0, 0).put(0, 0);
+        builder.put(1, 0, 1).put(1, 1);
+        builder.put(0, 0, 1).put(0, 1);
+        // Same position as the first corner, but different texture coordinates
+        builder.put(0, 0, 0).put(0.5f, 0);
+        builder.put(1, 0, 0).put(1, 0);
+        builder.put(0, 0, 1).put(0, 1);
+        VerticesBuffer buffer = builder.build();
+
+        VerticesBuffer welded = MeshOptimizer.weld(buffer);
+
+        assertEquals(5, welded.getVerticesCount());
+        assertEquals(9, welded.getIndicesCount());
+        assertArrayEquals(new int[]{0, 1, 2, 0, 2, 3, 4, 1, 3}, welded.getIndices());
+        assertTrianglesReproduced(buffer, welded);
+    }
+
+    @Test
+    public void weldKeepsIndexedBuffer() {
+        VerticesBuffer.Builder builder = new VerticesBuffer.Builder(VerticesBuffer.Attribute.VEC3F);
+        builder.put(0, 0, 0).put(0, 0, 0).put(0, 0, 0).addIndices(0, 1, 2);
+        VerticesBuffer buffer = builder.build();
+
+        assertSame(buffer, MeshOptimizer.weld(buffer));
+    }
+
+    @Test
+    public void weldReproducesTriangleList() {
+        VerticesBuffer buffer = grid(new Random(1));
+        VerticesBuffer welded = MeshOptimizer.weld(buffer);
+
+        assertEquals((GRID + 1) * (GRID + 1), welded.getVerticesCount());
+        assertTrianglesReproduced(buffer, welded);
+    }
+
+    @Test
+    public void vertexCacheOptimizationKeepsTriangles() {
+        VerticesBuffer welded = MeshOptimizer.weld(grid(new Random(2)));
+        int[] indices = welded.getIndices();
+        shuffleTriangles(indices, new Random(3));
+        int[] original = indices.clone();
+
+        MeshOptimizer.optimizeVertexCache(indices, welded.getVerticesCount());
+
+        assertEquals(sortedTriangles(original), sortedTriangles(indices));
+        assertTrue(cacheMisses(indices) < cacheMisses(original),
+                "The reordered triangles should miss the vertex cache less often");
+    }
+
+    @Test
+    public void vertexFetchOptimizationKeepsIndicesValid() {
+        VerticesBuffer buffer = grid(new Random(4));
+        VerticesBuffer welded = MeshOptimizer.weld(buffer);
+        int[] indices = welded.getIndices();
+        shuffleTriangles(indices, new Random(5));
+        VerticesBuffer reference = withIndices(welded, indices);
+
+        VerticesBuffer fetched = MeshOptimizer.optimizeVertexFetch(welded, indices.clone());
+
+        assertEquals(welded.getVerticesCount(), fetched.getVerticesCount());
+        int next = 0;
+        for (int index : fetched.getIndices()) {
+            assertTrue(index >= 0 && index < fetched.getVerticesCount());
+            // Vertices must appear in the order they are first used
+            assertTrue(index <= next);
+            if (index == next)
+                next++;
+        }
+        assertTrianglesReproduced(reference, fetched);
+    }
+
+    @Test
+    public void optimizeKeepsTriangles() {
+        VerticesBuffer buffer = grid(new Random(6));
+        VerticesBuffer optimized = MeshOptimizer.optimize(buffer);
+
+        assertEquals((GRID + 1) * (GRID + 1), optimized.getVerticesCount());
+        assertEquals(sortedTriangles(vertexTriangles(buffer, null)), sortedTriangles(vertexTriangles(optimized, optimized.getIndices())));
+    }
+
+    /**
+     * Triangle list of a grid with random heights, each cell split into two triangles
+     */
+    private static VerticesBuffer grid(Random random) {
+        float[] heights = new float[(GRID + 1) * (GRID + 1)];
+        for (int i = 0; i < heights.length; i++)
+            heights[i] = random.nextFloat();
+
+        VerticesBuffer.Builder builder = new VerticesBuffer.Builder(GRID * GRID * 6, VerticesBuffer.Attribute.VEC3F, VerticesBuffer.Attribute.VEC2F);
+        int[][] corners = {{0, 0}, {1, 0}, {1, 1}, {0, 0}, {1, 1}, {0, 1}};
+        for (int z = 0; z < GRID; z++) {
+            for (int x = 0; x < GRID; x++) {
+                for (int[] corner : corners) {
+                    int cx = x + corner[0], cz = z + corner[1];
+                    builder.put(cx, heights[cz * (GRID + 1) + cx], cz).put((float) cx / GRID, (float) cz / GRID);
+                }
+            }
+        }
+
+        return builder.build();
+    }
+
+    private static VerticesBuffer withIndices(VerticesBuffer buffer, int[] indices) {
+        ByteBuffer data = BufferUtils.createByteBuffer(buffer.getBytesSize());
+        data.put(buffer.getData());
+        return new VerticesBuffer(buffer.getAttributes(), data, indices, indices.length, new AtomicInteger(1));
+    }
+
+    /**
+     * Check that the indexed buffer draws exactly the same vertices as the reference buffer
+     */
+    private static void assertTrianglesReproduced(VerticesBuffer reference, VerticesBuffer indexed) {
+        List<String> expected = vertexTriangles(reference, reference.hasIndices() ? reference.getIndices() : null);
+        List<String> actual = vertexTriangles(indexed, indexed.getIndices());
+        assertEquals(expected, actual);
+    }
+
+    /**
+     * Get bytes of every drawn vertex, in the drawing order
+     */
+    private static List<String> vertexTriangles(VerticesBuffer buffer, int[] indices) {
+        ByteBuffer data = buffer.getData();
+        int stride = buffer.getStride();
+        int count = indices == null ? buffer.getVerticesCount() : indices.length;
+        List<String> vertices = new ArrayList<>(count / 3);
+
+        for (int i = 0; i < count; i += 3) {
+            StringBuilder triangle = new StringBuilder();
+            for (int j = 0; j < 3; j++) {
+                int vertex = indices == null ? i + j : indices[i + j];
+                for (int k = 0; k < stride; k++)
+                    triangle.append(String.format("%02x", data.get(vertex * stride + k)));
+                triangle.append('|');
+            }
+            vertices.add(triangle.toString());
+        }
+
+        return vertices;
+    }
+
+    private static List<String> sortedTriangles(List<String> triangles) {
+        List<String> sorted = new ArrayList<>(triangles);
+        sorted.sort(null);
+        return sorted;
+    }
+
+    private static List<String> sortedTriangles(int[] indices) {
+        List<String> triangles = new ArrayList<>();
+        for (int i = 0; i < indices.length; i += 3)
+            triangles.add(Arrays.toString(Arrays.copyOfRange(indices, i, i + 3)));
+        triangles.sort(null);
+        return triangles;
+    }
+
+    private static void shuffleTriangles(int[] indices, Random random) {
+        for (int i = indices.length / 3 - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            for (int k = 0; k < 3; k++) {
+                int tmp = indices[i * 3 + k];
+                indices[i * 3 + k] = indices[j * 3 + k];
+                indices[j * 3 + k] = tmp;
+            }
+        }
+    }
+
+    /**
+     * Simulate a FIFO post-transform cache and count vertices that weren't in it
+     */
+    private static int cacheMisses(int[] indices) {
+        int[] cache = new int[MeshOptimizer.VERTEX_CACHE_SIZE];
+        Arrays.fill(cache, -1);
+        int head = 0, misses = 0;
+
+        for (int index : indices) {
+            boolean hit = false;
+            for (int cached : cache)
+                hit |= cached == index;
+
+            if (!hit) {
+                cache[head] = index;
+                head = (head + 1) % cache.length;
+                misses++;
+            }
+        }
+
+        return misses;
+    }
+
+}
@@ -0,0 +1,133 @@
+package dev.artingl.Engine.renderer.mesh;
+
+import dev.artingl.Engine.EngineException;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VerticesBufferBuilderTest {
+
+    private static final VerticesBuffer.Attribute[] ATTRIBUTES = {
+            VerticesBuffer.Attribute.VEC3F,
+            VerticesBuffer.Attribute.VEC3F,
+            VerticesBuffer.Attribute.VEC2F,
+            VerticesBuffer.Attribute.VEC4F
+    };
+
+    private static final int VERTICES = 200_000;
+    private static final int ROUNDS = 10;
+
+    @Test
+    public void builderOutputMatchesSynchronizedPath() {
+        VerticesBuffer expected = writeSynchronized(VERTICES);
+        VerticesBuffer actual = writeBuilder(VERTICES);
+
+        assertEquals(expected.getVerticesCount(), actual.getVerticesCount());
+        assertEquals(expected.getBytesSize(), actual.getBytesSize());
+        assertEquals(expected.hasIndices(), actual.hasIndices());
+
+        int floats = expected.getStride() / 4;
+        for (int vertex = 0; vertex < VERTICES; vertex++)
+            for (int i = 0; i < floats; i++)
+                assertEquals(expected.getFloat(vertex, i * 4), actual.getFloat(vertex, i * 4), "Vertex " + vertex + ", float " + i);
+    }
+
+    @Test
+    public void builderCantBeReused() {
+        VerticesBuffer.Builder builder = new VerticesBuffer.Builder(VerticesBuffer.Attribute.VEC3F);
+        builder.put(1, 2, 3);
+        builder.build();
+
+        assertThrows(EngineException.class, builder::build);
+    }
+
+    @Test
+    public void builtBufferIsReadOnly() {
+        VerticesBuffer buffer = new VerticesBuffer.Builder(VerticesBuffer.Attribute.VEC3F).put(1, 2, 3).build();
+
+        assertTrue(buffer.isReadOnly());
+        assertThrows(EngineException.class, () -> buffer.put(4, 5, 6));
+        assertThrows(EngineException.class, () -> buffer.putInt(4));
+        assertThrows(EngineException.class, () -> buffer.addIndices(0, 0, 0));
+        assertEquals(1, buffer.getVerticesCount());
+
+        // Forks can be changed without touching the shared data
+        VerticesBuffer fork = buffer.fork();
+        assertFalse(fork.isReadOnly());
+        fork.put(4, 5, 6);
+        assertEquals(2, fork.getVerticesCount());
+        assertEquals(1, buffer.getVerticesCount());
+        assertEquals(3, buffer.getFloat(0, 8));
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void benchmarkBuilderAgainstSynchronizedPath(TestReporter reporter) {
+        // Warm up both paths, so the JIT had a chance to compile them
+        for (int i = 0; i < ROUNDS; i++) {
+            writeSynchronized(VERTICES);
+            writeBuilder(VERTICES);
+        }
+
+        long synchronizedTime = Long.MAX_VALUE, builderTime = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            writeSynchronized(VERTICES);
+            synchronizedTime = Math.min(synchronizedTime, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            writeBuilder(VERTICES);
+            builderTime = Math.min(builderTime, System.nanoTime() - start);
+        }
+
+        reporter.publishEntry("synchronized", String.format("%.2f ms", synchronizedTime / 1e6));
+        reporter.publishEntry("builder", String.format("%.2f ms", builderTime / 1e6));
+
+        // The builder does the same writes without a monitor, so it must not be noticeably slower
+        assertTrue(builderTime <= synchronizedTime * 1.25,
+                "Builder took " + builderTime / 1e6 + " ms, the synchronized path " + synchronizedTime / 1e6 + " ms");
+    }
+
+    private static VerticesBuffer writeSynchronized(int count) {
+        VerticesBuffer buffer = new VerticesBuffer(count, ATTRIBUTES);
+        for (int i = 0; i < count; i++) {
+            float x = x(i), y = y(i), z = z(i);
+            buffer.put(x, y, z)
+                    .put(y, 1, -x)
+                    .put(x / 64, z / 64)
+                    .put((i & 0xff) / 255f, ((i >> 8) & 0xff) / 255f, ((i >> 16) & 0xff) / 255f, 1);
+            if (i % 3 == 2)
+                buffer.addIndices(i - 2, i - 1, i);
+        }
+        return buffer;
+    }
+
+    private static VerticesBuffer writeBuilder(int count) {
+        VerticesBuffer.Builder builder = new VerticesBuffer.Builder(count, ATTRIBUTES);
+        for (int i = 0; i < count; i++) {
+            float x = x(i), y = y(i), z = z(i);
+            builder.put(x, y, z)
+                    .put(y, 1, -x)
+                    .put(x / 64, z / 64)
+                    .put((i & 0xff) / 255f, ((i >> 8) & 0xff) / 255f, ((i >> 16) & 0xff) / 255f, 1);
+            if (i % 3 == 2)
+                builder.addIndices(i - 2, i - 1, i);
+        }
+        return builder.build();
+    }
+
+    private static float x(int i) {
+        return (i % 64) * 0.5f;
+    }
+
+    private static float y(int i) {
+        return (float) Math.sin(i * 0.01);
+    }
+
+    private static float z(int i) {
+        return (i / 64 % 64) * 0.5f;
+    }
+
+}
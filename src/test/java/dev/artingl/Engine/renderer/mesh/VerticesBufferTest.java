@@ -0,0 +1,232 @@
+package dev.artingl.Engine.renderer.mesh;
+
+import org.joml.Matrix4f;
+import org.joml.Vector2i;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.BufferUtils;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VerticesBufferTest {
+
+    private static final short HALF_MAX = 0x7bff;
+    private static final short HALF_INFINITY = 0x7c00;
+
+    @Test
+    public void halfRoundTripsEveryHalf() {
+        for (int bits = 0; bits <= 0xffff; bits++) {
+            short half = (short) bits;
+            float value = VerticesBuffer.fromHalf(half);
+
+            if (Float.isNaN(value))
+                assertTrue(isHalfNaN(VerticesBuffer.toHalf(value)), "NaN 0x" + Integer.toHexString(bits));
+            else
+                assertEquals(half, VerticesBuffer.toHalf(value), "Half 0x" + Integer.toHexString(bits));
+        }
+    }
+
+    @Test
+    public void halfDecodesKnownValues() {
+        assertEquals(1f, VerticesBuffer.fromHalf((short) 0x3c00));
+        assertEquals(-2f, VerticesBuffer.fromHalf((short) 0xc000));
+        assertEquals(65504f, VerticesBuffer.fromHalf(HALF_MAX));
+        assertEquals(0x1p-14f, VerticesBuffer.fromHalf((short) 0x0400));
+        assertEquals(0f, VerticesBuffer.fromHalf((short) 0));
+        assertEquals(-0f, VerticesBuffer.fromHalf((short) 0x8000));
+    }
+
+    @Test
+    public void halfDenormals() {
+        // Smallest and largest subnormal halves
+        assertEquals((short) 0x0001, VerticesBuffer.toHalf(0x1p-24f));
+        assertEquals((short) 0x03ff, VerticesBuffer.toHalf(0x3ffp-24f));
+        assertEquals((short) 0x8001, VerticesBuffer.toHalf(-0x1p-24f));
+        assertEquals(0x1p-24f, VerticesBuffer.fromHalf((short) 0x0001));
+        assertEquals(0x3ffp-24f, VerticesBuffer.fromHalf((short) 0x03ff));
+
+        // Rounded to the nearest subnormal
+        assertEquals((short) 0x0003, VerticesBuffer.toHalf(0x1.9p-23f));
+        assertEquals((short) 0x0001, VerticesBuffer.toHalf(0x1.3p-24f));
+
+        // Too small even for a subnormal, keeps the sign
+        assertEquals((short) 0x0000, VerticesBuffer.toHalf(0x1p-26f));
+        assertEquals((short) 0x8000, VerticesBuffer.toHalf(-0x1p-26f));
+        assertEquals((short) 0x0000, VerticesBuffer.toHalf(Float.MIN_VALUE));
+    }
+
+    @Test
+    public void halfInfinityAndNaN() {
+        assertEquals(HALF_INFINITY, VerticesBuffer.toHalf(Float.POSITIVE_INFINITY));
+        assertEquals((short) (HALF_INFINITY | 0x8000), VerticesBuffer.toHalf(Float.NEGATIVE_INFINITY));
+        assertEquals(Float.POSITIVE_INFINITY, VerticesBuffer.fromHalf(HALF_INFINITY));
+        assertEquals(Float.NEGATIVE_INFINITY, VerticesBuffer.fromHalf((short) (HALF_INFINITY | 0x8000)));
+
+        // Including NaNs with the payload only in the bits which don't fit into half
+        for (int bits : new int[]{0x7fc00000, 0x7f800001, 0xff800001, 0x7fffffff, 0xffffffff, 0x7f801000}) {
+            float nan = Float.intBitsToFloat(bits);
+            short half = VerticesBuffer.toHalf(nan);
+            assertTrue(isHalfNaN(half), "NaN 0x" + Integer.toHexString(bits));
+            assertTrue(Float.isNaN(VerticesBuffer.fromHalf(half)));
+        }
+    }
+
+    @Test
+    public void halfOverflowIsClamped() {
+        assertEquals(HALF_MAX, VerticesBuffer.toHalf(65504f));
+        assertEquals(HALF_MAX, VerticesBuffer.toHalf(65519f));
+        assertEquals(HALF_MAX, VerticesBuffer.toHalf(65520f));
+        assertEquals(HALF_MAX, VerticesBuffer.toHalf(65536f));
+        assertEquals(HALF_MAX, VerticesBuffer.toHalf(1e10f));
+        assertEquals(HALF_MAX, VerticesBuffer.toHalf(Float.MAX_VALUE));
+        assertEquals((short) (HALF_MAX | 0x8000), VerticesBuffer.toHalf(-1e10f));
+    }
+
+    @Test
+    public void halfRoundingError() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100_000; i++) {
+            float value = (random.nextFloat() * 2 - 1) * 1000;
+            float decoded = VerticesBuffer.fromHalf(VerticesBuffer.toHalf(value));
+
+            // Half has 11 significant bits, so rounding to nearest is off by at most half of the last bit
+            assertEquals(value, decoded, Math.ulp(decoded) * (1 << 12) + 0x1p-25f, "Value " + value);
+        }
+    }
+
+    @Test
+    public void octahedralAxes() {
+        float[][] axes = {{1, 0, 0}, {-1, 0, 0}, {0, 1, 0}, {0, -1, 0}, {0, 0, 1}, {0, 0, -1}};
+        for (float[] axis : axes) {
+            Vector3f decoded = decodeOctahedral(VerticesBuffer.toOctahedral(axis[0], axis[1], axis[2]));
+            assertEquals(axis[0], decoded.x, 1e-6f);
+            assertEquals(axis[1], decoded.y, 1e-6f);
+            assertEquals(axis[2], decoded.z, 1e-6f);
+        }
+    }
+
+    @Test
+    public void octahedralDiagonals() {
+        for (int x = -1; x <= 1; x += 2)
+            for (int y = -1; y <= 1; y += 2)
+                for (int z = -1; z <= 1; z += 2) {
+                    Vector3f normal = new Vector3f(x, y, z).normalize();
+                    Vector3f decoded = decodeOctahedral(VerticesBuffer.toOctahedral(normal.x, normal.y, normal.z));
+                    assertTrue(angle(normal, decoded) < 1e-4, "Diagonal " + normal + " decoded as " + decoded);
+                }
+
+        // Diagonals in the planes, which lie on the edges of the octahedron
+        Vector3f normal = new Vector3f(1, 0, -1).normalize();
+        assertTrue(angle(normal, decodeOctahedral(VerticesBuffer.toOctahedral(normal.x, normal.y, normal.z))) < 1e-4);
+        normal = new Vector3f(0, -1, -1).normalize();
+        assertTrue(angle(normal, decodeOctahedral(VerticesBuffer.toOctahedral(normal.x, normal.y, normal.z))) < 1e-4);
+    }
+
+    @Test
+    public void octahedralErrorBound() {
+        Random random = new Random(2);
+        double maxError = 0;
+        for (int i = 0; i < 100_000; i++) {
+            Vector3f normal = new Vector3f(
+                    (float) random.nextGaussian(),
+                    (float) random.nextGaussian(),
+                    (float) random.nextGaussian()).normalize();
+            Vector3f decoded = decodeOctahedral(VerticesBuffer.toOctahedral(normal.x, normal.y, normal.z));
+            maxError = Math.max(maxError, angle(normal, decoded));
+        }
+
+        // 2x16 bits keep the direction within a few thousandths of a degree
+        assertTrue(maxError < 1e-4, "Max error " + Math.toDegrees(maxError) + " degrees");
+    }
+
+    @Test
+    public void octahedralZeroVector() {
+        assertEquals(0, VerticesBuffer.toOctahedral(0, 0, 0));
+    }
+
+    @Test
+    public void affineTransformsLikeMatrix() {
+        Matrix4f matrix = new Matrix4f()
+                .translate(1, -2, 3)
+                .rotateXYZ(0.3f, -1.2f, 2.5f)
+                .scale(0.5f, 2, 3);
+        ByteBuffer data = BufferUtils.createByteBuffer(VerticesBuffer.Attribute.MAT3X4F.size);
+        VerticesBuffer.putAffine(data, matrix);
+        assertEquals(VerticesBuffer.Attribute.MAT3X4F.size, data.position());
+
+        // The shader transforms the position with a dot product of each row
+        Vector4f[] rows = new Vector4f[3];
+        for (int i = 0; i < 3; i++)
+            rows[i] = new Vector4f(data.getFloat(i * 16), data.getFloat(i * 16 + 4), data.getFloat(i * 16 + 8), data.getFloat(i * 16 + 12));
+
+        Random random = new Random(3);
+        for (int i = 0; i < 100; i++) {
+            Vector4f position = new Vector4f(random.nextFloat() * 10 - 5, random.nextFloat() * 10 - 5, random.nextFloat() * 10 - 5, 1);
+            Vector3f expected = matrix.transformPosition(new Vector3f(position.x, position.y, position.z));
+
+            assertEquals(expected.x, rows[0].dot(position), 1e-4f);
+            assertEquals(expected.y, rows[1].dot(position), 1e-4f);
+            assertEquals(expected.z, rows[2].dot(position), 1e-4f);
+        }
+    }
+
+    @Test
+    public void affineWritersAgree() {
+        Matrix4f matrix = new Matrix4f().translate(4, 5, 6).rotateY(0.7f);
+        VerticesBuffer wrapped = VerticesBuffer.wrapAffine(matrix);
+        VerticesBuffer built = new VerticesBuffer.Builder(VerticesBuffer.Attribute.MAT3X4F).addAffine(matrix).build();
+        VerticesBuffer added = new VerticesBuffer(1, VerticesBuffer.Attribute.MAT3X4F).addAttribute(matrix, VerticesBuffer.Attribute.MAT3X4F);
+
+        assertEquals(1, wrapped.getVerticesCount());
+        assertEquals(wrapped.getData(), built.getData());
+        assertEquals(wrapped.getData(), added.getData());
+    }
+
+    @Test
+    public void shortWritersAgree() {
+        VerticesBuffer built = new VerticesBuffer.Builder(VerticesBuffer.Attribute.VEC2S).putShort(-3, 40000).build();
+        VerticesBuffer added = new VerticesBuffer(1, VerticesBuffer.Attribute.VEC2S).addAttribute(new Vector2i(-3, 40000), VerticesBuffer.Attribute.VEC2S);
+
+        assertEquals(1, added.getVerticesCount());
+        assertEquals(built.getData(), added.getData());
+        assertEquals(-3, added.getData().getShort(0));
+        assertEquals((short) 40000, added.getData().getShort(2));
+    }
+
+    /**
+     * Angle between the unit vectors, precise for tiny angles unlike acos of the dot product
+     */
+    private static double angle(Vector3f a, Vector3f b) {
+        Vector3f cross = new Vector3f(a).cross(b);
+        return Math.atan2(cross.length(), a.dot(b));
+    }
+
+    private static boolean isHalfNaN(short half) {
+        return (half & 0x7c00) == 0x7c00 && (half & 0x03ff) != 0;
+    }
+
+    /**
+     * Decode the normal the same way the shaders do
+     */
+    private static Vector3f decodeOctahedral(int encoded) {
+        ByteBuffer data = BufferUtils.createByteBuffer(4);
+        data.putInt(0, encoded);
+        float x = Math.max(data.getShort(0) / 32767f, -1);
+        float y = Math.max(data.getShort(2) / 32767f, -1);
+
+        Vector3f normal = new Vector3f(x, y, 1 - Math.abs(x) - Math.abs(y));
+        if (normal.z < 0) {
+            float nx = (1 - Math.abs(normal.y)) * (normal.x >= 0 ? 1 : -1);
+            float ny = (1 - Math.abs(normal.x)) * (normal.y >= 0 ? 1 : -1);
+            normal.x = nx;
+            normal.y = ny;
+        }
+
+        return normal.normalize();
+    }
+
+}
@@ -0,0 +1,197 @@
+package dev.artingl.Engine.renderer.occlusion;
+
+import dev.artingl.Engine.debug.Logger;
+import dev.artingl.Engine.misc.BoundingBox;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OcclusionBufferTest {
+
+    private static final int WIDTH = 256, HEIGHT = 128;
+    private static final float NEAR = 0.1f, FAR = 100;
+
+    private Matrix4f viewProjection;
+    private OcclusionBuffer buffer;
+
+    @BeforeEach
+    public void setUp() {
+        // Camera at the origin looking along -Z
+        this.viewProjection = new Matrix4f().perspective((float) Math.toRadians(60), (float) WIDTH / HEIGHT, NEAR, FAR);
+        this.buffer = new OcclusionBuffer(WIDTH, HEIGHT);
+    }
+
+    @Test
+    public void rasterizesQuad() {
+        this.render(quad(-10));
+
+        // Quad covers the center of the screen at its depth, and nothing around it
+        int[] center = this.project(new Vector3f(0, 0, -10));
+        assertEquals(this.depth(new Vector3f(0, 0, -10)), this.buffer.getDepth(center[0], center[1]), 1e-5f);
+        assertEquals(1f, this.buffer.getDepth(0, 0));
+        assertEquals(1f, this.buffer.getDepth(WIDTH - 1, HEIGHT - 1));
+
+        // Every pixel inside the projected quad is covered, every pixel outside isn't
+        int[] min = this.project(new Vector3f(-5, -5, -10));
+        int[] max = this.project(new Vector3f(5, 5, -10));
+        for (int y = 0; y < HEIGHT; y++)
+            for (int x = 0; x < WIDTH; x++) {
+                boolean inside = x > min[0] && x < max[0] && y > min[1] && y < max[1];
+                boolean outside = x < min[0] || x > max[0] || y < min[1] || y > max[1];
+                if (inside)
+                    assertTrue(this.buffer.getDepth(x, y) < 1, "Pixel " + x + ", " + y + " isn't covered");
+                if (outside)
+                    assertEquals(1f, this.buffer.getDepth(x, y), "Pixel " + x + ", " + y + " is covered");
+            }
+    }
+
+    @Test
+    public void rasterizesInBands() {
+        Occluder occluder = quad(-10);
+        this.render(occluder);
+        float[] expected = new float[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++)
+            for (int x = 0; x < WIDTH; x++)
+                expected[y * WIDTH + x] = this.buffer.getDepth(x, y);
+
+        // Bands rasterized in any order give the same result as the whole buffer at once
+        OcclusionBuffer banded = new OcclusionBuffer(WIDTH, HEIGHT);
+        banded.begin(this.viewProjection);
+        banded.addOccluder(occluder, new Matrix4f());
+        for (int band = HEIGHT / 16 - 1; band >= 0; band--)
+            banded.rasterize(band * 16, (band + 1) * 16);
+
+        for (int y = 0; y < HEIGHT; y++)
+            for (int x = 0; x < WIDTH; x++)
+                assertEquals(expected[y * WIDTH + x], banded.getDepth(x, y));
+    }
+
+    @Test
+    public void boxBehindQuadIsOccluded() {
+        this.render(quad(-10));
+
+        assertFalse(this.buffer.isVisible(box(-2, -2, -30, 2, 2, -20)));
+        assertFalse(this.buffer.isVisible(box(-0.1f, -0.1f, -11, 0.1f, 0.1f, -10.5f)));
+        // Far away boxes are tested against the coarse levels of the hierarchy
+        assertFalse(this.buffer.isVisible(box(-20, -20, -90, 20, 20, -80)));
+    }
+
+    @Test
+    public void boxInFrontOfQuadIsVisible() {
+        this.render(quad(-10));
+
+        assertTrue(this.buffer.isVisible(box(-1, -1, -6, 1, 1, -5)));
+        // Touching the quad from the front
+        assertTrue(this.buffer.isVisible(box(-1, -1, -10, 1, 1, -9)));
+    }
+
+    @Test
+    public void boxOutsideQuadEdgesIsVisible() {
+        this.render(quad(-10));
+
+        // Behind the quad, but partly outside of each of its edges
+        assertTrue(this.buffer.isVisible(box(8, -1, -22, 12, 1, -20)));
+        assertTrue(this.buffer.isVisible(box(-12, -1, -22, -8, 1, -20)));
+        assertTrue(this.buffer.isVisible(box(-1, 8, -22, 1, 12, -20)));
+        assertTrue(this.buffer.isVisible(box(-1, -12, -22, 1, -8, -20)));
+
+        // Completely beside the quad
+        assertTrue(this.buffer.isVisible(box(14, -1, -22, 16, 1, -20)));
+    }
+
+    @Test
+    public void boxCrossingNearPlaneIsNeverCulled() {
+        this.render(quad(-10));
+
+        // Boxes behind the quad which reach through the near plane, around the camera and behind it
+        assertTrue(this.buffer.isVisible(box(-1, -1, -50, 1, 1, -0.05f)));
+        assertTrue(this.buffer.isVisible(box(-1, -1, -50, 1, 1, 5)));
+        assertTrue(this.buffer.isVisible(box(-0.5f, -0.5f, -0.5f, 0.5f, 0.5f, 0.5f)));
+        assertTrue(this.buffer.isVisible(box(-1, -1, 1, 1, 1, 5)));
+    }
+
+    @Test
+    public void occluderCrossingNearPlaneIsClipped() {
+        // Floor under the camera, which goes behind it
+        float[] heights = new float[9 * 9];
+        Arrays.fill(heights, -1);
+        Occluder floor = Occluder.heightfield(heights, 9, 9, 20, 1);
+        this.render(floor, new Matrix4f().translate(-80, 0, -80));
+
+        // The bottom of the screen is the floor, the top is the sky
+        assertTrue(this.buffer.getDepth(WIDTH / 2, 0) < 1);
+        assertEquals(1f, this.buffer.getDepth(WIDTH / 2, HEIGHT - 1));
+
+        // Under the floor
+        assertFalse(this.buffer.isVisible(box(-1, -3, -20, 1, -2, -18)));
+        // Above the floor
+        assertTrue(this.buffer.isVisible(box(-1, -0.5f, -20, 1, 0.5f, -18)));
+    }
+
+    @Test
+    public void cullerSkipsEmptyOccluders() {
+        OcclusionCuller culler = new OcclusionCuller(Logger.create("Test"));
+        culler.begin(new Matrix4f().perspective((float) Math.toRadians(60), (float) OcclusionCuller.WIDTH / OcclusionCuller.HEIGHT, NEAR, FAR));
+        culler.addOccluder(new Occluder(), new Matrix4f());
+        culler.addOccluder(new Occluder(new float[0], new int[0]), new Matrix4f());
+        culler.addOccluder(quad(-10), new Matrix4f());
+        assertEquals(1, culler.getOccluders());
+        assertEquals(2, culler.getBuffer().getTrianglesCount());
+
+        // Rasterize the whole buffer on this thread, the culler does the same in bands on the workers
+        culler.getBuffer().rasterize(0, OcclusionCuller.HEIGHT);
+        culler.getBuffer().buildHierarchy();
+        assertFalse(culler.isVisible(box(-2, -2, -30, 2, 2, -20)));
+        assertTrue(culler.isVisible(box(8, -1, -22, 12, 1, -20)));
+    }
+
+    private void render(Occluder occluder) {
+        this.render(occluder, new Matrix4f());
+    }
+
+    private void render(Occluder occluder, Matrix4f model) {
+        this.buffer.begin(this.viewProjection);
+        this.buffer.addOccluder(occluder, model);
+        this.buffer.rasterize(0, HEIGHT);
+        this.buffer.buildHierarchy();
+    }
+
+    /**
+     * Get pixel of the buffer where the point is projected
+     */
+    private int[] project(Vector3f point) {
+        Vector4f clip = this.viewProjection.transform(new Vector4f(point, 1));
+        return new int[]{
+                (int) Math.floor((clip.x / clip.w * 0.5f + 0.5f) * WIDTH),
+                (int) Math.floor((clip.y / clip.w * 0.5f + 0.5f) * HEIGHT)
+        };
+    }
+
+    private float depth(Vector3f point) {
+        Vector4f clip = this.viewProjection.transform(new Vector4f(point, 1));
+        return clip.z / clip.w * 0.5f + 0.5f;
+    }
+
+    /**
+     * Square of 10x10 facing the camera
+     */
+    private static Occluder quad(float z) {
+        return new Occluder(new float[]{
+                -5, -5, z,
+                5, -5, z,
+                5, 5, z,
+                -5, 5, z
+        }, new int[]{0, 1, 2, 0, 2, 3});
+    }
+
+    private static BoundingBox box(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        return new BoundingBox(new Vector3f(minX, minY, minZ), new Vector3f(maxX, maxY, maxZ));
+    }
+
+}
@@ -0,0 +1,157 @@
+package dev.artingl.Engine.world.scene;
+
+import dev.artingl.Engine.misc.BoundingBox;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AABBTreeTest {
+
+    private static final float MARGIN = 0.5f;
+    private static final float WORLD_SIZE = 500;
+
+    @Test
+    public void randomInsertMoveRemoveKeepsTreeValid() {
+        Random random = new Random(1);
+        AABBTree<Integer> tree = new AABBTree<>(MARGIN);
+        Map<Integer, Integer> proxies = new HashMap<>();
+        Map<Integer, BoundingBox> bounds = new HashMap<>();
+        List<Integer> alive = new ArrayList<>();
+        int nextObject = 0;
+
+        for (int step = 0; step < 20_000; step++) {
+            int action = random.nextInt(10);
+
+            if (alive.isEmpty() || action < 4) {
+                // Insert a new object
+                int object = nextObject++;
+                BoundingBox box = randomBox(random);
+                proxies.put(object, tree.insert(box, object));
+                bounds.put(object, box);
+                alive.add(object);
+            }
+            else if (action < 8) {
+                // Move an object, mostly by a little, sometimes far away
+                int object = alive.get(random.nextInt(alive.size()));
+                BoundingBox box = random.nextInt(4) == 0 ? randomBox(random) : nudge(bounds.get(object), random);
+                tree.move(proxies.get(object), box);
+                bounds.put(object, box);
+            }
+            else {
+                // Remove an object
+                int object = alive.remove(random.nextInt(alive.size()));
+                tree.remove(proxies.remove(object));
+                bounds.remove(object);
+            }
+
+            if (step % 100 == 0)
+                assertValid(tree, proxies, bounds);
+        }
+
+        assertValid(tree, proxies, bounds);
+    }
+
+    @Test
+    public void heightStaysLogarithmic() {
+        Random random = new Random(2);
+        AABBTree<Integer> tree = new AABBTree<>(MARGIN);
+        List<Integer> proxies = new ArrayList<>();
+
+        // Objects sorted along one axis are the worst case for a tree without balancing
+        for (int i = 0; i < 4096; i++) {
+            BoundingBox box = new BoundingBox(new Vector3f(i * 2, 0, 0), new Vector3f(i * 2 + 1, 1, 1));
+            proxies.add(tree.insert(box, i));
+            assertTrue(tree.getHeight() <= maxHeight(tree.size()), "Height " + tree.getHeight() + " with " + tree.size() + " objects");
+        }
+        tree.validate();
+
+        // Remove a random half of them
+        for (int i = 0; i < 2048; i++)
+            tree.remove(proxies.remove(random.nextInt(proxies.size())));
+        tree.validate();
+        assertTrue(tree.getHeight() <= maxHeight(tree.size()), "Height " + tree.getHeight() + " with " + tree.size() + " objects");
+    }
+
+    @Test
+    public void queryMatchesBruteForce() {
+        Random random = new Random(3);
+        AABBTree<Integer> tree = new AABBTree<>(MARGIN);
+        List<Integer> proxies = new ArrayList<>();
+        for (int i = 0; i < 2000; i++)
+            proxies.add(tree.insert(randomBox(random), i));
+
+        for (int i = 0; i < 200; i++) {
+            Vector3f eye = new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat()).mul(WORLD_SIZE).sub(WORLD_SIZE / 2, WORLD_SIZE / 2, WORLD_SIZE / 2);
+            Vector3f target = new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat()).mul(WORLD_SIZE).sub(WORLD_SIZE / 2, WORLD_SIZE / 2, WORLD_SIZE / 2);
+            Matrix4f matrix = new Matrix4f()
+                    .perspective((float) Math.toRadians(30 + random.nextInt(90)), 16 / 9f, 0.1f, 50 + random.nextFloat() * WORLD_SIZE)
+                    .lookAt(eye, target, new Vector3f(0, 1, 0));
+            FrustumIntersection frustum = new FrustumIntersection(matrix);
+
+            Set<Integer> expected = new HashSet<>();
+            for (int proxy : proxies) {
+                BoundingBox box = tree.getFatBounds(proxy);
+                if (frustum.intersectAab(box.min.x, box.min.y, box.min.z, box.max.x, box.max.y, box.max.z) < 0)
+                    expected.add(tree.getData(proxy));
+            }
+
+            Set<Integer> actual = new HashSet<>();
+            tree.query(frustum, object -> assertTrue(actual.add(object), "Object " + object + " visited twice"));
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void moveInsideFatBoundsKeepsLeaf() {
+        AABBTree<Integer> tree = new AABBTree<>(MARGIN);
+        BoundingBox box = new BoundingBox(new Vector3f(0, 0, 0), new Vector3f(1, 1, 1));
+        int proxy = tree.insert(box, 0);
+
+        assertFalse(tree.move(proxy, new BoundingBox(new Vector3f(0.2f, 0, 0), new Vector3f(1.2f, 1, 1))));
+        assertTrue(tree.move(proxy, new BoundingBox(new Vector3f(2, 0, 0), new Vector3f(3, 1, 1))));
+        assertTrue(tree.getFatBounds(proxy).contains(new BoundingBox(new Vector3f(2, 0, 0), new Vector3f(3, 1, 1))));
+    }
+
+    private static void assertValid(AABBTree<Integer> tree, Map<Integer, Integer> proxies, Map<Integer, BoundingBox> bounds) {
+        tree.validate();
+        assertEquals(proxies.size(), tree.size());
+        assertTrue(tree.getHeight() <= maxHeight(tree.size()), "Height " + tree.getHeight() + " with " + tree.size() + " objects");
+
+        for (Map.Entry<Integer, Integer> entry : proxies.entrySet()) {
+            assertEquals(entry.getKey(), tree.getData(entry.getValue()));
+            assertTrue(tree.getFatBounds(entry.getValue()).contains(bounds.get(entry.getKey())));
+        }
+    }
+
+    /**
+     * Height limit of a tree balanced like an AVL tree
+     */
+    private static int maxHeight(int size) {
+        if (size <= 1)
+            return 0;
+        return (int) Math.ceil(1.44 * Math.log(size + 2) / Math.log(2));
+    }
+
+    private static BoundingBox randomBox(Random random) {
+        Vector3f min = new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat()).mul(WORLD_SIZE).sub(WORLD_SIZE / 2, WORLD_SIZE / 2, WORLD_SIZE / 2);
+        Vector3f size = new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat()).mul(10).add(0.1f, 0.1f, 0.1f);
+        return new BoundingBox(min, new Vector3f(min).add(size));
+    }
+
+    private static BoundingBox nudge(BoundingBox box, Random random) {
+        Vector3f offset = new Vector3f(random.nextFloat() - 0.5f, random.nextFloat() - 0.5f, random.nextFloat() - 0.5f).mul(2 * MARGIN);
+        return new BoundingBox(new Vector3f(box.min).add(offset), new Vector3f(box.max).add(offset));
+    }
+
+}